@@ -103,6 +103,7 @@ public class OperationsOnOrderMongoSteps {
 		}).using(BasicRobot.robotWithCurrentAwtHierarchy());
 		await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> {
 			window.requireVisible();
+			window.button("welcomeStartShopping").requireEnabled();
 		});
 
 	}
@@ -87,6 +87,7 @@ public class OperationsOnOrderMySqlSteps {
 		}).using(BasicRobot.robotWithCurrentAwtHierarchy());
 		await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> {
 			window.requireVisible();
+			window.button("welcomeStartShopping").requireEnabled();
 		});
 
 	}
@@ -87,6 +87,7 @@ public class MySqlStorySteps {
 		}).using(BasicRobot.robotWithCurrentAwtHierarchy());
 		await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> {
 			window.requireVisible();
+			window.button("welcomeStartShopping").requireEnabled();
 		});
 
 	}
@@ -113,6 +114,12 @@ public class MySqlStorySteps {
 		window.button(buttonName).click();
 	}
 
+	// the product is known to be sold out once its availability is read
+	@Then("The $buttonName button is disabled")
+	public void thenTheButtonIsDisabled(String buttonName) {
+		await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> window.button(buttonName).requireDisabled());
+	}
+
 	@When("The user clicks on product")
 	public void whenTheUserClicksOnProduct() {
 		window.list("productList").selectItem(0);
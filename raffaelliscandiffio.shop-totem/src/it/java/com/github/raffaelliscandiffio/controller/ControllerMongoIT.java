@@ -103,7 +103,7 @@ class ControllerMongoIT {
 				.isEqualTo(new Order(ORDER_OPEN));
 
 		verify(view).setOrderId(orders.get(0).getId());
-		verify(view).showAllProducts(getAllProducts());
+		verify(view).showFirstProductsPage(getAllProductsOrderedById(), false);
 		verify(view, never()).showShoppingErrorMessage(any());
 	}
 
@@ -114,7 +114,7 @@ class ControllerMongoIT {
 		persistObjects(asList(product_1, product_2));
 
 		controller.openShopping();
-		verify(view).showAllProducts(getAllProducts());
+		verify(view).showFirstProductsPage(getAllProductsOrderedById(), false);
 		verify(view, never()).showShoppingErrorMessage(any());
 	}
 
@@ -161,6 +161,7 @@ class ControllerMongoIT {
 		assertThat(getAllStocks()).containsExactly(modifiedStock);
 		verify(view).showAllOrderItems(asList(items.get(0)));
 		verify(view).showShoppingMessage("Added " + MID_QUANTITY + " " + PRODUCT_NAME_1);
+		verify(view).showOrderTotal(MID_QUANTITY * PRICE, 1);
 		verify(view, never()).showShoppingErrorMessage(any());
 	}
 
@@ -214,6 +215,7 @@ class ControllerMongoIT {
 		OrderItem item_2 = new OrderItem(product_2, order, MID_QUANTITY);
 
 		persistObjects(asList(product_1, product_2, stock, order, item_1, item_2));
+		when(view.getOrderId()).thenReturn(order.getId());
 
 		controller.removeItem(item_1);
 
@@ -238,7 +240,7 @@ class ControllerMongoIT {
 		assertThat(getAllStocks()).containsExactly(stock);
 		assertThat(getAllItems()).isEmpty();
 		verify(view).resetView();
-		verify(view).showAllProducts(getAllProducts());
+		verify(view).showFirstProductsPage(getAllProductsOrderedById(), false);
 		verify(view).showAllOrderItems(getAllItemsByOrderId(order.getId()));
 		verify(view).showCartErrorMessage("Item not found: " + fakeId);
 
@@ -255,6 +257,8 @@ class ControllerMongoIT {
 		Stock stockModified = newStockWithId(stock.getId(), product, MID_QUANTITY + LOW_QUANTITY);
 		OrderItem itemModified = newItemWithId(item.getId(), product, order, GREAT_QUANTITY - LOW_QUANTITY);
 
+		when(view.getOrderId()).thenReturn(order.getId());
+
 		controller.returnItem(item, LOW_QUANTITY);
 
 		assertThat(getAllItems()).containsExactly(itemModified);
@@ -279,7 +283,7 @@ class ControllerMongoIT {
 		controller.returnItem(item, MID_QUANTITY);
 
 		verify(view).resetView();
-		verify(view).showAllProducts(getAllProducts());
+		verify(view).showFirstProductsPage(getAllProductsOrderedById(), false);
 		verify(view).showAllOrderItems(getAllItemsByOrderId(order.getId()));
 		verify(view).showCartErrorMessage("Item not found: " + fakeId);
 		assertThat(getAllStocks()).containsExactly(stock);
@@ -388,6 +392,11 @@ class ControllerMongoIT {
 		}).collect(Collectors.toList());
 	}
 
+	private List<Product> getAllProductsOrderedById() {
+		return StreamSupport.stream(productCollection.find().sort(new Document(_FIELD_ID, 1)).spliterator(), false)
+				.map(this::fromDocumentToProduct).collect(Collectors.toList());
+	}
+
 	private Product fromDocumentToProduct(Document d) {
 		Product p = new Product(d.getString(_FIELD_NAME), d.getDouble(_FIELD_PRICE));
 		p.setId(d.get(_FIELD_ID).toString());
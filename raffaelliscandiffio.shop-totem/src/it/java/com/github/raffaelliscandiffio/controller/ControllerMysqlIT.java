@@ -93,7 +93,7 @@ class ControllerMysqlIT {
 				.isEqualTo(new Order(ORDER_OPEN));
 
 		verify(view).setOrderId(orders.get(0).getId());
-		verify(view).showAllProducts(getAllProducts());
+		verify(view).showFirstProductsPage(getAllProductsOrderedById(), false);
 		verify(view, never()).showShoppingErrorMessage(any());
 	}
 
@@ -104,7 +104,7 @@ class ControllerMysqlIT {
 		persistObjects(asList(product_1, product_2));
 
 		controller.openShopping();
-		verify(view).showAllProducts(getAllProducts());
+		verify(view).showFirstProductsPage(getAllProductsOrderedById(), false);
 		verify(view, never()).showShoppingErrorMessage(any());
 	}
 
@@ -151,6 +151,7 @@ class ControllerMysqlIT {
 		assertThat(getAllStocks()).containsExactly(modifiedStock);
 		verify(view).showAllOrderItems(asList(items.get(0)));
 		verify(view).showShoppingMessage("Added " + MID_QUANTITY + " " + PRODUCT_NAME_1);
+		verify(view).showOrderTotal(MID_QUANTITY * PRICE, 1);
 		verify(view, never()).showShoppingErrorMessage(any());
 	}
 
@@ -204,6 +205,7 @@ class ControllerMysqlIT {
 		OrderItem item_2 = new OrderItem(product_2, order, MID_QUANTITY);
 
 		persistObjects(asList(product_1, product_2, stock, order, item_1, item_2));
+		when(view.getOrderId()).thenReturn(order.getId());
 
 		controller.removeItem(item_1);
 
@@ -228,7 +230,7 @@ class ControllerMysqlIT {
 		assertThat(getAllStocks()).containsExactly(stock);
 		assertThat(getAllItems()).isEmpty();
 		verify(view).resetView();
-		verify(view).showAllProducts(getAllProducts());
+		verify(view).showFirstProductsPage(getAllProductsOrderedById(), false);
 		verify(view).showAllOrderItems(getAllItemsByOrderId(order.getId()));
 		verify(view).showCartErrorMessage("Item not found: " + fakeId);
 
@@ -245,6 +247,8 @@ class ControllerMysqlIT {
 		Stock stockModified = newStockWithId(stock.getId(), product, MID_QUANTITY + LOW_QUANTITY);
 		OrderItem itemModified = newItemWithId(item.getId(), product, order, GREAT_QUANTITY - LOW_QUANTITY);
 
+		when(view.getOrderId()).thenReturn(order.getId());
+
 		controller.returnItem(item, LOW_QUANTITY);
 
 		assertThat(getAllItems()).containsExactly(itemModified);
@@ -269,7 +273,7 @@ class ControllerMysqlIT {
 		controller.returnItem(item, MID_QUANTITY);
 
 		verify(view).resetView();
-		verify(view).showAllProducts(getAllProducts());
+		verify(view).showFirstProductsPage(getAllProductsOrderedById(), false);
 		verify(view).showAllOrderItems(getAllItemsByOrderId(order.getId()));
 		verify(view).showCartErrorMessage("Item not found: " + fakeId);
 		assertThat(getAllStocks()).containsExactly(stock);
@@ -317,6 +321,10 @@ class ControllerMysqlIT {
 		return entityManager.createQuery("SELECT p FROM Product p", Product.class).getResultList();
 	}
 
+	private List<Product> getAllProductsOrderedById() {
+		return entityManager.createQuery("SELECT p FROM Product p ORDER BY p.id", Product.class).getResultList();
+	}
+
 	private List<Stock> getAllStocks() {
 		return entityManager.createQuery("SELECT s FROM Stock s", Stock.class).getResultList();
 	}
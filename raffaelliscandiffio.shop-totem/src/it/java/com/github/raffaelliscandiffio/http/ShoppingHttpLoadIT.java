@@ -0,0 +1,171 @@
+package com.github.raffaelliscandiffio.http;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.raffaelliscandiffio.repository.embedded.EmbeddedStore;
+import com.github.raffaelliscandiffio.service.AsyncShoppingService;
+import com.github.raffaelliscandiffio.service.ShoppingService;
+import com.github.raffaelliscandiffio.transaction.embedded.TransactionManagerEmbedded;
+
+/**
+ * Many clients shopping at once through the HTTP API, each over a connection
+ * kept alive. Logs the throughput and the latencies of the requests.
+ */
+class ShoppingHttpLoadIT {
+
+	private static final Logger LOGGER = LogManager.getLogger(ShoppingHttpLoadIT.class);
+	private static final Pattern ID = Pattern.compile("\"id\":\"([^\"]+)\"");
+
+	private static final int CLIENTS = 32;
+	private static final int ORDERS_PER_CLIENT = 50;
+	private static final int STOCK_QUANTITY = CLIENTS * ORDERS_PER_CLIENT;
+	private static final int WORKERS = 8;
+	private static final int QUEUE_PER_WORKER = 16;
+
+	@TempDir
+	Path directory;
+
+	private EmbeddedStore store;
+	private ExecutorService serviceExecutor;
+	private ShoppingService shoppingService;
+	private ShoppingHttpServer server;
+	private String productId;
+
+	@BeforeEach
+	void setup() throws IOException {
+		store = new EmbeddedStore(directory);
+		serviceExecutor = Executors.newSingleThreadExecutor();
+		shoppingService = new ShoppingService(new TransactionManagerEmbedded(store));
+		shoppingService.saveProductAndStock("product_1", 1.0, STOCK_QUANTITY);
+		productId = shoppingService.getAllProducts().get(0).getId();
+		server = new ShoppingHttpServer(new AsyncShoppingService(shoppingService, serviceExecutor), 0, WORKERS,
+				WORKERS * QUEUE_PER_WORKER);
+		server.start();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		server.close();
+		serviceExecutor.shutdown();
+		serviceExecutor.awaitTermination(10, TimeUnit.SECONDS);
+		store.close();
+	}
+
+	@Test
+	@DisplayName("Concurrent clients should shop every unit of the stock, each request succeeding")
+	void testConcurrentClientsShouldShopTheWholeStock() throws Exception {
+		ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+		List<Future<long[]>> results = new ArrayList<>();
+		long startedAt = System.nanoTime();
+		for (int i = 0; i < CLIENTS; i++)
+			results.add(clients.submit(this::shop));
+		long[] latencies = new long[CLIENTS * ORDERS_PER_CLIENT * 4];
+		int count = 0;
+		for (Future<long[]> result : results) {
+			long[] clientLatencies = result.get(2, TimeUnit.MINUTES);
+			System.arraycopy(clientLatencies, 0, latencies, count, clientLatencies.length);
+			count += clientLatencies.length;
+		}
+		long elapsed = System.nanoTime() - startedAt;
+		clients.shutdown();
+
+		Arrays.sort(latencies);
+		LOGGER.log(Level.INFO,
+				String.format("%d requests in %.0f ms, %.0f requests/s, p50 %.2f ms, p99 %.2f ms, max %.2f ms", count,
+						elapsed / 1e6, count / (elapsed / 1e9), percentile(latencies, 50) / 1e6,
+						percentile(latencies, 99) / 1e6, latencies[latencies.length - 1] / 1e6));
+		assertThat(shoppingService.getAvailableQuantity(productId)).isZero();
+	}
+
+	// open, look up the catalog, buy one unit and close, for every order
+	private long[] shop() throws IOException {
+		long[] latencies = new long[ORDERS_PER_CLIENT * 4];
+		int count = 0;
+		String etag = null;
+		for (int i = 0; i < ORDERS_PER_CLIENT; i++) {
+			long startedAt = System.nanoTime();
+			String orderId = id(request("POST", "/orders", 201));
+			latencies[count++] = System.nanoTime() - startedAt;
+
+			startedAt = System.nanoTime();
+			HttpURLConnection products = connect("GET", "/products");
+			if (etag != null)
+				products.setRequestProperty("If-None-Match", etag);
+			assertThat(products.getResponseCode()).isIn(200, 304);
+			etag = products.getHeaderField("ETag");
+			read(products.getInputStream());
+			latencies[count++] = System.nanoTime() - startedAt;
+
+			startedAt = System.nanoTime();
+			request("POST", "/orders/" + orderId + "/items?productId=" + productId + "&quantity=1", 201);
+			latencies[count++] = System.nanoTime() - startedAt;
+
+			startedAt = System.nanoTime();
+			request("POST", "/orders/" + orderId + "/close", 204);
+			latencies[count++] = System.nanoTime() - startedAt;
+		}
+		return latencies;
+	}
+
+	private String request(String method, String path, int expectedStatus) throws IOException {
+		HttpURLConnection connection = connect(method, path);
+		int status = connection.getResponseCode();
+		InputStream body = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+		String text = body == null ? "" : read(body);
+		assertThat(status).as(text).isEqualTo(expectedStatus);
+		return text;
+	}
+
+	private HttpURLConnection connect(String method, String path) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path)
+				.openConnection();
+		connection.setRequestMethod(method);
+		return connection;
+	}
+
+	// the body is read to the end so that the connection goes back to the pool
+	private static String read(InputStream body) throws IOException {
+		StringBuilder text = new StringBuilder();
+		byte[] buffer = new byte[1024];
+		for (int read = body.read(buffer); read != -1; read = body.read(buffer))
+			text.append(new String(buffer, 0, read, StandardCharsets.UTF_8));
+		body.close();
+		return text.toString();
+	}
+
+	private static String id(String body) {
+		Matcher matcher = ID.matcher(body);
+		assertThat(matcher.find()).as(body).isTrue();
+		return matcher.group(1);
+	}
+
+	private static long percentile(long[] sorted, int percent) {
+		return sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * percent / 100.0) - 1)];
+	}
+
+}
@@ -0,0 +1,145 @@
+package com.github.raffaelliscandiffio.multithreading;
+
+import static org.awaitility.Awaitility.await;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import com.github.raffaelliscandiffio.model.Order;
+import com.github.raffaelliscandiffio.model.OrderStatus;
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.model.Stock;
+import com.github.raffaelliscandiffio.service.ShoppingService;
+import com.github.raffaelliscandiffio.transaction.LockingStrategy;
+import com.github.raffaelliscandiffio.transaction.mysql.TransactionManagerMySql;
+
+class LockingStrategyMysqlIT {
+
+	private static final Logger LOGGER = LogManager.getLogger(LockingStrategyMysqlIT.class);
+
+	private static final String DATABASE_NAME = "totem";
+	private static final int STOCK_QUANTITY = 1000;
+	private static final int PURCHASES_PER_THREAD = 20;
+	private static final int CONFLICT_RETRIES = 10;
+
+	private static final int nThreads = 10;
+
+	private static EntityManagerFactory entityManagerFactory;
+	private EntityManager entityManager;
+
+	@BeforeAll
+	static void createEntityManagerFactory() {
+		System.setProperty("db.port", "3306");
+		System.setProperty("db.name", DATABASE_NAME);
+		entityManagerFactory = Persistence.createEntityManagerFactory("mysql-test");
+	}
+
+	@AfterAll
+	static void closeEntityManagerFactory() {
+		entityManagerFactory.close();
+	}
+
+	@BeforeEach()
+	void setup() {
+		entityManager = entityManagerFactory.createEntityManager();
+		entityManager.getTransaction().begin();
+		entityManager.createQuery("DELETE FROM OrderItem").executeUpdate();
+		entityManager.createQuery("DELETE FROM Order").executeUpdate();
+		entityManager.createQuery("DELETE FROM Stock").executeUpdate();
+		entityManager.createQuery("DELETE FROM Product").executeUpdate();
+		entityManager.getTransaction().commit();
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (entityManager.isOpen())
+			entityManager.close();
+	}
+
+	// one product shared by every thread is the high contention case, one
+	// product per thread is the low contention case
+	@ParameterizedTest
+	@CsvSource({ "PESSIMISTIC, 1", "OPTIMISTIC, 1", "PESSIMISTIC, 10", "OPTIMISTIC, 10" })
+	@DisplayName("Concurrent purchases should preserve the stock with both locking strategies")
+	void testConcurrentPurchasesWithLockingStrategy(LockingStrategy lockingStrategy, int nProducts) {
+		List<Product> products = new ArrayList<>();
+		entityManager.getTransaction().begin();
+		for (int i = 0; i < nProducts; i++) {
+			Product product = new Product("product_" + i, 1.0);
+			entityManager.persist(product);
+			entityManager.persist(new Stock(product, STOCK_QUANTITY));
+			products.add(product);
+		}
+		entityManager.getTransaction().commit();
+
+		List<EntityManager> managers = new ArrayList<>();
+		List<ShoppingService> services = new ArrayList<>();
+		List<Order> orders = new ArrayList<>();
+		for (int i = 0; i < nThreads; i++) {
+			EntityManager manager = entityManagerFactory.createEntityManager();
+			Order order = new Order(OrderStatus.OPEN);
+			manager.getTransaction().begin();
+			manager.persist(order);
+			manager.getTransaction().commit();
+			orders.add(order);
+			managers.add(manager);
+			services.add(ShoppingService.builder(new TransactionManagerMySql(manager, lockingStrategy))
+					.conflictRetries(CONFLICT_RETRIES).build());
+		}
+
+		AtomicInteger failures = new AtomicInteger();
+		long start = System.nanoTime();
+		List<Thread> threads = IntStream.range(0, nThreads).mapToObj(i -> new Thread(() -> {
+			String productId = products.get(i % nProducts).getId();
+			try {
+				for (int j = 0; j < PURCHASES_PER_THREAD; j++) {
+					try {
+						services.get(i).buyProduct(orders.get(i).getId(), productId, 1);
+					} catch (RuntimeException e) {
+						failures.incrementAndGet();
+					}
+				}
+			} finally {
+				managers.get(i).close();
+			}
+		})).peek(Thread::start).collect(Collectors.toList());
+		await().atMost(60, TimeUnit.SECONDS).until(() -> threads.stream().noneMatch(Thread::isAlive));
+		long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+		int attempts = nThreads * PURCHASES_PER_THREAD;
+		LOGGER.info("locking={} products={} purchases={} failed={} elapsed={}ms throughput={}/s", lockingStrategy,
+				nProducts, attempts, failures.get(), elapsedMillis,
+				(attempts - failures.get()) * 1000L / elapsedMillis);
+
+		entityManager.clear();
+		int stockQuantity = Math.toIntExact(
+				entityManager.createQuery("SELECT SUM(quantity) FROM Stock", Long.class).getSingleResult());
+		Long purchased = entityManager.createQuery("SELECT SUM(quantity) FROM OrderItem", Long.class)
+				.getSingleResult();
+		int purchasedQuantity = purchased == null ? 0 : Math.toIntExact(purchased);
+		SoftAssertions softly = new SoftAssertions();
+		softly.assertThat(stockQuantity + purchasedQuantity).isEqualTo(STOCK_QUANTITY * nProducts);
+		softly.assertThat(purchasedQuantity).isEqualTo(attempts - failures.get());
+		softly.assertAll();
+	}
+
+}
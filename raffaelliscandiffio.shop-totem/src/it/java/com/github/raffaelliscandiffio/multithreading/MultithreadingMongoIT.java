@@ -0,0 +1,168 @@
+package com.github.raffaelliscandiffio.multithreading;
+
+import static org.awaitility.Awaitility.await;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.assertj.core.api.SoftAssertions;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.github.raffaelliscandiffio.exception.TransactionException;
+import com.github.raffaelliscandiffio.model.OrderItem;
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.service.ShoppingService;
+import com.github.raffaelliscandiffio.transaction.mongo.TransactionManagerMongo;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+
+class MultithreadingMongoIT {
+
+	private static final Logger LOGGER = LogManager.getLogger(MultithreadingMongoIT.class);
+
+	private static final String DB_NAME = "totem";
+	private static final String PRODUCT_COLLECTION_NAME = "product";
+	private static final String STOCK_COLLECTION_NAME = "stock";
+	private static final String ORDER_COLLECTION_NAME = "order";
+	private static final String ORDER_ITEM_COLLECTION_NAME = "orderItem";
+
+	private static final int PRODUCTS = 3;
+	private static final int SHARDS = 2;
+	private static final int STOCK_QUANTITY = 1000;
+	private static final int MAX_PURCHASE_QUANTITY = 3;
+	private static final int OPERATIONS_PER_THREAD = 50;
+	private static final int CONFLICT_RETRIES = 20;
+
+	private static final int nThreads = 10;
+
+	private MongoClient client;
+	private MongoDatabase database;
+	private ShoppingService shoppingService;
+
+	@BeforeEach
+	void setup() {
+		String uri = "mongodb://localhost:27017,localhost:27018,localhost:27019/?replicaSet=rs0&readPreference=primary&ssl=false";
+		client = MongoClients.create(uri);
+		database = client.getDatabase(DB_NAME);
+		database.drop();
+		// collections cannot be created inside the transactions
+		database.createCollection(PRODUCT_COLLECTION_NAME);
+		database.createCollection(STOCK_COLLECTION_NAME);
+		database.createCollection(ORDER_COLLECTION_NAME);
+		database.createCollection(ORDER_ITEM_COLLECTION_NAME);
+		// one manager shared by all the threads
+		shoppingService = ShoppingService.builder(new TransactionManagerMongo(client, DB_NAME, PRODUCT_COLLECTION_NAME,
+				STOCK_COLLECTION_NAME, ORDER_COLLECTION_NAME, ORDER_ITEM_COLLECTION_NAME))
+				.conflictRetries(CONFLICT_RETRIES).build();
+	}
+
+	@AfterEach
+	void tearDown() {
+		client.close();
+	}
+
+	@Test
+	@DisplayName("Concurrent purchases, returns and deletions through one manager should preserve the stock")
+	void testStockConservationUnderContention() {
+		for (int i = 0; i < PRODUCTS; i++)
+			shoppingService.saveProductAndStock("product_" + i, 1.0 + i, STOCK_QUANTITY, SHARDS);
+		List<String> productIds = shoppingService.getAllProducts().stream().map(Product::getId)
+				.collect(Collectors.toList());
+
+		AtomicInteger committed = new AtomicInteger();
+		AtomicInteger rejected = new AtomicInteger();
+		Queue<Throwable> unexpected = new ConcurrentLinkedQueue<>();
+		long start = System.nanoTime();
+		List<Thread> threads = IntStream.range(0, nThreads).mapToObj(i -> new Thread(() -> {
+			try {
+				String orderId = shoppingService.openNewOrder().getId();
+				for (int j = 0; j < OPERATIONS_PER_THREAD; j++) {
+					try {
+						orderId = runRandomOperation(orderId, productIds);
+						committed.incrementAndGet();
+					} catch (TransactionException e) {
+						// out of stock, or still conflicting after the retries
+						rejected.incrementAndGet();
+					}
+				}
+			} catch (Throwable e) {
+				unexpected.add(e);
+			}
+		})).peek(Thread::start).collect(Collectors.toList());
+		await().atMost(120, TimeUnit.SECONDS).until(() -> threads.stream().noneMatch(Thread::isAlive));
+		long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+		LOGGER.info("threads={} committed={} rejected={} elapsed={}ms throughput={} tx/s", nThreads, committed.get(),
+				rejected.get(), elapsedMillis, committed.get() * 1000L / elapsedMillis);
+
+		Map<String, Integer> purchased = readPurchasedQuantities();
+		SoftAssertions softly = new SoftAssertions();
+		softly.assertThat(unexpected).isEmpty();
+		softly.assertThat(committed.get() + rejected.get()).isEqualTo(nThreads * OPERATIONS_PER_THREAD);
+		for (String productId : productIds)
+			softly.assertThat(shoppingService.getAvailableQuantity(productId) + purchased.getOrDefault(productId, 0))
+					.as("stock and purchases of product %s", productId).isEqualTo(STOCK_QUANTITY);
+		// the items of a deleted order are deleted with it
+		softly.assertThat(readOrderIds()).containsAll(readItemOrderIds());
+		softly.assertAll();
+	}
+
+	// the order used by the next operation
+	private String runRandomOperation(String orderId, List<String> productIds) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int operation = random.nextInt(10);
+		if (operation < 6) {
+			shoppingService.buyProduct(orderId, productIds.get(random.nextInt(productIds.size())),
+					1 + random.nextInt(MAX_PURCHASE_QUANTITY));
+		} else if (operation < 9) {
+			List<OrderItem> items = shoppingService.getOrderItems(orderId).stream()
+					.filter(item -> item.getQuantity() > 1).collect(Collectors.toList());
+			if (!items.isEmpty())
+				shoppingService.returnItem(items.get(random.nextInt(items.size())), 1);
+		} else {
+			shoppingService.deleteOrder(orderId);
+			return shoppingService.openNewOrder().getId();
+		}
+		return orderId;
+	}
+
+	private Map<String, Integer> readPurchasedQuantities() {
+		Map<String, Integer> purchased = new HashMap<>();
+		for (Document item : database.getCollection(ORDER_ITEM_COLLECTION_NAME).find())
+			purchased.merge(item.getString("product"), item.getInteger("quantity"), Integer::sum);
+		return purchased;
+	}
+
+	private Set<String> readOrderIds() {
+		Set<String> ids = new HashSet<>();
+		for (Document order : database.getCollection(ORDER_COLLECTION_NAME).find())
+			ids.add(order.getObjectId("_id").toHexString());
+		return ids;
+	}
+
+	private List<String> readItemOrderIds() {
+		List<String> ids = new ArrayList<>();
+		for (Document item : database.getCollection(ORDER_ITEM_COLLECTION_NAME).find())
+			ids.add(item.getString("order"));
+		return ids;
+	}
+
+}
@@ -0,0 +1,134 @@
+package com.github.raffaelliscandiffio.multithreading;
+
+import static org.awaitility.Awaitility.await;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.github.raffaelliscandiffio.model.Order;
+import com.github.raffaelliscandiffio.model.OrderStatus;
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.service.ShoppingService;
+import com.github.raffaelliscandiffio.transaction.mysql.TransactionManagerMySql;
+
+class StockShardingMysqlIT {
+
+	private static final Logger LOGGER = LogManager.getLogger(StockShardingMysqlIT.class);
+
+	private static final String DATABASE_NAME = "totem";
+	private static final String PRODUCT_NAME = "best_seller";
+	private static final int STOCK_QUANTITY = 1000;
+	private static final int PURCHASES_PER_THREAD = 20;
+
+	private static final int nThreads = 10;
+
+	private static EntityManagerFactory entityManagerFactory;
+	private EntityManager entityManager;
+
+	@BeforeAll
+	static void createEntityManagerFactory() {
+		System.setProperty("db.port", "3306");
+		System.setProperty("db.name", DATABASE_NAME);
+		entityManagerFactory = Persistence.createEntityManagerFactory("mysql-test");
+	}
+
+	@AfterAll
+	static void closeEntityManagerFactory() {
+		entityManagerFactory.close();
+	}
+
+	@BeforeEach()
+	void setup() {
+		entityManager = entityManagerFactory.createEntityManager();
+		entityManager.getTransaction().begin();
+		entityManager.createQuery("DELETE FROM OrderItem").executeUpdate();
+		entityManager.createQuery("DELETE FROM Order").executeUpdate();
+		entityManager.createQuery("DELETE FROM Stock").executeUpdate();
+		entityManager.createQuery("DELETE FROM Product").executeUpdate();
+		entityManager.getTransaction().commit();
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (entityManager.isOpen())
+			entityManager.close();
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 2, 4, 8 })
+	@DisplayName("Concurrent purchases on a sharded stock should preserve the total quantity and report the lock wait")
+	void testConcurrentPurchasesOnShardedStock(int shards) {
+		new ShoppingService(new TransactionManagerMySql(entityManager)).saveProductAndStock(PRODUCT_NAME, 1.0,
+				STOCK_QUANTITY, shards);
+		String productId = entityManager.createQuery("SELECT p FROM Product p", Product.class).getSingleResult()
+				.getId();
+
+		List<EntityManager> managers = new ArrayList<>();
+		List<ShoppingService> services = new ArrayList<>();
+		List<Order> orders = new ArrayList<>();
+		for (int i = 0; i < nThreads; i++) {
+			EntityManager manager = entityManagerFactory.createEntityManager();
+			Order order = new Order(OrderStatus.OPEN);
+			manager.getTransaction().begin();
+			manager.persist(order);
+			manager.getTransaction().commit();
+			orders.add(order);
+			managers.add(manager);
+			services.add(new ShoppingService(new TransactionManagerMySql(manager)));
+		}
+
+		long lockTimeBefore = readRowLockTime();
+		long start = System.nanoTime();
+		List<Thread> threads = IntStream.range(0, nThreads).mapToObj(i -> new Thread(() -> {
+			try {
+				for (int j = 0; j < PURCHASES_PER_THREAD; j++)
+					services.get(i).buyProduct(orders.get(i).getId(), productId, 1);
+			} catch (Throwable pass) {
+			} finally {
+				managers.get(i).close();
+			}
+		})).peek(Thread::start).collect(Collectors.toList());
+		await().atMost(60, TimeUnit.SECONDS).until(() -> threads.stream().noneMatch(Thread::isAlive));
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		long lockWaitMillis = readRowLockTime() - lockTimeBefore;
+
+		LOGGER.info("shards={} purchases={} elapsed={}ms innodb_row_lock_time={}ms", shards,
+				nThreads * PURCHASES_PER_THREAD, elapsedMillis, lockWaitMillis);
+
+		entityManager.clear();
+		int stockQuantity = new ShoppingService(new TransactionManagerMySql(entityManager))
+				.getAvailableQuantity(productId);
+		Long purchased = entityManager.createQuery("SELECT SUM(quantity) FROM OrderItem", Long.class)
+				.getSingleResult();
+		int purchasedQuantity = purchased == null ? 0 : Math.toIntExact(purchased);
+		SoftAssertions softly = new SoftAssertions();
+		softly.assertThat(stockQuantity + purchasedQuantity).isEqualTo(STOCK_QUANTITY);
+		softly.assertThat(purchasedQuantity).isEqualTo(nThreads * PURCHASES_PER_THREAD);
+		softly.assertAll();
+	}
+
+	private long readRowLockTime() {
+		Object[] row = (Object[]) entityManager
+				.createNativeQuery("SHOW GLOBAL STATUS LIKE 'Innodb_row_lock_time'").getSingleResult();
+		return Long.parseLong(row[1].toString());
+	}
+
+}
@@ -0,0 +1,99 @@
+package com.github.raffaelliscandiffio.repository.mongo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.github.raffaelliscandiffio.model.Order;
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.service.ShoppingService;
+import com.github.raffaelliscandiffio.service.StockAvailability;
+import com.github.raffaelliscandiffio.transaction.mongo.TransactionManagerMongo;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+
+class MongoCatalogChangeStreamIT {
+
+	private static final String DATABASE_NAME = "totem";
+	private static final String PRODUCT_COLLECTION_NAME = "product";
+	private static final String STOCK_COLLECTION_NAME = "stock";
+	private static final String ORDER_COLLECTION_NAME = "order";
+	private static final String ORDERITEM_COLLECTION_NAME = "orderItem";
+
+	private MongoClient client;
+	private ShoppingService shoppingService;
+	private StockAvailability availability;
+	private MongoCatalogChangeStream changeStream;
+	private final List<Product> changedProducts = new CopyOnWriteArrayList<>();
+
+	@BeforeEach
+	void setup() {
+		String uri = "mongodb://localhost:27017,localhost:27018,localhost:27019/?replicaSet=rs0&readPreference=primary&ssl=false";
+		client = MongoClients.create(uri);
+		MongoDatabase database = client.getDatabase(DATABASE_NAME);
+		database.drop();
+		for (String name : new String[] { PRODUCT_COLLECTION_NAME, STOCK_COLLECTION_NAME, ORDER_COLLECTION_NAME,
+				ORDERITEM_COLLECTION_NAME })
+			database.createCollection(name);
+		shoppingService = new ShoppingService(new TransactionManagerMongo(client, DATABASE_NAME,
+				PRODUCT_COLLECTION_NAME, STOCK_COLLECTION_NAME, ORDER_COLLECTION_NAME, ORDERITEM_COLLECTION_NAME));
+
+		availability = new StockAvailability();
+		availability.addListener(new StockAvailability.Listener() {
+
+			@Override
+			public void availabilityChanged(String productId, int available) {
+			}
+
+			@Override
+			public void productChanged(Product product) {
+				changedProducts.add(product);
+			}
+
+		});
+		changeStream = new MongoCatalogChangeStream(client, DATABASE_NAME, PRODUCT_COLLECTION_NAME,
+				STOCK_COLLECTION_NAME, availability);
+	}
+
+	@AfterEach
+	void tearDown() {
+		changeStream.close();
+		client.close();
+	}
+
+	@Test
+	@DisplayName("The stock present at the start should be summed over the shards")
+	void testStockPresentAtTheStartShouldBeRead() {
+		shoppingService.saveProductAndStock("Bread", 1.5, 10, 2);
+		String productId = shoppingService.getAllProducts().get(0).getId();
+
+		changeStream.start();
+
+		await().atMost(5, TimeUnit.SECONDS).until(() -> Integer.valueOf(10).equals(availability.getAvailable(productId)));
+	}
+
+	@Test
+	@DisplayName("The purchases and the new products should be pushed as they are committed")
+	void testChangesShouldBePushed() {
+		changeStream.start();
+		shoppingService.saveProductAndStock("Bread", 1.5, 10, 2);
+		String productId = shoppingService.getAllProducts().get(0).getId();
+		await().atMost(5, TimeUnit.SECONDS).until(() -> Integer.valueOf(10).equals(availability.getAvailable(productId)));
+
+		Order order = shoppingService.openNewOrder();
+		shoppingService.buyProduct(order.getId(), productId, 3);
+
+		await().atMost(5, TimeUnit.SECONDS).until(() -> Integer.valueOf(7).equals(availability.getAvailable(productId)));
+		assertThat(changedProducts).extracting(Product::getName).contains("Bread");
+	}
+
+}
@@ -0,0 +1,122 @@
+package com.github.raffaelliscandiffio.repository.mongo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.github.raffaelliscandiffio.model.OrderStatus;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
+class MongoOrderArchiverIT {
+
+	private static final String DATABASE_NAME = "totem";
+	private static final String ORDER_COLLECTION_NAME = "order";
+	private static final String ORDERITEM_COLLECTION_NAME = "orderItem";
+	private static final String ORDER_ARCHIVE_COLLECTION_NAME = "orderArchive";
+	private static final String ORDERITEM_ARCHIVE_COLLECTION_NAME = "orderItemArchive";
+	private static final long RETENTION_SECONDS = 3600;
+
+	private MongoClient client;
+	private MongoCollection<Document> orderCollection;
+	private MongoCollection<Document> orderItemCollection;
+	private MongoCollection<Document> orderArchiveCollection;
+	private MongoCollection<Document> orderItemArchiveCollection;
+	private MongoOrderArchiver archiver;
+
+	@BeforeEach
+	public void setup() {
+		String uri = "mongodb://localhost:27017,localhost:27018,localhost:27019/?replicaSet=rs0&readPreference=primary&ssl=false";
+		client = MongoClients.create(uri);
+
+		MongoDatabase database = client.getDatabase(DATABASE_NAME);
+		database.drop();
+		database.createCollection(ORDER_COLLECTION_NAME);
+		database.createCollection(ORDERITEM_COLLECTION_NAME);
+		database.createCollection(ORDER_ARCHIVE_COLLECTION_NAME);
+		database.createCollection(ORDERITEM_ARCHIVE_COLLECTION_NAME);
+		orderCollection = database.getCollection(ORDER_COLLECTION_NAME);
+		orderItemCollection = database.getCollection(ORDERITEM_COLLECTION_NAME);
+		orderArchiveCollection = database.getCollection(ORDER_ARCHIVE_COLLECTION_NAME);
+		orderItemArchiveCollection = database.getCollection(ORDERITEM_ARCHIVE_COLLECTION_NAME);
+
+		archiver = new MongoOrderArchiver(client, DATABASE_NAME, ORDER_COLLECTION_NAME, ORDERITEM_COLLECTION_NAME,
+				ORDER_ARCHIVE_COLLECTION_NAME, ORDERITEM_ARCHIVE_COLLECTION_NAME);
+		archiver.createIndexes();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		client.close();
+	}
+
+	@Test
+	@DisplayName("Only the closed orders past the window should be moved, with their items")
+	void testArchiveShouldMoveTheClosedOrdersPastTheWindow() {
+		String old = saveTestOrderToDatabase(OrderStatus.CLOSED, daysAgo(30));
+		String recent = saveTestOrderToDatabase(OrderStatus.CLOSED, daysAgo(0));
+		String open = saveTestOrderToDatabase(OrderStatus.OPEN, null);
+
+		assertThat(archiver.archive(RETENTION_SECONDS, 10)).isEqualTo(1);
+
+		assertThat(getOrderIds(orderCollection)).containsExactlyInAnyOrder(recent, open);
+		assertThat(getItemOrders(orderItemCollection)).containsExactlyInAnyOrder(recent, open);
+		assertThat(getOrderIds(orderArchiveCollection)).containsExactly(old);
+		assertThat(getItemOrders(orderItemArchiveCollection)).containsExactly(old);
+	}
+
+	@Test
+	@DisplayName("The orders should be moved oldest first, one batch each call")
+	void testArchiveShouldMoveBoundedBatches() {
+		String older = saveTestOrderToDatabase(OrderStatus.CLOSED, daysAgo(30));
+		String old = saveTestOrderToDatabase(OrderStatus.CLOSED, daysAgo(20));
+
+		assertThat(archiver.archive(RETENTION_SECONDS, 1)).isEqualTo(1);
+		assertThat(getOrderIds(orderArchiveCollection)).containsExactly(older);
+		assertThat(archiver.archive(RETENTION_SECONDS, 1)).isEqualTo(1);
+		assertThat(archiver.archive(RETENTION_SECONDS, 1)).isZero();
+		assertThat(getOrderIds(orderArchiveCollection)).containsExactlyInAnyOrder(older, old);
+	}
+
+	private Date daysAgo(int days) {
+		return new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days));
+	}
+
+	// each order gets an item
+	private String saveTestOrderToDatabase(OrderStatus status, Date closedAt) {
+		Document doc = new Document().append("status", status.toString());
+		if (closedAt != null)
+			doc.append("closedAt", closedAt);
+		orderCollection.insertOne(doc);
+		String id = doc.getObjectId("_id").toHexString();
+		orderItemCollection.insertOne(new Document().append("product", "product").append("order", id)
+				.append("quantity", 2));
+		return id;
+	}
+
+	private List<String> getOrderIds(MongoCollection<Document> collection) {
+		List<String> ids = new ArrayList<>();
+		for (Document doc : collection.find())
+			ids.add(doc.getObjectId("_id").toHexString());
+		return ids;
+	}
+
+	private List<String> getItemOrders(MongoCollection<Document> collection) {
+		List<String> orders = new ArrayList<>();
+		for (Document doc : collection.find())
+			orders.add(doc.getString("order"));
+		return orders;
+	}
+
+}
@@ -1,5 +1,6 @@
 package com.github.raffaelliscandiffio.repository.mongo;
 
+import static com.mongodb.client.model.Filters.eq;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatCode;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -229,6 +230,31 @@ class OrderMongoRepositoryIT {
 		session.commitTransaction();
 	}
 
+	@Test
+	@DisplayName("Increment the total and the line count of the Order with 'addToTotals'")
+	void testAddToTotals() {
+		String id = getNewStringId();
+		saveTestOrderToDatabase(newOrderWithId(id, OPEN));
+		orderRepository.addToTotals(id, 6.0, 1);
+		orderRepository.addToTotals(id, -1.5, 0);
+		Order found = orderRepository.findById(id);
+		SoftAssertions softly = new SoftAssertions();
+		softly.assertThat(found.getTotal()).isEqualTo(4.5);
+		softly.assertThat(found.getLineCount()).isEqualTo(1);
+		softly.assertAll();
+	}
+
+	@Test
+	@DisplayName("Method 'addToTotals' should be bound to the repository session")
+	void testAddToTotalsShouldBeBoundToTheRepositorySession() {
+		String id = getNewStringId();
+		saveTestOrderToDatabase(newOrderWithId(id, OPEN));
+		session.startTransaction();
+		orderRepository.addToTotals(id, 6.0, 1);
+		assertThat(orderCollection.find(eq("_id", new ObjectId(id))).first()).doesNotContainKey("total");
+		session.commitTransaction();
+	}
+
 	// Private utility methods
 
 	private String getNewStringId() {
@@ -145,6 +145,34 @@ class ProductMongoRepositoryIT {
 		session.commitTransaction();
 	}
 
+	@Test
+	@DisplayName("Method 'findPage' should return the products ordered by id, after the given id, up to the limit")
+	void testFindPage() {
+		String id_1 = getNewStringId();
+		String id_2 = getNewStringId();
+		String id_3 = getNewStringId();
+		// inserted out of order to check the sort on the id
+		saveTestProductToDatabase(newProductWithId(id_3, NAME_1, PRICE_1));
+		saveTestProductToDatabase(newProductWithId(id_1, NAME_1, PRICE_1));
+		saveTestProductToDatabase(newProductWithId(id_2, NAME_2, PRICE_2));
+		SoftAssertions softly = new SoftAssertions();
+		softly.assertThat(productRepository.findPage(null, 2)).containsExactly(newProductWithId(id_1, NAME_1, PRICE_1),
+				newProductWithId(id_2, NAME_2, PRICE_2));
+		softly.assertThat(productRepository.findPage(id_2, 2)).containsExactly(newProductWithId(id_3, NAME_1, PRICE_1));
+		softly.assertThat(productRepository.findPage(id_3, 2)).isEmpty();
+		softly.assertAll();
+	}
+
+	@Test
+	@DisplayName("Method 'findPage' should be bound to the repository session")
+	void testFindPageShouldBeBoundToTheRepositorySession() {
+		String id_1 = getNewStringId();
+		session.startTransaction();
+		saveTestProductToDatabaseWithSession(session, newProductWithId(id_1, NAME_1, PRICE_1));
+		assertThat(productRepository.findPage(null, 1)).containsExactly(newProductWithId(id_1, NAME_1, PRICE_1));
+		session.commitTransaction();
+	}
+
 	// Private utility methods
 
 	private String getNewStringId() {
@@ -0,0 +1,152 @@
+package com.github.raffaelliscandiffio.repository.mongo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.github.raffaelliscandiffio.model.OrderStatus;
+import com.github.raffaelliscandiffio.model.ProductSales;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Updates;
+
+class ReportingMongoRepositoryIT {
+
+	private static final String DATABASE_NAME = "totem";
+	private static final String PRODUCT_COLLECTION_NAME = "product";
+	private static final String ORDER_COLLECTION_NAME = "order";
+	private static final String ORDERITEM_COLLECTION_NAME = "orderItem";
+	private static final String ORDER_ARCHIVE_COLLECTION_NAME = "orderArchive";
+	private static final String ORDERITEM_ARCHIVE_COLLECTION_NAME = "orderItemArchive";
+
+	private MongoClient client;
+	private MongoCollection<Document> productCollection;
+	private MongoCollection<Document> orderCollection;
+	private MongoCollection<Document> orderItemCollection;
+	private ReportingMongoRepository reportingRepository;
+
+	private String bread;
+	private String pizza;
+	private String closed_1;
+
+	@BeforeEach
+	public void setup() {
+		String uri = "mongodb://localhost:27017,localhost:27018,localhost:27019/?replicaSet=rs0&readPreference=primary&ssl=false";
+		client = MongoClients.create(uri);
+
+		MongoDatabase database = client.getDatabase(DATABASE_NAME);
+		database.drop();
+		database.createCollection(PRODUCT_COLLECTION_NAME);
+		database.createCollection(ORDER_COLLECTION_NAME);
+		database.createCollection(ORDERITEM_COLLECTION_NAME);
+		database.createCollection(ORDER_ARCHIVE_COLLECTION_NAME);
+		database.createCollection(ORDERITEM_ARCHIVE_COLLECTION_NAME);
+		productCollection = database.getCollection(PRODUCT_COLLECTION_NAME);
+		orderCollection = database.getCollection(ORDER_COLLECTION_NAME);
+		orderItemCollection = database.getCollection(ORDERITEM_COLLECTION_NAME);
+
+		reportingRepository = new ReportingMongoRepository(client, DATABASE_NAME, PRODUCT_COLLECTION_NAME,
+				ORDER_COLLECTION_NAME, ORDERITEM_COLLECTION_NAME);
+		reportingRepository.createIndexes();
+
+		bread = saveTestProductToDatabase("Bread", 1.5);
+		pizza = saveTestProductToDatabase("Pizza", 4.0);
+		String pasta = saveTestProductToDatabase("Pasta", 1.0);
+		closed_1 = saveTestOrderToDatabase(OrderStatus.CLOSED);
+		String closed_2 = saveTestOrderToDatabase(OrderStatus.CLOSED);
+		String open = saveTestOrderToDatabase(OrderStatus.OPEN);
+		saveTestOrderItemToDatabase(bread, closed_1, 4);
+		saveTestOrderItemToDatabase(pizza, closed_1, 1);
+		saveTestOrderItemToDatabase(bread, closed_2, 2);
+		saveTestOrderItemToDatabase(pizza, closed_2, 2);
+		// neither open orders nor unsold products are reported
+		saveTestOrderItemToDatabase(pasta, open, 100);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		client.close();
+	}
+
+	@Test
+	@DisplayName("Return the best sellers of the closed orders with 'findTopSellers'")
+	void testFindTopSellers() {
+		assertThat(reportingRepository.findTopSellers(1)).containsExactly(new ProductSales(bread, "Bread", 6, 9.0));
+		assertThat(reportingRepository.findTopSellers(10)).containsExactly(new ProductSales(bread, "Bread", 6, 9.0),
+				new ProductSales(pizza, "Pizza", 3, 12.0));
+	}
+
+	@Test
+	@DisplayName("Stream the revenue of each sold product with 'streamRevenueByProduct'")
+	void testStreamRevenueByProduct() {
+		List<ProductSales> sales;
+		try (Stream<ProductSales> stream = reportingRepository.streamRevenueByProduct()) {
+			sales = stream.collect(Collectors.toList());
+		}
+
+		assertThat(sales).containsExactly(new ProductSales(pizza, "Pizza", 3, 12.0),
+				new ProductSales(bread, "Bread", 6, 9.0));
+	}
+
+	@Test
+	@DisplayName("Create the index covering the items with 'createIndexes'")
+	void testCreateIndexes() {
+		List<Document> indexes = orderItemCollection.listIndexes().into(new ArrayList<>());
+
+		assertThat(indexes).anyMatch(index -> index.get("key", Document.class)
+				.equals(new Document("order", 1).append("product", 1).append("quantity", 1)));
+	}
+
+	@Test
+	@DisplayName("The archived sales should still be reported")
+	void testArchivedSalesShouldBeReported() {
+		reportingRepository = new ReportingMongoRepository(client, DATABASE_NAME, PRODUCT_COLLECTION_NAME,
+				ORDER_COLLECTION_NAME, ORDERITEM_COLLECTION_NAME, ORDERITEM_ARCHIVE_COLLECTION_NAME);
+		reportingRepository.createIndexes();
+		orderCollection.updateOne(Filters.eq("_id", new ObjectId(closed_1)), Updates.set("closedAt",
+				new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(30))));
+
+		assertThat(new MongoOrderArchiver(client, DATABASE_NAME, ORDER_COLLECTION_NAME, ORDERITEM_COLLECTION_NAME,
+				ORDER_ARCHIVE_COLLECTION_NAME, ORDERITEM_ARCHIVE_COLLECTION_NAME).archive(3600, 10)).isEqualTo(1);
+
+		assertThat(reportingRepository.findTopSellers(10)).containsExactly(new ProductSales(bread, "Bread", 6, 9.0),
+				new ProductSales(pizza, "Pizza", 3, 12.0));
+		try (Stream<ProductSales> stream = reportingRepository.streamRevenueByProduct()) {
+			assertThat(stream.collect(Collectors.toList())).containsExactly(
+					new ProductSales(pizza, "Pizza", 3, 12.0), new ProductSales(bread, "Bread", 6, 9.0));
+		}
+	}
+
+	private String saveTestProductToDatabase(String name, double price) {
+		Document doc = new Document().append("name", name).append("price", price);
+		productCollection.insertOne(doc);
+		return doc.get("_id").toString();
+	}
+
+	private String saveTestOrderToDatabase(OrderStatus status) {
+		Document doc = new Document().append("status", status.toString());
+		orderCollection.insertOne(doc);
+		return doc.get("_id").toString();
+	}
+
+	private void saveTestOrderItemToDatabase(String productId, String orderId, int quantity) {
+		orderItemCollection.insertOne(
+				new Document().append("product", productId).append("order", orderId).append("quantity", quantity));
+	}
+
+}
@@ -17,8 +17,10 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import com.github.raffaelliscandiffio.exception.TransactionConflictException;
 import com.github.raffaelliscandiffio.model.Product;
 import com.github.raffaelliscandiffio.model.Stock;
+import com.github.raffaelliscandiffio.transaction.LockingStrategy;
 import com.mongodb.client.ClientSession;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
@@ -207,6 +209,120 @@ class StockMongoRepositoryIT {
 		session.commitTransaction();
 	}
 
+	@Test
+	@DisplayName("Retrieve the shards of a Product ordered by shard index")
+	void testFindAllByProductId() {
+		Stock shard_1 = newStockShardWithId(getNewStringId(), product_1, QUANTITY_1, 1);
+		Stock shard_0 = newStockShardWithId(getNewStringId(), product_1, QUANTITY_2, 0);
+		saveTestStockToDatabase(shard_1);
+		saveTestStockToDatabase(shard_0);
+		saveTestStockToDatabase(newStockWithId(getNewStringId(), product_2, QUANTITY_1));
+		assertThat(stockRepository.findAllByProductId(product_1.getId())).containsExactly(shard_0, shard_1);
+	}
+
+	@Test
+	@DisplayName("Retrieve a shard holding at least the requested quantity")
+	void testFindByProductIdWithQuantity() {
+		Stock smallShard = newStockShardWithId(getNewStringId(), product_1, QUANTITY_1, 0);
+		Stock bigShard = newStockShardWithId(getNewStringId(), product_1, QUANTITY_2, 1);
+		saveTestStockToDatabase(smallShard);
+		saveTestStockToDatabase(bigShard);
+		SoftAssertions softly = new SoftAssertions();
+		softly.assertThat(stockRepository.findByProductIdWithQuantity(product_1.getId(), QUANTITY_2))
+				.isEqualTo(bigShard);
+		softly.assertThat(stockRepository.findByProductIdWithQuantity(product_1.getId(), QUANTITY_2 + 1)).isNull();
+		softly.assertAll();
+	}
+
+	@Test
+	@DisplayName("Sum the quantity of every shard of a Product")
+	void testGetTotalQuantityByProductId() {
+		saveTestStockToDatabase(newStockShardWithId(getNewStringId(), product_1, QUANTITY_1, 0));
+		saveTestStockToDatabase(newStockShardWithId(getNewStringId(), product_1, QUANTITY_2, 1));
+		SoftAssertions softly = new SoftAssertions();
+		softly.assertThat(stockRepository.getTotalQuantityByProductId(product_1.getId()))
+				.isEqualTo(QUANTITY_1 + QUANTITY_2);
+		softly.assertThat(stockRepository.getTotalQuantityByProductId(product_2.getId())).isZero();
+		softly.assertAll();
+	}
+
+	@Test
+	@DisplayName("Method 'update' with optimistic locking should increment the version")
+	void testUpdateStockWithOptimisticLockingShouldIncrementTheVersion() {
+		StockMongoRepository optimisticRepository = new StockMongoRepository(client, session, DATABASE_NAME,
+				PRODUCT_COLLECTION_NAME, STOCK_COLLECTION_NAME, LockingStrategy.OPTIMISTIC);
+		Stock stock = newStockWithId(getNewStringId(), product_1, QUANTITY_1);
+		saveTestStockToDatabase(stock);
+		stock.setQuantity(QUANTITY_2);
+		optimisticRepository.update(stock);
+		SoftAssertions softly = new SoftAssertions();
+		softly.assertThat(stock.getVersion()).isEqualTo(1);
+		softly.assertThat(stockRepository.findById(stock.getId()).getVersion()).isEqualTo(1);
+		softly.assertAll();
+	}
+
+	@Test
+	@DisplayName("Method 'update' with optimistic locking should throw when the version is stale")
+	void testUpdateStockWithOptimisticLockingWhenTheVersionIsStaleShouldThrow() {
+		StockMongoRepository optimisticRepository = new StockMongoRepository(client, session, DATABASE_NAME,
+				PRODUCT_COLLECTION_NAME, STOCK_COLLECTION_NAME, LockingStrategy.OPTIMISTIC);
+		String id = getNewStringId();
+		Stock stock = newStockWithId(id, product_1, QUANTITY_1);
+		saveTestStockToDatabase(stock);
+		Stock concurrentCopy = newStockWithId(id, product_1, QUANTITY_1);
+		concurrentCopy.setQuantity(QUANTITY_2);
+		optimisticRepository.update(concurrentCopy);
+		stock.setQuantity(QUANTITY_2 + 1);
+		SoftAssertions softly = new SoftAssertions();
+		softly.assertThatThrownBy(() -> optimisticRepository.update(stock))
+				.isInstanceOf(TransactionConflictException.class)
+				.hasMessage("Stock with id " + id + " was modified concurrently.");
+		softly.assertThat(readAllStockFromDatabase()).containsExactly(newStockWithId(id, product_1, QUANTITY_2));
+		softly.assertAll();
+	}
+
+	@Test
+	@DisplayName("Method 'addToQuantity' should add a positive delta to the quantity")
+	void testAddToQuantityWithAPositiveDelta() {
+		String id = getNewStringId();
+		saveTestStockToDatabase(newStockWithId(id, product_1, QUANTITY_1));
+		stockRepository.addToQuantity(id, QUANTITY_2);
+		assertThat(readAllStockFromDatabase()).containsExactly(newStockWithId(id, product_1, QUANTITY_1 + QUANTITY_2));
+	}
+
+	@Test
+	@DisplayName("Method 'addToQuantity' should subtract a negative delta from the quantity")
+	void testAddToQuantityWithANegativeDelta() {
+		String id = getNewStringId();
+		saveTestStockToDatabase(newStockWithId(id, product_1, QUANTITY_2));
+		stockRepository.addToQuantity(id, -QUANTITY_1);
+		assertThat(readAllStockFromDatabase()).containsExactly(newStockWithId(id, product_1, QUANTITY_2 - QUANTITY_1));
+	}
+
+	@Test
+	@DisplayName("Method 'addToQuantity' should increment the version")
+	void testAddToQuantityShouldIncrementTheVersion() {
+		String id = getNewStringId();
+		saveTestStockToDatabase(newStockWithId(id, product_1, QUANTITY_1));
+		stockRepository.addToQuantity(id, QUANTITY_1);
+		assertThat(stockCollection.find(eq("_id", new ObjectId(id))).first().get("version", Number.class).longValue())
+				.isEqualTo(1);
+	}
+
+	@Test
+	@DisplayName("Method 'addToQuantity' should update the Stock already read by the repository")
+	void testAddToQuantityShouldUpdateTheStockAlreadyRead() {
+		String id = getNewStringId();
+		saveTestStockToDatabase(newStockWithId(id, product_1, QUANTITY_1));
+		Stock known = stockRepository.findById(id);
+		stockRepository.addToQuantity(id, QUANTITY_2);
+		SoftAssertions softly = new SoftAssertions();
+		softly.assertThat(known.getQuantity()).isEqualTo(QUANTITY_1 + QUANTITY_2);
+		softly.assertThat(known.getVersion()).isEqualTo(1);
+		softly.assertThat(stockRepository.findById(id)).isSameAs(known);
+		softly.assertAll();
+	}
+
 	// Private utility methods
 
 	private String getNewStringId() {
@@ -219,9 +335,16 @@ class StockMongoRepositoryIT {
 		return stock;
 	}
 
+	private Stock newStockShardWithId(String id, Product product, int quantity, int shard) {
+		Stock stock = new Stock(product, quantity, shard);
+		stock.setId(id);
+		return stock;
+	}
+
 	private Document fromStockToDocument(Stock stockWithId) {
 		return new Document().append("_id", new ObjectId(stockWithId.getId()))
-				.append("product", stockWithId.getProduct().getId()).append("quantity", stockWithId.getQuantity());
+				.append("product", stockWithId.getProduct().getId()).append("quantity", stockWithId.getQuantity())
+				.append("shard", stockWithId.getShard());
 	}
 
 	private void saveTestStockToDatabase(Stock stockWithId) {
@@ -238,8 +361,8 @@ class StockMongoRepositoryIT {
 			Document productDocument = productCollection.find(eq("_id", new ObjectId(productId))).first();
 			Product product = new Product(productDocument.getString("name"), productDocument.getDouble("price"));
 			product.setId(productDocument.get("_id").toString());
-			Stock stock = newStockWithId(stockDocument.get("_id").toString(), product,
-					stockDocument.getInteger("quantity"));
+			Stock stock = newStockShardWithId(stockDocument.get("_id").toString(), product,
+					stockDocument.getInteger("quantity"), stockDocument.getInteger("shard", 0));
 			return stock;
 		}).collect(Collectors.toList());
 	}
@@ -0,0 +1,142 @@
+package com.github.raffaelliscandiffio.repository.mysql;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.github.raffaelliscandiffio.model.Order;
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.service.ShoppingService;
+import com.github.raffaelliscandiffio.service.StockAvailability;
+import com.github.raffaelliscandiffio.transaction.mysql.TransactionManagerMySql;
+
+class MySqlCatalogChangePollerIT {
+
+	private static final String DATABASE_NAME = "totem";
+	private static final long INTERVAL_MILLIS = 100;
+	private static EntityManagerFactory managerFactory;
+
+	private EntityManager entityManager;
+	private ShoppingService shoppingService;
+	private StockAvailability availability;
+	private MySqlCatalogChangePoller poller;
+	private final List<Product> changedProducts = new CopyOnWriteArrayList<>();
+	private final List<String> removedProducts = new CopyOnWriteArrayList<>();
+
+	@BeforeAll
+	public static void createEntityManagerFactory() {
+		System.setProperty("db.port", "3306");
+		System.setProperty("db.name", DATABASE_NAME);
+		// the change table and its triggers come from the versioned scripts
+		Map<String, String> settings = new HashMap<>();
+		settings.put("javax.persistence.schema-generation.database.action", "none");
+		managerFactory = Persistence.createEntityManagerFactory("mysql-test", settings);
+	}
+
+	@AfterAll
+	public static void closeEntityManagerFactory() {
+		managerFactory.close();
+	}
+
+	@BeforeEach
+	void setup() {
+		entityManager = managerFactory.createEntityManager();
+		entityManager.getTransaction().begin();
+		entityManager.createNativeQuery("DROP TABLE IF EXISTS SCHEMA_VERSION").executeUpdate();
+		entityManager.getTransaction().commit();
+		new MySqlSchema(entityManager).migrate();
+		shoppingService = new ShoppingService(new TransactionManagerMySql(entityManager));
+
+		availability = new StockAvailability();
+		availability.addListener(new StockAvailability.Listener() {
+
+			@Override
+			public void availabilityChanged(String productId, int available) {
+			}
+
+			@Override
+			public void productChanged(Product product) {
+				changedProducts.add(product);
+			}
+
+			@Override
+			public void productRemoved(String productId) {
+				removedProducts.add(productId);
+			}
+
+		});
+		poller = new MySqlCatalogChangePoller(managerFactory, availability, INTERVAL_MILLIS);
+	}
+
+	@AfterEach
+	void tearDown() {
+		poller.close();
+		entityManager.close();
+	}
+
+	@Test
+	@DisplayName("Every write of the stock should be recorded with its product by the triggers")
+	void testTriggersShouldRecordTheChanges() {
+		shoppingService.saveProductAndStock("Bread", 1.5, 10, 2);
+
+		@SuppressWarnings("unchecked")
+		List<Object> kinds = entityManager.createNativeQuery("SELECT kind FROM CATALOG_CHANGES ORDER BY seq")
+				.getResultList();
+		assertThat(kinds).extracting(String::valueOf).containsExactly("P", "S", "S");
+	}
+
+	@Test
+	@DisplayName("The purchases and the new products should be read by the next poll")
+	void testChangesShouldBePolled() {
+		shoppingService.saveProductAndStock("Bread", 1.5, 10, 2);
+		String productId = shoppingService.getAllProducts().get(0).getId();
+		poller.start();
+		await().atMost(5, TimeUnit.SECONDS).until(() -> Integer.valueOf(10).equals(availability.getAvailable(productId)));
+
+		Order order = shoppingService.openNewOrder();
+		shoppingService.buyProduct(order.getId(), productId, 3);
+		shoppingService.saveProductAndStock("Pizza", 2.2, 5, 1);
+
+		await().atMost(5, TimeUnit.SECONDS).until(() -> Integer.valueOf(7).equals(availability.getAvailable(productId)));
+		await().atMost(5, TimeUnit.SECONDS)
+				.untilAsserted(() -> assertThat(changedProducts).extracting(Product::getName).contains("Pizza"));
+	}
+
+	@Test
+	@DisplayName("A product deleted should be told as removed by the next poll")
+	void testDeletedProductsShouldBePolled() {
+		shoppingService.saveProductAndStock("Bread", 1.5, 10, 1);
+		String productId = shoppingService.getAllProducts().get(0).getId();
+		poller.start();
+		await().atMost(5, TimeUnit.SECONDS).until(() -> Integer.valueOf(10).equals(availability.getAvailable(productId)));
+
+		entityManager.getTransaction().begin();
+		entityManager.createNativeQuery("DELETE FROM STOCKS WHERE product_id = ?").setParameter(1, productId)
+				.executeUpdate();
+		entityManager.createNativeQuery("DELETE FROM PRODUCTS WHERE id = ?").setParameter(1, productId)
+				.executeUpdate();
+		entityManager.getTransaction().commit();
+
+		await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> {
+			assertThat(removedProducts).containsExactly(productId);
+			assertThat(availability.getAvailable(productId)).isZero();
+		});
+	}
+
+}
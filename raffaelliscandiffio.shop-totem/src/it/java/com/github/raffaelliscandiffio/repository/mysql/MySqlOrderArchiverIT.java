@@ -0,0 +1,140 @@
+package com.github.raffaelliscandiffio.repository.mysql;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.github.raffaelliscandiffio.model.Order;
+import com.github.raffaelliscandiffio.model.OrderItem;
+import com.github.raffaelliscandiffio.model.OrderStatus;
+import com.github.raffaelliscandiffio.model.Product;
+
+class MySqlOrderArchiverIT {
+
+	private static final String DATABASE_NAME = "totem";
+	private static final long RETENTION_SECONDS = 3600;
+	private static EntityManagerFactory managerFactory;
+
+	private EntityManager entityManager;
+	private MySqlOrderArchiver archiver;
+	private Product bread;
+
+	@BeforeAll
+	public static void createEntityManagerFactory() {
+		System.setProperty("db.port", "3306");
+		System.setProperty("db.name", DATABASE_NAME);
+		// the archive tables and the close triggers come from the versioned scripts
+		Map<String, String> settings = new HashMap<>();
+		settings.put("javax.persistence.schema-generation.database.action", "none");
+		managerFactory = Persistence.createEntityManagerFactory("mysql-test", settings);
+	}
+
+	@AfterAll
+	public static void closeEntityManagerFactory() {
+		managerFactory.close();
+	}
+
+	@BeforeEach
+	void setup() {
+		entityManager = managerFactory.createEntityManager();
+		entityManager.getTransaction().begin();
+		entityManager.createNativeQuery("DROP TABLE IF EXISTS SCHEMA_VERSION").executeUpdate();
+		entityManager.getTransaction().commit();
+		new MySqlSchema(entityManager).migrate();
+		archiver = new MySqlOrderArchiver(managerFactory);
+		bread = new Product("Bread", 1.5);
+		persistObjectToDatabase(bread);
+	}
+
+	@AfterEach
+	void tearDown() {
+		entityManager.close();
+	}
+
+	@Test
+	@DisplayName("Closing an order should stamp the time it was closed")
+	void testClosingShouldStampTheTime() {
+		Order order = new Order(OrderStatus.OPEN);
+		persistObjectToDatabase(order);
+		assertThat(getClosedAt(order)).isNull();
+
+		entityManager.getTransaction().begin();
+		order.setStatus(OrderStatus.CLOSED);
+		entityManager.getTransaction().commit();
+
+		assertThat(getClosedAt(order)).isNotNull();
+	}
+
+	@Test
+	@DisplayName("Only the closed orders past the window should be moved, with their items")
+	void testArchiveShouldMoveTheClosedOrdersPastTheWindow() {
+		Order old = saveClosedOrder(30);
+		Order recent = saveClosedOrder(0);
+		Order open = new Order(OrderStatus.OPEN);
+		persistObjectToDatabase(open);
+		persistObjectToDatabase(new OrderItem(bread, open, 1));
+
+		assertThat(archiver.archive(RETENTION_SECONDS, 10)).isEqualTo(1);
+
+		assertThat(getIds("SELECT id FROM ORDERS")).containsExactlyInAnyOrder(recent.getId(), open.getId());
+		assertThat(getIds("SELECT order_id FROM ORDER_ITEMS")).containsExactlyInAnyOrder(recent.getId(),
+				open.getId());
+		assertThat(getIds("SELECT id FROM ORDERS_ARCHIVE")).containsExactly(old.getId());
+		assertThat(getIds("SELECT order_id FROM ORDER_ITEMS_ARCHIVE")).containsExactly(old.getId());
+	}
+
+	@Test
+	@DisplayName("The orders should be moved oldest first, one batch each call")
+	void testArchiveShouldMoveBoundedBatches() {
+		Order older = saveClosedOrder(30);
+		Order old = saveClosedOrder(20);
+
+		assertThat(archiver.archive(RETENTION_SECONDS, 1)).isEqualTo(1);
+		assertThat(getIds("SELECT id FROM ORDERS_ARCHIVE")).containsExactly(older.getId());
+		assertThat(archiver.archive(RETENTION_SECONDS, 1)).isEqualTo(1);
+		assertThat(archiver.archive(RETENTION_SECONDS, 1)).isZero();
+		assertThat(getIds("SELECT id FROM ORDERS_ARCHIVE")).containsExactlyInAnyOrder(older.getId(), old.getId());
+	}
+
+	// the order is closed the given days ago
+	private Order saveClosedOrder(int daysAgo) {
+		Order order = new Order(OrderStatus.CLOSED);
+		persistObjectToDatabase(order);
+		persistObjectToDatabase(new OrderItem(bread, order, 2));
+		entityManager.getTransaction().begin();
+		entityManager.createNativeQuery("UPDATE ORDERS SET closed_at = TIMESTAMPADD(DAY, ?, closed_at) WHERE id = ?")
+				.setParameter(1, -daysAgo).setParameter(2, order.getId()).executeUpdate();
+		entityManager.getTransaction().commit();
+		return order;
+	}
+
+	private Object getClosedAt(Order order) {
+		return entityManager.createNativeQuery("SELECT closed_at FROM ORDERS WHERE id = ?")
+				.setParameter(1, order.getId()).getSingleResult();
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<String> getIds(String query) {
+		return entityManager.createNativeQuery(query).getResultList();
+	}
+
+	private void persistObjectToDatabase(Object object) {
+		entityManager.getTransaction().begin();
+		entityManager.persist(object);
+		entityManager.getTransaction().commit();
+	}
+
+}
@@ -0,0 +1,157 @@
+package com.github.raffaelliscandiffio.repository.mysql;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.PersistenceException;
+import javax.persistence.Query;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.github.raffaelliscandiffio.model.Order;
+import com.github.raffaelliscandiffio.model.OrderItem;
+import com.github.raffaelliscandiffio.model.OrderStatus;
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.model.Stock;
+
+class MySqlSchemaIT {
+
+	private static final String DATABASE_NAME = "totem";
+	private static EntityManagerFactory managerFactory;
+
+	private EntityManager entityManager;
+	private Product product;
+	private Order order;
+
+	@BeforeAll
+	public static void createEntityManagerFactory() {
+		System.setProperty("db.port", "3306");
+		System.setProperty("db.name", DATABASE_NAME);
+		// the tables come from the versioned scripts, not from the mappings
+		Map<String, String> settings = new HashMap<>();
+		settings.put("javax.persistence.schema-generation.database.action", "none");
+		managerFactory = Persistence.createEntityManagerFactory("mysql-test", settings);
+	}
+
+	@AfterAll
+	public static void closeEntityManagerFactory() {
+		managerFactory.close();
+	}
+
+	@BeforeEach
+	void setup() {
+		entityManager = managerFactory.createEntityManager();
+		entityManager.getTransaction().begin();
+		entityManager.createNativeQuery("DROP TABLE IF EXISTS SCHEMA_VERSION").executeUpdate();
+		entityManager.getTransaction().commit();
+		new MySqlSchema(entityManager).migrate();
+
+		product = new Product("Bread", 1.5);
+		order = new Order(OrderStatus.OPEN);
+		persistObjectToDatabase(product);
+		persistObjectToDatabase(order);
+		persistObjectToDatabase(new Stock(product, 10, 0));
+		persistObjectToDatabase(new Stock(product, 10, 1));
+		persistObjectToDatabase(new OrderItem(product, order, 2));
+	}
+
+	@AfterEach
+	void tearDown() {
+		entityManager.close();
+	}
+
+	@Test
+	@DisplayName("The schema should be at the latest version and a second check should not apply the scripts again")
+	void testMigrateShouldApplyTheScriptsOnce() {
+		int version = new MySqlSchema(entityManager).migrate();
+
+		assertThat(version).isEqualTo(MySqlSchema.LATEST_VERSION);
+		// the data survives because the first script is not run again
+		assertThat(entityManager.find(Product.class, product.getId())).isNotNull();
+		Number applied = (Number) entityManager.createNativeQuery("SELECT COUNT(*) FROM SCHEMA_VERSION")
+				.getSingleResult();
+		assertThat(applied.intValue()).isEqualTo(MySqlSchema.LATEST_VERSION);
+	}
+
+	@Test
+	@DisplayName("A script whose version was not recorded, as after a failure halfway, should run again")
+	void testUnrecordedScriptShouldRunAgain() {
+		entityManager.getTransaction().begin();
+		entityManager.createNativeQuery("DELETE FROM SCHEMA_VERSION WHERE version = ?")
+				.setParameter(1, MySqlSchema.LATEST_VERSION).executeUpdate();
+		entityManager.getTransaction().commit();
+
+		assertThat(new MySqlSchema(entityManager).migrate()).isEqualTo(MySqlSchema.LATEST_VERSION);
+		Number applied = (Number) entityManager.createNativeQuery("SELECT COUNT(*) FROM SCHEMA_VERSION")
+				.getSingleResult();
+		assertThat(applied.intValue()).isEqualTo(MySqlSchema.LATEST_VERSION);
+	}
+
+	@Test
+	@DisplayName("The cart lookup of an item by order and product should use the unique index")
+	void testCartLookupShouldUseTheUniqueIndex() {
+		assertThat(explain("SELECT * FROM ORDER_ITEMS WHERE order_id = ? AND product = ?", order.getId(),
+				product.getId())).containsEntry("key", "UK_ORDER_ITEMS_ORDER_PRODUCT");
+		assertThat(explain("SELECT * FROM ORDER_ITEMS WHERE order_id = ?", order.getId())).extractingByKey("key")
+				.isIn("UK_ORDER_ITEMS_ORDER_PRODUCT", "IDX_ORDER_ITEMS_SALES");
+	}
+
+	@Test
+	@DisplayName("The stock lookup by product should range scan the shards of the product")
+	void testStockLookupShouldUseTheProductIndex() {
+		Map<String, Object> plan = explain("SELECT * FROM STOCKS WHERE product_id = ? ORDER BY shard",
+				product.getId());
+
+		assertThat(plan).containsEntry("key", "UK_STOCKS_PRODUCT_SHARD");
+		assertThat(plan.get("type")).isIn("ref", "range");
+		// the index already returns the shards in order
+		assertThat(String.valueOf(plan.get("Extra"))).doesNotContain("filesort");
+	}
+
+	@Test
+	@DisplayName("A second line for the same product in the same order should be rejected")
+	void testDuplicateCartLineShouldBeRejected() {
+		assertThatThrownBy(() -> persistObjectToDatabase(new OrderItem(product, order, 1)))
+				.isInstanceOf(PersistenceException.class);
+	}
+
+	// the columns of the first row of the plan, the only one for a single table
+	private Map<String, Object> explain(String query, Object... parameters) {
+		Query explain = entityManager.createNativeQuery("EXPLAIN " + query);
+		for (int i = 0; i < parameters.length; i++)
+			explain.setParameter(i + 1, parameters[i]);
+		@SuppressWarnings("unchecked")
+		List<Object[]> rows = explain.getResultList();
+		String[] columns = { "id", "select_type", "table", "partitions", "type", "possible_keys", "key", "key_len",
+				"ref", "rows", "filtered", "Extra" };
+		Map<String, Object> plan = new HashMap<>();
+		for (int i = 0; i < columns.length; i++)
+			plan.put(columns[i], rows.get(0)[i]);
+		return plan;
+	}
+
+	private void persistObjectToDatabase(Object object) {
+		entityManager.getTransaction().begin();
+		try {
+			entityManager.persist(object);
+			entityManager.getTransaction().commit();
+		} catch (RuntimeException e) {
+			if (entityManager.getTransaction().isActive())
+				entityManager.getTransaction().rollback();
+			throw e;
+		}
+	}
+
+}
@@ -113,6 +113,26 @@ class OrderMySqlRepositoryIT {
 		assertThat(readAllOrdersFromDatabase()).containsExactly(order_2);
 	}
 
+	@Test
+	@DisplayName("Increment the total and the line count of the Order with 'addToTotals'")
+	void testAddToTotals() {
+		Order order = new Order(OrderStatus.OPEN);
+		persistOrderToDatabase(order);
+		entityManager.getTransaction().begin();
+		orderRepository.addToTotals(order.getId(), 6.0, 1);
+		orderRepository.addToTotals(order.getId(), -1.5, 0);
+		entityManager.getTransaction().commit();
+		// the managed instance is refreshed, a later merge must not write back old totals
+		entityManager.getTransaction().begin();
+		order.setStatus(OrderStatus.CLOSED);
+		orderRepository.update(order);
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+		Order found = orderRepository.findById(order.getId());
+		assertThat(found.getTotal()).isEqualTo(4.5);
+		assertThat(found.getLineCount()).isEqualTo(1);
+	}
+
 	private List<Order> readAllOrdersFromDatabase() {
 		return entityManager.createQuery("SELECT o FROM Order o", Order.class).getResultList();
 	}
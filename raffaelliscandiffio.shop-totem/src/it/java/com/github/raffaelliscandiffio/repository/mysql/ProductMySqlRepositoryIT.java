@@ -2,12 +2,16 @@ package com.github.raffaelliscandiffio.repository.mysql;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.Comparator;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
 
+import org.assertj.core.api.SoftAssertions;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
@@ -97,6 +101,24 @@ class ProductMySqlRepositoryIT {
 		assertThat(productRepository.findAll()).isEmpty();
 	}
 
+	@Test
+	@DisplayName("Method 'findPage' should return the products ordered by id, after the given id, up to the limit")
+	void testFindPage() {
+		Product product_3 = new Product("bread", 1.2);
+		addTestProductToDatabase(product_1);
+		addTestProductToDatabase(product_2);
+		addTestProductToDatabase(product_3);
+		List<Product> orderedById = Stream.of(product_1, product_2, product_3)
+				.sorted(Comparator.comparing(Product::getId)).collect(Collectors.toList());
+
+		SoftAssertions softly = new SoftAssertions();
+		softly.assertThat(productRepository.findPage(null, 2)).containsExactlyElementsOf(orderedById.subList(0, 2));
+		softly.assertThat(productRepository.findPage(orderedById.get(1).getId(), 2))
+				.containsExactly(orderedById.get(2));
+		softly.assertThat(productRepository.findPage(orderedById.get(2).getId(), 2)).isEmpty();
+		softly.assertAll();
+	}
+
 	private void addTestProductToDatabase(Product product) {
 		entityManager.getTransaction().begin();
 		entityManager.persist(product);
@@ -0,0 +1,136 @@
+package com.github.raffaelliscandiffio.repository.mysql;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.github.raffaelliscandiffio.model.Order;
+import com.github.raffaelliscandiffio.model.OrderItem;
+import com.github.raffaelliscandiffio.model.OrderStatus;
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.model.ProductSales;
+
+class ReportingMySqlRepositoryIT {
+
+	private static final String DATABASE_NAME = "totem";
+	private static EntityManagerFactory managerFactory;
+
+	private EntityManager entityManager;
+	private ReportingMySqlRepository reportingRepository;
+	private Product bread;
+	private Product pizza;
+	private Product pasta;
+	private Order closed_1;
+
+	@BeforeAll
+	public static void createEntityManagerFactory() {
+		System.setProperty("db.port", "3306");
+		System.setProperty("db.name", DATABASE_NAME);
+		// the archive tables come from the versioned scripts
+		Map<String, String> settings = new HashMap<>();
+		settings.put("javax.persistence.schema-generation.database.action", "none");
+		managerFactory = Persistence.createEntityManagerFactory("mysql-test", settings);
+	}
+
+	@AfterAll
+	public static void closeEntityManagerFactory() {
+		managerFactory.close();
+	}
+
+	@BeforeEach
+	void setup() {
+		entityManager = managerFactory.createEntityManager();
+		entityManager.getTransaction().begin();
+		entityManager.createNativeQuery("DROP TABLE IF EXISTS SCHEMA_VERSION").executeUpdate();
+		entityManager.getTransaction().commit();
+		new MySqlSchema(entityManager).migrate();
+		reportingRepository = new ReportingMySqlRepository(entityManager);
+
+		bread = new Product("Bread", 1.5);
+		pizza = new Product("Pizza", 4.0);
+		pasta = new Product("Pasta", 1.0);
+		closed_1 = new Order(OrderStatus.CLOSED);
+		Order closed_2 = new Order(OrderStatus.CLOSED);
+		Order open = new Order(OrderStatus.OPEN);
+		persistObjectToDatabase(bread);
+		persistObjectToDatabase(pizza);
+		persistObjectToDatabase(pasta);
+		persistObjectToDatabase(closed_1);
+		persistObjectToDatabase(closed_2);
+		persistObjectToDatabase(open);
+		persistObjectToDatabase(new OrderItem(bread, closed_1, 4));
+		persistObjectToDatabase(new OrderItem(pizza, closed_1, 1));
+		persistObjectToDatabase(new OrderItem(bread, closed_2, 2));
+		persistObjectToDatabase(new OrderItem(pizza, closed_2, 2));
+		// neither open orders nor unsold products are reported
+		persistObjectToDatabase(new OrderItem(pasta, open, 100));
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (entityManager.isOpen())
+			entityManager.close();
+	}
+
+	@Test
+	@DisplayName("Return the best sellers of the closed orders with 'findTopSellers'")
+	void testFindTopSellers() {
+		assertThat(reportingRepository.findTopSellers(1))
+				.containsExactly(new ProductSales(bread.getId(), "Bread", 6, 9.0));
+		assertThat(reportingRepository.findTopSellers(10)).containsExactly(
+				new ProductSales(bread.getId(), "Bread", 6, 9.0), new ProductSales(pizza.getId(), "Pizza", 3, 12.0));
+	}
+
+	@Test
+	@DisplayName("Stream the revenue of each sold product with 'streamRevenueByProduct'")
+	void testStreamRevenueByProduct() {
+		List<ProductSales> sales;
+		try (Stream<ProductSales> stream = reportingRepository.streamRevenueByProduct()) {
+			sales = stream.collect(Collectors.toList());
+		}
+
+		assertThat(sales).containsExactly(new ProductSales(pizza.getId(), "Pizza", 3, 12.0),
+				new ProductSales(bread.getId(), "Bread", 6, 9.0));
+	}
+
+	@Test
+	@DisplayName("The archived sales should still be reported")
+	void testArchivedSalesShouldBeReported() {
+		entityManager.getTransaction().begin();
+		entityManager.createNativeQuery("UPDATE ORDERS SET closed_at = TIMESTAMPADD(DAY, -30, closed_at) WHERE id = ?")
+				.setParameter(1, closed_1.getId()).executeUpdate();
+		entityManager.getTransaction().commit();
+
+		assertThat(new MySqlOrderArchiver(managerFactory).archive(3600, 10)).isEqualTo(1);
+
+		assertThat(reportingRepository.findTopSellers(10)).containsExactly(
+				new ProductSales(bread.getId(), "Bread", 6, 9.0), new ProductSales(pizza.getId(), "Pizza", 3, 12.0));
+		try (Stream<ProductSales> stream = reportingRepository.streamRevenueByProduct()) {
+			assertThat(stream.collect(Collectors.toList())).containsExactly(
+					new ProductSales(pizza.getId(), "Pizza", 3, 12.0),
+					new ProductSales(bread.getId(), "Bread", 6, 9.0));
+		}
+	}
+
+	private void persistObjectToDatabase(Object object) {
+		entityManager.getTransaction().begin();
+		entityManager.persist(object);
+		entityManager.getTransaction().commit();
+	}
+
+}
@@ -1,6 +1,7 @@
 package com.github.raffaelliscandiffio.repository.mysql;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 import java.util.List;
 
@@ -8,6 +9,7 @@ import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
 
+import org.assertj.core.api.SoftAssertions;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
@@ -17,6 +19,8 @@ import org.junit.jupiter.api.Test;
 
 import com.github.raffaelliscandiffio.model.Product;
 import com.github.raffaelliscandiffio.model.Stock;
+import com.github.raffaelliscandiffio.profiling.LockWaitProfiler;
+import com.github.raffaelliscandiffio.transaction.LockingStrategy;
 
 class StockMySqlRepositoryIT {
 
@@ -127,6 +131,115 @@ class StockMySqlRepositoryIT {
 
 	}
 
+	@Test
+	@DisplayName("Find the shards of a Product ordered by shard index")
+	void testFindAllByProductId() {
+		Stock shard_1 = new Stock(product_1, STOCK_QUANTITY, 1);
+		Stock shard_0 = new Stock(product_1, STOCK_QUANTITY, 0);
+		persistObjectToDatabase(product_1);
+		persistObjectToDatabase(product_2);
+		persistObjectToDatabase(shard_1);
+		persistObjectToDatabase(shard_0);
+		persistObjectToDatabase(stock_2);
+		entityManager.getTransaction().begin();
+		assertThat(stockRepository.findAllByProductId(product_1.getId())).containsExactly(shard_0, shard_1);
+		entityManager.getTransaction().commit();
+	}
+
+	@Test
+	@DisplayName("Find a shard holding at least the requested quantity")
+	void testFindByProductIdWithQuantity() {
+		Stock emptyShard = new Stock(product_1, 0, 0);
+		Stock fullShard = new Stock(product_1, STOCK_QUANTITY, 1);
+		persistObjectToDatabase(product_1);
+		persistObjectToDatabase(emptyShard);
+		persistObjectToDatabase(fullShard);
+		entityManager.getTransaction().begin();
+		assertThat(stockRepository.findByProductIdWithQuantity(product_1.getId(), STOCK_QUANTITY))
+				.isEqualTo(fullShard);
+		assertThat(stockRepository.findByProductIdWithQuantity(product_1.getId(), STOCK_QUANTITY + 1)).isNull();
+		entityManager.getTransaction().commit();
+	}
+
+	@Test
+	@DisplayName("Sum the quantity of every shard of a Product")
+	void testGetTotalQuantityByProductId() {
+		persistObjectToDatabase(product_1);
+		persistObjectToDatabase(new Stock(product_1, STOCK_QUANTITY, 0));
+		persistObjectToDatabase(new Stock(product_1, STOCK_QUANTITY, 1));
+		assertThat(stockRepository.getTotalQuantityByProductId(product_1.getId())).isEqualTo(2 * STOCK_QUANTITY);
+		assertThat(stockRepository.getTotalQuantityByProductId("missing_id")).isZero();
+	}
+
+	@Test
+	@DisplayName("The waits for the stock locks should be profiled by product")
+	void testLockWaitsShouldBeProfiledByProduct() {
+		LockWaitProfiler lockWaits = new LockWaitProfiler();
+		stockRepository = new StockMySqlRepository(entityManager, LockingStrategy.PESSIMISTIC, lockWaits);
+		persistObjectToDatabase(product_1);
+		persistObjectToDatabase(stock_1);
+		entityManager.getTransaction().begin();
+		stockRepository.findByProductId(product_1.getId());
+		stockRepository.findAllByProductId(product_1.getId());
+		entityManager.getTransaction().commit();
+
+		assertThat(lockWaits.getHottest(10)).extracting(LockWaitProfiler.HotProduct::getProductId,
+				LockWaitProfiler.HotProduct::getWaits).containsExactly(tuple(product_1.getId(), 2L));
+	}
+
+	@Test
+	@DisplayName("Method 'addToQuantity' should add a positive delta to the quantity")
+	void testAddToQuantityWithAPositiveDelta() {
+		persistObjectToDatabase(product_1);
+		persistObjectToDatabase(stock_1);
+		entityManager.getTransaction().begin();
+		stockRepository.addToQuantity(stock_1.getId(), 3);
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+		assertThat(readAllStocksFromDatabase()).extracting(Stock::getQuantity).containsExactly(STOCK_QUANTITY + 3);
+	}
+
+	@Test
+	@DisplayName("Method 'addToQuantity' should subtract a negative delta from the quantity")
+	void testAddToQuantityWithANegativeDelta() {
+		persistObjectToDatabase(product_1);
+		persistObjectToDatabase(stock_1);
+		entityManager.getTransaction().begin();
+		stockRepository.addToQuantity(stock_1.getId(), -3);
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+		assertThat(readAllStocksFromDatabase()).extracting(Stock::getQuantity).containsExactly(STOCK_QUANTITY - 3);
+	}
+
+	@Test
+	@DisplayName("Method 'addToQuantity' should increment the version")
+	void testAddToQuantityShouldIncrementTheVersion() {
+		persistObjectToDatabase(product_1);
+		persistObjectToDatabase(stock_1);
+		long version = stock_1.getVersion();
+		entityManager.getTransaction().begin();
+		stockRepository.addToQuantity(stock_1.getId(), 1);
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+		assertThat(readAllStocksFromDatabase()).extracting(Stock::getVersion).containsExactly(version + 1);
+	}
+
+	@Test
+	@DisplayName("Method 'addToQuantity' should refresh the Stock already managed by the persistence context")
+	void testAddToQuantityShouldRefreshTheManagedStock() {
+		persistObjectToDatabase(product_1);
+		persistObjectToDatabase(stock_1);
+		long version = stock_1.getVersion();
+		entityManager.getTransaction().begin();
+		Stock managed = entityManager.find(Stock.class, stock_1.getId());
+		stockRepository.addToQuantity(stock_1.getId(), 2);
+		SoftAssertions softly = new SoftAssertions();
+		softly.assertThat(managed.getQuantity()).isEqualTo(STOCK_QUANTITY + 2);
+		softly.assertThat(managed.getVersion()).isEqualTo(version + 1);
+		entityManager.getTransaction().commit();
+		softly.assertAll();
+	}
+
 	private void persistObjectToDatabase(Object object) {
 		entityManager.getTransaction().begin();
 		entityManager.persist(object);
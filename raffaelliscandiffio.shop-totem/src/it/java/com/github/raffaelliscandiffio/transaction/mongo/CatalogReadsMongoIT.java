@@ -0,0 +1,91 @@
+package com.github.raffaelliscandiffio.transaction.mongo;
+
+import static org.awaitility.Awaitility.await;
+
+import java.util.concurrent.TimeUnit;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.service.ShoppingService;
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+
+class CatalogReadsMongoIT {
+
+	private static final String DB_NAME = "totem";
+	private static final String PRODUCT_COLLECTION_NAME = "product";
+	private static final String STOCK_COLLECTION_NAME = "stock";
+	private static final String ORDER_COLLECTION_NAME = "order";
+	private static final String ORDER_ITEM_COLLECTION_NAME = "orderItem";
+	private static final String URI = "mongodb://localhost:27017,localhost:27018,localhost:27019/?replicaSet=rs0&ssl=false";
+
+	private static final String PRIMARY = "REPLICA_SET_PRIMARY";
+	private static final String SECONDARY = "REPLICA_SET_SECONDARY";
+
+	private MongoReadMetrics primaryReads;
+	private MongoReadMetrics catalogReads;
+	private MongoClient client;
+	private MongoClient catalogClient;
+	private ShoppingService shoppingService;
+
+	@BeforeEach
+	void setup() {
+		primaryReads = new MongoReadMetrics();
+		catalogReads = new MongoReadMetrics();
+		client = MongoClients.create(settings(ReadPreference.primary(), primaryReads));
+		catalogClient = MongoClients
+				.create(settings(ReadPreference.secondary(90, TimeUnit.SECONDS), catalogReads));
+
+		MongoDatabase database = client.getDatabase(DB_NAME);
+		database.drop();
+		database.createCollection(PRODUCT_COLLECTION_NAME);
+		database.createCollection(STOCK_COLLECTION_NAME);
+		database.createCollection(ORDER_COLLECTION_NAME);
+		database.createCollection(ORDER_ITEM_COLLECTION_NAME);
+
+		shoppingService = ShoppingService
+				.builder(new TransactionManagerMongo(client, DB_NAME, PRODUCT_COLLECTION_NAME, STOCK_COLLECTION_NAME,
+						ORDER_COLLECTION_NAME, ORDER_ITEM_COLLECTION_NAME))
+				.catalogTransactionManager(new ReadOnlyTransactionManagerMongo(catalogClient, DB_NAME,
+						PRODUCT_COLLECTION_NAME, STOCK_COLLECTION_NAME, ORDER_COLLECTION_NAME, ORDER_ITEM_COLLECTION_NAME))
+				.build();
+	}
+
+	@AfterEach
+	void tearDown() {
+		catalogClient.close();
+		client.close();
+	}
+
+	@Test
+	@DisplayName("Catalog reads should be served by the secondaries and purchases by the primary")
+	void testCatalogReadsShouldGoToTheSecondaries() {
+		shoppingService.saveProductAndStock("Bread", 1.5, 10);
+		// the catalog catches up once the secondaries replicate the product
+		await().atMost(10, TimeUnit.SECONDS).until(() -> shoppingService.getAllProducts().size() == 1);
+		Product product = shoppingService.getProductsPage(null, 10).get(0);
+
+		shoppingService.buyProduct(shoppingService.openNewOrder().getId(), product.getId(), 2);
+
+		SoftAssertions softly = new SoftAssertions();
+		softly.assertThat(catalogReads.getReadsByRole()).containsKey(SECONDARY).doesNotContainKey(PRIMARY);
+		softly.assertThat(primaryReads.getReadsByRole()).containsKey(PRIMARY).doesNotContainKey(SECONDARY);
+		softly.assertThat(shoppingService.getAvailableQuantity(product.getId())).isEqualTo(8);
+		softly.assertAll();
+	}
+
+	private MongoClientSettings settings(ReadPreference readPreference, MongoReadMetrics metrics) {
+		return MongoClientSettings.builder().applyConnectionString(new ConnectionString(URI))
+				.readPreference(readPreference).addCommandListener(metrics).build();
+	}
+
+}
@@ -0,0 +1,140 @@
+package com.github.raffaelliscandiffio.transaction.mongo;
+
+import static com.github.raffaelliscandiffio.utils.Publishers.await;
+import static com.github.raffaelliscandiffio.utils.Publishers.awaitList;
+import static com.github.raffaelliscandiffio.utils.Publishers.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.github.raffaelliscandiffio.exception.TransactionException;
+import com.github.raffaelliscandiffio.model.Order;
+import com.github.raffaelliscandiffio.model.OrderItem;
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.service.ShoppingService;
+import com.github.raffaelliscandiffio.transaction.LockingStrategy;
+import com.github.raffaelliscandiffio.utils.Publishers;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
+class ReactiveTransactionManagerMongoIT {
+
+	private static final String URI = "mongodb://localhost:27017,localhost:27018,localhost:27019/?replicaSet=rs0&readPreference=primary&ssl=false";
+	private static final String DB_NAME = "totem";
+	private static final String PRODUCT_COLLECTION_NAME = "product";
+	private static final String STOCK_COLLECTION_NAME = "stock";
+	private static final String ORDER_COLLECTION_NAME = "order";
+	private static final String ORDER_ITEM_COLLECTION_NAME = "orderItem";
+
+	private static final String PRODUCT_NAME = "product";
+	private static final double PRODUCT_PRICE = 1.0;
+
+	private MongoClient client;
+	private com.mongodb.reactivestreams.client.MongoClient reactiveClient;
+	private MongoCollection<Document> productCollection;
+	private ReactiveTransactionManagerMongo transactionManager;
+
+	@BeforeEach
+	public void setup() {
+		client = MongoClients.create(URI);
+		reactiveClient = com.mongodb.reactivestreams.client.MongoClients.create(URI);
+
+		MongoDatabase database = client.getDatabase(DB_NAME);
+		database.drop();
+		database.createCollection(PRODUCT_COLLECTION_NAME);
+		database.createCollection(STOCK_COLLECTION_NAME);
+		database.createCollection(ORDER_COLLECTION_NAME);
+		database.createCollection(ORDER_ITEM_COLLECTION_NAME);
+
+		productCollection = database.getCollection(PRODUCT_COLLECTION_NAME);
+		transactionManager = new ReactiveTransactionManagerMongo(reactiveClient, DB_NAME, PRODUCT_COLLECTION_NAME,
+				STOCK_COLLECTION_NAME, ORDER_COLLECTION_NAME, ORDER_ITEM_COLLECTION_NAME);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		reactiveClient.close();
+		client.close();
+	}
+
+	@Test
+	@DisplayName("Method 'runInTransaction' should commit and emit the elements of the code")
+	void testRunInTransactionCommits() {
+		Product product = new Product(PRODUCT_NAME, PRODUCT_PRICE);
+
+		Product result = await(transactionManager
+				.runInTransaction((productRepository, stockRepository, orderRepository, orderItemRepository) -> Publishers
+						.fromFuture(() -> Publishers.first(productRepository.save(product)).thenApply(v -> product))));
+
+		assertThat(result.getId()).isNotNull();
+		assertThat(readAllProductNamesFromDatabase()).containsExactly(PRODUCT_NAME);
+	}
+
+	@Test
+	@DisplayName("Method 'runInTransaction' should rollback and fail with TransactionException when the code fails")
+	void testRunInTransactionRollsBack() {
+		Product product = new Product(PRODUCT_NAME, PRODUCT_PRICE);
+
+		assertThatThrownBy(() -> await(transactionManager
+				.runInTransaction((productRepository, stockRepository, orderRepository, orderItemRepository) -> Publishers
+						.fromFuture(() -> Publishers.first(productRepository.save(product)).thenApply(v -> {
+							throw new NoSuchElementException("failure");
+						}))))).isInstanceOf(TransactionException.class).hasMessage("failure");
+		assertThat(readAllProductNamesFromDatabase()).isEmpty();
+	}
+
+	@Test
+	@DisplayName("Many concurrent transactions should complete without a thread each")
+	void testConcurrentTransactions() {
+		await(transactionManager.runInTransaction((productRepository, stockRepository, orderRepository,
+				orderItemRepository) -> productRepository.save(new Product(PRODUCT_NAME, PRODUCT_PRICE))));
+
+		List<CompletableFuture<List<Product>>> reads = IntStream.range(0, 200)
+				.mapToObj(i -> toList(transactionManager.runInTransaction(
+						(productRepository, stockRepository, orderRepository, orderItemRepository) -> productRepository
+								.findAll())))
+				.collect(Collectors.toList());
+
+		assertThat(reads.stream().map(CompletableFuture::join)).allSatisfy(products -> assertThat(products)
+				.extracting(Product::getName).containsExactly(PRODUCT_NAME));
+	}
+
+	@Test
+	@DisplayName("The adapter should run ShoppingService on the reactive repositories")
+	void testShoppingServiceOnAdapter() {
+		ShoppingService shoppingService = new ShoppingService(new TransactionManagerMongoReactiveAdapter(
+				reactiveClient, DB_NAME, PRODUCT_COLLECTION_NAME, STOCK_COLLECTION_NAME, ORDER_COLLECTION_NAME,
+				ORDER_ITEM_COLLECTION_NAME, LockingStrategy.PESSIMISTIC));
+		shoppingService.saveProductAndStock(PRODUCT_NAME, PRODUCT_PRICE, 10, 2);
+		Product product = shoppingService.getAllProducts().get(0);
+		Order order = shoppingService.openNewOrder();
+
+		OrderItem item = shoppingService.buyProduct(order.getId(), product.getId(), 7);
+
+		assertThat(item.getQuantity()).isEqualTo(7);
+		assertThat(shoppingService.getAvailableQuantity(product.getId())).isEqualTo(3);
+		assertThat(awaitList(transactionManager.runInTransaction((productRepository, stockRepository,
+				orderRepository, orderItemRepository) -> orderItemRepository.getListByOrderId(order.getId()))))
+						.containsExactly(item);
+	}
+
+	private List<String> readAllProductNamesFromDatabase() {
+		return StreamSupport.stream(productCollection.find().spliterator(), false).map(d -> d.getString("name"))
+				.collect(Collectors.toList());
+	}
+
+}
@@ -1,7 +1,13 @@
 package com.github.raffaelliscandiffio.transaction.mongo;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.StreamSupport;
 
 import org.assertj.core.api.SoftAssertions;
@@ -13,6 +19,7 @@ import org.junit.jupiter.api.Test;
 
 import com.github.raffaelliscandiffio.exception.TransactionException;
 import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.model.Stock;
 import com.github.raffaelliscandiffio.repository.mongo.OrderItemMongoRepository;
 import com.github.raffaelliscandiffio.repository.mongo.OrderMongoRepository;
 import com.github.raffaelliscandiffio.repository.mongo.ProductMongoRepository;
@@ -66,9 +73,11 @@ class TransactionManagerMongoIT {
 		SoftAssertions softly = new SoftAssertions();
 		Product product = newProductWithId(PRODUCT_ID, PRODUCT_NAME, PRODUCT_PRICE);
 		Product expectedResult = newProductWithId(PRODUCT_ID, PRODUCT_NAME, PRODUCT_PRICE);
+		AtomicReference<ClientSession> usedSession = new AtomicReference<>();
 		Product result = transactionManager
 				.runInTransaction((productRepository, stockRepository, orderRepository, orderItemRepository) -> {
 					ClientSession session = transactionManager.getSession();
+					usedSession.set(session);
 					softly.assertThat(session).isNotNull();
 					softly.assertThat(session.hasActiveTransaction()).isTrue();
 					// field by field comparison
@@ -84,7 +93,8 @@ class TransactionManagerMongoIT {
 					productCollection.insertOne(session, productToDocument(product));
 					return product;
 				});
-		ClientSession session = transactionManager.getSession();
+		ClientSession session = usedSession.get();
+		softly.assertThat(transactionManager.getSession()).isNull();
 		softly.assertThat(result).isEqualTo(expectedResult);
 		softly.assertThat(session.hasActiveTransaction()).isFalse();
 		softly.assertThat(readAllProductsFromDatabase()).containsExactly(expectedResult);
@@ -99,19 +109,90 @@ class TransactionManagerMongoIT {
 		String message = "Exception message";
 		SoftAssertions softly = new SoftAssertions();
 		Product product = newProductWithId(PRODUCT_ID, PRODUCT_NAME, PRODUCT_PRICE);
+		AtomicReference<ClientSession> usedSession = new AtomicReference<>();
 		softly.assertThatThrownBy(() -> transactionManager
 				.runInTransaction((productRepository, stockRepository, orderRepository, orderItemRepository) -> {
 					ClientSession session = transactionManager.getSession();
+					usedSession.set(session);
 					productCollection.insertOne(session, productToDocument((product)));
 					throw new RuntimeException(message);
 				})).isInstanceOf(TransactionException.class).hasMessage(message);
 		softly.assertThat(readAllProductsFromDatabase()).isEmpty();
 		// assert that the client session is close. It doesn't have an 'isClose' getter.
-		softly.assertThatThrownBy(() -> transactionManager.getSession().startTransaction())
+		softly.assertThatThrownBy(() -> usedSession.get().startTransaction())
 				.isInstanceOf(IllegalStateException.class);
 		softly.assertAll();
 	}
 
+	@Test
+	@DisplayName("The repositories of a transaction should return the same instance of an entity")
+	void testRunInTransactionShouldShareTheEntitiesBetweenRepositories() {
+		SoftAssertions softly = new SoftAssertions();
+		transactionManager.runInTransaction((productRepository, stockRepository, orderRepository, orderItemRepository) -> {
+			Product product = new Product(PRODUCT_NAME, PRODUCT_PRICE);
+			productRepository.save(product);
+			Stock stock = new Stock(product, 10, 0);
+			stockRepository.save(stock);
+
+			Stock found = stockRepository.findByProductId(product.getId());
+			softly.assertThat(found).isSameAs(stock);
+			softly.assertThat(found.getProduct()).isSameAs(productRepository.findById(product.getId()));
+			stockRepository.addToQuantity(stock.getId(), -3);
+			softly.assertThat(stockRepository.findById(stock.getId()).getQuantity()).isEqualTo(7);
+			return null;
+		});
+		// a new transaction reads the entities again
+		transactionManager.runInTransaction((productRepository, stockRepository, orderRepository, orderItemRepository) -> {
+			Product product = productRepository.findAll().get(0);
+			softly.assertThat(stockRepository.findByProductId(product.getId()).getQuantity()).isEqualTo(7);
+			return null;
+		});
+		softly.assertAll();
+	}
+
+	@Test
+	@DisplayName("A transaction started inside another one should use its own session and restore the outer one")
+	void testNestedRunInTransactionShouldUseItsOwnSession() {
+		SoftAssertions softly = new SoftAssertions();
+		transactionManager.runInTransaction((productRepository, stockRepository, orderRepository, orderItemRepository) -> {
+			ClientSession outer = transactionManager.getSession();
+			ClientSession inner = transactionManager.runInTransaction(
+					(innerProducts, innerStocks, innerOrders, innerItems) -> transactionManager.getSession());
+			softly.assertThat(inner).isNotSameAs(outer);
+			softly.assertThat(transactionManager.getSession()).isSameAs(outer);
+			softly.assertThat(outer.hasActiveTransaction()).isTrue();
+			return null;
+		});
+		softly.assertAll();
+	}
+
+	@Test
+	@DisplayName("Threads sharing the manager should each commit their own transaction")
+	void testRunInTransactionFromConcurrentThreads() throws InterruptedException {
+		int nThreads = 8;
+		CountDownLatch allStarted = new CountDownLatch(nThreads);
+		List<Thread> threads = IntStream.range(0, nThreads).mapToObj(i -> new Thread(() -> transactionManager
+				.runInTransaction((productRepository, stockRepository, orderRepository, orderItemRepository) -> {
+					// every transaction is open while the others start theirs
+					allStarted.countDown();
+					awaitQuietly(allStarted);
+					productRepository.save(new Product(PRODUCT_NAME + i, PRODUCT_PRICE));
+					return null;
+				}))).peek(Thread::start).collect(Collectors.toList());
+		for (Thread thread : threads)
+			thread.join(TimeUnit.SECONDS.toMillis(20));
+
+		assertThat(readAllProductsFromDatabase()).hasSize(nThreads);
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
 	private Document productToDocument(Product productWithId) {
 		return new Document().append("_id", productWithId.getId()).append("name", productWithId.getName())
 				.append("price", productWithId.getPrice());
@@ -14,6 +14,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import com.github.raffaelliscandiffio.exception.TransactionConflictException;
 import com.github.raffaelliscandiffio.exception.TransactionException;
 import com.github.raffaelliscandiffio.model.Product;
 import com.github.raffaelliscandiffio.repository.mysql.OrderItemMySqlRepository;
@@ -98,6 +99,21 @@ class TransactionManagerMySqlIT {
 		softly.assertAll();
 	}
 
+	@Test
+	@DisplayName("A conflict reported by the code should roll back and be thrown as a conflict, to be retried")
+	void runInTransactionWhenConflictIsThrownShouldRollbackAndThrowConflict() {
+		SoftAssertions softly = new SoftAssertions();
+		Product product = new Product("product", 1.0);
+		softly.assertThatThrownBy(() -> transactionManager
+				.runInTransaction((productRepository, stockRepository, orderRepository, orderItemRepository) -> {
+					entityManager.persist(product);
+					throw new TransactionConflictException("drained");
+				})).isInstanceOf(TransactionConflictException.class).hasMessage("drained");
+		softly.assertThat(entityManager.getTransaction().isActive()).isFalse();
+		softly.assertThat(queryProductList()).isEmpty();
+		softly.assertAll();
+	}
+
 	private List<Product> queryProductList() {
 		return entityManager.createQuery("SELECT product FROM Product product", Product.class).getResultList();
 	}
@@ -1,11 +1,20 @@
 package com.github.raffaelliscandiffio.app.swing;
 
 import java.awt.EventQueue;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
@@ -17,11 +26,38 @@ import org.apache.logging.log4j.Logger;
 import org.hibernate.TransactionException;
 
 import com.github.raffaelliscandiffio.controller.TotemController;
+import com.github.raffaelliscandiffio.http.ShoppingHttpServer;
+import com.github.raffaelliscandiffio.jfr.FlightRecording;
+import com.github.raffaelliscandiffio.ledger.MappedSalesLedger;
+import com.github.raffaelliscandiffio.profiling.LockWaitProfiler;
+import com.github.raffaelliscandiffio.repository.OrderArchiver;
+import com.github.raffaelliscandiffio.repository.embedded.EmbeddedStore;
+import com.github.raffaelliscandiffio.repository.mongo.MongoCatalogChangeStream;
+import com.github.raffaelliscandiffio.repository.mongo.MongoOrderArchiver;
+import com.github.raffaelliscandiffio.repository.mongo.ReportingMongoRepository;
+import com.github.raffaelliscandiffio.repository.mysql.MySqlCatalogChangePoller;
+import com.github.raffaelliscandiffio.repository.mysql.MySqlOrderArchiver;
+import com.github.raffaelliscandiffio.repository.mysql.MySqlSchema;
+import com.github.raffaelliscandiffio.server.TotemServer;
+import com.github.raffaelliscandiffio.service.AsyncShoppingService;
+import com.github.raffaelliscandiffio.service.OrderArchivingJob;
 import com.github.raffaelliscandiffio.service.ShoppingService;
+import com.github.raffaelliscandiffio.service.SlowOperationDetector;
+import com.github.raffaelliscandiffio.service.StockAvailability;
+import com.github.raffaelliscandiffio.service.WriteBehindStockCache;
+import com.github.raffaelliscandiffio.transaction.LockingStrategy;
 import com.github.raffaelliscandiffio.transaction.TransactionManager;
+import com.github.raffaelliscandiffio.transaction.embedded.TransactionManagerEmbedded;
+import com.github.raffaelliscandiffio.transaction.mongo.MongoReadMetrics;
+import com.github.raffaelliscandiffio.transaction.mongo.ReadOnlyTransactionManagerMongo;
 import com.github.raffaelliscandiffio.transaction.mongo.TransactionManagerMongo;
+import com.github.raffaelliscandiffio.transaction.mongo.TransactionManagerMongoReactiveAdapter;
 import com.github.raffaelliscandiffio.transaction.mysql.TransactionManagerMySql;
+import com.github.raffaelliscandiffio.utils.StartupTimer;
 import com.github.raffaelliscandiffio.view.swing.TotemSwingView;
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ReadPreference;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoDatabase;
@@ -46,25 +82,219 @@ public class App implements Callable<Void> {
 
 	// mongo
 	private static final String MONGO = "mongo";
+	private static final String MONGO_REACTIVE = "mongo-reactive";
+	private static final String MONGO_URI = "mongodb://localhost:27017,localhost:27018,localhost:27019/?replicaSet=rs0&readPreference=primary&ssl=false";
 	private static final String PRODUCT_COLLECTION_NAME = "product";
 	private static final String STOCK_COLLECTION_NAME = "stock";
 	private static final String ORDER_COLLECTION_NAME = "order";
 	private static final String ORDERITEM_COLLECTION_NAME = "orderItem";
+	private static final String ORDER_ARCHIVE_COLLECTION_NAME = "orderArchive";
+	private static final String ORDERITEM_ARCHIVE_COLLECTION_NAME = "orderItemArchive";
+	private static final int MIN_MAX_STALENESS_SECONDS = 90;
 	private static MongoClient client = null;
+	private static com.mongodb.reactivestreams.client.MongoClient reactiveClient = null;
+	// reads the catalog from the secondaries, with its own connection pools
+	private static MongoClient catalogClient = null;
+	private static final MongoReadMetrics readMetrics = new MongoReadMetrics();
 	private MongoClient mainClient = null;
+	private TransactionManager catalogTransactionManager = null;
 
-	@Option(names = { "--database" }, description = "Either 'mongo' or 'mysql'")
+	// embedded
+	private static final String EMBEDDED = "embedded";
+	private static EmbeddedStore embeddedStore = null;
+
+	// sales ledger
+	private static MappedSalesLedger salesLedger = null;
+
+	// write-behind stock
+	private static WriteBehindStockCache stockCache = null;
+
+	// server mode
+	private static TotemServer totemServer = null;
+	private static ShoppingHttpServer httpServer = null;
+	// requests waiting for an HTTP worker, for each worker
+	private static final int HTTP_QUEUE_PER_WORKER = 16;
+
+	// the changes of the catalog pushed to the totems, none on the embedded
+	// database
+	private static Closeable catalogChanges = null;
+	private StockAvailability availability = null;
+
+	// stock lock waits, logged on exit
+	private static final int HOT_PRODUCTS_LOGGED = 10;
+	private static LockWaitProfiler lockWaits = null;
+
+	// closed orders moved out of the live tables, none on the embedded database
+	private static final int ARCHIVE_BATCH_SIZE = 500;
+	private static final long ARCHIVE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+	private static OrderArchivingJob orderArchiving = null;
+
+	@Option(names = { "--database" }, description = "Either 'mongo', 'mongo-reactive', 'mysql' or 'embedded'")
 	private String databaseType = MYSQL;
 
+	@Option(names = { "--data-directory" }, description = "Directory of the embedded database")
+	private String dataDirectory = "totem-data";
+
+	@Option(names = { "--stock-shards" }, description = "Number of stock shards for each product")
+	private int stockShards = 1;
+
+	@Option(names = { "--locking" }, description = "Either 'pessimistic' or 'optimistic'")
+	private String locking = "pessimistic";
+
+	@Option(names = { "--timeout" }, description = "Timeout in milliseconds of each shopping operation, 0 to disable")
+	private long timeoutMillis = 0;
+
+	@Option(names = { "--sales-ledger" }, description = "Directory of the sales ledger written at checkout, none by default")
+	private String salesLedgerDirectory = null;
+
+	@Option(names = { "--write-behind-stock" }, description = "Directory of the journal of the stock changes not yet written to the database, enables the write-behind stock cache")
+	private String stockJournalDirectory = null;
+
+	@Option(names = { "--catalog-read-preference" }, description = "Mongo read preference of the catalog reads, such as 'secondaryPreferred'. The purchases always read from the primary")
+	private String catalogReadPreference = "primary";
+
+	@Option(names = { "--max-staleness-seconds" }, description = "How far behind the primary a secondary serving the catalog may be, at least 90")
+	private long maxStalenessSeconds = MIN_MAX_STALENESS_SECONDS;
+
+	@Option(names = { "--flight-recording" }, description = "File where a flight recording of the shopping operations, down to the database calls, is written on exit")
+	private String flightRecordingFile = null;
+
+	@Option(names = { "--slow-operation-ms" }, description = "Threshold in milliseconds over which a shopping operation is logged to logs/slow-operations.jsonl, 0 to disable")
+	private long slowOperationMillis = 0;
+
+	@Option(names = { "--lock-wait-profile" }, description = "Measure the time spent waiting for the stock locks of each product, and log the hottest products on exit")
+	private boolean lockWaitProfile = false;
+
+	@Option(names = { "--server-port" }, description = "Serve many totems without a window, to kiosks connecting to this local port")
+	private Integer serverPort = null;
+
+	@Option(names = { "--max-totems" }, description = "Number of kiosks served at once by the server mode")
+	private int maxTotems = 50;
+
+	@Option(names = { "--http-port" }, description = "Serve the shopping operations as JSON over HTTP on this port")
+	private Integer httpPort = null;
+
+	@Option(names = { "--http-workers" }, description = "Number of threads handling the HTTP requests")
+	private int httpWorkers = 8;
+
+	@Option(names = { "--catalog-poll-ms" }, description = "Interval in milliseconds between the reads of the catalog changes on MySQL, 0 to disable")
+	private long catalogPollMillis = 1000;
+
+	@Option(names = { "--availability-staleness-ms" }, description = "How old in milliseconds the stock known to the totem may be to refuse a purchase without sending it, 0 to send every purchase")
+	private long availabilityStalenessMillis = 5000;
+
+	@Option(names = { "--archive-retention-minutes" }, description = "How long in minutes the closed orders stay in the live tables before they are archived, 0 to never archive")
+	private long archiveRetentionMinutes = TimeUnit.DAYS.toMinutes(7);
+
+	@Option(names = { "--exit-after-startup" }, description = "Exit as soon as the startup completes, to record a class data sharing archive")
+	private boolean exitAfterStartup = false;
+
+	private ExecutorService serviceExecutor = null;
+
+	// the window keeps the JVM alive once started, a failed start must not
 	public static void main(String[] args) {
-		new CommandLine(new App()).execute(args);
+		int exitCode = new CommandLine(new App()).execute(args);
+		if (exitCode != 0)
+			System.exit(exitCode);
 	}
 
 	@Override
 	public Void call() throws Exception {
+		StartupTimer startupTimer = new StartupTimer();
+		if (flightRecordingFile != null)
+			FlightRecording.start(Paths.get(flightRecordingFile));
+		if (!Arrays.asList(MYSQL, MONGO, MONGO_REACTIVE, EMBEDDED).contains(databaseType)) {
+			LOGGER.log(Level.ERROR, "--database must be either 'mysql', 'mongo', 'mongo-reactive' or 'embedded'");
+			System.exit(1);
+		}
+		try {
+			getCatalogReadPreference();
+		} catch (IllegalArgumentException e) {
+			LOGGER.log(Level.ERROR, "Invalid catalog read preference: " + e.getMessage());
+			System.exit(1);
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(App::closeConnection));
+		if (serverPort != null)
+			return serve(startupTimer);
+
+		// the window is shown at once while this thread connects to the database,
+		// shopping is enabled when the connection is ready
+		CompletableFuture<TotemSwingView> windowShown = new CompletableFuture<>();
+		EventQueue.invokeLater(() -> {
+			TotemSwingView totemView = new TotemSwingView();
+			totemView.setStartShoppingEnabled(false);
+			totemView.setVisible(true);
+			startupTimer.mark("window shown");
+			windowShown.complete(totemView);
+		});
+
+		try {
+			startupTimer.time("persistence", () -> {
+				openPersistence();
+				return null;
+			});
+			ShoppingService shoppingService = startupTimer.time("database", this::prepareDatabase);
+
+			AsyncShoppingService asyncShoppingService = new AsyncShoppingService(shoppingService, serviceExecutor,
+					timeoutMillis);
+			startHttpServer(asyncShoppingService);
+
+			TotemSwingView totemView = windowShown.get();
+			TotemController totemController = availabilityStalenessMillis > 0
+					? new TotemController(asyncShoppingService, totemView, availability, availabilityStalenessMillis)
+					: new TotemController(asyncShoppingService, totemView, availability);
+			EventQueue.invokeLater(() -> {
+				totemView.setTotemController(totemController);
+				totemView.setStartShoppingEnabled(true);
+				startupTimer.mark("ready");
+				LOGGER.log(Level.INFO, startupTimer.summary());
+				// a training run for the class data sharing archive ends here
+				if (exitAfterStartup)
+					System.exit(0);
+			});
+		} catch (Exception e) {
+			LOGGER.log(Level.ERROR, "Exception", e);
+			// shopping stays disabled, the window tells why
+			windowShown.thenAccept(totemView -> EventQueue
+					.invokeLater(() -> totemView.showStartupError("The totem cannot start: " + e.getMessage())));
+		}
+		return null;
+	}
+
+	// The totems share this JVM, so the database is reset once for all of them.
+	private Void serve(StartupTimer startupTimer) throws Exception {
+		startupTimer.time("persistence", () -> {
+			openPersistence();
+			return null;
+		});
+		ShoppingService shoppingService = startupTimer.time("database", this::prepareDatabase);
+		AsyncShoppingService asyncShoppingService = new AsyncShoppingService(shoppingService, serviceExecutor,
+				timeoutMillis);
+		totemServer = new TotemServer(asyncShoppingService, availability, serverPort, maxTotems);
+		totemServer.start();
+		startHttpServer(asyncShoppingService);
+		startupTimer.mark("ready");
+		LOGGER.log(Level.INFO, startupTimer.summary());
+		if (exitAfterStartup)
+			System.exit(0);
+		// the sessions run on daemon threads, the server runs until the JVM is stopped
+		new CountDownLatch(1).await();
+		return null;
+	}
+
+	private void startHttpServer(AsyncShoppingService asyncShoppingService) throws IOException {
+		if (httpPort == null)
+			return;
+		httpServer = new ShoppingHttpServer(asyncShoppingService, httpPort, httpWorkers,
+				httpWorkers * HTTP_QUEUE_PER_WORKER);
+		httpServer.start();
+	}
+
+	// Hibernate parses the mappings while building the EntityManagerFactory, the
+	// slowest step of the startup.
+	private void openPersistence() throws IOException {
 		switch (databaseType) {
 		case MYSQL:
-
 			Map<String, String> settings = new HashMap<>();
 			settings.put("javax.persistence.jdbc.url",
 					"jdbc:mysql://" + "localhost" + ":" + 3306 + "/" + DATABASE_NAME);
@@ -73,80 +303,240 @@ public class App implements Callable<Void> {
 			em = App.getEntityManager(settings);
 			break;
 		case MONGO:
+		case MONGO_REACTIVE:
 			mainClient = App.getMongoClient();
 			break;
-
 		default:
-			LOGGER.log(Level.ERROR, "--database must be either 'mysql' or 'mongo'");
-			System.exit(1);
+			embeddedStore = new EmbeddedStore(Paths.get(dataDirectory));
+			break;
 		}
 
-		EventQueue.invokeLater(() -> {
-			try {
-
-				switch (databaseType) {
-				case MYSQL:
-					dropSqlDatabase();
-					transactionManager = new TransactionManagerMySql(em);
-					break;
-				case MONGO:
-					dropAndCreateMongoDb(Arrays.asList(PRODUCT_COLLECTION_NAME, STOCK_COLLECTION_NAME,
-							ORDERITEM_COLLECTION_NAME, ORDER_COLLECTION_NAME));
-
-					transactionManager = new TransactionManagerMongo(mainClient, DATABASE_NAME, PRODUCT_COLLECTION_NAME,
-							STOCK_COLLECTION_NAME, ORDER_COLLECTION_NAME, ORDERITEM_COLLECTION_NAME);
-					break;
-
-				default:
-					LOGGER.log(Level.ERROR, "--database must be either 'mysql' or 'mongo'");
-					System.exit(1);
-				}
-
-				TotemSwingView totemView = new TotemSwingView();
-				ShoppingService shoppingService = new ShoppingService(transactionManager);
-				TotemController totemController = new TotemController(shoppingService, totemView);
-				populateDatabase(shoppingService);
+		if (salesLedgerDirectory != null)
+			salesLedger = new MappedSalesLedger(Paths.get(salesLedgerDirectory));
+	}
 
-				totemView.setTotemController(totemController);
-				totemView.setVisible(true);
+	private ShoppingService prepareDatabase() throws IOException {
+		if (lockWaitProfile)
+			lockWaits = new LockWaitProfiler();
+		switch (databaseType) {
+		case MYSQL:
+			dropSqlDatabase();
+			transactionManager = new TransactionManagerMySql(em, getLockingStrategy(), lockWaits);
+			break;
+		case MONGO:
+			dropAndCreateMongoDb(Arrays.asList(PRODUCT_COLLECTION_NAME, STOCK_COLLECTION_NAME,
+					ORDERITEM_COLLECTION_NAME, ORDER_COLLECTION_NAME, ORDERITEM_ARCHIVE_COLLECTION_NAME,
+					ORDER_ARCHIVE_COLLECTION_NAME));
 
-			} catch (Exception e) {
-				LOGGER.log(Level.ERROR, "Exception", e);
+			transactionManager = new TransactionManagerMongo(mainClient, DATABASE_NAME, PRODUCT_COLLECTION_NAME,
+					STOCK_COLLECTION_NAME, ORDER_COLLECTION_NAME, ORDERITEM_COLLECTION_NAME, getLockingStrategy(),
+					lockWaits);
+			ReadPreference catalogReads = getCatalogReadPreference();
+			if (!ReadPreference.primary().equals(catalogReads)) {
+				catalogClient = MongoClients.create(getMongoSettings(catalogReads));
+				catalogTransactionManager = new ReadOnlyTransactionManagerMongo(catalogClient, DATABASE_NAME,
+						PRODUCT_COLLECTION_NAME, STOCK_COLLECTION_NAME, ORDER_COLLECTION_NAME,
+						ORDERITEM_COLLECTION_NAME);
 			}
+			break;
+		case MONGO_REACTIVE:
+			dropAndCreateMongoDb(Arrays.asList(PRODUCT_COLLECTION_NAME, STOCK_COLLECTION_NAME,
+					ORDERITEM_COLLECTION_NAME, ORDER_COLLECTION_NAME, ORDERITEM_ARCHIVE_COLLECTION_NAME,
+					ORDER_ARCHIVE_COLLECTION_NAME));
+
+			transactionManager = new TransactionManagerMongoReactiveAdapter(App.getReactiveMongoClient(),
+					DATABASE_NAME, PRODUCT_COLLECTION_NAME, STOCK_COLLECTION_NAME, ORDER_COLLECTION_NAME,
+					ORDERITEM_COLLECTION_NAME, getLockingStrategy());
+			break;
+		default:
+			// the embedded database is local and survives restarts, so it is kept
+			transactionManager = new TransactionManagerEmbedded(embeddedStore);
+			break;
+		}
+
+		// the transaction managers share a single session, so operations are serialized on
+		// one worker thread that keeps them off the event dispatch thread
+		serviceExecutor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "shopping-service");
+			thread.setDaemon(true);
+			return thread;
 		});
+		// the flushes share the session too, so they run on the same thread
+		if (stockJournalDirectory != null)
+			stockCache = new WriteBehindStockCache(transactionManager, Paths.get(stockJournalDirectory),
+					serviceExecutor);
+		SlowOperationDetector slowOperationDetector = slowOperationMillis > 0
+				? new SlowOperationDetector(slowOperationMillis)
+				: null;
+		ShoppingService shoppingService = ShoppingService.builder(transactionManager)
+				.catalogTransactionManager(catalogTransactionManager).salesLedger(salesLedger).stockCache(stockCache)
+				.slowOperationDetector(slowOperationDetector).build();
+		if (!EMBEDDED.equals(databaseType) || shoppingService.getAllProducts().isEmpty())
+			populateDatabase(shoppingService);
+		startCatalogChanges();
+		if (availability != null)
+			shoppingService.watchCatalog(availability);
+		startOrderArchiving();
+		return shoppingService;
+	}
 
-		Runtime.getRuntime().addShutdownHook(new Thread(App::closeConnection));
-		return null;
+	// the batches run on a connection of their own, beside the shopping session
+	private void startOrderArchiving() {
+		if (archiveRetentionMinutes <= 0)
+			return;
+		OrderArchiver archiver;
+		switch (databaseType) {
+		case MYSQL:
+			archiver = new MySqlOrderArchiver(entityManagerFactory);
+			break;
+		case MONGO:
+		case MONGO_REACTIVE:
+			archiver = new MongoOrderArchiver(mainClient, DATABASE_NAME, ORDER_COLLECTION_NAME,
+					ORDERITEM_COLLECTION_NAME, ORDER_ARCHIVE_COLLECTION_NAME, ORDERITEM_ARCHIVE_COLLECTION_NAME);
+			break;
+		default:
+			// the embedded database keeps its orders in memory
+			return;
+		}
+		orderArchiving = new OrderArchivingJob(archiver, TimeUnit.MINUTES.toSeconds(archiveRetentionMinutes),
+				ARCHIVE_BATCH_SIZE, ARCHIVE_INTERVAL_MILLIS);
+		orderArchiving.start();
+	}
+
+	// Mongo pushes the changes through a change stream, MySQL is polled
+	private void startCatalogChanges() {
+		switch (databaseType) {
+		case MYSQL:
+			if (catalogPollMillis <= 0)
+				return;
+			availability = new StockAvailability();
+			MySqlCatalogChangePoller poller = new MySqlCatalogChangePoller(entityManagerFactory, availability,
+					catalogPollMillis);
+			poller.start();
+			catalogChanges = poller;
+			break;
+		case MONGO:
+		case MONGO_REACTIVE:
+			availability = new StockAvailability();
+			MongoCatalogChangeStream stream = new MongoCatalogChangeStream(mainClient, DATABASE_NAME,
+					PRODUCT_COLLECTION_NAME, STOCK_COLLECTION_NAME, availability);
+			stream.start();
+			catalogChanges = stream;
+			break;
+		default:
+			// the embedded database offers no feed of its changes
+			break;
+		}
+	}
+
+	private LockingStrategy getLockingStrategy() {
+		return LockingStrategy.valueOf(locking.toUpperCase());
+	}
+
+	private ReadPreference getCatalogReadPreference() {
+		ReadPreference readPreference = ReadPreference.valueOf(catalogReadPreference);
+		if (ReadPreference.primary().equals(readPreference))
+			return readPreference;
+		// the servers ignore a smaller bound, the driver rejects it on the first read
+		if (maxStalenessSeconds < MIN_MAX_STALENESS_SECONDS)
+			throw new IllegalArgumentException(
+					"--max-staleness-seconds must be at least " + MIN_MAX_STALENESS_SECONDS);
+		return ReadPreference.valueOf(catalogReadPreference, Collections.emptyList(), maxStalenessSeconds,
+				TimeUnit.SECONDS);
 	}
 
 	public static EntityManager getEntityManager(Map<String, String> settings) {
 		if (entityManagerFactory == null) {
 			entityManagerFactory = Persistence.createEntityManagerFactory("mysql-production", settings);
 			entityManager = entityManagerFactory.createEntityManager();
+			// only reads the schema version unless the application brings a new one
+			new MySqlSchema(entityManager).migrate();
 		}
 		return entityManager;
 	}
 
 	public static MongoClient getMongoClient() {
 		if (client == null) {
-			String uri = "mongodb://localhost:27017,localhost:27018,localhost:27019/?replicaSet=rs0&readPreference=primary&ssl=false";
-			client = MongoClients.create(uri);
+			client = MongoClients.create(getMongoSettings(ReadPreference.primary()));
 		}
 		return client;
 	}
 
+	private static MongoClientSettings getMongoSettings(ReadPreference readPreference) {
+		return MongoClientSettings.builder().applyConnectionString(new ConnectionString(MONGO_URI))
+				.readPreference(readPreference).addCommandListener(readMetrics).build();
+	}
+
+	public static com.mongodb.reactivestreams.client.MongoClient getReactiveMongoClient() {
+		if (reactiveClient == null) {
+			reactiveClient = com.mongodb.reactivestreams.client.MongoClients.create(MONGO_URI);
+		}
+		return reactiveClient;
+	}
+
 	public static void closeConnection() {
+		if (httpServer != null)
+			httpServer.close();
+		if (totemServer != null) {
+			try {
+				totemServer.close();
+			} catch (IOException e) {
+				LOGGER.log(Level.ERROR, "Cannot close the totem server", e);
+			}
+		}
+		if (catalogChanges != null) {
+			try {
+				catalogChanges.close();
+			} catch (IOException e) {
+				LOGGER.log(Level.ERROR, "Cannot stop reading the catalog changes", e);
+			}
+		}
+		if (orderArchiving != null)
+			orderArchiving.close();
+		// the pending stock changes are flushed while the database is still open
+		if (stockCache != null) {
+			try {
+				stockCache.close();
+			} catch (IOException e) {
+				LOGGER.log(Level.ERROR, "Cannot close the stock journal", e);
+			}
+		}
+		if (lockWaits != null)
+			LOGGER.log(Level.INFO, lockWaits.summary(HOT_PRODUCTS_LOGGED));
 		if (entityManagerFactory != null) {
 			entityManager.close();
 			entityManagerFactory.close();
 		} else if (client != null) {
+			LOGGER.log(Level.INFO, "Mongo " + readMetrics.summary());
 			client.close();
 		}
+		if (catalogClient != null) {
+			catalogClient.close();
+		}
+		if (reactiveClient != null) {
+			reactiveClient.close();
+		}
+		if (embeddedStore != null) {
+			try {
+				embeddedStore.close();
+			} catch (IOException e) {
+				LOGGER.log(Level.ERROR, "Cannot close the embedded database", e);
+			}
+		}
+		if (salesLedger != null) {
+			try {
+				salesLedger.close();
+			} catch (IOException e) {
+				LOGGER.log(Level.ERROR, "Cannot close the sales ledger", e);
+			}
+		}
 	}
 
 	private void dropSqlDatabase() {
 		try {
 			entityManager.getTransaction().begin();
+			entityManager.createNativeQuery("DELETE FROM ORDER_ITEMS_ARCHIVE").executeUpdate();
+			entityManager.createNativeQuery("DELETE FROM ORDERS_ARCHIVE").executeUpdate();
 			entityManager.createQuery("DELETE FROM OrderItem").executeUpdate();
 			entityManager.createQuery("DELETE FROM Stock").executeUpdate();
 			entityManager.createQuery("DELETE FROM Product").executeUpdate();
@@ -163,6 +553,10 @@ public class App implements Callable<Void> {
 			mongoDb.drop();
 			for (String name : nameList)
 				mongoDb.createCollection(name);
+			new ReportingMongoRepository(mainClient, DATABASE_NAME, PRODUCT_COLLECTION_NAME, ORDER_COLLECTION_NAME,
+					ORDERITEM_COLLECTION_NAME, ORDERITEM_ARCHIVE_COLLECTION_NAME).createIndexes();
+			new MongoOrderArchiver(mainClient, DATABASE_NAME, ORDER_COLLECTION_NAME, ORDERITEM_COLLECTION_NAME,
+					ORDER_ARCHIVE_COLLECTION_NAME, ORDERITEM_ARCHIVE_COLLECTION_NAME).createIndexes();
 		} catch (RuntimeException e) {
 			LOGGER.log(Level.ERROR, e.getMessage());
 		}
@@ -170,10 +564,10 @@ public class App implements Callable<Void> {
 
 	private void populateDatabase(ShoppingService shoppingService) {
 		try {
-			shoppingService.saveProductAndStock("Bread", 1.40, 100);
-			shoppingService.saveProductAndStock("Pizza", 2.20, 100);
-			shoppingService.saveProductAndStock("Spaghetti", 0.80, 100);
-			shoppingService.saveProductAndStock("Ice cream", 4, 100);
+			shoppingService.saveProductAndStock("Bread", 1.40, 100, stockShards);
+			shoppingService.saveProductAndStock("Pizza", 2.20, 100, stockShards);
+			shoppingService.saveProductAndStock("Spaghetti", 0.80, 100, stockShards);
+			shoppingService.saveProductAndStock("Ice cream", 4, 100, stockShards);
 		} catch (TransactionException e) {
 			LOGGER.log(Level.ERROR, e.getMessage());
 		}
@@ -0,0 +1,68 @@
+package com.github.raffaelliscandiffio.controller;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * The quantity available of the products a totem has shown, each with the time
+ * it was read. A quantity is trusted to refuse a purchase only while it is
+ * younger than the staleness bound; an older one is read again first. The
+ * database stays the judge of every purchase sent.
+ */
+class AvailabilitySnapshot {
+
+	private final long maxStalenessMillis;
+	private final LongSupplier clock;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	AvailabilitySnapshot(long maxStalenessMillis) {
+		this(maxStalenessMillis, System::currentTimeMillis);
+	}
+
+	AvailabilitySnapshot(long maxStalenessMillis, LongSupplier clock) {
+		if (maxStalenessMillis <= 0)
+			throw new IllegalArgumentException("Max staleness must be positive. Received: " + maxStalenessMillis);
+		this.maxStalenessMillis = maxStalenessMillis;
+		this.clock = clock;
+	}
+
+	void put(String productId, int quantity) {
+		entries.put(productId, new Entry(quantity, clock.getAsLong()));
+	}
+
+	/**
+	 * The quantity available of the product, null if it is not known or too old
+	 * to be trusted.
+	 */
+	Integer getFresh(String productId) {
+		Entry entry = entries.get(productId);
+		if (entry == null || clock.getAsLong() - entry.readAt > maxStalenessMillis)
+			return null;
+		return entry.quantity;
+	}
+
+	/**
+	 * Applies a purchase or a return of this totem to the quantity known, and
+	 * returns the new quantity, null if none is known. The time of the read is
+	 * kept: the database may have changed in other ways meanwhile.
+	 */
+	Integer adjust(String productId, int delta) {
+		Entry adjusted = entries.computeIfPresent(productId,
+				(id, entry) -> new Entry(Math.max(0, entry.quantity + delta), entry.readAt));
+		return adjusted != null ? adjusted.quantity : null;
+	}
+
+	private static final class Entry {
+
+		private final int quantity;
+		private final long readAt;
+
+		private Entry(int quantity, long readAt) {
+			this.quantity = quantity;
+			this.readAt = readAt;
+		}
+
+	}
+
+}
@@ -1,127 +1,320 @@
 package com.github.raffaelliscandiffio.controller;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import com.github.raffaelliscandiffio.exception.TransactionException;
 import com.github.raffaelliscandiffio.model.Order;
 import com.github.raffaelliscandiffio.model.OrderItem;
 import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.service.AsyncShoppingService;
 import com.github.raffaelliscandiffio.service.ShoppingService;
+import com.github.raffaelliscandiffio.service.StockAvailability;
 import com.github.raffaelliscandiffio.view.TotemView;
 
 public class TotemController {
 
-	private ShoppingService shoppingService;
+	private static final Logger LOGGER = LogManager.getLogger(TotemController.class);
+
+	static final int PRODUCTS_PAGE_SIZE = 50;
+	static final int SEARCH_RESULTS_LIMIT = 50;
+	static final String UNEXPECTED_ERROR_MESSAGE = "Something went wrong, please try again";
+
+	private AsyncShoppingService shoppingService;
 	private TotemView totemView;
+	private final StockAvailability availability;
+	// what this totem last read of the stock, null when every purchase is sent
+	private final AvailabilitySnapshot snapshot;
+	// pushes the changes of the catalog to the view, without reloading it
+	private final StockAvailability.Listener catalogListener = new StockAvailability.Listener() {
+
+		@Override
+		public void availabilityChanged(String productId, int available) {
+			if (snapshot != null)
+				snapshot.put(productId, available);
+			totemView.showAvailability(productId, available);
+		}
+
+		@Override
+		public void productChanged(Product product) {
+			totemView.productChanged(product);
+		}
+
+	};
 
 	public TotemController(ShoppingService shoppingService, TotemView totemView) {
+		this(new AsyncShoppingService(shoppingService, Runnable::run), totemView);
+	}
+
+	public TotemController(AsyncShoppingService shoppingService, TotemView totemView) {
+		this(shoppingService, totemView, null);
+	}
+
+	public TotemController(AsyncShoppingService shoppingService, TotemView totemView,
+			StockAvailability availability) {
+		this(shoppingService, totemView, availability, null);
+	}
+
+	/**
+	 * The availability of the products shown is read when not known, and a
+	 * purchase of more than the quantity available is refused without being
+	 * sent, as long as that quantity was read within the given staleness.
+	 */
+	public TotemController(AsyncShoppingService shoppingService, TotemView totemView,
+			StockAvailability availability, long maxStalenessMillis) {
+		this(shoppingService, totemView, availability, new AvailabilitySnapshot(maxStalenessMillis));
+	}
+
+	TotemController(AsyncShoppingService shoppingService, TotemView totemView, StockAvailability availability,
+			AvailabilitySnapshot snapshot) {
 		this.shoppingService = shoppingService;
 		this.totemView = totemView;
+		this.availability = availability;
+		this.snapshot = snapshot;
+		if (availability != null)
+			availability.addListener(catalogListener);
 	}
 
-	public void startShopping() {
-		try {
-			Order order = shoppingService.openNewOrder();
-			List<Product> allProducts = shoppingService.getAllProducts();
+	/**
+	 * Stops pushing the changes of the catalog to the view, once the totem is
+	 * gone.
+	 */
+	public void stopWatchingCatalog() {
+		if (availability != null)
+			availability.removeListener(catalogListener);
+	}
 
+	public void startShopping() {
+		CompletableFuture<Order> order = shoppingService.openNewOrder();
+		CompletableFuture<List<Product>> firstPage = shoppingService.getProductsPage(null, PRODUCTS_PAGE_SIZE);
+		onComplete(order.thenCombine(firstPage, (newOrder, products) -> {
 			totemView.resetView();
 			totemView.resetLabels();
-			totemView.setOrderId(order.getId());
+			totemView.setOrderId(newOrder.getId());
 			totemView.showShopping();
-			totemView.showAllProducts(allProducts);
-
-		} catch (TransactionException e) {
+			totemView.showFirstProductsPage(products, hasMorePages(products));
+			showAvailability(products);
+			return null;
+		}), e -> {
 			totemView.resetView();
 			totemView.showShopping();
 			totemView.showShoppingErrorMessage(e.getMessage());
-		}
+		});
 	}
 
 	public void openShopping() {
-		try {
-			List<Product> allProducts = shoppingService.getAllProducts();
+		onComplete(shoppingService.getProductsPage(null, PRODUCTS_PAGE_SIZE).thenAccept(firstPage -> {
 			totemView.showShopping();
-			totemView.showAllProducts(allProducts);
-		} catch (TransactionException e) {
+			totemView.showFirstProductsPage(firstPage, hasMorePages(firstPage));
+			showAvailability(firstPage);
+		}), e -> {
 			totemView.showShopping();
 			totemView.showShoppingErrorMessage(e.getMessage());
+		});
+	}
+
+	public void loadMoreProducts(String afterId) {
+		onComplete(shoppingService.getProductsPage(afterId, PRODUCTS_PAGE_SIZE).thenAccept(nextPage -> {
+			totemView.showNextProductsPage(nextPage, hasMorePages(nextPage));
+			showAvailability(nextPage);
+		}), e -> {
+			totemView.nextProductsPageFailed();
+			totemView.showShoppingErrorMessage(e.getMessage());
+		});
+	}
+
+	// an empty query goes back to the paged catalog, search results are never
+	// paged
+	public void searchProducts(String query) {
+		if (query == null || query.trim().isEmpty()) {
+			openShopping();
+			return;
 		}
+		onComplete(shoppingService.searchProducts(query, SEARCH_RESULTS_LIMIT).thenAccept(results -> {
+			totemView.showFirstProductsPage(results, false);
+			showAvailability(results);
+		}), e -> totemView.showShoppingErrorMessage(e.getMessage()));
 	}
 
 	public void cancelShopping(String orderId) {
-		try {
-			shoppingService.deleteOrder(orderId);
+		onComplete(shoppingService.deleteOrder(orderId).thenRun(() -> {
 			totemView.resetView();
 			totemView.resetLabels();
 			totemView.setOrderId(null);
 			totemView.showWelcome();
-		} catch (TransactionException e) {
-			totemView.showCartErrorMessage(e.getMessage());
-		}
+		}), e -> totemView.showCartErrorMessage(e.getMessage()));
 	}
 
 	public void openOrder() {
 		totemView.showOrder();
 	}
 
-
+	// a purchase bound to fail on the stock read recently is not sent
 	public void buyProduct(String orderId, String productId, int quantity) {
-
-		try {
-			OrderItem orderItem = shoppingService.buyProduct(orderId, productId, quantity);
-			
-			List<OrderItem> allOrderItems = shoppingService.getOrderItems(totemView.getOrderId());
-			totemView.showAllOrderItems(allOrderItems);
-			
-			totemView.showShoppingMessage("Added " + quantity + " " + orderItem.getProduct().getName());
-		} catch (TransactionException e) {
-			totemView.showShoppingErrorMessage(e.getMessage());
+		if (snapshot == null) {
+			purchase(orderId, productId, quantity);
+			return;
+		}
+		Integer available = snapshot.getFresh(productId);
+		if (available != null) {
+			purchaseIfAvailable(orderId, productId, quantity, available);
+			return;
 		}
+		onComplete(shoppingService.getAvailableQuantity(productId).thenAccept(read -> {
+			availabilityRead(productId, read);
+			purchaseIfAvailable(orderId, productId, quantity, read);
+		}), e -> totemView.showShoppingErrorMessage(e.getMessage()));
+	}
+
+	private void purchaseIfAvailable(String orderId, String productId, int quantity, int available) {
+		if (quantity > available)
+			totemView.showShoppingErrorMessage(available == 0 ? "Sold out"
+					: "Not enough quantity. Only " + available + " available");
+		else
+			purchase(orderId, productId, quantity);
+	}
+
+	private void purchase(String orderId, String productId, int quantity) {
+		onComplete(shoppingService.buyProduct(orderId, productId, quantity)
+				.thenCompose(orderItem -> shoppingService.getOrderItems(totemView.getOrderId())
+						.thenAccept(allOrderItems -> {
+							stockChanged(productId, -quantity);
+							totemView.showAllOrderItems(allOrderItems);
+							totemView.showShoppingMessage(
+									"Added " + quantity + " " + orderItem.getProduct().getName());
+							showOrderTotal(orderId, e -> totemView.showShoppingErrorMessage(e.getMessage()));
+						})),
+				e -> {
+					totemView.showShoppingErrorMessage(e.getMessage());
+					// the stock known was wrong, or is now in doubt
+					if (snapshot != null)
+						readAvailability(Collections.singletonList(productId));
+				});
 	}
 
 	public void removeItem(OrderItem orderItem) {
-		try {
-			shoppingService.deleteItem(orderItem);
+		onComplete(shoppingService.deleteItem(orderItem).thenRun(() -> {
+			stockChanged(orderItem.getProduct().getId(), orderItem.getQuantity());
 			totemView.itemRemoved(orderItem);
 			totemView.showCartMessage("Removed all " + orderItem.getProduct().getName());
-		} catch (TransactionException e) {
-			handleDeleteError(e);
-		}
+			showOrderTotal(totemView.getOrderId(), e -> totemView.showCartErrorMessage(e.getMessage()));
+		}), this::handleDeleteError);
 	}
 
 	public void returnItem(OrderItem itemToReturn, int quantity) {
-		try {
-			OrderItem modifiedItem = shoppingService.returnItem(itemToReturn, quantity);
+		onComplete(shoppingService.returnItem(itemToReturn, quantity).thenAccept(modifiedItem -> {
+			stockChanged(itemToReturn.getProduct().getId(), quantity);
 			totemView.itemModified(itemToReturn, modifiedItem);
 			totemView.showCartMessage("Removed " + quantity + " " + modifiedItem.getProduct().getName());
-		} catch (TransactionException e) {
-			handleDeleteError(e);
-		}
+			showOrderTotal(totemView.getOrderId(), e -> totemView.showCartErrorMessage(e.getMessage()));
+		}), this::handleDeleteError);
 	}
 
 	public void checkout(String orderId) {
-		try {
-			shoppingService.closeOrder(orderId);
+		onComplete(shoppingService.closeOrder(orderId).thenRun(() -> {
 			totemView.setOrderId(null);
 			totemView.resetView();
 			totemView.resetLabels();
 			totemView.showGoodbye();
-		} catch (TransactionException e) {
-			totemView.showCartErrorMessage(e.getMessage());
-		}
+		}), e -> totemView.showCartErrorMessage(e.getMessage()));
+	}
+
+	// the order carries its running total, the items are not needed
+	private void showOrderTotal(String orderId, Consumer<TransactionException> errorHandler) {
+		onComplete(shoppingService.getOrder(orderId)
+				.thenAccept(order -> totemView.showOrderTotal(order.getTotal(), order.getLineCount())), errorHandler);
 	}
 
 	private void handleDeleteError(TransactionException e) {
 		totemView.resetView();
-		try {
-			List<Product> allProducts = shoppingService.getAllProducts();
-			List<OrderItem> allOrderItems = shoppingService.getOrderItems(totemView.getOrderId());
-			totemView.showAllProducts(allProducts);
-			totemView.showAllOrderItems(allOrderItems);
-			totemView.showCartErrorMessage(e.getMessage());
-		} catch (TransactionException ee) {
-			totemView.showCartErrorMessage(ee.getMessage());
+		onComplete(shoppingService.getProductsPage(null, PRODUCTS_PAGE_SIZE)
+				.thenCompose(firstPage -> shoppingService.getOrderItems(totemView.getOrderId())
+						.thenAccept(allOrderItems -> {
+							totemView.showFirstProductsPage(firstPage, hasMorePages(firstPage));
+							showAvailability(firstPage);
+							totemView.showAllOrderItems(allOrderItems);
+							totemView.showCartErrorMessage(e.getMessage());
+						})),
+				ee -> totemView.showCartErrorMessage(ee.getMessage()));
+	}
+
+	// the products just shown are told their availability, the later changes are
+	// pushed by the feed; with a snapshot, those the feed does not know and
+	// those read too long ago are read again
+	private void showAvailability(List<Product> products) {
+		List<String> toRead = new ArrayList<>();
+		for (Product product : products) {
+			Integer available = availability != null ? availability.getAvailable(product.getId()) : null;
+			if (available != null) {
+				if (snapshot != null)
+					snapshot.put(product.getId(), available);
+				totemView.showAvailability(product.getId(), available);
+			} else if (snapshot != null) {
+				Integer known = snapshot.getFresh(product.getId());
+				if (known != null)
+					totemView.showAvailability(product.getId(), known);
+				else
+					toRead.add(product.getId());
+			}
 		}
+		if (!toRead.isEmpty())
+			readAvailability(toRead);
+	}
+
+	private void readAvailability(List<String> productIds) {
+		onComplete(shoppingService.getAvailableQuantities(productIds)
+				.thenAccept(quantities -> quantities.forEach(this::availabilityRead)),
+				e -> LOGGER.log(Level.WARN, "Cannot read the availability of the products: " + e.getMessage()));
+	}
+
+	private void availabilityRead(String productId, int available) {
+		snapshot.put(productId, available);
+		totemView.showAvailability(productId, available);
+	}
+
+	// Without a feed, the purchases and returns of this totem are applied to
+	// the quantity known. A feed tells the quantity committed, this change
+	// included, and may have done so already: applying it again would count it
+	// twice.
+	private void stockChanged(String productId, int delta) {
+		if (snapshot == null || availability != null)
+			return;
+		Integer available = snapshot.adjust(productId, delta);
+		if (available != null)
+			totemView.showAvailability(productId, available);
+	}
+
+	// a full page means more products may follow
+	private boolean hasMorePages(List<Product> page) {
+		return page.size() == PRODUCTS_PAGE_SIZE;
+	}
+
+	private void onComplete(CompletableFuture<?> future, Consumer<TransactionException> errorHandler) {
+		future.whenComplete((result, error) -> {
+			if (error == null)
+				return;
+			Throwable cause = AsyncShoppingService.unwrap(error);
+			if (cause instanceof TransactionException)
+				errorHandler.accept((TransactionException) cause);
+			else
+				errorHandler.accept(unexpected(cause));
+		});
+	}
+
+	// every failure reaches the view, which would otherwise wait for an answer
+	// that never comes; a refused request tells why, anything else is logged
+	private TransactionException unexpected(Throwable cause) {
+		if (cause instanceof IllegalArgumentException)
+			return new TransactionException(cause.getMessage());
+		LOGGER.log(Level.ERROR, "Unexpected error", cause);
+		return new TransactionException(UNEXPECTED_ERROR_MESSAGE);
 	}
 
 }
@@ -0,0 +1,14 @@
+package com.github.raffaelliscandiffio.exception;
+
+public class TransactionConflictException extends TransactionException {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = -6129744470150834217L;
+
+	public TransactionConflictException(String message) {
+		super(message);
+	}
+
+}
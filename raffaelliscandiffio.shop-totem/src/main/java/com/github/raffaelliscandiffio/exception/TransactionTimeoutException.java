@@ -0,0 +1,14 @@
+package com.github.raffaelliscandiffio.exception;
+
+public class TransactionTimeoutException extends TransactionException {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 4417062237961572810L;
+
+	public TransactionTimeoutException(String message) {
+		super(message);
+	}
+
+}
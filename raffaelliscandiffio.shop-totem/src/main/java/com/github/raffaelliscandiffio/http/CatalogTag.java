@@ -0,0 +1,49 @@
+package com.github.raffaelliscandiffio.http;
+
+import java.util.List;
+
+import com.github.raffaelliscandiffio.model.Product;
+
+/**
+ * The entity tag of the catalog, a 64-bit FNV-1a hash of the id, name and
+ * price of every product in order. Any change a client could see changes the
+ * tag, so an unchanged catalog is answered with 304 Not Modified.
+ */
+final class CatalogTag {
+
+	private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long PRIME = 0x100000001b3L;
+
+	private CatalogTag() {
+	}
+
+	static String of(List<Product> products) {
+		long hash = OFFSET_BASIS;
+		for (Product product : products) {
+			hash = hash(hash, product.getId());
+			hash = hash(hash, product.getName());
+			hash = hash(hash, Double.doubleToLongBits(product.getPrice()));
+		}
+		return "\"" + Long.toHexString(hash) + "\"";
+	}
+
+	// each field ends with a byte no char can produce alone, so that "ab","c"
+	// and "a","bc" differ
+	private static long hash(long hash, String value) {
+		for (int i = 0; i < value.length(); i++)
+			hash = hash(hash, value.charAt(i));
+		return (hash ^ 0xFFFF_FFFFL) * PRIME;
+	}
+
+	private static long hash(long hash, long value) {
+		for (int shift = 0; shift < Long.SIZE; shift += Character.SIZE)
+			hash = hash(hash, (char) (value >>> shift));
+		return hash;
+	}
+
+	private static long hash(long hash, char c) {
+		hash = (hash ^ (c & 0xFF)) * PRIME;
+		return (hash ^ (c >>> 8)) * PRIME;
+	}
+
+}
@@ -0,0 +1,300 @@
+package com.github.raffaelliscandiffio.http;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.github.raffaelliscandiffio.exception.TransactionException;
+import com.github.raffaelliscandiffio.exception.TransactionTimeoutException;
+import com.github.raffaelliscandiffio.model.Order;
+import com.github.raffaelliscandiffio.model.OrderItem;
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.service.AsyncShoppingService;
+import com.github.raffaelliscandiffio.utils.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the shopping operations as JSON over HTTP, with the server of the
+ * JDK:
+ *
+ * <pre>
+ * POST   /orders                                   open a new order
+ * GET    /products                                 the catalog, with an ETag
+ * POST   /orders/{orderId}/items?productId=&amp;quantity=   buy a product
+ * POST   /orders/{orderId}/items/{itemId}/return?quantity=   return part of an item
+ * DELETE /orders/{orderId}/items/{itemId}          remove an item
+ * POST   /orders/{orderId}/close                   check out
+ * </pre>
+ *
+ * The connections are kept alive between requests. The requests are handled
+ * by a bounded pool of workers; once its queue is full the thread accepting
+ * the connections serves the request itself, so no more connections are
+ * accepted until the workers catch up. The operations themselves run on the
+ * executor of the service, shared with the totems. Only the local machine can
+ * connect.
+ */
+public class ShoppingHttpServer implements Closeable {
+
+	private static final Logger LOGGER = LogManager.getLogger(ShoppingHttpServer.class);
+	private static final String JSON = "application/json; charset=utf-8";
+	private static final int NO_BODY = -1;
+	// the length of a body streamed in chunks
+	private static final int CHUNKED = 0;
+	private static final int BACKLOG = 128;
+
+	private final AsyncShoppingService shoppingService;
+	private final HttpServer server;
+	private final ThreadPoolExecutor workers;
+
+	public ShoppingHttpServer(AsyncShoppingService shoppingService, int port, int workers, int queueCapacity)
+			throws IOException {
+		if (workers <= 0)
+			throw new IllegalArgumentException("Workers must be positive. Received: " + workers);
+		if (queueCapacity <= 0)
+			throw new IllegalArgumentException("Queue capacity must be positive. Received: " + queueCapacity);
+		this.shoppingService = shoppingService;
+		AtomicInteger threadCount = new AtomicInteger();
+		this.workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+					Thread thread = new Thread(runnable, "shopping-http-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+		server.createContext("/", this::handle);
+		server.setExecutor(this.workers);
+	}
+
+	public void start() {
+		server.start();
+		LOGGER.log(Level.INFO, "Serving the shopping API on port " + getPort());
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		workers.shutdown();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			drain(exchange.getRequestBody());
+			route(exchange, exchange.getRequestMethod(), exchange.getRequestURI().getPath().split("/"));
+		} catch (IllegalArgumentException e) {
+			sendError(exchange, 400, e.getMessage());
+		} catch (TransactionTimeoutException e) {
+			sendError(exchange, 503, e.getMessage());
+		} catch (TransactionException e) {
+			// not found, not enough stock, stale item: the state of the shop
+			// does not allow the request
+			sendError(exchange, 409, e.getMessage());
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.ERROR, "Unexpected error serving " + exchange.getRequestURI(), e);
+			sendError(exchange, 500, "Unexpected error");
+		} finally {
+			exchange.close();
+		}
+	}
+
+	// the path starts with a slash, so its first segment is empty
+	private void route(HttpExchange exchange, String method, String[] path) throws IOException {
+		if (path.length == 2 && path[1].equals("products")) {
+			if (allow(exchange, method, "GET"))
+				getProducts(exchange);
+		} else if (path.length == 2 && path[1].equals("orders")) {
+			if (allow(exchange, method, "POST"))
+				sendOrder(exchange, 201, await(shoppingService.openNewOrder()));
+		} else if (path.length == 4 && path[1].equals("orders") && path[3].equals("close")) {
+			if (allow(exchange, method, "POST")) {
+				await(shoppingService.closeOrder(path[2]));
+				send(exchange, 204);
+			}
+		} else if (path.length == 4 && path[1].equals("orders") && path[3].equals("items")) {
+			if (allow(exchange, method, "POST")) {
+				Map<String, String> query = query(exchange);
+				OrderItem item = await(shoppingService.buyProduct(path[2], required(query, "productId"),
+						quantity(query)));
+				sendItem(exchange, 201, item);
+			}
+		} else if (path.length == 5 && path[1].equals("orders") && path[3].equals("items")) {
+			if (allow(exchange, method, "DELETE")) {
+				await(shoppingService.deleteItem(findItem(path[2], path[4])));
+				send(exchange, 204);
+			}
+		} else if (path.length == 6 && path[1].equals("orders") && path[3].equals("items")
+				&& path[5].equals("return")) {
+			if (allow(exchange, method, "POST"))
+				returnItem(exchange, path[2], path[4]);
+		} else
+			sendError(exchange, 404, "No such resource: " + exchange.getRequestURI().getPath());
+	}
+
+	private void getProducts(HttpExchange exchange) throws IOException {
+		List<Product> products = await(shoppingService.getAllProducts());
+		String etag = CatalogTag.of(products);
+		exchange.getResponseHeaders().set("ETag", etag);
+		if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			send(exchange, 304);
+			return;
+		}
+		JsonWriter json = beginJson(exchange, 200);
+		json.beginArray();
+		for (Product product : products)
+			writeProduct(json, product);
+		json.endArray().flush();
+	}
+
+	// The item is returned as the client last saw it: an If-Match with its
+	// version makes the return fail if the item changed since.
+	private void returnItem(HttpExchange exchange, String orderId, String itemId) throws IOException {
+		int quantity = quantity(query(exchange));
+		OrderItem stored = findItem(orderId, itemId);
+		// a copy, the stored item may be managed by the persistence context
+		OrderItem item = new OrderItem(stored.getProduct(), stored.getOrder(), stored.getQuantity());
+		item.setId(stored.getId());
+		String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+		item.setVersion(ifMatch != null ? version(ifMatch) : stored.getVersion());
+		sendItem(exchange, 200, await(shoppingService.returnItem(item, quantity)));
+	}
+
+	private OrderItem findItem(String orderId, String itemId) {
+		for (OrderItem item : await(shoppingService.getOrderItems(orderId)))
+			if (item.getId().equals(itemId))
+				return item;
+		throw new TransactionException("Item not found: " + itemId);
+	}
+
+	private boolean allow(HttpExchange exchange, String method, String allowed) throws IOException {
+		if (method.equals(allowed))
+			return true;
+		exchange.getResponseHeaders().set("Allow", allowed);
+		sendError(exchange, 405, "Method not allowed: " + method);
+		return false;
+	}
+
+	private void sendOrder(HttpExchange exchange, int status, Order order) throws IOException {
+		beginJson(exchange, status).beginObject().name("id").value(order.getId()).name("status")
+				.value(order.getStatus().name()).name("total").value(order.getTotal()).name("lineCount")
+				.value(order.getLineCount()).endObject().flush();
+	}
+
+	private void sendItem(HttpExchange exchange, int status, OrderItem item) throws IOException {
+		exchange.getResponseHeaders().set("ETag", "\"" + item.getVersion() + "\"");
+		JsonWriter json = beginJson(exchange, status).beginObject().name("id").value(item.getId()).name("orderId")
+				.value(item.getOrder().getId()).name("product");
+		writeProduct(json, item.getProduct());
+		json.name("quantity").value(item.getQuantity()).name("version").value(item.getVersion()).endObject().flush();
+	}
+
+	private void writeProduct(JsonWriter json, Product product) throws IOException {
+		json.beginObject().name("id").value(product.getId()).name("name").value(product.getName()).name("price")
+				.value(product.getPrice()).endObject();
+	}
+
+	private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		beginJson(exchange, status).beginObject().name("error").value(message).endObject().flush();
+	}
+
+	private void send(HttpExchange exchange, int status) throws IOException {
+		exchange.sendResponseHeaders(status, NO_BODY);
+	}
+
+	private JsonWriter beginJson(HttpExchange exchange, int status) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", JSON);
+		exchange.sendResponseHeaders(status, CHUNKED);
+		return new JsonWriter(
+				new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8)));
+	}
+
+	private Map<String, String> query(HttpExchange exchange) {
+		Map<String, String> parameters = new HashMap<>();
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query == null)
+			return parameters;
+		for (String parameter : query.split("&")) {
+			int equals = parameter.indexOf('=');
+			if (equals > 0)
+				parameters.put(decode(parameter.substring(0, equals)), decode(parameter.substring(equals + 1)));
+		}
+		return parameters;
+	}
+
+	private String required(Map<String, String> query, String name) {
+		String value = query.get(name);
+		if (value == null || value.isEmpty())
+			throw new IllegalArgumentException("Missing parameter: " + name);
+		return value;
+	}
+
+	private int quantity(Map<String, String> query) {
+		String quantity = required(query, "quantity");
+		try {
+			return Integer.parseInt(quantity);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Quantity must be a number. Received: " + quantity);
+		}
+	}
+
+	private long version(String etag) {
+		try {
+			return Long.parseLong(etag.replace("\"", "").trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("If-Match must be the ETag of the item. Received: " + etag);
+		}
+	}
+
+	private static String decode(String value) {
+		try {
+			return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// the body must be read for the connection to be reused
+	private static void drain(InputStream body) throws IOException {
+		byte[] buffer = new byte[1024];
+		int read;
+		do
+			read = body.read(buffer);
+		while (read != -1);
+		body.close();
+	}
+
+	// the exceptions of the service, unwrapped
+	private static <T> T await(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (RuntimeException e) {
+			Throwable cause = AsyncShoppingService.unwrap(e);
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw e;
+		}
+	}
+
+}
@@ -0,0 +1,47 @@
+package com.github.raffaelliscandiffio.jfr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * Starts a flight recording with the settings bundled in jfr/totem.jfc.
+ */
+public final class FlightRecording {
+
+	private static final String SETTINGS = "/jfr/totem.jfc";
+
+	private FlightRecording() {
+	}
+
+	public static Configuration settings() throws IOException, ParseException {
+		InputStream input = FlightRecording.class.getResourceAsStream(SETTINGS);
+		if (input == null)
+			throw new IOException("Flight recorder settings not found: " + SETTINGS);
+		try (Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8)) {
+			return Configuration.create(reader);
+		}
+	}
+
+	/**
+	 * Start a recording that is written to the destination when it stops or when
+	 * the JVM exits.
+	 */
+	public static Recording start(Path destination) throws IOException, ParseException {
+		Recording recording = new Recording(settings());
+		recording.setName("Shop Totem");
+		recording.setToDisk(true);
+		recording.setDestination(destination);
+		recording.setDumpOnExit(true);
+		recording.start();
+		return recording;
+	}
+
+}
@@ -0,0 +1,56 @@
+package com.github.raffaelliscandiffio.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A call to a repository method, with the entities it returned or wrote.
+ */
+@Name("com.github.raffaelliscandiffio.Repository")
+@Label("Repository Call")
+@Category({ "Shop Totem", "Database" })
+@Description("A call to a repository method inside a transaction")
+public class RepositoryEvent extends Event {
+
+	@Label("Backend")
+	String backend;
+
+	@Label("Entity")
+	String entity;
+
+	@Label("Operation")
+	String operation;
+
+	@Label("Entities")
+	@Description("The entities returned or written by the call, 0 when it failed")
+	int entities;
+
+	/**
+	 * Whether a running recording takes the repository calls, so that the
+	 * repositories are only wrapped when it does.
+	 */
+	public static boolean isRecording() {
+		return new RepositoryEvent().isEnabled();
+	}
+
+	public static RepositoryEvent start(String backend, String entity, String operation) {
+		RepositoryEvent event = new RepositoryEvent();
+		event.begin();
+		event.backend = backend;
+		event.entity = entity;
+		event.operation = operation;
+		return event;
+	}
+
+	public void finish(int entities) {
+		end();
+		if (shouldCommit()) {
+			this.entities = entities;
+			commit();
+		}
+	}
+
+}
@@ -0,0 +1,51 @@
+package com.github.raffaelliscandiffio.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A shopping operation requested by the view, from the request, usually a
+ * button click, to its completion on the worker. It begins on the thread of
+ * the request and is committed by the thread that completes it.
+ */
+@Name("com.github.raffaelliscandiffio.ShoppingOperation")
+@Label("Shopping Operation")
+@Category({ "Shop Totem", "Service" })
+@Description("A shopping operation, from its request to its completion")
+public class ShoppingOperationEvent extends Event {
+
+	@Label("Operation")
+	String operation;
+
+	@Label("Queue Time")
+	@Description("How long the operation waited for the worker")
+	@Timespan(Timespan.NANOSECONDS)
+	long queueTime;
+
+	@Label("Succeeded")
+	boolean succeeded;
+
+	public static ShoppingOperationEvent start(String operation) {
+		ShoppingOperationEvent event = new ShoppingOperationEvent();
+		event.begin();
+		event.operation = operation;
+		return event;
+	}
+
+	public void setQueueTime(long queueTime) {
+		this.queueTime = queueTime;
+	}
+
+	public void finish(boolean succeeded) {
+		end();
+		if (shouldCommit()) {
+			this.succeeded = succeeded;
+			commit();
+		}
+	}
+
+}
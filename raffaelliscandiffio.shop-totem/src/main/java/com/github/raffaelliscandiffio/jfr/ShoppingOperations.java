@@ -0,0 +1,35 @@
+package com.github.raffaelliscandiffio.jfr;
+
+/**
+ * The ShoppingService operation running on each thread, which names the
+ * transactions it starts.
+ */
+public final class ShoppingOperations {
+
+	private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+	private ShoppingOperations() {
+	}
+
+	public static String current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Make the operation the current one and return the previous one, to be given
+	 * back to {@link #exit(String)}.
+	 */
+	public static String enter(String operation) {
+		String previous = CURRENT.get();
+		CURRENT.set(operation);
+		return previous;
+	}
+
+	public static void exit(String previous) {
+		if (previous == null)
+			CURRENT.remove();
+		else
+			CURRENT.set(previous);
+	}
+
+}
@@ -0,0 +1,48 @@
+package com.github.raffaelliscandiffio.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A transaction from its begin to its commit or rollback, with the backend
+ * that ran it and the ShoppingService operation it belongs to.
+ */
+@Name("com.github.raffaelliscandiffio.Transaction")
+@Label("Transaction")
+@Category({ "Shop Totem", "Database" })
+@Description("A database transaction, from its begin to its commit or rollback")
+public class TransactionEvent extends Event {
+
+	@Label("Backend")
+	String backend;
+
+	@Label("Operation")
+	@Description("The ShoppingService operation running the transaction")
+	String operation;
+
+	@Label("Committed")
+	boolean committed;
+
+	/**
+	 * Begin the event of a transaction about to start on the backend.
+	 */
+	public static TransactionEvent start(String backend) {
+		TransactionEvent event = new TransactionEvent();
+		event.begin();
+		event.backend = backend;
+		event.operation = ShoppingOperations.current();
+		return event;
+	}
+
+	public void finish(boolean committed) {
+		end();
+		if (shouldCommit()) {
+			this.committed = committed;
+			commit();
+		}
+	}
+
+}
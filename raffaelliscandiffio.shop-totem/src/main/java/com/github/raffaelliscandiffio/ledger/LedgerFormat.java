@@ -0,0 +1,158 @@
+package com.github.raffaelliscandiffio.ledger;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk layout of the ledger. A segment starts with a magic number and a
+ * format version, followed by frames made of the payload length, the CRC32 of
+ * the payload and the payload. Segments are preallocated and zero filled, so a
+ * zero length marks the end of the written frames.
+ */
+final class LedgerFormat {
+
+	static final int MAGIC = 0x53414C45;
+	static final int VERSION = 1;
+	static final int SEGMENT_HEADER_SIZE = 8;
+	static final int FRAME_HEADER_SIZE = 8;
+
+	private static final String SEGMENT_PREFIX = "sales-";
+	private static final String SEGMENT_SUFFIX = ".ledger";
+
+	private LedgerFormat() {
+	}
+
+	static Path segmentPath(Path directory, long index) {
+		return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+	}
+
+	// sorted by index, the zero padded names sort the same way
+	static List<Path> listSegments(Path directory) throws IOException {
+		List<Path> segments = new ArrayList<>();
+		if (!Files.isDirectory(directory))
+			return segments;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+				SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			for (Path segment : stream)
+				segments.add(segment);
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+
+	static long segmentIndex(Path segment) {
+		String name = segment.getFileName().toString();
+		return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+	}
+
+	static void writeHeader(ByteBuffer segment) {
+		segment.putInt(0, MAGIC);
+		segment.putInt(4, VERSION);
+	}
+
+	static boolean hasValidHeader(ByteBuffer segment) {
+		return segment.limit() >= SEGMENT_HEADER_SIZE && segment.getInt(0) == MAGIC && segment.getInt(4) == VERSION;
+	}
+
+	static void writeFrame(ByteBuffer segment, int position, byte[] payload) {
+		// the length goes last, a reader never sees a frame before its payload
+		segment.putInt(position + 4, checksum(payload, payload.length));
+		at(segment, position + FRAME_HEADER_SIZE).put(payload);
+		segment.putInt(position, payload.length);
+	}
+
+	/**
+	 * Return the payload of the frame at the position, or null when there is no
+	 * complete and intact frame there.
+	 */
+	static byte[] readFrame(ByteBuffer segment, int position) {
+		if (position + FRAME_HEADER_SIZE > segment.limit())
+			return null;
+		int length = segment.getInt(position);
+		if (length <= 0 || length > segment.limit() - position - FRAME_HEADER_SIZE)
+			return null;
+		byte[] payload = new byte[length];
+		at(segment, position + FRAME_HEADER_SIZE).get(payload);
+		if (checksum(payload, length) != segment.getInt(position + 4))
+			return null;
+		return payload;
+	}
+
+	static byte[] encode(SalesRecord salesRecord) {
+		List<byte[]> strings = new ArrayList<>();
+		strings.add(utf8(salesRecord.getOrderId()));
+		for (SalesRecord.Line line : salesRecord.getLines())
+			strings.add(utf8(line.getProductId()));
+		int size = 8 + 4 + salesRecord.getLines().size() * (4 + 8);
+		for (byte[] string : strings)
+			size += 4 + (string == null ? 0 : string.length);
+
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		putString(buffer, strings.get(0));
+		buffer.putLong(salesRecord.getTimestamp());
+		buffer.putInt(salesRecord.getLines().size());
+		int index = 1;
+		for (SalesRecord.Line line : salesRecord.getLines()) {
+			putString(buffer, strings.get(index++));
+			buffer.putInt(line.getQuantity());
+			buffer.putDouble(line.getUnitPrice());
+		}
+		return buffer.array();
+	}
+
+	static SalesRecord decode(byte[] payload) {
+		ByteBuffer buffer = ByteBuffer.wrap(payload);
+		String orderId = getString(buffer);
+		long timestamp = buffer.getLong();
+		int count = buffer.getInt();
+		List<SalesRecord.Line> lines = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+			lines.add(new SalesRecord.Line(getString(buffer), buffer.getInt(), buffer.getDouble()));
+		return new SalesRecord(orderId, timestamp, lines);
+	}
+
+	// a view for bulk access; the cast keeps the Java 8 Buffer.position signature
+	private static ByteBuffer at(ByteBuffer segment, int position) {
+		ByteBuffer view = segment.duplicate();
+		((Buffer) view).position(position);
+		return view;
+	}
+
+	private static int checksum(byte[] payload, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(payload, 0, length);
+		return (int) crc.getValue();
+	}
+
+	private static byte[] utf8(String value) {
+		return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void putString(ByteBuffer buffer, byte[] string) {
+		if (string == null) {
+			buffer.putInt(-1);
+			return;
+		}
+		buffer.putInt(string.length);
+		buffer.put(string);
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0)
+			return null;
+		byte[] string = new byte[length];
+		buffer.get(string);
+		return new String(string, StandardCharsets.UTF_8);
+	}
+
+}
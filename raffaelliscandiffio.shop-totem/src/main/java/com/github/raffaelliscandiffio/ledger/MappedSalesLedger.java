@@ -0,0 +1,182 @@
+package com.github.raffaelliscandiffio.ledger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Append-only ledger on memory-mapped segments of fixed size. A record that
+ * does not fit in the current segment rolls over to a new one. Records are
+ * forced to disk every syncEveryRecords appends and at least every
+ * syncIntervalMillis, so a crash loses at most the records of the last batch.
+ */
+public class MappedSalesLedger implements SalesLedger, Closeable {
+
+	private static final Logger LOGGER = LogManager.getLogger(MappedSalesLedger.class);
+
+	public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+	public static final int DEFAULT_SYNC_EVERY_RECORDS = 64;
+	public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 200;
+
+	private final Path directory;
+	private final int segmentSize;
+	private final int syncEveryRecords;
+	private final ScheduledExecutorService syncScheduler;
+
+	private FileChannel channel;
+	private MappedByteBuffer segment;
+	private long segmentIndex;
+	private int position;
+	private int unsyncedRecords;
+	private boolean closed;
+
+	public MappedSalesLedger(Path directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_SYNC_EVERY_RECORDS, DEFAULT_SYNC_INTERVAL_MILLIS);
+	}
+
+	public MappedSalesLedger(Path directory, int segmentSize, int syncEveryRecords, long syncIntervalMillis)
+			throws IOException {
+		if (segmentSize <= LedgerFormat.SEGMENT_HEADER_SIZE + LedgerFormat.FRAME_HEADER_SIZE)
+			throw new IllegalArgumentException("Segment size is too small. Received: " + segmentSize);
+		if (syncEveryRecords <= 0)
+			throw new IllegalArgumentException("Sync batch must be positive. Received: " + syncEveryRecords);
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.syncEveryRecords = syncEveryRecords;
+		Files.createDirectories(directory);
+		openLastSegment();
+		if (syncIntervalMillis > 0) {
+			syncScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "sales-ledger-sync");
+				thread.setDaemon(true);
+				return thread;
+			});
+			syncScheduler.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis,
+					TimeUnit.MILLISECONDS);
+		} else {
+			syncScheduler = null;
+		}
+	}
+
+	@Override
+	public synchronized void append(SalesRecord salesRecord) {
+		if (closed)
+			throw new IllegalStateException("The sales ledger is closed");
+		byte[] payload = LedgerFormat.encode(salesRecord);
+		int frameSize = LedgerFormat.FRAME_HEADER_SIZE + payload.length;
+		if (LedgerFormat.SEGMENT_HEADER_SIZE + frameSize > segmentSize)
+			throw new IllegalArgumentException(
+					"Sales record of " + frameSize + " bytes does not fit in a segment of " + segmentSize + " bytes");
+		try {
+			if (position + frameSize > segmentSize)
+				rollOver();
+			LedgerFormat.writeFrame(segment, position, payload);
+			position += frameSize;
+			if (++unsyncedRecords >= syncEveryRecords)
+				sync();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public synchronized void sync() {
+		if (unsyncedRecords == 0 || closed)
+			return;
+		segment.force();
+		unsyncedRecords = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (syncScheduler != null)
+			syncScheduler.shutdownNow();
+		synchronized (this) {
+			if (closed)
+				return;
+			sync();
+			closed = true;
+			channel.close();
+		}
+	}
+
+	synchronized long getSegmentIndex() {
+		return segmentIndex;
+	}
+
+	private void syncQuietly() {
+		try {
+			sync();
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.ERROR, "Cannot sync the sales ledger", e);
+		}
+	}
+
+	// the write position is recovered by scanning the frames of the last segment;
+	// a torn frame left by a crash is wiped so that it cannot be read later
+	private void openLastSegment() throws IOException {
+		List<Path> segments = LedgerFormat.listSegments(directory);
+		if (segments.isEmpty()) {
+			openSegment(0);
+			return;
+		}
+		Path last = segments.get(segments.size() - 1);
+		openSegment(LedgerFormat.segmentIndex(last));
+		if (!LedgerFormat.hasValidHeader(segment))
+			throw new IOException("Not a sales ledger segment: " + last);
+		byte[] payload;
+		while ((payload = LedgerFormat.readFrame(segment, position)) != null)
+			position += LedgerFormat.FRAME_HEADER_SIZE + payload.length;
+		if (!isZeroFrom(position)) {
+			for (int i = position; i < segmentSize; i++)
+				segment.put(i, (byte) 0);
+			segment.force();
+		}
+	}
+
+	private boolean isZeroFrom(int from) {
+		int i = from;
+		for (; i + 8 <= segmentSize; i += 8)
+			if (segment.getLong(i) != 0)
+				return false;
+		for (; i < segmentSize; i++)
+			if (segment.get(i) != 0)
+				return false;
+		return true;
+	}
+
+	private void rollOver() throws IOException {
+		segment.force();
+		unsyncedRecords = 0;
+		channel.close();
+		openSegment(segmentIndex + 1);
+	}
+
+	private void openSegment(long index) throws IOException {
+		Path path = LedgerFormat.segmentPath(directory, index);
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		segment = channel.map(MapMode.READ_WRITE, 0, segmentSize);
+		segmentIndex = index;
+		position = LedgerFormat.SEGMENT_HEADER_SIZE;
+		// a new segment, or one created right before a crash
+		if (segment.getLong(0) == 0) {
+			LedgerFormat.writeHeader(segment);
+			segment.force();
+		}
+	}
+
+}
@@ -0,0 +1,7 @@
+package com.github.raffaelliscandiffio.ledger;
+
+public interface SalesLedger {
+
+	void append(SalesRecord salesRecord);
+
+}
@@ -0,0 +1,92 @@
+package com.github.raffaelliscandiffio.ledger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Streams the records of a ledger in append order, one segment mapped at a
+ * time. Records appended by a writer in the same directory while reading are
+ * returned as long as the reader has not gone past them.
+ */
+public class SalesLedgerReader implements Iterator<SalesRecord>, Closeable {
+
+	private final Path directory;
+
+	private List<Path> segments;
+	private int segmentCursor = -1;
+	private MappedByteBuffer segment;
+	private int position;
+	private SalesRecord next;
+
+	public SalesLedgerReader(Path directory) throws IOException {
+		this.directory = directory;
+		this.segments = LedgerFormat.listSegments(directory);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next != null)
+			return true;
+		try {
+			next = readNext();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return next != null;
+	}
+
+	@Override
+	public SalesRecord next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		SalesRecord current = next;
+		next = null;
+		return current;
+	}
+
+	@Override
+	public void close() {
+		segment = null;
+		segments = null;
+	}
+
+	// the end of the frames of a segment is the end of the ledger, unless a later
+	// segment exists: the writer only rolls over when a frame does not fit
+	private SalesRecord readNext() throws IOException {
+		if (segments == null)
+			return null;
+		while (true) {
+			if (segment != null) {
+				byte[] payload = LedgerFormat.readFrame(segment, position);
+				if (payload != null) {
+					position += LedgerFormat.FRAME_HEADER_SIZE + payload.length;
+					return LedgerFormat.decode(payload);
+				}
+			}
+			if (segmentCursor + 1 >= segments.size())
+				segments = LedgerFormat.listSegments(directory);
+			if (segmentCursor + 1 >= segments.size())
+				return null;
+			openSegment(segments.get(++segmentCursor));
+		}
+	}
+
+	private void openSegment(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			segment = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (!LedgerFormat.hasValidHeader(segment))
+			throw new IOException("Not a sales ledger segment: " + path);
+		position = LedgerFormat.SEGMENT_HEADER_SIZE;
+	}
+
+}
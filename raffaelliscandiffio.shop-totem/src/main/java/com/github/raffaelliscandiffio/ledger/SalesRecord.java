@@ -0,0 +1,103 @@
+package com.github.raffaelliscandiffio.ledger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+public final class SalesRecord {
+
+	private final String orderId;
+	private final long timestamp;
+	private final List<Line> lines;
+
+	public SalesRecord(String orderId, long timestamp, List<Line> lines) {
+		this.orderId = orderId;
+		this.timestamp = timestamp;
+		this.lines = Collections.unmodifiableList(new ArrayList<>(lines));
+	}
+
+	public String getOrderId() {
+		return orderId;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public List<Line> getLines() {
+		return lines;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(orderId, timestamp, lines);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		SalesRecord other = (SalesRecord) obj;
+		return Objects.equals(orderId, other.orderId) && timestamp == other.timestamp
+				&& Objects.equals(lines, other.lines);
+	}
+
+	@Override
+	public String toString() {
+		return "SalesRecord [orderId=" + orderId + ", timestamp=" + timestamp + ", lines=" + lines + "]";
+	}
+
+	public static final class Line {
+
+		private final String productId;
+		private final int quantity;
+		private final double unitPrice;
+
+		public Line(String productId, int quantity, double unitPrice) {
+			this.productId = productId;
+			this.quantity = quantity;
+			this.unitPrice = unitPrice;
+		}
+
+		public String getProductId() {
+			return productId;
+		}
+
+		public int getQuantity() {
+			return quantity;
+		}
+
+		public double getUnitPrice() {
+			return unitPrice;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(productId, quantity, unitPrice);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			Line other = (Line) obj;
+			return Objects.equals(productId, other.productId) && quantity == other.quantity
+					&& Double.doubleToLongBits(unitPrice) == Double.doubleToLongBits(other.unitPrice);
+		}
+
+		@Override
+		public String toString() {
+			return "Line [productId=" + productId + ", quantity=" + quantity + ", unitPrice=" + unitPrice + "]";
+		}
+	}
+
+}
@@ -5,7 +5,10 @@ import java.util.Objects;
 public class Order {
 
 	private String id;
+	private long version;
 	private OrderStatus status;
+	private double total;
+	private int lineCount;
 
 	public Order(OrderStatus status) {
 		this.status = status;
@@ -22,6 +25,14 @@ public class Order {
 		this.id = id;
 	}
 
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
 	public OrderStatus getStatus() {
 		return status;
 	}
@@ -30,6 +41,22 @@ public class Order {
 		this.status = status;
 	}
 
+	public double getTotal() {
+		return total;
+	}
+
+	public void setTotal(double total) {
+		this.total = total;
+	}
+
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	public void setLineCount(int lineCount) {
+		this.lineCount = lineCount;
+	}
+
 	@Override
 	public int hashCode() {
 		return Objects.hash(id, status);
@@ -5,6 +5,7 @@ import java.util.Objects;
 public class OrderItem {
 
 	private String id;
+	private long version;
 	private Product product;
 	private Order order;
 	private int quantity;
@@ -28,6 +29,14 @@ public class OrderItem {
 		this.id = id;
 	}
 
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
 	public int getQuantity() {
 		return quantity;
 	}
@@ -42,10 +51,19 @@ public class OrderItem {
 		return product;
 	}
 
+	public void setProduct(Product product) {
+		this.product = product;
+		this.subTotal = quantity * product.getPrice();
+	}
+
 	public Order getOrder() {
 		return order;
 	}
 
+	public void setOrder(Order order) {
+		this.order = order;
+	}
+
 	public void setSubTotal(double subTotal) {
 		this.subTotal = subTotal;
 	}
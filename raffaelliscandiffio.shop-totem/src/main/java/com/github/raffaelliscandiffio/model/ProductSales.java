@@ -0,0 +1,64 @@
+package com.github.raffaelliscandiffio.model;
+
+import java.util.Objects;
+
+/**
+ * Quantity sold and revenue of a product over the closed orders, computed by
+ * the database.
+ */
+public class ProductSales {
+
+	private final String productId;
+	private final String productName;
+	private final long quantity;
+	private final double revenue;
+
+	public ProductSales(String productId, String productName, long quantity, double revenue) {
+		this.productId = productId;
+		this.productName = productName;
+		this.quantity = quantity;
+		this.revenue = revenue;
+	}
+
+	public String getProductId() {
+		return productId;
+	}
+
+	public String getProductName() {
+		return productName;
+	}
+
+	public long getQuantity() {
+		return quantity;
+	}
+
+	public double getRevenue() {
+		return revenue;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(productId, productName, quantity, revenue);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		ProductSales other = (ProductSales) obj;
+		return Objects.equals(productId, other.productId) && Objects.equals(productName, other.productName)
+				&& quantity == other.quantity
+				&& Double.doubleToLongBits(revenue) == Double.doubleToLongBits(other.revenue);
+	}
+
+	@Override
+	public String toString() {
+		return "ProductSales [productId=" + productId + ", productName=" + productName + ", quantity=" + quantity
+				+ ", revenue=" + revenue + "]";
+	}
+
+}
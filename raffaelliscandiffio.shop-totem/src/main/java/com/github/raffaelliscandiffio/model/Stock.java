@@ -5,12 +5,19 @@ import java.util.Objects;
 public class Stock {
 
 	private String id;
+	private long version;
 	private Product product;
 	private int quantity;
+	private int shard;
 
 	public Stock(Product product, int quantity) {
+		this(product, quantity, 0);
+	}
+
+	public Stock(Product product, int quantity, int shard) {
 		this.product = product;
 		this.quantity = quantity;
+		this.shard = shard;
 	}
 
 	protected Stock() {
@@ -24,6 +31,14 @@ public class Stock {
 		this.id = id;
 	}
 
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
 	public int getQuantity() {
 		return quantity;
 	}
@@ -36,9 +51,17 @@ public class Stock {
 		return product;
 	}
 
+	public void setProduct(Product product) {
+		this.product = product;
+	}
+
+	public int getShard() {
+		return shard;
+	}
+
 	@Override
 	public int hashCode() {
-		return Objects.hash(id, product, quantity);
+		return Objects.hash(id, product, quantity, shard);
 	}
 
 	@Override
@@ -50,7 +73,8 @@ public class Stock {
 		if (getClass() != obj.getClass())
 			return false;
 		Stock other = (Stock) obj;
-		return Objects.equals(id, other.id) && Objects.equals(product, other.product) && quantity == other.quantity;
+		return Objects.equals(id, other.id) && Objects.equals(product, other.product) && quantity == other.quantity
+				&& shard == other.shard;
 	}
 
 }
@@ -0,0 +1,72 @@
+package com.github.raffaelliscandiffio.profiling;
+
+/**
+ * Counts durations in microseconds in buckets of about 12% of their value, so
+ * that percentiles take constant space. Durations up to 16 microseconds are
+ * exact; longer ones fall in one of 8 buckets for each power of two, up to
+ * about 2^40 microseconds. Not thread safe.
+ */
+class LatencyHistogram {
+
+	private static final int EXACT = 16;
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 40;
+
+	private final long[] counts = new long[EXACT + (MAX_EXPONENT - 3) * SUB_BUCKETS];
+	private long total;
+	private long max;
+
+	void record(long micros) {
+		long value = Math.max(0, micros);
+		counts[index(value)]++;
+		total++;
+		max = Math.max(max, value);
+	}
+
+	long getCount() {
+		return total;
+	}
+
+	long getMax() {
+		return max;
+	}
+
+	/**
+	 * The upper bound of the bucket holding the given percentile, never above
+	 * the largest value recorded, which is also returned for the last bucket.
+	 * Zero when nothing was recorded.
+	 */
+	long percentile(double percentile) {
+		if (total == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			// the last bucket has no upper bound
+			if (seen >= rank)
+				return i == counts.length - 1 ? max : Math.min(upperBound(i), max);
+		}
+		return max;
+	}
+
+	private static int index(long value) {
+		if (value < EXACT)
+			return (int) value;
+		int exponent = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_EXPONENT);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		if (exponent == MAX_EXPONENT)
+			subBucket = SUB_BUCKETS - 1;
+		return EXACT + (exponent - 4) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long upperBound(int index) {
+		if (index < EXACT)
+			return index;
+		int exponent = (index - EXACT) / SUB_BUCKETS + 4;
+		int subBucket = (index - EXACT) % SUB_BUCKETS;
+		return (1L << exponent) + ((subBucket + 1L) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+}
@@ -0,0 +1,177 @@
+package com.github.raffaelliscandiffio.profiling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time the stock repositories wait to lock the stock of each product. Only
+ * the products with the longest total wait are kept, in a Space-Saving sketch
+ * of bounded capacity, each with a histogram of its waits. The totals of the
+ * hottest products are upper bounds, off by at most their error; their
+ * percentiles cover the waits since the product was last admitted to the
+ * sketch. Shared by the transactions of all threads.
+ * <p>
+ * A backend that does not wait for locks, such as Mongo whose transactions
+ * abort at once on a write conflict, records the conflicts of each product
+ * instead, in a sketch of their own.
+ */
+public class LockWaitProfiler {
+
+	private static final int DEFAULT_CAPACITY = 100;
+
+	private final SpaceSavingSketch<String, LatencyHistogram> sketch;
+	private final SpaceSavingSketch<String, Object> conflicts;
+
+	public LockWaitProfiler() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public LockWaitProfiler(int capacity) {
+		sketch = new SpaceSavingSketch<>(capacity, LatencyHistogram::new);
+		conflicts = new SpaceSavingSketch<>(capacity, Object::new);
+	}
+
+	public synchronized void record(String productId, long waitNanos) {
+		long micros = TimeUnit.NANOSECONDS.toMicros(waitNanos);
+		sketch.add(productId, micros).record(micros);
+	}
+
+	/**
+	 * A transaction writing the stock of the product was aborted by a concurrent
+	 * write, and is retried or failed.
+	 */
+	public synchronized void recordConflict(String productId) {
+		conflicts.add(productId, 1);
+	}
+
+	/**
+	 * The products with the longest total wait, longest first.
+	 */
+	public synchronized List<HotProduct> getHottest(int limit) {
+		List<HotProduct> hottest = new ArrayList<>();
+		for (SpaceSavingSketch.Counter<String, LatencyHistogram> counter : sketch.top(limit)) {
+			LatencyHistogram waits = counter.getValue();
+			hottest.add(new HotProduct(counter.getKey(), counter.getWeight(), counter.getError(), waits.getCount(),
+					waits.percentile(50), waits.percentile(95), waits.percentile(99), waits.getMax()));
+		}
+		return hottest;
+	}
+
+	/**
+	 * The products with the most write conflicts, most first.
+	 */
+	public synchronized List<ConflictedProduct> getMostConflicted(int limit) {
+		List<ConflictedProduct> conflicted = new ArrayList<>();
+		for (SpaceSavingSketch.Counter<String, Object> counter : conflicts.top(limit))
+			conflicted.add(new ConflictedProduct(counter.getKey(), counter.getWeight(), counter.getError()));
+		return conflicted;
+	}
+
+	public String summary(int limit) {
+		StringBuilder summary = new StringBuilder("Stock lock waits by product:");
+		for (HotProduct product : getHottest(limit))
+			summary.append(String.format(Locale.ROOT,
+					"%n  %s total %.1f ms (error %.1f ms), %d waits, p50 %.3f ms, p95 %.3f ms, p99 %.3f ms, max %.3f ms",
+					product.getProductId(), millis(product.getTotalMicros()), millis(product.getErrorMicros()),
+					product.getWaits(), millis(product.getP50Micros()), millis(product.getP95Micros()),
+					millis(product.getP99Micros()), millis(product.getMaxMicros())));
+		List<ConflictedProduct> conflicted = getMostConflicted(limit);
+		if (!conflicted.isEmpty()) {
+			summary.append(String.format("%nStock write conflicts by product:"));
+			for (ConflictedProduct product : conflicted)
+				summary.append(String.format(Locale.ROOT, "%n  %s %d conflicts (error %d)", product.getProductId(),
+						product.getConflicts(), product.getError()));
+		}
+		return summary.toString();
+	}
+
+	private static double millis(long micros) {
+		return micros / 1000.0;
+	}
+
+	public static final class HotProduct {
+
+		private final String productId;
+		private final long totalMicros;
+		private final long errorMicros;
+		private final long waits;
+		private final long p50Micros;
+		private final long p95Micros;
+		private final long p99Micros;
+		private final long maxMicros;
+
+		private HotProduct(String productId, long totalMicros, long errorMicros, long waits, long p50Micros,
+				long p95Micros, long p99Micros, long maxMicros) {
+			this.productId = productId;
+			this.totalMicros = totalMicros;
+			this.errorMicros = errorMicros;
+			this.waits = waits;
+			this.p50Micros = p50Micros;
+			this.p95Micros = p95Micros;
+			this.p99Micros = p99Micros;
+			this.maxMicros = maxMicros;
+		}
+
+		public String getProductId() {
+			return productId;
+		}
+
+		public long getTotalMicros() {
+			return totalMicros;
+		}
+
+		public long getErrorMicros() {
+			return errorMicros;
+		}
+
+		public long getWaits() {
+			return waits;
+		}
+
+		public long getP50Micros() {
+			return p50Micros;
+		}
+
+		public long getP95Micros() {
+			return p95Micros;
+		}
+
+		public long getP99Micros() {
+			return p99Micros;
+		}
+
+		public long getMaxMicros() {
+			return maxMicros;
+		}
+
+	}
+
+	public static final class ConflictedProduct {
+
+		private final String productId;
+		private final long conflicts;
+		private final long error;
+
+		private ConflictedProduct(String productId, long conflicts, long error) {
+			this.productId = productId;
+			this.conflicts = conflicts;
+			this.error = error;
+		}
+
+		public String getProductId() {
+			return productId;
+		}
+
+		public long getConflicts() {
+			return conflicts;
+		}
+
+		public long getError() {
+			return error;
+		}
+
+	}
+
+}
@@ -0,0 +1,97 @@
+package com.github.raffaelliscandiffio.profiling;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The heaviest keys of a stream, tracked in bounded space with the weighted
+ * Space-Saving algorithm. At most capacity keys are monitored; a new key
+ * replaces the lightest one and inherits its weight, recorded as the error of
+ * the new key. The weight of a monitored key is thus never underestimated, and
+ * any key heavier than total / capacity is sure to be monitored. Every key has
+ * a value, created when the key starts being monitored. Not thread safe.
+ */
+class SpaceSavingSketch<K, V> {
+
+	private final int capacity;
+	private final Supplier<V> values;
+	private final Map<K, Counter<K, V>> counters = new HashMap<>();
+
+	SpaceSavingSketch(int capacity, Supplier<V> values) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive. Received: " + capacity);
+		this.capacity = capacity;
+		this.values = values;
+	}
+
+	/**
+	 * Adds the weight to the key and returns its value.
+	 */
+	V add(K key, long weight) {
+		Counter<K, V> counter = counters.get(key);
+		if (counter == null) {
+			counter = new Counter<>(key, values.get());
+			if (counters.size() == capacity) {
+				// a linear scan, keys only get here when the stream shifts
+				Counter<K, V> lightest = counters.values().stream().min(Comparator.comparingLong(c -> c.weight))
+						.get();
+				counters.remove(lightest.key);
+				counter.weight = lightest.weight;
+				counter.error = lightest.weight;
+			}
+			counters.put(key, counter);
+		}
+		counter.weight += weight;
+		return counter.value;
+	}
+
+	/**
+	 * The heaviest monitored keys, heaviest first.
+	 */
+	List<Counter<K, V>> top(int limit) {
+		List<Counter<K, V>> top = new ArrayList<>(counters.values());
+		top.sort(Comparator.comparingLong((Counter<K, V> c) -> c.weight).reversed());
+		return top.subList(0, Math.min(limit, top.size()));
+	}
+
+	static final class Counter<K, V> {
+
+		private final K key;
+		private final V value;
+		private long weight;
+		private long error;
+
+		private Counter(K key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		K getKey() {
+			return key;
+		}
+
+		V getValue() {
+			return value;
+		}
+
+		/**
+		 * An upper bound of the weight of the key.
+		 */
+		long getWeight() {
+			return weight;
+		}
+
+		/**
+		 * How much of the weight may belong to the keys replaced by this one.
+		 */
+		long getError() {
+			return error;
+		}
+
+	}
+
+}
@@ -0,0 +1,16 @@
+package com.github.raffaelliscandiffio.repository;
+
+/**
+ * Moves the closed orders out of the tables the shopping works on, together
+ * with their items, into an archive the reports still read.
+ */
+public interface OrderArchiver {
+
+	/**
+	 * Move at most batchSize of the orders closed more than retentionSeconds ago,
+	 * the oldest first, in a single transaction of its own. Return how many were
+	 * moved.
+	 */
+	public int archive(long retentionSeconds, int batchSize);
+
+}
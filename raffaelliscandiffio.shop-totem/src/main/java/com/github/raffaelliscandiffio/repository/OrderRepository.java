@@ -11,4 +11,10 @@ public interface OrderRepository {
 	void delete(String id);
 
 	void update(Order order);
+
+	/**
+	 * Atomically add the amount to the order total and the lines to its line
+	 * count, without reading the order first.
+	 */
+	void addToTotals(String id, double amount, int lines);
 }
@@ -9,6 +9,12 @@ public interface ProductRepository {
 
 	public Product findById(String id);
 
+	/**
+	 * Return at most limit products ordered by id, starting after the given id or
+	 * from the first product when it is null.
+	 */
+	public List<Product> findPage(String afterId, int limit);
+
 	public void save(Product product);
 
 }
@@ -0,0 +1,26 @@
+package com.github.raffaelliscandiffio.repository;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.github.raffaelliscandiffio.model.ProductSales;
+
+/**
+ * Sales aggregations over the items of the closed orders, computed by the
+ * database. Revenue is valued at the current price of each product.
+ */
+public interface ReportingRepository {
+
+	/**
+	 * Return at most limit products ordered by quantity sold, the best seller
+	 * first.
+	 */
+	public List<ProductSales> findTopSellers(int limit);
+
+	/**
+	 * Stream the sales of every sold product ordered by revenue, the highest
+	 * first. The stream holds a database cursor and must be closed.
+	 */
+	public Stream<ProductSales> streamRevenueByProduct();
+
+}
@@ -1,5 +1,7 @@
 package com.github.raffaelliscandiffio.repository;
 
+import java.util.List;
+
 import com.github.raffaelliscandiffio.model.Stock;
 
 public interface StockRepository {
@@ -10,5 +12,34 @@ public interface StockRepository {
 
 	public void update(Stock stock);
 
+	/**
+	 * Lock and return one shard of the Product stock, chosen at random when the
+	 * quantity is split across several shards.
+	 */
 	public Stock findByProductId(String productId);
+
+	/**
+	 * Lock and return a random shard holding at least the given quantity, or null
+	 * when no single shard can serve it. No shard is locked when null is
+	 * returned, so that the caller can go on to lock them all in shard order; a
+	 * backend that finds its shard drained after locking it throws a
+	 * TransactionConflictException instead.
+	 */
+	public Stock findByProductIdWithQuantity(String productId, int quantity);
+
+	/**
+	 * Lock and return every shard of the Product stock, ordered by shard index.
+	 */
+	public List<Stock> findAllByProductId(String productId);
+
+	/**
+	 * Sum the quantity of every shard without locking them.
+	 */
+	public int getTotalQuantityByProductId(String productId);
+
+	/**
+	 * Atomically add the delta to the quantity of the shard, without reading it
+	 * first.
+	 */
+	public void addToQuantity(String id, int delta);
 }
@@ -0,0 +1,128 @@
+package com.github.raffaelliscandiffio.repository.embedded;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import com.github.raffaelliscandiffio.model.OrderStatus;
+
+/**
+ * Immutable stored form of an entity. Rows reference each other by id, so an
+ * OrderItem always reads the current Product and Order.
+ */
+abstract class EmbeddedRow {
+
+	abstract void write(DataOutput out) throws IOException;
+
+	static EmbeddedRow read(EmbeddedState.Table table, DataInput in) throws IOException {
+		switch (table) {
+		case PRODUCT:
+			return new ProductRow(readString(in), in.readDouble());
+		case STOCK:
+			return new StockRow(in.readUTF(), in.readInt(), in.readInt(), in.readLong());
+		case ORDER:
+			return new OrderRow(OrderStatus.valueOf(in.readUTF()), in.readLong(), in.readDouble(), in.readInt());
+		case ITEM:
+			return new ItemRow(in.readUTF(), in.readUTF(), in.readInt(), in.readLong());
+		default:
+			throw new IOException("Unknown table: " + table);
+		}
+	}
+
+	private static void writeString(DataOutput out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null)
+			out.writeUTF(value);
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	static final class ProductRow extends EmbeddedRow {
+
+		final String name;
+		final double price;
+
+		ProductRow(String name, double price) {
+			this.name = name;
+			this.price = price;
+		}
+
+		@Override
+		void write(DataOutput out) throws IOException {
+			writeString(out, name);
+			out.writeDouble(price);
+		}
+	}
+
+	static final class StockRow extends EmbeddedRow {
+
+		final String productId;
+		final int quantity;
+		final int shard;
+		final long version;
+
+		StockRow(String productId, int quantity, int shard, long version) {
+			this.productId = productId;
+			this.quantity = quantity;
+			this.shard = shard;
+			this.version = version;
+		}
+
+		@Override
+		void write(DataOutput out) throws IOException {
+			out.writeUTF(productId);
+			out.writeInt(quantity);
+			out.writeInt(shard);
+			out.writeLong(version);
+		}
+	}
+
+	static final class OrderRow extends EmbeddedRow {
+
+		final OrderStatus status;
+		final long version;
+		final double total;
+		final int lineCount;
+
+		OrderRow(OrderStatus status, long version, double total, int lineCount) {
+			this.status = status;
+			this.version = version;
+			this.total = total;
+			this.lineCount = lineCount;
+		}
+
+		@Override
+		void write(DataOutput out) throws IOException {
+			out.writeUTF(status.name());
+			out.writeLong(version);
+			out.writeDouble(total);
+			out.writeInt(lineCount);
+		}
+	}
+
+	static final class ItemRow extends EmbeddedRow {
+
+		final String productId;
+		final String orderId;
+		final int quantity;
+		final long version;
+
+		ItemRow(String productId, String orderId, int quantity, long version) {
+			this.productId = productId;
+			this.orderId = orderId;
+			this.quantity = quantity;
+			this.version = version;
+		}
+
+		@Override
+		void write(DataOutput out) throws IOException {
+			out.writeUTF(productId);
+			out.writeUTF(orderId);
+			out.writeInt(quantity);
+			out.writeLong(version);
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+package com.github.raffaelliscandiffio.repository.embedded;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The tables of the store with the secondary indexes used by the repositories.
+ * Not thread safe: the store serializes every access.
+ */
+final class EmbeddedState {
+
+	enum Table {
+		PRODUCT, STOCK, ORDER, ITEM
+	}
+
+	private static final int SNAPSHOT_MAGIC = 0x54534E50;
+	private static final int SNAPSHOT_VERSION = 1;
+
+	private final Map<Table, Map<String, EmbeddedRow>> tables = new EnumMap<>(Table.class);
+	private final Map<String, Set<String>> stocksByProduct = new HashMap<>();
+	private final Map<String, Set<String>> itemsByOrder = new HashMap<>();
+
+	long lastId;
+	long lastLsn;
+
+	EmbeddedState() {
+		// products are paged by id
+		tables.put(Table.PRODUCT, new TreeMap<>());
+		tables.put(Table.STOCK, new HashMap<>());
+		tables.put(Table.ORDER, new HashMap<>());
+		tables.put(Table.ITEM, new HashMap<>());
+	}
+
+	EmbeddedRow get(Table table, String id) {
+		return tables.get(table).get(id);
+	}
+
+	/**
+	 * Store the row, or remove it when null, and return the previous one.
+	 */
+	EmbeddedRow put(Table table, String id, EmbeddedRow row) {
+		EmbeddedRow previous = row == null ? tables.get(table).remove(id) : tables.get(table).put(id, row);
+		if (table == Table.STOCK)
+			reindex(stocksByProduct, id, previous == null ? null : ((EmbeddedRow.StockRow) previous).productId,
+					row == null ? null : ((EmbeddedRow.StockRow) row).productId);
+		else if (table == Table.ITEM)
+			reindex(itemsByOrder, id, previous == null ? null : ((EmbeddedRow.ItemRow) previous).orderId,
+					row == null ? null : ((EmbeddedRow.ItemRow) row).orderId);
+		return previous;
+	}
+
+	@SuppressWarnings("unchecked")
+	NavigableMap<String, EmbeddedRow> products() {
+		return Collections.unmodifiableNavigableMap((NavigableMap<String, EmbeddedRow>) tables.get(Table.PRODUCT));
+	}
+
+	Set<String> stockIdsOfProduct(String productId) {
+		return stocksByProduct.getOrDefault(productId, Collections.emptySet());
+	}
+
+	Set<String> itemIdsOfOrder(String orderId) {
+		return itemsByOrder.getOrDefault(orderId, Collections.emptySet());
+	}
+
+	String nextId() {
+		// fixed width, so ids sort in creation order
+		return String.format("%016x", ++lastId);
+	}
+
+	/**
+	 * A copy of the rows to write as a snapshot while the store keeps changing.
+	 * Rows are immutable, so copying the maps is enough.
+	 */
+	EmbeddedState copyForSnapshot() {
+		EmbeddedState copy = new EmbeddedState();
+		for (Table table : Table.values())
+			copy.tables.get(table).putAll(tables.get(table));
+		copy.lastId = lastId;
+		copy.lastLsn = lastLsn;
+		return copy;
+	}
+
+	void writeSnapshot(DataOutput out) throws IOException {
+		out.writeInt(SNAPSHOT_MAGIC);
+		out.writeInt(SNAPSHOT_VERSION);
+		out.writeLong(lastLsn);
+		out.writeLong(lastId);
+		for (Table table : Table.values()) {
+			Map<String, EmbeddedRow> rows = tables.get(table);
+			out.writeInt(rows.size());
+			for (Map.Entry<String, EmbeddedRow> row : rows.entrySet()) {
+				out.writeUTF(row.getKey());
+				row.getValue().write(out);
+			}
+		}
+	}
+
+	static EmbeddedState readSnapshot(DataInput in) throws IOException {
+		if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION)
+			throw new IOException("Not a snapshot of the embedded store");
+		EmbeddedState state = new EmbeddedState();
+		state.lastLsn = in.readLong();
+		state.lastId = in.readLong();
+		for (Table table : Table.values()) {
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String id = in.readUTF();
+				state.put(table, id, EmbeddedRow.read(table, in));
+			}
+		}
+		return state;
+	}
+
+	// an update keeping the key leaves the entry in place, so lookups by key keep
+	// returning rows in insertion order
+	private static void reindex(Map<String, Set<String>> index, String id, String previousKey, String key) {
+		if (previousKey != null && previousKey.equals(key))
+			return;
+		if (previousKey != null) {
+			Set<String> ids = index.get(previousKey);
+			if (ids != null && ids.remove(id) && ids.isEmpty())
+				index.remove(previousKey);
+		}
+		if (key != null)
+			index.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(id);
+	}
+
+}
@@ -0,0 +1,272 @@
+package com.github.raffaelliscandiffio.repository.embedded;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Keeps every entity in memory and makes committed transactions durable in a
+ * local write-ahead log. Transactions run one at a time; a commit releases the
+ * lock once its changes are queued on the log and then waits for the sync, so
+ * the commits queued during a sync are made durable together by the next one.
+ * Every snapshotEveryTransactions commits the whole state is written to a
+ * snapshot in the background and the log files it covers are deleted, so
+ * recovery reads one snapshot and a bounded tail of log.
+ * <p>
+ * A commit whose sync fails has already been seen by the transactions that
+ * followed it, so it cannot be undone: the store fails instead, and refuses
+ * every transaction from then on.
+ */
+public class EmbeddedStore implements Closeable {
+
+	private static final Logger LOGGER = LogManager.getLogger(EmbeddedStore.class);
+
+	public static final int DEFAULT_SNAPSHOT_EVERY_TRANSACTIONS = 10_000;
+
+	private static final String SNAPSHOT_FILE = "snapshot.bin";
+	private static final String SNAPSHOT_TEMP_FILE = "snapshot.tmp";
+
+	private final Path directory;
+	private final int snapshotEveryTransactions;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final ExecutorService snapshotExecutor;
+	private final EmbeddedState state;
+	private final WriteAheadLog log;
+
+	private int commitsSinceSnapshot;
+	private boolean snapshotScheduled;
+	private boolean closed;
+	private volatile IOException failure;
+
+	public EmbeddedStore(Path directory) throws IOException {
+		this(directory, DEFAULT_SNAPSHOT_EVERY_TRANSACTIONS);
+	}
+
+	public EmbeddedStore(Path directory, int snapshotEveryTransactions) throws IOException {
+		this(directory, snapshotEveryTransactions, WriteAheadLog.FORCE);
+	}
+
+	EmbeddedStore(Path directory, int snapshotEveryTransactions, WriteAheadLog.Sync sync) throws IOException {
+		if (snapshotEveryTransactions <= 0)
+			throw new IllegalArgumentException(
+					"Snapshot interval must be positive. Received: " + snapshotEveryTransactions);
+		this.directory = directory;
+		this.snapshotEveryTransactions = snapshotEveryTransactions;
+		Files.createDirectories(directory);
+		this.state = recover();
+		this.log = new WriteAheadLog(directory, state.lastLsn + 1, sync);
+		this.snapshotExecutor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "embedded-snapshot");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Start a transaction, waiting for the running one to finish. The caller must
+	 * commit or close it on the same thread.
+	 */
+	public EmbeddedTransaction begin() {
+		lock.lock();
+		if (closed) {
+			lock.unlock();
+			throw new IllegalStateException("The embedded store is closed");
+		}
+		if (failure != null) {
+			lock.unlock();
+			throw new IllegalStateException("The embedded store failed: " + failure.getMessage(), failure);
+		}
+		return new EmbeddedTransaction(this, state);
+	}
+
+	/**
+	 * Write a snapshot now and delete the log files it covers.
+	 */
+	public synchronized void snapshot() throws IOException {
+		EmbeddedState copy;
+		lock.lock();
+		try {
+			copy = state.copyForSnapshot();
+			log.roll(copy.lastLsn + 1);
+			commitsSinceSnapshot = 0;
+		} finally {
+			lock.unlock();
+		}
+		// a snapshot must never contain a change whose commit failed
+		log.awaitDurable(copy.lastLsn);
+		writeSnapshot(copy);
+		for (Path file : WriteAheadLog.listFiles(directory))
+			if (WriteAheadLog.firstLsn(file) <= copy.lastLsn)
+				Files.deleteIfExists(file);
+	}
+
+	@Override
+	public void close() throws IOException {
+		snapshotExecutor.shutdown();
+		try {
+			snapshotExecutor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		lock.lock();
+		try {
+			if (closed)
+				return;
+			closed = true;
+		} finally {
+			lock.unlock();
+		}
+		// a snapshot on close makes the next start read no log at all, but must
+		// not hold the changes of a failed commit
+		try {
+			if (failure == null)
+				snapshot();
+		} finally {
+			log.close();
+		}
+	}
+
+	void commit(EmbeddedTransaction transaction) {
+		long lsn;
+		try {
+			if (!transaction.hasChanges()) {
+				transaction.finish();
+				return;
+			}
+			lsn = state.lastLsn + 1;
+			log.append(lsn, encode(lsn, transaction));
+			state.lastLsn = lsn;
+			transaction.finish();
+			if (++commitsSinceSnapshot >= snapshotEveryTransactions && !snapshotScheduled) {
+				snapshotScheduled = true;
+				snapshotExecutor.execute(this::snapshotQuietly);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			// on failure the transaction still holds the lock and rolls back on close
+			if (transaction.isFinished())
+				lock.unlock();
+		}
+		try {
+			log.awaitDurable(lsn);
+		} catch (IOException e) {
+			failure = e;
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	void rollback(EmbeddedTransaction transaction) {
+		try {
+			List<EmbeddedTransaction.Change> undo = transaction.undoChanges();
+			for (int i = undo.size() - 1; i >= 0; i--) {
+				EmbeddedTransaction.Change change = undo.get(i);
+				state.put(change.table, change.id, change.row);
+			}
+			transaction.finish();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void snapshotQuietly() {
+		try {
+			snapshot();
+		} catch (IOException | RuntimeException e) {
+			LOGGER.log(Level.ERROR, "Cannot write a snapshot of the embedded store", e);
+		} finally {
+			lock.lock();
+			snapshotScheduled = false;
+			lock.unlock();
+		}
+	}
+
+	private EmbeddedState recover() throws IOException {
+		EmbeddedState recovered = new EmbeddedState();
+		Path snapshot = directory.resolve(SNAPSHOT_FILE);
+		if (Files.exists(snapshot)) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+				recovered = EmbeddedState.readSnapshot(in);
+			}
+		}
+		EmbeddedState target = recovered;
+		for (Path file : WriteAheadLog.listFiles(directory)) {
+			try {
+				WriteAheadLog.replay(file, payload -> apply(target, payload));
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		}
+		return recovered;
+	}
+
+	private static void apply(EmbeddedState target, byte[] payload) {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+			long lsn = in.readLong();
+			if (lsn <= target.lastLsn)
+				return;
+			if (lsn != target.lastLsn + 1)
+				throw new IOException("Missing write-ahead log records " + (target.lastLsn + 1) + " to " + (lsn - 1));
+			target.lastId = Math.max(target.lastId, in.readLong());
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				EmbeddedState.Table table = EmbeddedState.Table.values()[in.readByte()];
+				String id = in.readUTF();
+				target.put(table, id, in.readBoolean() ? EmbeddedRow.read(table, in) : null);
+			}
+			target.lastLsn = lsn;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private byte[] encode(long lsn, EmbeddedTransaction transaction) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeLong(lsn);
+			out.writeLong(state.lastId);
+			out.writeInt(transaction.redoChanges().size());
+			for (EmbeddedTransaction.Change change : transaction.redoChanges()) {
+				out.writeByte(change.table.ordinal());
+				out.writeUTF(change.id);
+				out.writeBoolean(change.row != null);
+				if (change.row != null)
+					change.row.write(out);
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	private void writeSnapshot(EmbeddedState copy) throws IOException {
+		Path temp = directory.resolve(SNAPSHOT_TEMP_FILE);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			copy.writeSnapshot(out);
+		}
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+			channel.force(true);
+		}
+		Files.move(temp, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+}
@@ -0,0 +1,99 @@
+package com.github.raffaelliscandiffio.repository.embedded;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A transaction of the embedded store. Changes are applied in place while the
+ * transaction holds the store lock, keeping the previous rows to undo them on
+ * rollback and the new rows to log them on commit.
+ */
+public final class EmbeddedTransaction implements AutoCloseable {
+
+	static final class Change {
+		final EmbeddedState.Table table;
+		final String id;
+		final EmbeddedRow row;
+
+		Change(EmbeddedState.Table table, String id, EmbeddedRow row) {
+			this.table = table;
+			this.id = id;
+			this.row = row;
+		}
+	}
+
+	private final EmbeddedStore store;
+	private final EmbeddedState state;
+	private final List<Change> undo = new ArrayList<>();
+	private final Map<String, Change> redo = new LinkedHashMap<>();
+	private boolean finished;
+
+	EmbeddedTransaction(EmbeddedStore store, EmbeddedState state) {
+		this.store = store;
+		this.state = state;
+	}
+
+	/**
+	 * Log the changes and wait until they are durable. The store lock is released
+	 * before waiting, so the next transaction can run meanwhile.
+	 */
+	public void commit() {
+		store.commit(this);
+	}
+
+	/**
+	 * Roll back the changes unless the transaction committed.
+	 */
+	@Override
+	public void close() {
+		if (!finished)
+			store.rollback(this);
+	}
+
+	EmbeddedState state() {
+		return state;
+	}
+
+	EmbeddedRow get(EmbeddedState.Table table, String id) {
+		return state.get(table, id);
+	}
+
+	void put(EmbeddedState.Table table, String id, EmbeddedRow row) {
+		undo.add(new Change(table, id, state.put(table, id, row)));
+		// only the last row of each entity is logged
+		redo.put(table.name() + ":" + id, new Change(table, id, row));
+	}
+
+	void remove(EmbeddedState.Table table, String id) {
+		if (state.get(table, id) != null)
+			put(table, id, null);
+	}
+
+	String nextId() {
+		return state.nextId();
+	}
+
+	List<Change> undoChanges() {
+		return undo;
+	}
+
+	Collection<Change> redoChanges() {
+		return redo.values();
+	}
+
+	boolean hasChanges() {
+		return !redo.isEmpty();
+	}
+
+	boolean isFinished() {
+		return finished;
+	}
+
+	void finish() {
+		finished = true;
+	}
+
+}
@@ -0,0 +1,69 @@
+package com.github.raffaelliscandiffio.repository.embedded;
+
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.github.raffaelliscandiffio.model.Order;
+import com.github.raffaelliscandiffio.repository.OrderRepository;
+
+public class OrderEmbeddedRepository implements OrderRepository {
+
+	private EmbeddedTransaction transaction;
+
+	public OrderEmbeddedRepository(EmbeddedTransaction transaction) {
+		this.transaction = transaction;
+	}
+
+	@Override
+	public void save(Order order) {
+		String id = transaction.nextId();
+		transaction.put(EmbeddedState.Table.ORDER, id, new EmbeddedRow.OrderRow(order.getStatus(),
+				order.getVersion(), order.getTotal(), order.getLineCount()));
+		order.setId(id);
+	}
+
+	@Override
+	public Order findById(String id) {
+		return toOrder(id, (EmbeddedRow.OrderRow) transaction.get(EmbeddedState.Table.ORDER, id));
+	}
+
+	@Override
+	public void delete(String id) {
+		Set<String> itemIds = transaction.state().itemIdsOfOrder(id);
+		if (!itemIds.isEmpty())
+			throw new IllegalStateException("Reference error: cannot delete Order with id " + id
+					+ " because OrderItem with id " + itemIds.iterator().next() + " has a reference to it.");
+		transaction.remove(EmbeddedState.Table.ORDER, id);
+	}
+
+	@Override
+	public void update(Order order) {
+		String id = order.getId();
+		EmbeddedRow.OrderRow row = (EmbeddedRow.OrderRow) transaction.get(EmbeddedState.Table.ORDER, id);
+		if (row == null)
+			throw new NoSuchElementException("Order with id " + id + " not found.");
+		transaction.put(EmbeddedState.Table.ORDER, id,
+				new EmbeddedRow.OrderRow(order.getStatus(), row.version + 1, row.total, row.lineCount));
+		order.setVersion(row.version + 1);
+	}
+
+	@Override
+	public void addToTotals(String id, double amount, int lines) {
+		EmbeddedRow.OrderRow row = (EmbeddedRow.OrderRow) transaction.get(EmbeddedState.Table.ORDER, id);
+		if (row != null)
+			transaction.put(EmbeddedState.Table.ORDER, id,
+					new EmbeddedRow.OrderRow(row.status, row.version, row.total + amount, row.lineCount + lines));
+	}
+
+	static Order toOrder(String id, EmbeddedRow.OrderRow row) {
+		if (row == null)
+			return null;
+		Order order = new Order(row.status);
+		order.setId(id);
+		order.setVersion(row.version);
+		order.setTotal(row.total);
+		order.setLineCount(row.lineCount);
+		return order;
+	}
+
+}
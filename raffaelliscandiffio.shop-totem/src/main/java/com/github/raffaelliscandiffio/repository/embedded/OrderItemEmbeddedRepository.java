@@ -0,0 +1,91 @@
+package com.github.raffaelliscandiffio.repository.embedded;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.github.raffaelliscandiffio.model.OrderItem;
+import com.github.raffaelliscandiffio.repository.OrderItemRepository;
+
+public class OrderItemEmbeddedRepository implements OrderItemRepository {
+
+	private EmbeddedTransaction transaction;
+
+	public OrderItemEmbeddedRepository(EmbeddedTransaction transaction) {
+		this.transaction = transaction;
+	}
+
+	@Override
+	public void save(OrderItem orderItem) {
+		String productId = orderItem.getProduct().getId();
+		if (transaction.get(EmbeddedState.Table.PRODUCT, productId) == null)
+			throw new NoSuchElementException(
+					"Reference error, cannot save OrderItem: " + idNotFoundToString("Product", productId));
+		String orderId = orderItem.getOrder().getId();
+		if (transaction.get(EmbeddedState.Table.ORDER, orderId) == null)
+			throw new NoSuchElementException(
+					"Reference error, cannot save OrderItem: " + idNotFoundToString("Order", orderId));
+		String id = transaction.nextId();
+		transaction.put(EmbeddedState.Table.ITEM, id,
+				new EmbeddedRow.ItemRow(productId, orderId, orderItem.getQuantity(), orderItem.getVersion()));
+		orderItem.setId(id);
+	}
+
+	@Override
+	public OrderItem findById(String id) {
+		return toItem(id, (EmbeddedRow.ItemRow) transaction.get(EmbeddedState.Table.ITEM, id));
+	}
+
+	@Override
+	public void delete(String id) {
+		transaction.remove(EmbeddedState.Table.ITEM, id);
+	}
+
+	@Override
+	public void update(OrderItem orderItem) {
+		String id = orderItem.getId();
+		EmbeddedRow.ItemRow row = (EmbeddedRow.ItemRow) transaction.get(EmbeddedState.Table.ITEM, id);
+		if (row == null)
+			throw new NoSuchElementException(idNotFoundToString("OrderItem", id));
+		transaction.put(EmbeddedState.Table.ITEM, id,
+				new EmbeddedRow.ItemRow(row.productId, row.orderId, orderItem.getQuantity(), row.version + 1));
+		orderItem.setVersion(row.version + 1);
+	}
+
+	@Override
+	public List<OrderItem> getListByOrderId(String orderId) {
+		List<OrderItem> items = new ArrayList<>();
+		for (String id : transaction.state().itemIdsOfOrder(orderId))
+			items.add(findById(id));
+		return items;
+	}
+
+	@Override
+	public OrderItem findByProductAndOrderId(String productId, String orderId) {
+		for (String id : transaction.state().itemIdsOfOrder(orderId)) {
+			EmbeddedRow.ItemRow row = (EmbeddedRow.ItemRow) transaction.get(EmbeddedState.Table.ITEM, id);
+			if (row.productId.equals(productId))
+				return toItem(id, row);
+		}
+		return null;
+	}
+
+	private String idNotFoundToString(String type, String id) {
+		return type + " with id " + id + " not found.";
+	}
+
+	private OrderItem toItem(String id, EmbeddedRow.ItemRow row) {
+		if (row == null)
+			return null;
+		OrderItem orderItem = new OrderItem(
+				ProductEmbeddedRepository.toProduct(row.productId,
+						(EmbeddedRow.ProductRow) transaction.get(EmbeddedState.Table.PRODUCT, row.productId)),
+				OrderEmbeddedRepository.toOrder(row.orderId,
+						(EmbeddedRow.OrderRow) transaction.get(EmbeddedState.Table.ORDER, row.orderId)),
+				row.quantity);
+		orderItem.setId(id);
+		orderItem.setVersion(row.version);
+		return orderItem;
+	}
+
+}
@@ -0,0 +1,61 @@
+package com.github.raffaelliscandiffio.repository.embedded;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.repository.ProductRepository;
+
+public class ProductEmbeddedRepository implements ProductRepository {
+
+	private EmbeddedTransaction transaction;
+
+	public ProductEmbeddedRepository(EmbeddedTransaction transaction) {
+		this.transaction = transaction;
+	}
+
+	@Override
+	public void save(Product product) {
+		String id = transaction.nextId();
+		transaction.put(EmbeddedState.Table.PRODUCT, id, new EmbeddedRow.ProductRow(product.getName(), product.getPrice()));
+		product.setId(id);
+	}
+
+	@Override
+	public List<Product> findAll() {
+		List<Product> products = new ArrayList<>();
+		for (Map.Entry<String, EmbeddedRow> row : transaction.state().products().entrySet())
+			products.add(toProduct(row.getKey(), (EmbeddedRow.ProductRow) row.getValue()));
+		return products;
+	}
+
+	@Override
+	public Product findById(String id) {
+		return toProduct(id, (EmbeddedRow.ProductRow) transaction.get(EmbeddedState.Table.PRODUCT, id));
+	}
+
+	@Override
+	public List<Product> findPage(String afterId, int limit) {
+		NavigableMap<String, EmbeddedRow> products = transaction.state().products();
+		if (afterId != null)
+			products = products.tailMap(afterId, false);
+		List<Product> page = new ArrayList<>();
+		for (Map.Entry<String, EmbeddedRow> row : products.entrySet()) {
+			if (page.size() == limit)
+				break;
+			page.add(toProduct(row.getKey(), (EmbeddedRow.ProductRow) row.getValue()));
+		}
+		return page;
+	}
+
+	static Product toProduct(String id, EmbeddedRow.ProductRow row) {
+		if (row == null)
+			return null;
+		Product product = new Product(row.name, row.price);
+		product.setId(id);
+		return product;
+	}
+
+}
@@ -0,0 +1,108 @@
+package com.github.raffaelliscandiffio.repository.embedded;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.github.raffaelliscandiffio.model.Stock;
+import com.github.raffaelliscandiffio.repository.StockRepository;
+
+/**
+ * Transactions of the embedded store run one at a time, so the shards need no
+ * further locking.
+ */
+public class StockEmbeddedRepository implements StockRepository {
+
+	private EmbeddedTransaction transaction;
+
+	public StockEmbeddedRepository(EmbeddedTransaction transaction) {
+		this.transaction = transaction;
+	}
+
+	@Override
+	public Stock findById(String id) {
+		return toStock(id, (EmbeddedRow.StockRow) transaction.get(EmbeddedState.Table.STOCK, id));
+	}
+
+	@Override
+	public void save(Stock stock) {
+		String productId = stock.getProduct().getId();
+		if (transaction.get(EmbeddedState.Table.PRODUCT, productId) == null)
+			throw new NoSuchElementException("Referenced Product with id " + productId + " not found.");
+		String id = transaction.nextId();
+		transaction.put(EmbeddedState.Table.STOCK, id,
+				new EmbeddedRow.StockRow(productId, stock.getQuantity(), stock.getShard(), stock.getVersion()));
+		stock.setId(id);
+	}
+
+	@Override
+	public void update(Stock stock) {
+		String id = stock.getId();
+		EmbeddedRow.StockRow row = (EmbeddedRow.StockRow) transaction.get(EmbeddedState.Table.STOCK, id);
+		if (row == null)
+			throw new NoSuchElementException("Stock with id " + id + " not found.");
+		transaction.put(EmbeddedState.Table.STOCK, id,
+				new EmbeddedRow.StockRow(row.productId, stock.getQuantity(), row.shard, row.version + 1));
+		stock.setVersion(row.version + 1);
+	}
+
+	@Override
+	public Stock findByProductId(String productId) {
+		return pickRandomShard(findAllByProductId(productId));
+	}
+
+	@Override
+	public Stock findByProductIdWithQuantity(String productId, int quantity) {
+		List<Stock> candidates = new ArrayList<>();
+		for (Stock shard : findAllByProductId(productId))
+			if (shard.getQuantity() >= quantity)
+				candidates.add(shard);
+		return pickRandomShard(candidates);
+	}
+
+	@Override
+	public List<Stock> findAllByProductId(String productId) {
+		List<Stock> shards = new ArrayList<>();
+		for (String id : transaction.state().stockIdsOfProduct(productId))
+			shards.add(findById(id));
+		shards.sort(Comparator.comparingInt(Stock::getShard));
+		return shards;
+	}
+
+	@Override
+	public int getTotalQuantityByProductId(String productId) {
+		int total = 0;
+		for (String id : transaction.state().stockIdsOfProduct(productId))
+			total += ((EmbeddedRow.StockRow) transaction.get(EmbeddedState.Table.STOCK, id)).quantity;
+		return total;
+	}
+
+	@Override
+	public void addToQuantity(String id, int delta) {
+		EmbeddedRow.StockRow row = (EmbeddedRow.StockRow) transaction.get(EmbeddedState.Table.STOCK, id);
+		if (row != null)
+			transaction.put(EmbeddedState.Table.STOCK, id,
+					new EmbeddedRow.StockRow(row.productId, row.quantity + delta, row.shard, row.version + 1));
+	}
+
+	private Stock pickRandomShard(List<Stock> candidates) {
+		if (candidates.isEmpty())
+			return null;
+		return candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+	}
+
+	private Stock toStock(String id, EmbeddedRow.StockRow row) {
+		if (row == null)
+			return null;
+		Stock stock = new Stock(
+				ProductEmbeddedRepository.toProduct(row.productId,
+						(EmbeddedRow.ProductRow) transaction.get(EmbeddedState.Table.PRODUCT, row.productId)),
+				row.quantity, row.shard);
+		stock.setId(id);
+		stock.setVersion(row.version);
+		return stock;
+	}
+
+}
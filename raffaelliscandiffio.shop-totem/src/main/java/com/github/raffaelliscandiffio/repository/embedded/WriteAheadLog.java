@@ -0,0 +1,252 @@
+package com.github.raffaelliscandiffio.repository.embedded;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Log of the committed transactions, one frame each: the payload length, the
+ * CRC32 of the payload and the payload. Appends are queued and a single thread
+ * writes everything queued so far with one force, so concurrent commits share
+ * the cost of a sync (group commit). Files are named after the sequence number
+ * of their first record and a new file is started when a snapshot is taken.
+ */
+final class WriteAheadLog implements Closeable {
+
+	private static final String FILE_PREFIX = "wal-";
+	private static final String FILE_SUFFIX = ".log";
+	private static final int FRAME_HEADER_SIZE = 8;
+
+	/**
+	 * Forces the records written to a file to the disk.
+	 */
+	interface Sync {
+		void force(FileChannel channel) throws IOException;
+	}
+
+	static final Sync FORCE = channel -> channel.force(false);
+
+	private final Path directory;
+	private final Sync sync;
+	private final Thread flusher;
+
+	// a frame to write, or a request to start a new file when frame is null
+	private static final class Entry {
+		final long lsn;
+		final byte[] frame;
+
+		Entry(long lsn, byte[] frame) {
+			this.lsn = lsn;
+			this.frame = frame;
+		}
+	}
+
+	private List<Entry> pending = new ArrayList<>();
+	private long appendedLsn;
+	private long durableLsn;
+	private IOException failure;
+	private boolean closed;
+	private boolean stopped;
+
+	// only used by the flusher after construction
+	private FileChannel channel;
+
+	WriteAheadLog(Path directory, long nextLsn) throws IOException {
+		this(directory, nextLsn, FORCE);
+	}
+
+	WriteAheadLog(Path directory, long nextLsn, Sync sync) throws IOException {
+		this.directory = directory;
+		this.sync = sync;
+		this.appendedLsn = nextLsn - 1;
+		this.durableLsn = nextLsn - 1;
+		this.channel = openFile(nextLsn);
+		this.flusher = new Thread(this::flushLoop, "embedded-wal");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	synchronized void append(long lsn, byte[] payload) throws IOException {
+		checkUsable();
+		ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + payload.length);
+		frame.putInt(payload.length).putInt(checksum(payload)).put(payload);
+		pending.add(new Entry(lsn, frame.array()));
+		appendedLsn = lsn;
+		notifyAll();
+	}
+
+	/**
+	 * Write the records appended from now on to a new file starting at nextLsn.
+	 */
+	synchronized void roll(long nextLsn) throws IOException {
+		checkUsable();
+		pending.add(new Entry(nextLsn, null));
+		notifyAll();
+	}
+
+	synchronized void awaitDurable(long lsn) throws IOException {
+		while (durableLsn < lsn) {
+			if (failure != null)
+				throw new IOException("The write-ahead log failed", failure);
+			if (stopped)
+				throw new IOException("The write-ahead log is closed");
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the write-ahead log");
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			notifyAll();
+		}
+		try {
+			flusher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		synchronized (this) {
+			if (failure != null)
+				throw failure;
+		}
+	}
+
+	static List<Path> listFiles(Path directory) throws IOException {
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+			for (Path file : stream)
+				files.add(file);
+		}
+		// the zero padded names sort by first sequence number
+		Collections.sort(files);
+		return files;
+	}
+
+	static long firstLsn(Path file) {
+		String name = file.getFileName().toString();
+		return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+	}
+
+	/**
+	 * Pass the payload of every intact frame of the file to the consumer, in
+	 * order, and cut off a torn tail left by a crash.
+	 */
+	static void replay(Path file, Consumer<byte[]> consumer) throws IOException {
+		try (FileChannel log = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long size = log.size();
+			long position = 0;
+			ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+			while (position + FRAME_HEADER_SIZE <= size) {
+				((Buffer) header).clear();
+				readFully(log, header, position);
+				int length = header.getInt(0);
+				if (length <= 0 || length > size - position - FRAME_HEADER_SIZE)
+					break;
+				ByteBuffer payload = ByteBuffer.allocate(length);
+				readFully(log, payload, position + FRAME_HEADER_SIZE);
+				if (checksum(payload.array()) != header.getInt(4))
+					break;
+				consumer.accept(payload.array());
+				position += FRAME_HEADER_SIZE + length;
+			}
+			if (position < size) {
+				log.truncate(position);
+				log.force(true);
+			}
+		}
+	}
+
+	private void flushLoop() {
+		try {
+			while (true) {
+				List<Entry> batch;
+				long batchLsn;
+				synchronized (this) {
+					while (pending.isEmpty() && !closed)
+						wait();
+					if (pending.isEmpty())
+						return;
+					batch = pending;
+					pending = new ArrayList<>();
+					batchLsn = appendedLsn;
+				}
+				for (Entry entry : batch) {
+					if (entry.frame == null) {
+						sync.force(channel);
+						channel.close();
+						channel = openFile(entry.lsn);
+					} else {
+						ByteBuffer frame = ByteBuffer.wrap(entry.frame);
+						while (frame.hasRemaining())
+							channel.write(frame);
+					}
+				}
+				sync.force(channel);
+				synchronized (this) {
+					durableLsn = batchLsn;
+					notifyAll();
+				}
+			}
+		} catch (IOException e) {
+			synchronized (this) {
+				failure = e;
+				notifyAll();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			synchronized (this) {
+				stopped = true;
+				notifyAll();
+			}
+		}
+	}
+
+	private FileChannel openFile(long firstLsn) throws IOException {
+		// a file with the same name holds no intact record, recovery would have moved
+		// past it otherwise
+		Path file = directory.resolve(String.format("%s%016d%s", FILE_PREFIX, firstLsn, FILE_SUFFIX));
+		return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	private void checkUsable() throws IOException {
+		if (failure != null)
+			throw new IOException("The write-ahead log failed", failure);
+		if (closed)
+			throw new IOException("The write-ahead log is closed");
+	}
+
+	private static void readFully(FileChannel log, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining())
+			if (log.read(buffer, position + buffer.position()) < 0)
+				throw new IOException("Unexpected end of the write-ahead log");
+	}
+
+	private static int checksum(byte[] payload) {
+		CRC32 crc = new CRC32();
+		crc.update(payload, 0, payload.length);
+		return (int) crc.getValue();
+	}
+
+}
@@ -0,0 +1,48 @@
+package com.github.raffaelliscandiffio.repository.mongo;
+
+import org.bson.BsonObjectId;
+import org.bson.BsonValue;
+import org.bson.codecs.CollectibleCodec;
+import org.bson.types.ObjectId;
+
+/**
+ * Gives the models an ObjectId, kept in the model as its hex string, when they
+ * are inserted without one.
+ */
+abstract class EntityCodec<T> implements CollectibleCodec<T> {
+
+	private final Class<T> entityClass;
+
+	EntityCodec(Class<T> entityClass) {
+		this.entityClass = entityClass;
+	}
+
+	abstract String getId(T entity);
+
+	abstract void setId(T entity, String id);
+
+	@Override
+	public Class<T> getEncoderClass() {
+		return entityClass;
+	}
+
+	@Override
+	public T generateIdIfAbsentFromDocument(T entity) {
+		if (!documentHasId(entity))
+			setId(entity, new ObjectId().toHexString());
+		return entity;
+	}
+
+	@Override
+	public boolean documentHasId(T entity) {
+		return getId(entity) != null;
+	}
+
+	@Override
+	public BsonValue getDocumentId(T entity) {
+		if (!documentHasId(entity))
+			throw new IllegalStateException(entityClass.getSimpleName() + " has no id");
+		return new BsonObjectId(new ObjectId(getId(entity)));
+	}
+
+}
@@ -0,0 +1,196 @@
+package com.github.raffaelliscandiffio.repository.mongo;
+
+import static com.mongodb.client.model.Aggregates.match;
+import static com.mongodb.client.model.Filters.in;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonValue;
+import org.bson.codecs.DecoderContext;
+import org.bson.conversions.Bson;
+
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.model.Stock;
+import com.github.raffaelliscandiffio.service.StockAvailability;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+
+/**
+ * Feeds the availability with the changes of the stock and product collections,
+ * read from a change stream of the database on a thread of its own. The stream
+ * is opened before the stock is read, so no change falls between the two; the
+ * changes it then replays carry the whole document and are applied again
+ * harmlessly. If the stream fails or is invalidated the stock is read again.
+ * Change streams need a replica set, as the transactions do.
+ */
+public class MongoCatalogChangeStream implements Closeable {
+
+	private static final Logger LOGGER = LogManager.getLogger(MongoCatalogChangeStream.class);
+	// how long a read of the stream waits for a change, and so for close
+	private static final long MAX_AWAIT_MILLIS = 1000;
+	private static final long RETRY_DELAY_MILLIS = 1000;
+
+	private final MongoDatabase database;
+	private final MongoCollection<Stock> stockCollection;
+	private final String productCollectionName;
+	private final String stockCollectionName;
+	private final StockAvailability availability;
+	private final Thread thread;
+	private volatile boolean running;
+
+	// the quantity of each stock shard, by product, used only by the thread
+	private Map<String, Map<String, Integer>> shardsByProduct = new HashMap<>();
+	private Map<String, String> productOfShard = new HashMap<>();
+
+	public MongoCatalogChangeStream(MongoClient client, String databaseName, String productCollectionName,
+			String stockCollectionName, StockAvailability availability) {
+		this.database = client.getDatabase(databaseName).withCodecRegistry(MongoCodecs.REGISTRY);
+		this.stockCollection = MongoCodecs.collection(client, databaseName, stockCollectionName, Stock.class);
+		this.productCollectionName = productCollectionName;
+		this.stockCollectionName = stockCollectionName;
+		this.availability = availability;
+		this.thread = new Thread(this::run, "catalog-changes");
+		thread.setDaemon(true);
+	}
+
+	public void start() {
+		running = true;
+		thread.start();
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		try {
+			thread.join(MAX_AWAIT_MILLIS + RETRY_DELAY_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void run() {
+		while (running) {
+			try (MongoChangeStreamCursor<ChangeStreamDocument<BsonDocument>> cursor = open()) {
+				readStock();
+				follow(cursor);
+			} catch (MongoException e) {
+				if (!running)
+					return;
+				LOGGER.log(Level.WARN, "The stream of the catalog changes failed, reading the stock again", e);
+				pause();
+			}
+		}
+	}
+
+	private MongoChangeStreamCursor<ChangeStreamDocument<BsonDocument>> open() {
+		List<Bson> pipeline = Collections.singletonList(
+				match(in("ns.coll", Arrays.asList(productCollectionName, stockCollectionName))));
+		return database.watch(pipeline, BsonDocument.class).fullDocument(FullDocument.UPDATE_LOOKUP)
+				.maxAwaitTime(MAX_AWAIT_MILLIS, TimeUnit.MILLISECONDS).cursor();
+	}
+
+	// returns when the stream is invalidated, so that it is opened again
+	private void follow(MongoChangeStreamCursor<ChangeStreamDocument<BsonDocument>> cursor) {
+		while (running) {
+			ChangeStreamDocument<BsonDocument> change = cursor.tryNext();
+			if (change == null)
+				continue;
+			OperationType operation = change.getOperationType();
+			if (operation == OperationType.INVALIDATE)
+				return;
+			if (change.getNamespace() == null)
+				continue;
+			if (change.getNamespace().getCollectionName().equals(stockCollectionName))
+				applyStockChange(operation, change);
+			else if (operation == OperationType.DELETE)
+				availability.productRemoved(documentId(change));
+			else if (change.getFullDocument() != null)
+				availability.productChanged(decode(change.getFullDocument(), Product.class));
+		}
+	}
+
+	private void applyStockChange(OperationType operation, ChangeStreamDocument<BsonDocument> change) {
+		if (operation == OperationType.DELETE) {
+			removeShard(documentId(change));
+		} else if (change.getFullDocument() != null) {
+			// an update looked up after the document was deleted has none, its
+			// deletion follows
+			Stock stock = decode(change.getFullDocument(), Stock.class);
+			putShard(stock.getId(), stock.getProduct().getId(), stock.getQuantity());
+			publish(stock.getProduct().getId());
+		}
+	}
+
+	private String documentId(ChangeStreamDocument<BsonDocument> change) {
+		BsonValue id = change.getDocumentKey().get(MongoCodecs.FIELD_ID);
+		return id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue();
+	}
+
+	// the products that lost all their stock meanwhile are no longer available
+	private void readStock() {
+		Set<String> previousProducts = new HashSet<>(shardsByProduct.keySet());
+		shardsByProduct = new HashMap<>();
+		productOfShard = new HashMap<>();
+		for (Stock stock : stockCollection.find())
+			putShard(stock.getId(), stock.getProduct().getId(), stock.getQuantity());
+		previousProducts.addAll(shardsByProduct.keySet());
+		previousProducts.forEach(this::publish);
+	}
+
+	private void putShard(String stockId, String productId, int quantity) {
+		productOfShard.put(stockId, productId);
+		shardsByProduct.computeIfAbsent(productId, id -> new HashMap<>()).put(stockId, quantity);
+	}
+
+	private void removeShard(String stockId) {
+		String productId = productOfShard.remove(stockId);
+		if (productId == null)
+			return;
+		Map<String, Integer> shards = shardsByProduct.get(productId);
+		shards.remove(stockId);
+		if (shards.isEmpty())
+			shardsByProduct.remove(productId);
+		publish(productId);
+	}
+
+	private void publish(String productId) {
+		int available = 0;
+		for (int quantity : shardsByProduct.getOrDefault(productId, Collections.emptyMap()).values())
+			available += quantity;
+		availability.setAvailable(productId, available);
+	}
+
+	private <T> T decode(BsonDocument document, Class<T> documentClass) {
+		return MongoCodecs.REGISTRY.get(documentClass).decode(new BsonDocumentReader(document),
+				DecoderContext.builder().build());
+	}
+
+	private void pause() {
+		try {
+			Thread.sleep(RETRY_DELAY_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			running = false;
+		}
+	}
+
+}
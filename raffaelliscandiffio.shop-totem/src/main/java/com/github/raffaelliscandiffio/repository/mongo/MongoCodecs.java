@@ -0,0 +1,105 @@
+package com.github.raffaelliscandiffio.repository.mongo;
+
+import static org.bson.codecs.configuration.CodecRegistries.fromCodecs;
+import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.ObjectId;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+
+/**
+ * The codecs that read and write the models straight from and to BSON. The
+ * documents keep the layout written by the repositories, and references to
+ * other entities are decoded as models holding only the id, which the
+ * repositories then resolve.
+ */
+final class MongoCodecs {
+
+	static final String FIELD_ID = "_id";
+
+	static final CodecRegistry REGISTRY = fromRegistries(
+			fromCodecs(new ProductCodec(), new StockCodec(), new OrderCodec(), new OrderItemCodec()),
+			MongoClientSettings.getDefaultCodecRegistry());
+
+	private MongoCodecs() {
+	}
+
+	static <T> MongoCollection<T> collection(MongoClient client, String databaseName, String collectionName,
+			Class<T> documentClass) {
+		return client.getDatabase(databaseName).withCodecRegistry(REGISTRY).getCollection(collectionName,
+				documentClass);
+	}
+
+	static <T> com.mongodb.reactivestreams.client.MongoCollection<T> collection(
+			com.mongodb.reactivestreams.client.MongoClient client, String databaseName, String collectionName,
+			Class<T> documentClass) {
+		return client.getDatabase(databaseName).withCodecRegistry(REGISTRY).getCollection(collectionName,
+				documentClass);
+	}
+
+	static void writeId(BsonWriter writer, String id) {
+		if (id != null)
+			writer.writeObjectId(FIELD_ID, new ObjectId(id));
+	}
+
+	static void writeString(BsonWriter writer, String name, String value) {
+		if (value == null)
+			writer.writeNull(name);
+		else
+			writer.writeString(name, value);
+	}
+
+	static String readId(BsonReader reader) {
+		if (reader.getCurrentBsonType() == BsonType.OBJECT_ID)
+			return reader.readObjectId().toHexString();
+		return readString(reader);
+	}
+
+	static String readString(BsonReader reader) {
+		if (reader.getCurrentBsonType() == BsonType.NULL) {
+			reader.readNull();
+			return null;
+		}
+		return reader.readString();
+	}
+
+	// numbers written by other clients may have any numeric type
+	static double readDouble(BsonReader reader) {
+		switch (reader.getCurrentBsonType()) {
+		case INT32:
+			return reader.readInt32();
+		case INT64:
+			return reader.readInt64();
+		case DOUBLE:
+			return reader.readDouble();
+		default:
+			reader.skipValue();
+			return 0;
+		}
+	}
+
+	static long readLong(BsonReader reader) {
+		switch (reader.getCurrentBsonType()) {
+		case INT32:
+			return reader.readInt32();
+		case INT64:
+			return reader.readInt64();
+		case DOUBLE:
+			return (long) reader.readDouble();
+		default:
+			reader.skipValue();
+			return 0;
+		}
+	}
+
+	static int readInt(BsonReader reader) {
+		return Math.toIntExact(readLong(reader));
+	}
+
+}
@@ -0,0 +1,59 @@
+package com.github.raffaelliscandiffio.repository.mongo;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The entities read or written by the Mongo repositories of one transaction, by
+ * type and id. Repositories sharing a map read each entity at most once and
+ * always return the same instance, which their writes keep up to date. Inside a
+ * transaction the documents change only through those writes, so a known
+ * instance is never stale. A map must not outlive its transaction.
+ */
+public class MongoIdentityMap {
+
+	private final Map<Class<?>, Map<String, Object>> entities = new HashMap<>();
+
+	/**
+	 * The entity with the id, loaded on first use. A missing entity is not
+	 * remembered.
+	 */
+	<T> T find(Class<T> type, String id, Function<String, T> loader) {
+		T known = get(type, id);
+		if (known != null)
+			return known;
+		T loaded = loader.apply(id);
+		if (loaded != null)
+			byType(type).put(id, loaded);
+		return loaded;
+	}
+
+	<T> T get(Class<T> type, String id) {
+		return type.cast(byType(type).get(id));
+	}
+
+	/**
+	 * The instance already known for an entity returned by a query, or the entity
+	 * itself, which becomes known.
+	 */
+	<T> T register(Class<T> type, String id, T entity) {
+		return type.cast(byType(type).computeIfAbsent(id, key -> entity));
+	}
+
+	/**
+	 * Make the entity the known instance, as after it is saved or updated.
+	 */
+	<T> void put(Class<T> type, String id, T entity) {
+		byType(type).put(id, entity);
+	}
+
+	void remove(Class<?> type, String id) {
+		byType(type).remove(id);
+	}
+
+	private Map<String, Object> byType(Class<?> type) {
+		return entities.computeIfAbsent(type, key -> new HashMap<>());
+	}
+
+}
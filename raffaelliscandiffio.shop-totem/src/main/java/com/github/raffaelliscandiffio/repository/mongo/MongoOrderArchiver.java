@@ -0,0 +1,94 @@
+package com.github.raffaelliscandiffio.repository.mongo;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Filters.lt;
+import static com.mongodb.client.model.Sorts.ascending;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import com.github.raffaelliscandiffio.model.OrderStatus;
+import com.github.raffaelliscandiffio.repository.OrderArchiver;
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Indexes;
+
+/**
+ * Moves the closed orders and their items to the archive collections, each
+ * batch in a transaction of its own. Two archivers picking the same orders
+ * conflict, and the transaction of the second is retried without them. The
+ * archive collections must exist: a transaction cannot create them. The window
+ * is measured on the clock of the application, the closes on the clock of the
+ * server.
+ */
+public class MongoOrderArchiver implements OrderArchiver {
+
+	private final MongoClient client;
+	private final MongoCollection<Document> orderCollection;
+	private final MongoCollection<Document> orderItemCollection;
+	private final MongoCollection<Document> orderArchiveCollection;
+	private final MongoCollection<Document> orderItemArchiveCollection;
+
+	public MongoOrderArchiver(MongoClient client, String databaseName, String orderCollectionName,
+			String orderItemCollectionName, String orderArchiveCollectionName,
+			String orderItemArchiveCollectionName) {
+		this.client = client;
+		this.orderCollection = client.getDatabase(databaseName).getCollection(orderCollectionName);
+		this.orderItemCollection = client.getDatabase(databaseName).getCollection(orderItemCollectionName);
+		this.orderArchiveCollection = client.getDatabase(databaseName).getCollection(orderArchiveCollectionName);
+		this.orderItemArchiveCollection = client.getDatabase(databaseName)
+				.getCollection(orderItemArchiveCollectionName);
+	}
+
+	/**
+	 * Create the indexes the archiver relies on, if missing.
+	 */
+	public void createIndexes() {
+		orderCollection.createIndex(Indexes.ascending(OrderCodec.FIELD_STATUS, OrderCodec.FIELD_CLOSED_AT));
+		orderItemArchiveCollection.createIndex(Indexes.ascending(OrderItemCodec.FIELD_ORDER));
+	}
+
+	@Override
+	public int archive(long retentionSeconds, int batchSize) {
+		Date closedBefore = new Date(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(retentionSeconds));
+		try (ClientSession session = client.startSession()) {
+			return session.withTransaction(() -> moveBatch(session, closedBefore, batchSize));
+		}
+	}
+
+	// the items reference their order by the hex string of its id
+	private int moveBatch(ClientSession session, Date closedBefore, int batchSize) {
+		List<Document> orders = orderCollection
+				.find(session, and(eq(OrderCodec.FIELD_STATUS, OrderStatus.CLOSED.name()),
+						lt(OrderCodec.FIELD_CLOSED_AT, closedBefore)))
+				.sort(ascending(OrderCodec.FIELD_CLOSED_AT, MongoCodecs.FIELD_ID)).limit(batchSize)
+				.into(new ArrayList<>());
+		if (orders.isEmpty())
+			return 0;
+		List<ObjectId> orderIds = new ArrayList<>();
+		List<String> orderReferences = new ArrayList<>();
+		for (Document order : orders) {
+			ObjectId id = order.getObjectId(MongoCodecs.FIELD_ID);
+			orderIds.add(id);
+			orderReferences.add(id.toHexString());
+		}
+		List<Document> items = orderItemCollection.find(session, in(OrderItemCodec.FIELD_ORDER, orderReferences))
+				.into(new ArrayList<>());
+		orderArchiveCollection.insertMany(session, orders);
+		if (!items.isEmpty()) {
+			orderItemArchiveCollection.insertMany(session, items);
+			orderItemCollection.deleteMany(session, in(OrderItemCodec.FIELD_ORDER, orderReferences));
+		}
+		orderCollection.deleteMany(session, in(MongoCodecs.FIELD_ID, orderIds));
+		return orders.size();
+	}
+
+}
@@ -0,0 +1,43 @@
+package com.github.raffaelliscandiffio.repository.mongo;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.exists;
+import static com.mongodb.client.model.Filters.or;
+import static com.mongodb.client.model.Projections.include;
+import static com.mongodb.client.model.Updates.inc;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import com.github.raffaelliscandiffio.transaction.LockingStrategy;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+
+final class MongoVersion {
+
+	static final String FIELD_VERSION = "version";
+
+	static final Bson INCREMENT = inc(FIELD_VERSION, 1L);
+
+	static final FindOneAndUpdateOptions RETURN_VERSION = new FindOneAndUpdateOptions()
+			.returnDocument(ReturnDocument.AFTER).projection(include(FIELD_VERSION));
+
+	private MongoVersion() {
+	}
+
+	static Bson filter(Bson idFilter, long version, LockingStrategy lockingStrategy) {
+		if (lockingStrategy != LockingStrategy.OPTIMISTIC)
+			return idFilter;
+		// documents written before the version field existed count as version 0
+		Bson versionFilter = version == 0 ? or(eq(FIELD_VERSION, 0L), exists(FIELD_VERSION, false))
+				: eq(FIELD_VERSION, version);
+		return and(idFilter, versionFilter);
+	}
+
+	static long read(Document document) {
+		Number version = (Number) document.get(FIELD_VERSION);
+		return version == null ? 0 : version.longValue();
+	}
+
+}
@@ -0,0 +1,100 @@
+package com.github.raffaelliscandiffio.repository.mongo;
+
+import static com.mongodb.client.model.Updates.combine;
+import static com.mongodb.client.model.Updates.currentDate;
+import static com.mongodb.client.model.Updates.set;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.conversions.Bson;
+
+import com.github.raffaelliscandiffio.model.Order;
+import com.github.raffaelliscandiffio.model.OrderStatus;
+
+final class OrderCodec extends EntityCodec<Order> {
+
+	static final String FIELD_STATUS = "status";
+	static final String FIELD_TOTAL = "total";
+	static final String FIELD_LINE_COUNT = "lineCount";
+	// stamped by the server when the order is closed, read by the archiver
+	static final String FIELD_CLOSED_AT = "closedAt";
+
+	OrderCodec() {
+		super(Order.class);
+	}
+
+	// an order known only by its id, as referenced by other documents
+	static Order reference(String id) {
+		Order order = new Order(null);
+		order.setId(id);
+		return order;
+	}
+
+	static Bson updateStatus(OrderStatus status) {
+		Bson setStatus = set(FIELD_STATUS, status.toString());
+		return status == OrderStatus.CLOSED ? combine(setStatus, currentDate(FIELD_CLOSED_AT)) : setStatus;
+	}
+
+	@Override
+	public void encode(BsonWriter writer, Order order, EncoderContext encoderContext) {
+		writer.writeStartDocument();
+		MongoCodecs.writeId(writer, order.getId());
+		MongoCodecs.writeString(writer, FIELD_STATUS, order.getStatus() == null ? null : order.getStatus().name());
+		writer.writeInt64(MongoVersion.FIELD_VERSION, order.getVersion());
+		writer.writeDouble(FIELD_TOTAL, order.getTotal());
+		writer.writeInt32(FIELD_LINE_COUNT, order.getLineCount());
+		writer.writeEndDocument();
+	}
+
+	@Override
+	public Order decode(BsonReader reader, DecoderContext decoderContext) {
+		String id = null;
+		String status = null;
+		long version = 0;
+		double total = 0;
+		int lineCount = 0;
+		reader.readStartDocument();
+		while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+			switch (reader.readName()) {
+			case MongoCodecs.FIELD_ID:
+				id = MongoCodecs.readId(reader);
+				break;
+			case FIELD_STATUS:
+				status = MongoCodecs.readString(reader);
+				break;
+			case MongoVersion.FIELD_VERSION:
+				version = MongoCodecs.readLong(reader);
+				break;
+			case FIELD_TOTAL:
+				total = MongoCodecs.readDouble(reader);
+				break;
+			case FIELD_LINE_COUNT:
+				lineCount = MongoCodecs.readInt(reader);
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.readEndDocument();
+		Order order = new Order(status == null ? null : OrderStatus.valueOf(status));
+		order.setId(id);
+		order.setVersion(version);
+		order.setTotal(total);
+		order.setLineCount(lineCount);
+		return order;
+	}
+
+	@Override
+	String getId(Order order) {
+		return order.getId();
+	}
+
+	@Override
+	void setId(Order order, String id) {
+		order.setId(id);
+	}
+
+}
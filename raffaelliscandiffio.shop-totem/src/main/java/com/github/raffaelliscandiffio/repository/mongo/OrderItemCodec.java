@@ -0,0 +1,82 @@
+package com.github.raffaelliscandiffio.repository.mongo;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+import com.github.raffaelliscandiffio.model.OrderItem;
+
+/**
+ * The product and the order of a decoded item are references holding only their
+ * ids.
+ */
+final class OrderItemCodec extends EntityCodec<OrderItem> {
+
+	static final String FIELD_PRODUCT = "product";
+	static final String FIELD_ORDER = "order";
+	static final String FIELD_QUANTITY = "quantity";
+
+	OrderItemCodec() {
+		super(OrderItem.class);
+	}
+
+	@Override
+	public void encode(BsonWriter writer, OrderItem item, EncoderContext encoderContext) {
+		writer.writeStartDocument();
+		MongoCodecs.writeId(writer, item.getId());
+		MongoCodecs.writeString(writer, FIELD_PRODUCT, item.getProduct().getId());
+		MongoCodecs.writeString(writer, FIELD_ORDER, item.getOrder().getId());
+		writer.writeInt32(FIELD_QUANTITY, item.getQuantity());
+		writer.writeInt64(MongoVersion.FIELD_VERSION, item.getVersion());
+		writer.writeEndDocument();
+	}
+
+	@Override
+	public OrderItem decode(BsonReader reader, DecoderContext decoderContext) {
+		String id = null;
+		String productId = null;
+		String orderId = null;
+		int quantity = 0;
+		long version = 0;
+		reader.readStartDocument();
+		while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+			switch (reader.readName()) {
+			case MongoCodecs.FIELD_ID:
+				id = MongoCodecs.readId(reader);
+				break;
+			case FIELD_PRODUCT:
+				productId = MongoCodecs.readString(reader);
+				break;
+			case FIELD_ORDER:
+				orderId = MongoCodecs.readString(reader);
+				break;
+			case FIELD_QUANTITY:
+				quantity = MongoCodecs.readInt(reader);
+				break;
+			case MongoVersion.FIELD_VERSION:
+				version = MongoCodecs.readLong(reader);
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.readEndDocument();
+		OrderItem item = new OrderItem(ProductCodec.reference(productId), OrderCodec.reference(orderId), quantity);
+		item.setId(id);
+		item.setVersion(version);
+		return item;
+	}
+
+	@Override
+	String getId(OrderItem item) {
+		return item.getId();
+	}
+
+	@Override
+	void setId(OrderItem item, String id) {
+		item.setId(id);
+	}
+
+}
@@ -2,26 +2,26 @@ package com.github.raffaelliscandiffio.repository.mongo;
 
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Updates.combine;
 import static com.mongodb.client.model.Updates.set;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 
+import com.github.raffaelliscandiffio.exception.TransactionConflictException;
 import com.github.raffaelliscandiffio.model.Order;
 import com.github.raffaelliscandiffio.model.OrderItem;
-import com.github.raffaelliscandiffio.model.OrderStatus;
 import com.github.raffaelliscandiffio.model.Product;
 import com.github.raffaelliscandiffio.repository.OrderItemRepository;
+import com.github.raffaelliscandiffio.transaction.LockingStrategy;
 import com.mongodb.client.ClientSession;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoCollection;
-import com.mongodb.client.result.UpdateResult;
 
 public class OrderItemMongoRepository implements OrderItemRepository {
 
@@ -29,79 +29,111 @@ public class OrderItemMongoRepository implements OrderItemRepository {
 	private static final String FIELD_PRODUCT = "product";
 	private static final String FIELD_ORDER = "order";
 	private static final String FIELD_QUANTITY = "quantity";
-	private static final String FIELD_NAME = "name";
-	private static final String FIELD_PRICE = "price";
-	private static final String FIELD_STATUS = "status";
 
 	private ClientSession session;
-	private MongoCollection<Document> productCollection;
-	private MongoCollection<Document> orderCollection;
-	private MongoCollection<Document> orderItemCollection;
+	private MongoCollection<Product> productCollection;
+	private MongoCollection<Order> orderCollection;
+	private MongoCollection<OrderItem> orderItemCollection;
+	// for the versions returned by the updates
+	private MongoCollection<Document> orderItemDocuments;
+	private LockingStrategy lockingStrategy;
+	private MongoIdentityMap identityMap;
 
 	public OrderItemMongoRepository(MongoClient client, ClientSession session, String databaseName,
 			String productCollectionName, String orderCollectionName, String orderItemCollectionName) {
+		this(client, session, databaseName, productCollectionName, orderCollectionName, orderItemCollectionName,
+				LockingStrategy.PESSIMISTIC);
+	}
+
+	public OrderItemMongoRepository(MongoClient client, ClientSession session, String databaseName,
+			String productCollectionName, String orderCollectionName, String orderItemCollectionName,
+			LockingStrategy lockingStrategy) {
+		this(client, session, databaseName, productCollectionName, orderCollectionName, orderItemCollectionName,
+				lockingStrategy, new MongoIdentityMap());
+	}
+
+	public OrderItemMongoRepository(MongoClient client, ClientSession session, String databaseName,
+			String productCollectionName, String orderCollectionName, String orderItemCollectionName,
+			LockingStrategy lockingStrategy, MongoIdentityMap identityMap) {
 		this.session = session;
-		this.productCollection = client.getDatabase(databaseName).getCollection(productCollectionName);
-		this.orderCollection = client.getDatabase(databaseName).getCollection(orderCollectionName);
-		this.orderItemCollection = client.getDatabase(databaseName).getCollection(orderItemCollectionName);
+		this.productCollection = MongoCodecs.collection(client, databaseName, productCollectionName, Product.class);
+		this.orderCollection = MongoCodecs.collection(client, databaseName, orderCollectionName, Order.class);
+		this.orderItemCollection = MongoCodecs.collection(client, databaseName, orderItemCollectionName,
+				OrderItem.class);
+		this.orderItemDocuments = orderItemCollection.withDocumentClass(Document.class);
+		this.lockingStrategy = lockingStrategy;
+		this.identityMap = identityMap;
 	}
 
 	@Override
 	public void save(OrderItem orderItem) {
 		String productId = orderItem.getProduct().getId();
-		if (productCollection.find(eqFilter(productId)).first() == null)
+		if (findProductById(productId) == null)
 			throw new NoSuchElementException(
 					"Reference error, cannot save OrderItem: " + idNotFoundToString("Product", productId));
 
 		String orderId = orderItem.getOrder().getId();
-		if (orderCollection.find(session, eqFilter(orderId)).first() == null)
+		if (findOrderById(orderId) == null)
 			throw new NoSuchElementException(
 					"Reference error, cannot save OrderItem: " + idNotFoundToString("Order", orderId));
 
-		Document doc = new Document().append(FIELD_PRODUCT, orderItem.getProduct().getId())
-				.append(FIELD_ORDER, orderItem.getOrder().getId()).append(FIELD_QUANTITY, orderItem.getQuantity());
-		orderItemCollection.insertOne(session, doc);
-		orderItem.setId(doc.get(FIELD_ID).toString());
+		orderItem.setId(new ObjectId().toHexString());
+		orderItemCollection.insertOne(session, orderItem);
+		identityMap.put(OrderItem.class, orderItem.getId(), orderItem);
 	}
 
 	@Override
 	public OrderItem findById(String id) {
-		Document itemDocument = orderItemCollection.find(session, eqFilter(id)).first();
-		if (itemDocument == null)
-			return null;
-		return fromDocumentToItem(itemDocument);
+		return identityMap.find(OrderItem.class, id, key -> {
+			OrderItem item = orderItemCollection.find(session, eqFilter(key)).first();
+			if (item == null)
+				return null;
+			return resolveReferences(item);
+		});
 	}
 
 	@Override
 	public void delete(String id) {
 		orderItemCollection.deleteOne(session, eqFilter(id));
-
+		identityMap.remove(OrderItem.class, id);
 	}
 
 	@Override
 	public void update(OrderItem orderItem) {
-		Bson update = set(FIELD_QUANTITY, orderItem.getQuantity());
+		Bson update = combine(set(FIELD_QUANTITY, orderItem.getQuantity()), MongoVersion.INCREMENT);
 		String id = orderItem.getId();
-		UpdateResult result = orderItemCollection.updateOne(session, eqFilter(id), update);
-		if (result.getMatchedCount() == 0)
+		Document result = orderItemDocuments.findOneAndUpdate(session,
+				MongoVersion.filter(eqFilter(id), orderItem.getVersion(), lockingStrategy), update,
+				MongoVersion.RETURN_VERSION);
+		if (result == null) {
+			if (lockingStrategy == LockingStrategy.OPTIMISTIC && findById(id) != null)
+				throw new TransactionConflictException("OrderItem with id " + id + " was modified concurrently.");
 			throw new NoSuchElementException(idNotFoundToString("OrderItem", id));
-
+		}
+		orderItem.setVersion(MongoVersion.read(result));
+		// the instance known to the transaction may be another copy of the item
+		OrderItem known = identityMap.get(OrderItem.class, id);
+		if (known != null && known != orderItem) {
+			known.setQuantity(orderItem.getQuantity());
+			known.setVersion(orderItem.getVersion());
+		}
 	}
 
 	@Override
 	public List<OrderItem> getListByOrderId(String orderId) {
-		return StreamSupport.stream(orderItemCollection.find(session, eq(FIELD_ORDER, orderId)).spliterator(), false)
-				.map(this::fromDocumentToItem).collect(Collectors.toList());
-
+		List<OrderItem> items = new ArrayList<>();
+		for (OrderItem item : orderItemCollection.find(session, eq(FIELD_ORDER, orderId)))
+			items.add(known(item));
+		return items;
 	}
 
 	@Override
 	public OrderItem findByProductAndOrderId(String productId, String orderId) {
-		Document itemDocument = orderItemCollection
+		OrderItem item = orderItemCollection
 				.find(session, and(eq(FIELD_PRODUCT, productId), eq(FIELD_ORDER, orderId))).first();
-		if (itemDocument == null)
+		if (item == null)
 			return null;
-		return fromDocumentToItem(itemDocument);
+		return known(item);
 	}
 
 	private String idNotFoundToString(String type, String id) {
@@ -112,18 +144,27 @@ public class OrderItemMongoRepository implements OrderItemRepository {
 		return eq(FIELD_ID, new ObjectId(id));
 	}
 
-	private OrderItem fromDocumentToItem(Document itemDocument) {
-		String productId = itemDocument.getString(FIELD_PRODUCT);
-		String orderId = itemDocument.getString(FIELD_ORDER);
-		Document productDocument = productCollection.find(session, eqFilter(productId)).first();
-		Document orderDocument = orderCollection.find(session, eqFilter(orderId)).first();
-		Product product = new Product(productDocument.getString(FIELD_NAME), productDocument.getDouble(FIELD_PRICE));
-		product.setId(productId);
-		Order order = new Order(OrderStatus.valueOf(orderDocument.getString(FIELD_STATUS)));
-		order.setId(orderId);
-		OrderItem orderItem = new OrderItem(product, order, itemDocument.getInteger(FIELD_QUANTITY));
-		orderItem.setId(itemDocument.get("_id").toString());
-		return orderItem;
+	// the instance of the transaction for an item read by a query
+	private OrderItem known(OrderItem decoded) {
+		OrderItem item = identityMap.register(OrderItem.class, decoded.getId(), decoded);
+		if (item == decoded)
+			resolveReferences(item);
+		return item;
+	}
+
+	private OrderItem resolveReferences(OrderItem item) {
+		item.setProduct(findProductById(item.getProduct().getId()));
+		item.setOrder(findOrderById(item.getOrder().getId()));
+		return item;
+	}
+
+	private Product findProductById(String productId) {
+		return identityMap.find(Product.class, productId,
+				key -> productCollection.find(session, eqFilter(key)).first());
+	}
+
+	private Order findOrderById(String orderId) {
+		return identityMap.find(Order.class, orderId, key -> orderCollection.find(session, eqFilter(key)).first());
 	}
 
 }
@@ -1,7 +1,8 @@
 package com.github.raffaelliscandiffio.repository.mongo;
 
 import static com.mongodb.client.model.Filters.eq;
-import static com.mongodb.client.model.Updates.set;
+import static com.mongodb.client.model.Updates.combine;
+import static com.mongodb.client.model.Updates.inc;
 
 import java.util.NoSuchElementException;
 
@@ -9,46 +10,60 @@ import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 
+import com.github.raffaelliscandiffio.exception.TransactionConflictException;
 import com.github.raffaelliscandiffio.model.Order;
-import com.github.raffaelliscandiffio.model.OrderStatus;
 import com.github.raffaelliscandiffio.repository.OrderRepository;
+import com.github.raffaelliscandiffio.transaction.LockingStrategy;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.ClientSession;
 import com.mongodb.client.MongoCollection;
-import com.mongodb.client.result.UpdateResult;
 
 public class OrderMongoRepository implements OrderRepository {
 
 	private static final String FIELD_ID = "_id";
-	private static final String FIELD_STATUS = "status";
+	private static final String FIELD_TOTAL = "total";
+	private static final String FIELD_LINE_COUNT = "lineCount";
 
 	private ClientSession session;
-	private MongoCollection<Document> orderCollection;
+	private MongoCollection<Order> orderCollection;
+	// for the versions returned by the updates
+	private MongoCollection<Document> orderDocuments;
 	private MongoCollection<Document> itemCollection;
+	private LockingStrategy lockingStrategy;
+	private MongoIdentityMap identityMap;
 
 	public OrderMongoRepository(MongoClient client, ClientSession session, String databaseName,
 			String orderCollectionName, String itemCollection) {
+		this(client, session, databaseName, orderCollectionName, itemCollection, LockingStrategy.PESSIMISTIC);
+	}
+
+	public OrderMongoRepository(MongoClient client, ClientSession session, String databaseName,
+			String orderCollectionName, String itemCollection, LockingStrategy lockingStrategy) {
+		this(client, session, databaseName, orderCollectionName, itemCollection, lockingStrategy,
+				new MongoIdentityMap());
+	}
+
+	public OrderMongoRepository(MongoClient client, ClientSession session, String databaseName,
+			String orderCollectionName, String itemCollection, LockingStrategy lockingStrategy,
+			MongoIdentityMap identityMap) {
 		this.session = session;
-		this.orderCollection = client.getDatabase(databaseName).getCollection(orderCollectionName);
+		this.orderCollection = MongoCodecs.collection(client, databaseName, orderCollectionName, Order.class);
+		this.orderDocuments = orderCollection.withDocumentClass(Document.class);
 		this.itemCollection = client.getDatabase(databaseName).getCollection(itemCollection);
-
+		this.lockingStrategy = lockingStrategy;
+		this.identityMap = identityMap;
 	}
 
 	@Override
 	public void save(Order order) {
-		Document orderDocument = new Document().append(FIELD_STATUS, order.getStatus().toString());
-		orderCollection.insertOne(session, orderDocument);
-		order.setId(orderDocument.get(FIELD_ID).toString());
+		order.setId(new ObjectId().toHexString());
+		orderCollection.insertOne(session, order);
+		identityMap.put(Order.class, order.getId(), order);
 	}
 
 	@Override
 	public Order findById(String id) {
-		Document doc = orderCollection.find(session, eqFilter(id)).first();
-		if (doc == null)
-			return null;
-		Order order = new Order(OrderStatus.valueOf(doc.getString(FIELD_STATUS)));
-		order.setId(id);
-		return order;
+		return identityMap.find(Order.class, id, key -> orderCollection.find(session, eqFilter(key)).first());
 	}
 
 	@Override
@@ -58,16 +73,41 @@ public class OrderMongoRepository implements OrderRepository {
 			throw new IllegalStateException("Reference error: cannot delete Order with id " + id
 					+ " because OrderItem with id " + itemDoc.get("_id").toString() + " has a reference to it.");
 		orderCollection.deleteOne(session, eqFilter(id));
+		identityMap.remove(Order.class, id);
 	}
 
 	@Override
 	public void update(Order order) {
-		Bson update = set(FIELD_STATUS, order.getStatus().toString());
+		Bson update = combine(OrderCodec.updateStatus(order.getStatus()), MongoVersion.INCREMENT);
 		String id = order.getId();
-		UpdateResult result = orderCollection.updateOne(session, eqFilter(id), update);
-		if (result.getMatchedCount() == 0)
+		Document result = orderDocuments.findOneAndUpdate(session,
+				MongoVersion.filter(eqFilter(id), order.getVersion(), lockingStrategy), update,
+				MongoVersion.RETURN_VERSION);
+		if (result == null) {
+			if (lockingStrategy == LockingStrategy.OPTIMISTIC && findById(id) != null)
+				throw new TransactionConflictException("Order with id " + id + " was modified concurrently.");
 			throw new NoSuchElementException("Order with id " + id + " not found.");
+		}
+		order.setVersion(MongoVersion.read(result));
+		// the instance known to the transaction may be another copy of the order
+		Order known = identityMap.get(Order.class, id);
+		if (known != null && known != order) {
+			known.setStatus(order.getStatus());
+			known.setVersion(order.getVersion());
+		}
+	}
 
+	// the totals are left out of the version on purpose: increments commute, so
+	// concurrent purchases on the same order never conflict on them
+	@Override
+	public void addToTotals(String id, double amount, int lines) {
+		orderCollection.updateOne(session, eqFilter(id),
+				combine(inc(FIELD_TOTAL, amount), inc(FIELD_LINE_COUNT, lines)));
+		Order known = identityMap.get(Order.class, id);
+		if (known != null) {
+			known.setTotal(known.getTotal() + amount);
+			known.setLineCount(known.getLineCount() + lines);
+		}
 	}
 
 	private Bson eqFilter(String id) {
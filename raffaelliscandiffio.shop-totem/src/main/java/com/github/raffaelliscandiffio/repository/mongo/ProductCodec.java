@@ -0,0 +1,73 @@
+package com.github.raffaelliscandiffio.repository.mongo;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+import com.github.raffaelliscandiffio.model.Product;
+
+final class ProductCodec extends EntityCodec<Product> {
+
+	static final String FIELD_NAME = "name";
+	static final String FIELD_PRICE = "price";
+
+	ProductCodec() {
+		super(Product.class);
+	}
+
+	// a product known only by its id, as referenced by other documents
+	static Product reference(String id) {
+		Product product = new Product(null, 0);
+		product.setId(id);
+		return product;
+	}
+
+	@Override
+	public void encode(BsonWriter writer, Product product, EncoderContext encoderContext) {
+		writer.writeStartDocument();
+		MongoCodecs.writeId(writer, product.getId());
+		MongoCodecs.writeString(writer, FIELD_NAME, product.getName());
+		writer.writeDouble(FIELD_PRICE, product.getPrice());
+		writer.writeEndDocument();
+	}
+
+	@Override
+	public Product decode(BsonReader reader, DecoderContext decoderContext) {
+		String id = null;
+		String name = null;
+		double price = 0;
+		reader.readStartDocument();
+		while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+			switch (reader.readName()) {
+			case MongoCodecs.FIELD_ID:
+				id = MongoCodecs.readId(reader);
+				break;
+			case FIELD_NAME:
+				name = MongoCodecs.readString(reader);
+				break;
+			case FIELD_PRICE:
+				price = MongoCodecs.readDouble(reader);
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.readEndDocument();
+		Product product = new Product(name, price);
+		product.setId(id);
+		return product;
+	}
+
+	@Override
+	String getId(Product product) {
+		return product.getId();
+	}
+
+	@Override
+	void setId(Product product, String id) {
+		product.setId(id);
+	}
+
+}
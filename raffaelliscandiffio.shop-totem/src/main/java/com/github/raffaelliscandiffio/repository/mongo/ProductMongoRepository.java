@@ -1,10 +1,10 @@
 package com.github.raffaelliscandiffio.repository.mongo;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 
 import com.github.raffaelliscandiffio.model.Product;
@@ -13,49 +13,58 @@ import com.mongodb.client.MongoClient;
 import com.mongodb.client.ClientSession;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
 
 public class ProductMongoRepository implements ProductRepository {
 
 	private static final String FIELD_ID = "_id";
-	private static final String FIELD_NAME = "name";
-	private static final String FIELD_PRICE = "price";
 
 	private ClientSession session;
-	private MongoCollection<Document> productCollection;
+	private MongoCollection<Product> productCollection;
+	private MongoIdentityMap identityMap;
 
 	public ProductMongoRepository(MongoClient client, ClientSession session, String databaseName,
 			String collectionName) {
-		productCollection = client.getDatabase(databaseName).getCollection(collectionName);
+		this(client, session, databaseName, collectionName, new MongoIdentityMap());
+	}
+
+	public ProductMongoRepository(MongoClient client, ClientSession session, String databaseName,
+			String collectionName, MongoIdentityMap identityMap) {
+		productCollection = MongoCodecs.collection(client, databaseName, collectionName, Product.class);
 		this.session = session;
+		this.identityMap = identityMap;
 	}
 
 	@Override
 	public void save(Product product) {
-		Document productDocument = new Document().append(FIELD_NAME, product.getName()).append(FIELD_PRICE,
-				product.getPrice());
-		productCollection.insertOne(session, productDocument);
-		product.setId(productDocument.get(FIELD_ID).toString());
-
+		product.setId(new ObjectId().toHexString());
+		productCollection.insertOne(session, product);
+		identityMap.put(Product.class, product.getId(), product);
 	}
 
 	@Override
 	public List<Product> findAll() {
-		return StreamSupport.stream(productCollection.find(session).spliterator(), false)
-				.map(this::fromDocumentToProduct).collect(Collectors.toList());
+		return known(productCollection.find(session));
 	}
 
 	@Override
 	public Product findById(String id) {
-		Document d = productCollection.find(session, Filters.eq(FIELD_ID, new ObjectId(id))).first();
-		if (d != null)
-			return fromDocumentToProduct(d);
-		else
-			return null;
+		return identityMap.find(Product.class, id,
+				key -> productCollection.find(session, Filters.eq(FIELD_ID, new ObjectId(key))).first());
 	}
 
-	private Product fromDocumentToProduct(Document d) {
-		Product p = new Product(d.getString(FIELD_NAME), d.getDouble(FIELD_PRICE));
-		p.setId(d.get(FIELD_ID).toString());
-		return p;
+	@Override
+	public List<Product> findPage(String afterId, int limit) {
+		Bson filter = afterId == null ? new Document() : Filters.gt(FIELD_ID, new ObjectId(afterId));
+		return known(productCollection.find(session, filter).sort(Sorts.ascending(FIELD_ID)).limit(limit));
+	}
+
+	// the instances of the transaction for the products read by a query
+	private List<Product> known(Iterable<Product> decoded) {
+		List<Product> products = new ArrayList<>();
+		for (Product product : decoded)
+			products.add(identityMap.register(Product.class, product.getId(), product));
+		return products;
 	}
-}
\ No newline at end of file
+
+}
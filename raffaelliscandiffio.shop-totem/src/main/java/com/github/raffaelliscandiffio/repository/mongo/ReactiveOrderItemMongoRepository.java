@@ -0,0 +1,169 @@
+package com.github.raffaelliscandiffio.repository.mongo;
+
+import static com.github.raffaelliscandiffio.utils.Publishers.first;
+import static com.github.raffaelliscandiffio.utils.Publishers.fromFuture;
+import static com.github.raffaelliscandiffio.utils.Publishers.fromFutureList;
+import static com.github.raffaelliscandiffio.utils.Publishers.toList;
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Updates.combine;
+import static com.mongodb.client.model.Updates.set;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.reactivestreams.Publisher;
+
+import com.github.raffaelliscandiffio.exception.TransactionConflictException;
+import com.github.raffaelliscandiffio.model.Order;
+import com.github.raffaelliscandiffio.model.OrderItem;
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.repository.reactive.ReactiveOrderItemRepository;
+import com.github.raffaelliscandiffio.transaction.LockingStrategy;
+import com.mongodb.reactivestreams.client.ClientSession;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoCollection;
+
+public class ReactiveOrderItemMongoRepository implements ReactiveOrderItemRepository {
+
+	private static final String FIELD_ID = "_id";
+	private static final String FIELD_PRODUCT = "product";
+	private static final String FIELD_ORDER = "order";
+	private static final String FIELD_QUANTITY = "quantity";
+
+	private ClientSession session;
+	private MongoCollection<Product> productCollection;
+	private MongoCollection<Order> orderCollection;
+	private MongoCollection<OrderItem> orderItemCollection;
+	// for the versions returned by the updates
+	private MongoCollection<Document> orderItemDocuments;
+	private LockingStrategy lockingStrategy;
+
+	public ReactiveOrderItemMongoRepository(MongoClient client, ClientSession session, String databaseName,
+			String productCollectionName, String orderCollectionName, String orderItemCollectionName,
+			LockingStrategy lockingStrategy) {
+		this.session = session;
+		this.productCollection = MongoCodecs.collection(client, databaseName, productCollectionName, Product.class);
+		this.orderCollection = MongoCodecs.collection(client, databaseName, orderCollectionName, Order.class);
+		this.orderItemCollection = MongoCodecs.collection(client, databaseName, orderItemCollectionName,
+				OrderItem.class);
+		this.orderItemDocuments = orderItemCollection.withDocumentClass(Document.class);
+		this.lockingStrategy = lockingStrategy;
+	}
+
+	@Override
+	public Publisher<Void> save(OrderItem orderItem) {
+		return fromFuture(() -> {
+			String productId = orderItem.getProduct().getId();
+			String orderId = orderItem.getOrder().getId();
+			return findById(productCollection, productId).thenCompose(product -> {
+				if (product == null)
+					throw new NoSuchElementException(
+							"Reference error, cannot save OrderItem: " + idNotFoundToString("Product", productId));
+				return findById(orderCollection, orderId);
+			}).thenCompose(order -> {
+				if (order == null)
+					throw new NoSuchElementException(
+							"Reference error, cannot save OrderItem: " + idNotFoundToString("Order", orderId));
+				orderItem.setId(new ObjectId().toHexString());
+				return first(orderItemCollection.insertOne(session, orderItem)).thenAccept(success -> {
+				});
+			});
+		});
+	}
+
+	@Override
+	public Publisher<OrderItem> findById(String id) {
+		return fromFuture(() -> findItemById(id));
+	}
+
+	@Override
+	public Publisher<Void> delete(String id) {
+		return fromFuture(() -> first(orderItemCollection.deleteOne(session, eqFilter(id))).thenAccept(result -> {
+		}));
+	}
+
+	@Override
+	public Publisher<Void> update(OrderItem orderItem) {
+		return fromFuture(() -> {
+			Bson update = combine(set(FIELD_QUANTITY, orderItem.getQuantity()), MongoVersion.INCREMENT);
+			String id = orderItem.getId();
+			return first(orderItemDocuments.findOneAndUpdate(session,
+					MongoVersion.filter(eqFilter(id), orderItem.getVersion(), lockingStrategy), update,
+					MongoVersion.RETURN_VERSION)).thenCompose(result -> {
+						if (result != null) {
+							orderItem.setVersion(MongoVersion.read(result));
+							return CompletableFuture.completedFuture(null);
+						}
+						if (lockingStrategy != LockingStrategy.OPTIMISTIC)
+							throw new NoSuchElementException(idNotFoundToString("OrderItem", id));
+						return findItemById(id).thenAccept(current -> {
+							if (current != null)
+								throw new TransactionConflictException(
+										"OrderItem with id " + id + " was modified concurrently.");
+							throw new NoSuchElementException(idNotFoundToString("OrderItem", id));
+						});
+					});
+		});
+	}
+
+	@Override
+	public Publisher<OrderItem> getListByOrderId(String orderId) {
+		return fromFutureList(
+				() -> toList(orderItemCollection.find(session, eq(FIELD_ORDER, orderId))).thenCompose(decodedItems -> {
+					// operations on a session must not run concurrently, so items are resolved
+					// one after the other
+					CompletableFuture<List<OrderItem>> items = CompletableFuture.completedFuture(new ArrayList<>());
+					for (OrderItem decoded : decodedItems)
+						items = items.thenCompose(list -> resolveReferences(decoded).thenApply(item -> {
+							list.add(item);
+							return list;
+						}));
+					return items;
+				}));
+	}
+
+	@Override
+	public Publisher<OrderItem> findByProductAndOrderId(String productId, String orderId) {
+		return fromFuture(() -> first(orderItemCollection
+				.find(session, and(eq(FIELD_PRODUCT, productId), eq(FIELD_ORDER, orderId))).first())
+						.thenCompose(this::resolveNullableReferences));
+	}
+
+	private CompletableFuture<OrderItem> findItemById(String id) {
+		return findById(orderItemCollection, id).thenCompose(this::resolveNullableReferences);
+	}
+
+	private String idNotFoundToString(String type, String id) {
+		return type + " with id " + id + " not found.";
+	}
+
+	private Bson eqFilter(String id) {
+		return eq(FIELD_ID, new ObjectId(id));
+	}
+
+	private <T> CompletableFuture<T> findById(MongoCollection<T> collection, String id) {
+		return first(collection.find(session, eqFilter(id)).first());
+	}
+
+	private CompletableFuture<OrderItem> resolveNullableReferences(OrderItem item) {
+		if (item == null)
+			return CompletableFuture.completedFuture(null);
+		return resolveReferences(item);
+	}
+
+	private CompletableFuture<OrderItem> resolveReferences(OrderItem item) {
+		return findById(productCollection, item.getProduct().getId())
+				.thenCompose(product -> findById(orderCollection, item.getOrder().getId()).thenApply(order -> {
+					item.setProduct(product);
+					item.setOrder(order);
+					return item;
+				}));
+	}
+
+}
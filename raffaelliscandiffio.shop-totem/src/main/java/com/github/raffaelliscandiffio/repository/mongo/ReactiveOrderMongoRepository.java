@@ -0,0 +1,111 @@
+package com.github.raffaelliscandiffio.repository.mongo;
+
+import static com.github.raffaelliscandiffio.utils.Publishers.first;
+import static com.github.raffaelliscandiffio.utils.Publishers.fromFuture;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Updates.combine;
+import static com.mongodb.client.model.Updates.inc;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.reactivestreams.Publisher;
+
+import com.github.raffaelliscandiffio.exception.TransactionConflictException;
+import com.github.raffaelliscandiffio.model.Order;
+import com.github.raffaelliscandiffio.repository.reactive.ReactiveOrderRepository;
+import com.github.raffaelliscandiffio.transaction.LockingStrategy;
+import com.mongodb.reactivestreams.client.ClientSession;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoCollection;
+
+public class ReactiveOrderMongoRepository implements ReactiveOrderRepository {
+
+	private static final String FIELD_ID = "_id";
+	private static final String FIELD_TOTAL = "total";
+	private static final String FIELD_LINE_COUNT = "lineCount";
+
+	private ClientSession session;
+	private MongoCollection<Order> orderCollection;
+	// for the versions returned by the updates
+	private MongoCollection<Document> orderDocuments;
+	private MongoCollection<Document> itemCollection;
+	private LockingStrategy lockingStrategy;
+
+	public ReactiveOrderMongoRepository(MongoClient client, ClientSession session, String databaseName,
+			String orderCollectionName, String itemCollection, LockingStrategy lockingStrategy) {
+		this.session = session;
+		this.orderCollection = MongoCodecs.collection(client, databaseName, orderCollectionName, Order.class);
+		this.orderDocuments = orderCollection.withDocumentClass(Document.class);
+		this.itemCollection = client.getDatabase(databaseName).getCollection(itemCollection);
+		this.lockingStrategy = lockingStrategy;
+	}
+
+	@Override
+	public Publisher<Void> save(Order order) {
+		return fromFuture(() -> {
+			order.setId(new ObjectId().toHexString());
+			return first(orderCollection.insertOne(session, order)).thenAccept(success -> {
+			});
+		});
+	}
+
+	@Override
+	public Publisher<Order> findById(String id) {
+		return fromFuture(() -> findOrderById(id));
+	}
+
+	@Override
+	public Publisher<Void> delete(String id) {
+		return fromFuture(() -> first(itemCollection.find(session, eq("order", id)).first()).thenCompose(itemDoc -> {
+			if (itemDoc != null)
+				throw new IllegalStateException("Reference error: cannot delete Order with id " + id
+						+ " because OrderItem with id " + itemDoc.get("_id").toString() + " has a reference to it.");
+			return first(orderCollection.deleteOne(session, eqFilter(id))).thenAccept(result -> {
+			});
+		}));
+	}
+
+	@Override
+	public Publisher<Void> update(Order order) {
+		return fromFuture(() -> {
+			Bson update = combine(OrderCodec.updateStatus(order.getStatus()), MongoVersion.INCREMENT);
+			String id = order.getId();
+			return first(orderDocuments.findOneAndUpdate(session,
+					MongoVersion.filter(eqFilter(id), order.getVersion(), lockingStrategy), update,
+					MongoVersion.RETURN_VERSION)).thenCompose(result -> {
+						if (result != null) {
+							order.setVersion(MongoVersion.read(result));
+							return CompletableFuture.completedFuture(null);
+						}
+						if (lockingStrategy != LockingStrategy.OPTIMISTIC)
+							throw new NoSuchElementException("Order with id " + id + " not found.");
+						return findOrderById(id).thenAccept(current -> {
+							if (current != null)
+								throw new TransactionConflictException(
+										"Order with id " + id + " was modified concurrently.");
+							throw new NoSuchElementException("Order with id " + id + " not found.");
+						});
+					});
+		});
+	}
+
+	@Override
+	public Publisher<Void> addToTotals(String id, double amount, int lines) {
+		return fromFuture(() -> first(orderCollection.updateOne(session, eqFilter(id),
+				combine(inc(FIELD_TOTAL, amount), inc(FIELD_LINE_COUNT, lines)))).thenAccept(result -> {
+				}));
+	}
+
+	private CompletableFuture<Order> findOrderById(String id) {
+		return first(orderCollection.find(session, eqFilter(id)).first());
+	}
+
+	private Bson eqFilter(String id) {
+		return eq(FIELD_ID, new ObjectId(id));
+	}
+
+}
@@ -0,0 +1,61 @@
+package com.github.raffaelliscandiffio.repository.mongo;
+
+import static com.github.raffaelliscandiffio.utils.Publishers.first;
+import static com.github.raffaelliscandiffio.utils.Publishers.fromFuture;
+import static com.github.raffaelliscandiffio.utils.Publishers.fromFutureList;
+import static com.github.raffaelliscandiffio.utils.Publishers.toList;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.reactivestreams.Publisher;
+
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.repository.reactive.ReactiveProductRepository;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.reactivestreams.client.ClientSession;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoCollection;
+
+public class ReactiveProductMongoRepository implements ReactiveProductRepository {
+
+	private static final String FIELD_ID = "_id";
+
+	private ClientSession session;
+	private MongoCollection<Product> productCollection;
+
+	public ReactiveProductMongoRepository(MongoClient client, ClientSession session, String databaseName,
+			String collectionName) {
+		productCollection = MongoCodecs.collection(client, databaseName, collectionName, Product.class);
+		this.session = session;
+	}
+
+	@Override
+	public Publisher<Void> save(Product product) {
+		return fromFuture(() -> {
+			product.setId(new ObjectId().toHexString());
+			return first(productCollection.insertOne(session, product)).thenAccept(success -> {
+			});
+		});
+	}
+
+	@Override
+	public Publisher<Product> findAll() {
+		return fromFutureList(() -> toList(productCollection.find(session)));
+	}
+
+	@Override
+	public Publisher<Product> findById(String id) {
+		return fromFuture(
+				() -> first(productCollection.find(session, Filters.eq(FIELD_ID, new ObjectId(id))).first()));
+	}
+
+	@Override
+	public Publisher<Product> findPage(String afterId, int limit) {
+		Bson filter = afterId == null ? new Document() : Filters.gt(FIELD_ID, new ObjectId(afterId));
+		return fromFutureList(
+				() -> toList(productCollection.find(session, filter).sort(Sorts.ascending(FIELD_ID)).limit(limit)));
+	}
+
+}
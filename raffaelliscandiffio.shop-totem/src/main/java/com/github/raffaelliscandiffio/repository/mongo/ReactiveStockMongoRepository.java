@@ -0,0 +1,178 @@
+package com.github.raffaelliscandiffio.repository.mongo;
+
+import static com.github.raffaelliscandiffio.utils.Publishers.first;
+import static com.github.raffaelliscandiffio.utils.Publishers.fromFuture;
+import static com.github.raffaelliscandiffio.utils.Publishers.fromFutureList;
+import static com.github.raffaelliscandiffio.utils.Publishers.toList;
+import static com.mongodb.client.model.Aggregates.group;
+import static com.mongodb.client.model.Aggregates.match;
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Sorts.ascending;
+import static com.mongodb.client.model.Updates.combine;
+import static com.mongodb.client.model.Updates.inc;
+import static com.mongodb.client.model.Updates.set;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.reactivestreams.Publisher;
+
+import com.github.raffaelliscandiffio.exception.TransactionConflictException;
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.model.Stock;
+import com.github.raffaelliscandiffio.repository.reactive.ReactiveStockRepository;
+import com.github.raffaelliscandiffio.transaction.LockingStrategy;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.reactivestreams.client.ClientSession;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoCollection;
+
+public class ReactiveStockMongoRepository implements ReactiveStockRepository {
+
+	private static final String FIELD_ID = "_id";
+	private static final String FIELD_PRODUCT = "product";
+	private static final String FIELD_QUANTITY = "quantity";
+	private static final String FIELD_SHARD = "shard";
+	private static final String FIELD_TOTAL = "total";
+
+	private MongoCollection<Product> productCollection;
+	private MongoCollection<Stock> stockCollection;
+	// for the results that are not stocks, such as the versions and the sums
+	private MongoCollection<Document> stockDocuments;
+	private ClientSession session;
+	private LockingStrategy lockingStrategy;
+
+	public ReactiveStockMongoRepository(MongoClient client, ClientSession session, String databaseName,
+			String productCollectionName, String stockCollectionName, LockingStrategy lockingStrategy) {
+		productCollection = MongoCodecs.collection(client, databaseName, productCollectionName, Product.class);
+		stockCollection = MongoCodecs.collection(client, databaseName, stockCollectionName, Stock.class);
+		stockDocuments = stockCollection.withDocumentClass(Document.class);
+		this.session = session;
+		this.lockingStrategy = lockingStrategy;
+	}
+
+	@Override
+	public Publisher<Void> save(Stock stock) {
+		return fromFuture(() -> {
+			String productId = stock.getProduct().getId();
+			return findProductById(productId).thenCompose(product -> {
+				if (product == null)
+					throw new NoSuchElementException("Referenced Product with id " + productId + " not found.");
+				stock.setId(new ObjectId().toHexString());
+				return first(stockCollection.insertOne(session, stock)).thenAccept(success -> {
+				});
+			});
+		});
+	}
+
+	@Override
+	public Publisher<Stock> findById(String id) {
+		return fromFuture(() -> findStockById(id));
+	}
+
+	@Override
+	public Publisher<Void> update(Stock stock) {
+		return fromFuture(() -> {
+			Bson update = combine(set(FIELD_QUANTITY, stock.getQuantity()), MongoVersion.INCREMENT);
+			String id = stock.getId();
+			return first(stockDocuments.findOneAndUpdate(session,
+					MongoVersion.filter(eqFilter(id), stock.getVersion(), lockingStrategy), update,
+					MongoVersion.RETURN_VERSION)).thenCompose(result -> {
+						if (result != null) {
+							stock.setVersion(MongoVersion.read(result));
+							return CompletableFuture.completedFuture(null);
+						}
+						if (lockingStrategy != LockingStrategy.OPTIMISTIC)
+							throw new NoSuchElementException("Stock with id " + id + " not found.");
+						return findStockById(id).thenAccept(current -> {
+							if (current != null)
+								throw new TransactionConflictException(
+										"Stock with id " + id + " was modified concurrently.");
+							throw new NoSuchElementException("Stock with id " + id + " not found.");
+						});
+					});
+		});
+	}
+
+	@Override
+	public Publisher<Stock> findByProductId(String productId) {
+		return fromFuture(() -> pickRandomShard(toList(stockCollection.find(session, eq(FIELD_PRODUCT, productId)))));
+	}
+
+	@Override
+	public Publisher<Stock> findByProductIdWithQuantity(String productId, int quantity) {
+		return fromFuture(() -> pickRandomShard(toList(
+				stockCollection.find(session, and(eq(FIELD_PRODUCT, productId), gte(FIELD_QUANTITY, quantity))))));
+	}
+
+	@Override
+	public Publisher<Stock> findAllByProductId(String productId) {
+		return fromFutureList(() -> toList(
+				stockCollection.find(session, eq(FIELD_PRODUCT, productId)).sort(ascending(FIELD_SHARD)))
+						.thenCompose(this::resolveProduct));
+	}
+
+	@Override
+	public Publisher<Integer> getTotalQuantityByProductId(String productId) {
+		return fromFuture(() -> first(stockDocuments.aggregate(session, Arrays.asList(
+				match(eq(FIELD_PRODUCT, productId)), group(null, Accumulators.sum(FIELD_TOTAL, "$" + FIELD_QUANTITY)))))
+						.thenApply(result -> result == null ? 0 : ((Number) result.get(FIELD_TOTAL)).intValue()));
+	}
+
+	@Override
+	public Publisher<Void> addToQuantity(String id, int delta) {
+		return fromFuture(() -> first(stockCollection.updateOne(session, eqFilter(id),
+				combine(inc(FIELD_QUANTITY, delta), MongoVersion.INCREMENT))).thenAccept(result -> {
+				}));
+	}
+
+	private CompletableFuture<Stock> findStockById(String id) {
+		return first(stockCollection.find(session, eqFilter(id)).first()).thenCompose(
+				stock -> stock == null ? CompletableFuture.completedFuture(null) : resolveProduct(stock));
+	}
+
+	private CompletableFuture<Stock> pickRandomShard(CompletableFuture<List<Stock>> candidates) {
+		return candidates.thenCompose(shards -> {
+			if (shards.isEmpty())
+				return CompletableFuture.completedFuture(null);
+			return resolveProduct(shards.get(ThreadLocalRandom.current().nextInt(shards.size())));
+		});
+	}
+
+	// every shard references the same Product, which is read once; operations on
+	// a session must not run concurrently
+	private CompletableFuture<List<Stock>> resolveProduct(List<Stock> shards) {
+		if (shards.isEmpty())
+			return CompletableFuture.completedFuture(new ArrayList<>());
+		return findProductById(shards.get(0).getProduct().getId()).thenApply(product -> {
+			for (Stock shard : shards)
+				shard.setProduct(product);
+			return shards;
+		});
+	}
+
+	private CompletableFuture<Stock> resolveProduct(Stock stock) {
+		return findProductById(stock.getProduct().getId()).thenApply(product -> {
+			stock.setProduct(product);
+			return stock;
+		});
+	}
+
+	private Bson eqFilter(String id) {
+		return eq(FIELD_ID, new ObjectId(id));
+	}
+
+	private CompletableFuture<Product> findProductById(String productId) {
+		return first(productCollection.find(session, eqFilter(productId)).first());
+	}
+
+}
@@ -0,0 +1,189 @@
+package com.github.raffaelliscandiffio.repository.mongo;
+
+import static com.mongodb.client.model.Accumulators.sum;
+import static com.mongodb.client.model.Aggregates.addFields;
+import static com.mongodb.client.model.Aggregates.group;
+import static com.mongodb.client.model.Aggregates.limit;
+import static com.mongodb.client.model.Aggregates.lookup;
+import static com.mongodb.client.model.Aggregates.match;
+import static com.mongodb.client.model.Aggregates.project;
+import static com.mongodb.client.model.Aggregates.sort;
+import static com.mongodb.client.model.Aggregates.unwind;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Projections.computed;
+import static com.mongodb.client.model.Projections.excludeId;
+import static com.mongodb.client.model.Projections.fields;
+import static com.mongodb.client.model.Projections.include;
+import static com.mongodb.client.model.Sorts.ascending;
+import static com.mongodb.client.model.Sorts.descending;
+import static com.mongodb.client.model.Sorts.orderBy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import com.github.raffaelliscandiffio.model.OrderStatus;
+import com.github.raffaelliscandiffio.model.ProductSales;
+import com.github.raffaelliscandiffio.repository.ReportingRepository;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Field;
+import com.mongodb.client.model.Indexes;
+
+/**
+ * The aggregations start from a covered scan of the items on the
+ * (order, product, quantity) index; the orders and the products are then
+ * looked up by _id. Items reference them by the hex string of their ObjectId,
+ * which is converted before each lookup.
+ * <p>
+ * The archived items, if any, are grouped by product on a covered scan of
+ * their (product, quantity) index. The servers cannot join the two groupings
+ * both ways, so they are added up here, one row per product sold, and sorted
+ * in memory.
+ */
+public class ReportingMongoRepository implements ReportingRepository {
+
+	private static final String FIELD_ID = "_id";
+	private static final String FIELD_PRODUCT = "product";
+	private static final String FIELD_ORDER = "order";
+	private static final String FIELD_QUANTITY = "quantity";
+	private static final String FIELD_STATUS = "status";
+	private static final String FIELD_NAME = "name";
+	private static final String FIELD_PRICE = "price";
+	private static final String FIELD_REVENUE = "revenue";
+	private static final String FIELD_ORDER_ID = "orderId";
+	private static final String FIELD_PRODUCT_ID = "productId";
+
+	private static final Bson SALES_INDEX = Indexes.ascending(FIELD_ORDER, FIELD_PRODUCT, FIELD_QUANTITY);
+	private static final Bson ARCHIVED_SALES_INDEX = Indexes.ascending(FIELD_PRODUCT, FIELD_QUANTITY);
+	private static final Comparator<ProductSales> BY_QUANTITY = Comparator
+			.comparingLong(ProductSales::getQuantity).reversed().thenComparing(ProductSales::getProductId);
+	private static final Comparator<ProductSales> BY_REVENUE = Comparator
+			.comparingDouble(ProductSales::getRevenue).reversed().thenComparing(ProductSales::getProductId);
+
+	private MongoCollection<Document> productCollection;
+	private MongoCollection<Document> orderCollection;
+	private MongoCollection<Document> orderItemCollection;
+	// null when the closed orders are never archived
+	private MongoCollection<Document> orderItemArchiveCollection;
+
+	public ReportingMongoRepository(MongoClient client, String databaseName, String productCollectionName,
+			String orderCollectionName, String orderItemCollectionName) {
+		this(client, databaseName, productCollectionName, orderCollectionName, orderItemCollectionName, null);
+	}
+
+	public ReportingMongoRepository(MongoClient client, String databaseName, String productCollectionName,
+			String orderCollectionName, String orderItemCollectionName, String orderItemArchiveCollectionName) {
+		this.productCollection = client.getDatabase(databaseName).getCollection(productCollectionName);
+		this.orderCollection = client.getDatabase(databaseName).getCollection(orderCollectionName);
+		this.orderItemCollection = client.getDatabase(databaseName).getCollection(orderItemCollectionName);
+		if (orderItemArchiveCollectionName != null)
+			this.orderItemArchiveCollection = client.getDatabase(databaseName)
+					.getCollection(orderItemArchiveCollectionName);
+	}
+
+	/**
+	 * Create the indexes the aggregations rely on, if missing.
+	 */
+	public void createIndexes() {
+		orderItemCollection.createIndex(SALES_INDEX);
+		orderCollection.createIndex(Indexes.ascending(FIELD_STATUS));
+		if (orderItemArchiveCollection != null)
+			orderItemArchiveCollection.createIndex(ARCHIVED_SALES_INDEX);
+	}
+
+	@Override
+	public List<ProductSales> findTopSellers(int limit) {
+		if (orderItemArchiveCollection != null)
+			return withArchivedSales().stream().sorted(BY_QUANTITY).limit(limit).collect(Collectors.toList());
+		List<Bson> pipeline = salesByProduct();
+		pipeline.add(sort(orderBy(descending(FIELD_QUANTITY), ascending(FIELD_ID))));
+		pipeline.add(limit(limit));
+		pipeline.addAll(withProduct());
+		return orderItemCollection.aggregate(pipeline).hint(SALES_INDEX).into(new ArrayList<>()).stream()
+				.map(this::fromDocumentToSales).collect(Collectors.toList());
+	}
+
+	@Override
+	public Stream<ProductSales> streamRevenueByProduct() {
+		if (orderItemArchiveCollection != null)
+			return withArchivedSales().stream().sorted(BY_REVENUE);
+		List<Bson> pipeline = salesByProduct();
+		pipeline.addAll(withProduct());
+		pipeline.add(sort(orderBy(descending(FIELD_REVENUE), ascending(FIELD_ID))));
+		MongoCursor<Document> cursor = orderItemCollection.aggregate(pipeline).hint(SALES_INDEX).allowDiskUse(true)
+				.iterator();
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED), false)
+				.onClose(cursor::close).map(this::fromDocumentToSales);
+	}
+
+	private List<Bson> salesByProduct() {
+		return new ArrayList<>(Arrays.asList(
+				project(fields(excludeId(), include(FIELD_ORDER, FIELD_PRODUCT, FIELD_QUANTITY))),
+				addFields(new Field<>(FIELD_ORDER_ID, toObjectId(FIELD_ORDER))),
+				lookup(orderCollection.getNamespace().getCollectionName(), FIELD_ORDER_ID, FIELD_ID, FIELD_ORDER),
+				match(eq(FIELD_ORDER + "." + FIELD_STATUS, OrderStatus.CLOSED.toString())),
+				group("$" + FIELD_PRODUCT, sum(FIELD_QUANTITY, "$" + FIELD_QUANTITY))));
+	}
+
+	// revenue is valued at the current price, as in the aggregation
+	private List<ProductSales> withArchivedSales() {
+		Map<String, Long> quantities = new HashMap<>();
+		for (Document sales : orderItemCollection.aggregate(salesByProduct()).hint(SALES_INDEX))
+			addQuantity(quantities, sales);
+		for (Document sales : orderItemArchiveCollection
+				.aggregate(Arrays.asList(project(fields(excludeId(), include(FIELD_PRODUCT, FIELD_QUANTITY))),
+						group("$" + FIELD_PRODUCT, sum(FIELD_QUANTITY, "$" + FIELD_QUANTITY))))
+				.hint(ARCHIVED_SALES_INDEX))
+			addQuantity(quantities, sales);
+		List<ObjectId> productIds = quantities.keySet().stream().map(ObjectId::new).collect(Collectors.toList());
+		List<ProductSales> sales = new ArrayList<>();
+		for (Document product : productCollection.find(in(FIELD_ID, productIds))
+				.projection(include(FIELD_NAME, FIELD_PRICE))) {
+			String productId = product.getObjectId(FIELD_ID).toHexString();
+			long quantity = quantities.get(productId);
+			sales.add(new ProductSales(productId, product.getString(FIELD_NAME), quantity,
+					quantity * ((Number) product.get(FIELD_PRICE)).doubleValue()));
+		}
+		return sales;
+	}
+
+	private void addQuantity(Map<String, Long> quantities, Document sales) {
+		quantities.merge(sales.getString(FIELD_ID), ((Number) sales.get(FIELD_QUANTITY)).longValue(), Long::sum);
+	}
+
+	private List<Bson> withProduct() {
+		return Arrays.asList(addFields(new Field<>(FIELD_PRODUCT_ID, toObjectId(FIELD_ID))),
+				lookup(productCollection.getNamespace().getCollectionName(), FIELD_PRODUCT_ID, FIELD_ID,
+						FIELD_PRODUCT),
+				unwind("$" + FIELD_PRODUCT),
+				project(fields(include(FIELD_QUANTITY), computed(FIELD_NAME, "$" + FIELD_PRODUCT + "." + FIELD_NAME),
+						computed(FIELD_REVENUE, new Document("$multiply",
+								Arrays.asList("$" + FIELD_QUANTITY, "$" + FIELD_PRODUCT + "." + FIELD_PRICE))))));
+	}
+
+	private Document toObjectId(String field) {
+		return new Document("$toObjectId", "$" + field);
+	}
+
+	private ProductSales fromDocumentToSales(Document document) {
+		return new ProductSales(document.getString(FIELD_ID), document.getString(FIELD_NAME),
+				((Number) document.get(FIELD_QUANTITY)).longValue(),
+				((Number) document.get(FIELD_REVENUE)).doubleValue());
+	}
+
+}
@@ -0,0 +1,81 @@
+package com.github.raffaelliscandiffio.repository.mongo;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+import com.github.raffaelliscandiffio.model.Stock;
+
+/**
+ * The product of a decoded stock is a reference holding only its id.
+ */
+final class StockCodec extends EntityCodec<Stock> {
+
+	static final String FIELD_PRODUCT = "product";
+	static final String FIELD_QUANTITY = "quantity";
+	static final String FIELD_SHARD = "shard";
+
+	StockCodec() {
+		super(Stock.class);
+	}
+
+	@Override
+	public void encode(BsonWriter writer, Stock stock, EncoderContext encoderContext) {
+		writer.writeStartDocument();
+		MongoCodecs.writeId(writer, stock.getId());
+		MongoCodecs.writeString(writer, FIELD_PRODUCT, stock.getProduct().getId());
+		writer.writeInt32(FIELD_QUANTITY, stock.getQuantity());
+		writer.writeInt32(FIELD_SHARD, stock.getShard());
+		writer.writeInt64(MongoVersion.FIELD_VERSION, stock.getVersion());
+		writer.writeEndDocument();
+	}
+
+	@Override
+	public Stock decode(BsonReader reader, DecoderContext decoderContext) {
+		String id = null;
+		String productId = null;
+		int quantity = 0;
+		int shard = 0;
+		long version = 0;
+		reader.readStartDocument();
+		while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+			switch (reader.readName()) {
+			case MongoCodecs.FIELD_ID:
+				id = MongoCodecs.readId(reader);
+				break;
+			case FIELD_PRODUCT:
+				productId = MongoCodecs.readString(reader);
+				break;
+			case FIELD_QUANTITY:
+				quantity = MongoCodecs.readInt(reader);
+				break;
+			case FIELD_SHARD:
+				shard = MongoCodecs.readInt(reader);
+				break;
+			case MongoVersion.FIELD_VERSION:
+				version = MongoCodecs.readLong(reader);
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.readEndDocument();
+		Stock stock = new Stock(ProductCodec.reference(productId), quantity, shard);
+		stock.setId(id);
+		stock.setVersion(version);
+		return stock;
+	}
+
+	@Override
+	String getId(Stock stock) {
+		return stock.getId();
+	}
+
+	@Override
+	void setId(Stock stock, String id) {
+		stock.setId(id);
+	}
+
+}
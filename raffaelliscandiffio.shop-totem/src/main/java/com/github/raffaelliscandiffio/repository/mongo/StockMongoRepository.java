@@ -1,84 +1,188 @@
 package com.github.raffaelliscandiffio.repository.mongo;
 
+import static com.mongodb.client.model.Aggregates.group;
+import static com.mongodb.client.model.Aggregates.match;
+import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Sorts.ascending;
+import static com.mongodb.client.model.Updates.combine;
+import static com.mongodb.client.model.Updates.inc;
 import static com.mongodb.client.model.Updates.set;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 
+import com.github.raffaelliscandiffio.exception.TransactionConflictException;
 import com.github.raffaelliscandiffio.model.Product;
 import com.github.raffaelliscandiffio.model.Stock;
+import com.github.raffaelliscandiffio.profiling.LockWaitProfiler;
 import com.github.raffaelliscandiffio.repository.StockRepository;
+import com.github.raffaelliscandiffio.transaction.LockingStrategy;
+import com.mongodb.MongoException;
 import com.mongodb.client.ClientSession;
+import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoCollection;
-import com.mongodb.client.result.UpdateResult;
+import com.mongodb.client.model.Accumulators;
 
 public class StockMongoRepository implements StockRepository {
 
 	private static final String FIELD_ID = "_id";
-	private static final String FIELD_NAME = "name";
-	private static final String FIELD_PRICE = "price";
 	private static final String FIELD_PRODUCT = "product";
 	private static final String FIELD_QUANTITY = "quantity";
+	private static final String FIELD_SHARD = "shard";
+	private static final String FIELD_TOTAL = "total";
 
-	private MongoCollection<Document> productCollection;
-	private MongoCollection<Document> stockCollection;
+	private MongoCollection<Product> productCollection;
+	private MongoCollection<Stock> stockCollection;
+	// for the results that are not stocks, such as the versions and the sums
+	private MongoCollection<Document> stockDocuments;
 	private ClientSession session;
+	private LockingStrategy lockingStrategy;
+	private MongoIdentityMap identityMap;
+	// null when the contention is not profiled
+	private LockWaitProfiler lockWaits;
 
 	public StockMongoRepository(MongoClient client, ClientSession session, String databaseName,
 			String productCollectionName, String stockCollectionName) {
-		productCollection = client.getDatabase(databaseName).getCollection(productCollectionName);
-		stockCollection = client.getDatabase(databaseName).getCollection(stockCollectionName);
+		this(client, session, databaseName, productCollectionName, stockCollectionName, LockingStrategy.PESSIMISTIC);
+	}
+
+	public StockMongoRepository(MongoClient client, ClientSession session, String databaseName,
+			String productCollectionName, String stockCollectionName, LockingStrategy lockingStrategy) {
+		this(client, session, databaseName, productCollectionName, stockCollectionName, lockingStrategy,
+				new MongoIdentityMap());
+	}
+
+	public StockMongoRepository(MongoClient client, ClientSession session, String databaseName,
+			String productCollectionName, String stockCollectionName, LockingStrategy lockingStrategy,
+			MongoIdentityMap identityMap) {
+		this(client, session, databaseName, productCollectionName, stockCollectionName, lockingStrategy, identityMap,
+				null);
+	}
+
+	public StockMongoRepository(MongoClient client, ClientSession session, String databaseName,
+			String productCollectionName, String stockCollectionName, LockingStrategy lockingStrategy,
+			MongoIdentityMap identityMap, LockWaitProfiler lockWaits) {
+		productCollection = MongoCodecs.collection(client, databaseName, productCollectionName, Product.class);
+		stockCollection = MongoCodecs.collection(client, databaseName, stockCollectionName, Stock.class);
+		stockDocuments = stockCollection.withDocumentClass(Document.class);
 		this.session = session;
+		this.lockingStrategy = lockingStrategy;
+		this.identityMap = identityMap;
+		this.lockWaits = lockWaits;
 	}
 
 	@Override
 	public void save(Stock stock) {
 		String productId = stock.getProduct().getId();
-		if (findProductDocumentById(productId) == null)
+		if (findProductById(productId) == null)
 			throw new NoSuchElementException("Referenced Product with id " + productId + " not found.");
-		Document stockDocument = new Document().append(FIELD_PRODUCT, productId).append(FIELD_QUANTITY,
-				stock.getQuantity());
-		stockCollection.insertOne(session, stockDocument);
-		stock.setId(stockDocument.get(FIELD_ID).toString());
+		stock.setId(new ObjectId().toHexString());
+		stockCollection.insertOne(session, stock);
+		identityMap.put(Stock.class, stock.getId(), stock);
 	}
 
 	@Override
 	public Stock findById(String id) {
-		Document stockDocument = stockCollection.find(session, eqFilter(id)).first();
-		if (stockDocument == null)
-			return null;
-		return fromDocumentToStock(stockDocument);
+		return identityMap.find(Stock.class, id, key -> {
+			Stock stock = stockCollection.find(session, eqFilter(key)).first();
+			if (stock != null)
+				stock.setProduct(findProductById(stock.getProduct().getId()));
+			return stock;
+		});
 	}
 
 	@Override
 	public void update(Stock stock) {
-		Bson update = set(FIELD_QUANTITY, stock.getQuantity());
+		Bson update = combine(set(FIELD_QUANTITY, stock.getQuantity()), MongoVersion.INCREMENT);
 		String id = stock.getId();
-		UpdateResult result = stockCollection.updateOne(session, eqFilter(id), update);
-		if (result.getMatchedCount() == 0)
+		Document result;
+		try {
+			result = stockDocuments.findOneAndUpdate(session,
+					MongoVersion.filter(eqFilter(id), stock.getVersion(), lockingStrategy), update,
+					MongoVersion.RETURN_VERSION);
+		} catch (MongoException e) {
+			// a transaction does not wait for the lock on the document: a write
+			// conflict aborts it at once
+			if (e.hasErrorLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL))
+				recordConflict(stock);
+			throw e;
+		}
+		if (result == null) {
+			if (lockingStrategy == LockingStrategy.OPTIMISTIC && findById(id) != null) {
+				recordConflict(stock);
+				throw new TransactionConflictException("Stock with id " + id + " was modified concurrently.");
+			}
 			throw new NoSuchElementException("Stock with id " + id + " not found.");
+		}
+		stock.setVersion(MongoVersion.read(result));
+		// the instance known to the transaction may be another copy of the stock
+		Stock known = identityMap.get(Stock.class, id);
+		if (known != null && known != stock) {
+			known.setQuantity(stock.getQuantity());
+			known.setVersion(stock.getVersion());
+		}
 	}
 
 	@Override
 	public Stock findByProductId(String productId) {
-		Document stockDocument = stockCollection.find(eq(FIELD_PRODUCT, productId)).first();
-		if (stockDocument == null)
+		return pickRandomShard(stockCollection.find(session, eq(FIELD_PRODUCT, productId)));
+	}
+
+	@Override
+	public Stock findByProductIdWithQuantity(String productId, int quantity) {
+		return pickRandomShard(
+				stockCollection.find(session, and(eq(FIELD_PRODUCT, productId), gte(FIELD_QUANTITY, quantity))));
+	}
+
+	@Override
+	public List<Stock> findAllByProductId(String productId) {
+		List<Stock> shards = new ArrayList<>();
+		for (Stock shard : stockCollection.find(session, eq(FIELD_PRODUCT, productId)).sort(ascending(FIELD_SHARD)))
+			shards.add(known(shard));
+		return shards;
+	}
+
+	@Override
+	public int getTotalQuantityByProductId(String productId) {
+		Document result = stockDocuments.aggregate(session, Arrays.asList(match(eq(FIELD_PRODUCT, productId)),
+				group(null, Accumulators.sum(FIELD_TOTAL, "$" + FIELD_QUANTITY)))).first();
+		if (result == null)
+			return 0;
+		return ((Number) result.get(FIELD_TOTAL)).intValue();
+	}
+
+	@Override
+	public void addToQuantity(String id, int delta) {
+		stockCollection.updateOne(session, eqFilter(id), combine(inc(FIELD_QUANTITY, delta), MongoVersion.INCREMENT));
+		Stock known = identityMap.get(Stock.class, id);
+		if (known != null) {
+			known.setQuantity(known.getQuantity() + delta);
+			known.setVersion(known.getVersion() + 1);
+		}
+	}
+
+	private Stock pickRandomShard(FindIterable<Stock> candidates) {
+		List<Stock> shards = candidates.into(new ArrayList<>());
+		if (shards.isEmpty())
 			return null;
-		return fromDocumentToStock(stockDocument);
+		return known(shards.get(ThreadLocalRandom.current().nextInt(shards.size())));
 	}
 
-	private Stock fromDocumentToStock(Document stockDocument) {
-		String productId = stockDocument.getString(FIELD_PRODUCT);
-		Document productDocument = findProductDocumentById(productId);
-		Product product = new Product(productDocument.getString(FIELD_NAME), productDocument.getDouble(FIELD_PRICE));
-		product.setId(productId);
-		Stock stock = new Stock(product, stockDocument.getInteger(FIELD_QUANTITY));
-		stock.setId(stockDocument.get(FIELD_ID).toString());
+	// the instance of the transaction for a stock read by a query
+	private Stock known(Stock decoded) {
+		Stock stock = identityMap.register(Stock.class, decoded.getId(), decoded);
+		if (stock == decoded)
+			stock.setProduct(findProductById(stock.getProduct().getId()));
 		return stock;
 	}
 
@@ -86,8 +190,14 @@ public class StockMongoRepository implements StockRepository {
 		return eq(FIELD_ID, new ObjectId(id));
 	}
 
-	private Document findProductDocumentById(String productId) {
-		return productCollection.find(session, eqFilter(productId)).first();
+	private Product findProductById(String productId) {
+		return identityMap.find(Product.class, productId,
+				key -> productCollection.find(session, eqFilter(key)).first());
+	}
+
+	private void recordConflict(Stock stock) {
+		if (lockWaits != null && stock.getProduct() != null)
+			lockWaits.recordConflict(stock.getProduct().getId());
 	}
 
-}
\ No newline at end of file
+}
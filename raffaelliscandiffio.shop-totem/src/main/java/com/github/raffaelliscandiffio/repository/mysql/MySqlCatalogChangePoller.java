@@ -0,0 +1,229 @@
+package com.github.raffaelliscandiffio.repository.mysql;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.service.StockAvailability;
+
+/**
+ * Feeds the availability with the changes of the catalog on MySQL, which has
+ * no change stream: the CATALOG_CHANGES table filled by the triggers of the
+ * schema is polled at a fixed interval, on a connection of its own, and only
+ * the products changed since the last poll are read again.
+ * <p>
+ * The sequence numbers are taken when the rows are written but seen when their
+ * transactions commit, so a number skipped by a poll may still come: it is
+ * looked up again by the next polls until it shows up, or until it is old
+ * enough to belong to a transaction rolled back.
+ */
+public class MySqlCatalogChangePoller implements Closeable {
+
+	private static final Logger LOGGER = LogManager.getLogger(MySqlCatalogChangePoller.class);
+	private static final int BATCH_SIZE = 1000;
+	// the changes before the start, possibly not committed yet, are read again
+	private static final int START_OVERLAP = BATCH_SIZE;
+	private static final long GAP_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+	private static final int MAX_GAPS = 10_000;
+	// every totem reads a change long before it is deleted
+	private static final long RETENTION_SECONDS = TimeUnit.MINUTES.toSeconds(10);
+	private static final long PRUNE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+	private static final String PRODUCT = "P";
+
+	private final EntityManagerFactory entityManagerFactory;
+	private final StockAvailability availability;
+	private final long intervalMillis;
+	private final ScheduledExecutorService poller;
+
+	// used only by the thread of the poller
+	private EntityManager entityManager;
+	private long lastSeq;
+	// the numbers skipped, with the time they were noticed
+	private final TreeMap<Long, Long> gaps = new TreeMap<>();
+	private long prunedAt;
+
+	public MySqlCatalogChangePoller(EntityManagerFactory entityManagerFactory, StockAvailability availability,
+			long intervalMillis) {
+		if (intervalMillis <= 0)
+			throw new IllegalArgumentException("Interval must be positive. Received: " + intervalMillis);
+		this.entityManagerFactory = entityManagerFactory;
+		this.availability = availability;
+		this.intervalMillis = intervalMillis;
+		this.poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "catalog-changes");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public void start() {
+		poller.execute(() -> {
+			entityManager = entityManagerFactory.createEntityManager();
+			prunedAt = System.currentTimeMillis();
+			run(this::readStock);
+		});
+		poller.scheduleWithFixedDelay(() -> {
+			run(this::poll);
+			pruneIfDue();
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void close() {
+		poller.shutdown();
+		try {
+			if (!poller.awaitTermination(intervalMillis + TimeUnit.SECONDS.toMillis(5), TimeUnit.MILLISECONDS))
+				LOGGER.log(Level.WARN, "The poll of the catalog changes did not end in time");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (entityManager != null && entityManager.isOpen())
+			entityManager.close();
+	}
+
+	private void readStock() {
+		long maxSeq = ((Number) entityManager.createNativeQuery("SELECT COALESCE(MAX(seq), 0) FROM CATALOG_CHANGES")
+				.getSingleResult()).longValue();
+		lastSeq = Math.max(0, maxSeq - START_OVERLAP);
+		@SuppressWarnings("unchecked")
+		List<Object[]> rows = entityManager
+				.createNativeQuery("SELECT product_id, SUM(quantity) FROM STOCKS GROUP BY product_id")
+				.getResultList();
+		for (Object[] row : rows)
+			availability.setAvailable((String) row[0], ((Number) row[1]).intValue());
+	}
+
+	private void poll() {
+		long now = System.currentTimeMillis();
+		Set<String> stockChanged = new HashSet<>();
+		Set<String> productChanged = new HashSet<>();
+		for (Object[] change : readChanges()) {
+			long seq = ((Number) change[0]).longValue();
+			if (seq > lastSeq) {
+				for (long skipped = lastSeq + 1; skipped < seq && gaps.size() < MAX_GAPS; skipped++)
+					gaps.put(skipped, now);
+				lastSeq = seq;
+			} else if (gaps.remove(seq) == null) {
+				continue;
+			}
+			(PRODUCT.equals(String.valueOf(change[2])) ? productChanged : stockChanged).add((String) change[1]);
+		}
+		gaps.values().removeIf(noticedAt -> now - noticedAt > GAP_TIMEOUT_MILLIS);
+		if (!productChanged.isEmpty())
+			readProducts(productChanged);
+		if (!stockChanged.isEmpty())
+			readStock(stockChanged);
+	}
+
+	// The old changes are deleted a batch at a time until a batch comes short,
+	// each in a transaction of its own so that the triggers of the writers never
+	// wait long for its locks.
+	private void pruneIfDue() {
+		long now = System.currentTimeMillis();
+		if (now - prunedAt < PRUNE_INTERVAL_MILLIS)
+			return;
+		prunedAt = now;
+		int deleted = BATCH_SIZE;
+		while (deleted == BATCH_SIZE && !poller.isShutdown()) {
+			EntityTransaction transaction = entityManager.getTransaction();
+			try {
+				transaction.begin();
+				deleted = entityManager.createNativeQuery(
+						"DELETE FROM CATALOG_CHANGES WHERE changed_at < TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP(3)) LIMIT "
+								+ BATCH_SIZE)
+						.setParameter(1, -RETENTION_SECONDS).executeUpdate();
+				transaction.commit();
+			} catch (RuntimeException e) {
+				if (transaction.isActive())
+					transaction.rollback();
+				LOGGER.log(Level.WARN, "Cannot delete the old changes of the catalog", e);
+				return;
+			}
+		}
+	}
+
+	// the changes after the last one seen, and those skipped that have come since
+	@SuppressWarnings("unchecked")
+	private List<Object[]> readChanges() {
+		List<Object[]> changes = new ArrayList<>(entityManager
+				.createNativeQuery("SELECT seq, product_id, kind FROM CATALOG_CHANGES WHERE seq > ? ORDER BY seq")
+				.setParameter(1, lastSeq).setMaxResults(BATCH_SIZE).getResultList());
+		if (!gaps.isEmpty()) {
+			List<Long> skipped = new ArrayList<>(BATCH_SIZE);
+			for (Long seq : gaps.keySet()) {
+				if (skipped.size() == BATCH_SIZE)
+					break;
+				skipped.add(seq);
+			}
+			changes.addAll(entityManager
+					.createNativeQuery("SELECT seq, product_id, kind FROM CATALOG_CHANGES WHERE seq IN (:skipped)")
+					.setParameter("skipped", skipped).getResultList());
+		}
+		return changes;
+	}
+
+	// a product changed that is no longer there was deleted
+	private void readProducts(Set<String> productIds) {
+		@SuppressWarnings("unchecked")
+		List<Object[]> rows = entityManager
+				.createNativeQuery("SELECT id, name, price FROM PRODUCTS WHERE id IN (:ids)")
+				.setParameter("ids", productIds).getResultList();
+		Set<String> removed = new HashSet<>(productIds);
+		for (Object[] row : rows) {
+			Product product = new Product((String) row[1], ((Number) row[2]).doubleValue());
+			product.setId((String) row[0]);
+			removed.remove(product.getId());
+			availability.productChanged(product);
+		}
+		for (String productId : removed)
+			availability.productRemoved(productId);
+	}
+
+	// a product whose stock is gone has none available
+	private void readStock(Set<String> productIds) {
+		Map<String, Integer> available = new HashMap<>();
+		for (String productId : productIds)
+			available.put(productId, 0);
+		@SuppressWarnings("unchecked")
+		List<Object[]> rows = entityManager
+				.createNativeQuery(
+						"SELECT product_id, SUM(quantity) FROM STOCKS WHERE product_id IN (:ids) GROUP BY product_id")
+				.setParameter("ids", productIds).getResultList();
+		for (Object[] row : rows)
+			available.put((String) row[0], ((Number) row[1]).intValue());
+		available.forEach(availability::setAvailable);
+	}
+
+	// each poll reads in a transaction of its own, so it sees the changes
+	// committed since the last one
+	private void run(Runnable poll) {
+		EntityTransaction transaction = entityManager.getTransaction();
+		try {
+			transaction.begin();
+			poll.run();
+			transaction.commit();
+		} catch (RuntimeException e) {
+			if (transaction.isActive())
+				transaction.rollback();
+			LOGGER.log(Level.WARN, "Cannot read the changes of the catalog", e);
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+package com.github.raffaelliscandiffio.repository.mysql;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+
+import com.github.raffaelliscandiffio.model.OrderStatus;
+import com.github.raffaelliscandiffio.repository.OrderArchiver;
+
+/**
+ * Moves the closed orders and their items to ORDERS_ARCHIVE and
+ * ORDER_ITEMS_ARCHIVE, on a connection of its own for each batch. The orders
+ * of a batch are locked while they are moved; those locked by another archiver
+ * are skipped, so the totems sharing the database archive in parallel.
+ */
+public class MySqlOrderArchiver implements OrderArchiver {
+
+	private final EntityManagerFactory entityManagerFactory;
+
+	public MySqlOrderArchiver(EntityManagerFactory entityManagerFactory) {
+		this.entityManagerFactory = entityManagerFactory;
+	}
+
+	@Override
+	public int archive(long retentionSeconds, int batchSize) {
+		EntityManager entityManager = entityManagerFactory.createEntityManager();
+		EntityTransaction transaction = entityManager.getTransaction();
+		try {
+			transaction.begin();
+			int archived = moveBatch(entityManager, retentionSeconds, batchSize);
+			transaction.commit();
+			return archived;
+		} catch (RuntimeException e) {
+			if (transaction.isActive())
+				transaction.rollback();
+			throw e;
+		} finally {
+			entityManager.close();
+		}
+	}
+
+	// the items reference their order in both tables: the orders are archived
+	// before their items, and the items deleted before their orders
+	private int moveBatch(EntityManager entityManager, long retentionSeconds, int batchSize) {
+		@SuppressWarnings("unchecked")
+		List<String> orderIds = entityManager.createNativeQuery("SELECT id FROM ORDERS WHERE status = ? "
+				+ "AND closed_at < TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP(3)) ORDER BY closed_at, id LIMIT "
+				+ batchSize + " FOR UPDATE SKIP LOCKED").setParameter(1, OrderStatus.CLOSED.name())
+				.setParameter(2, -retentionSeconds).getResultList();
+		if (orderIds.isEmpty())
+			return 0;
+		entityManager.createNativeQuery("INSERT INTO ORDERS_ARCHIVE (id, status, total, line_count, closed_at) "
+				+ "SELECT id, status, total, line_count, closed_at FROM ORDERS WHERE id IN (:ids)")
+				.setParameter("ids", orderIds).executeUpdate();
+		entityManager.createNativeQuery("INSERT INTO ORDER_ITEMS_ARCHIVE (id, order_id, product, quantity) "
+				+ "SELECT id, order_id, product, quantity FROM ORDER_ITEMS WHERE order_id IN (:ids)")
+				.setParameter("ids", orderIds).executeUpdate();
+		entityManager.createNativeQuery("DELETE FROM ORDER_ITEMS WHERE order_id IN (:ids)")
+				.setParameter("ids", orderIds).executeUpdate();
+		entityManager.createNativeQuery("DELETE FROM ORDERS WHERE id IN (:ids)").setParameter("ids", orderIds)
+				.executeUpdate();
+		return orderIds.size();
+	}
+
+}
@@ -0,0 +1,164 @@
+package com.github.raffaelliscandiffio.repository.mysql;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Brings the MySQL schema to the version of the application by running the DDL
+ * scripts in db/mysql that were not applied yet. The applied version is kept
+ * in SCHEMA_VERSION, so a launch on an up to date database only reads it.
+ * <p>
+ * MySQL commits every DDL statement on its own, so a script failing halfway
+ * leaves the statements before the failure applied and its version unrecorded.
+ * The scripts must therefore be safe to run again: a statement that cannot be
+ * repeated, such as an ALTER adding a column, follows a guard line
+ * {@code --? <query>} and is skipped when the query counts more than zero rows,
+ * typically the column already in information_schema.
+ */
+public class MySqlSchema {
+
+	private static final Logger LOGGER = LogManager.getLogger(MySqlSchema.class);
+
+	private static final String SCRIPT_DIRECTORY = "/db/mysql/";
+	// the script of version n is at index n - 1
+	private static final List<String> SCRIPTS = Collections.unmodifiableList(
+			Arrays.asList("V1__indexed_schema.sql", "V2__catalog_changes.sql", "V3__order_archive.sql",
+					"V4__product_deletes.sql"));
+	public static final int LATEST_VERSION = SCRIPTS.size();
+
+	private static final String GUARD_PREFIX = "--?";
+
+	private static final String LOCK_NAME = "totem_schema";
+	private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+	private final EntityManager entityManager;
+
+	public MySqlSchema(EntityManager entityManager) {
+		this.entityManager = entityManager;
+	}
+
+	/**
+	 * Apply the missing scripts and return the version of the schema.
+	 */
+	public int migrate() {
+		EntityTransaction transaction = entityManager.getTransaction();
+		transaction.begin();
+		try {
+			// totems launched together must not run the same script twice
+			lock();
+			int version;
+			try {
+				version = applyScripts();
+			} finally {
+				unlock();
+			}
+			transaction.commit();
+			return version;
+		} catch (RuntimeException e) {
+			if (transaction.isActive())
+				transaction.rollback();
+			throw e;
+		}
+	}
+
+	private int applyScripts() {
+		execute("CREATE TABLE IF NOT EXISTS SCHEMA_VERSION (version integer NOT NULL, "
+				+ "applied_at timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP, PRIMARY KEY (version)) ENGINE=InnoDB");
+		int version = ((Number) entityManager.createNativeQuery("SELECT COALESCE(MAX(version), 0) FROM SCHEMA_VERSION")
+				.getSingleResult()).intValue();
+		if (version > LATEST_VERSION)
+			LOGGER.log(Level.WARN, "Schema version " + version + " is newer than the application, which expects "
+					+ LATEST_VERSION);
+		for (int next = version + 1; next <= LATEST_VERSION; next++) {
+			for (Statement statement : readScript(SCRIPTS.get(next - 1)))
+				if (statement.guard == null || count(statement.guard) == 0)
+					execute(statement.sql);
+			entityManager.createNativeQuery("INSERT INTO SCHEMA_VERSION (version) VALUES (?)").setParameter(1, next)
+					.executeUpdate();
+			LOGGER.log(Level.INFO, "Applied schema version " + next);
+			version = next;
+		}
+		return version;
+	}
+
+	private void lock() {
+		Object locked = entityManager.createNativeQuery("SELECT GET_LOCK(?, ?)").setParameter(1, LOCK_NAME)
+				.setParameter(2, LOCK_TIMEOUT_SECONDS).getSingleResult();
+		if (locked == null || ((Number) locked).intValue() != 1)
+			throw new PersistenceException("Cannot acquire the schema lock");
+	}
+
+	private void unlock() {
+		entityManager.createNativeQuery("SELECT RELEASE_LOCK(?)").setParameter(1, LOCK_NAME).getSingleResult();
+	}
+
+	private void execute(String statement) {
+		entityManager.createNativeQuery(statement).executeUpdate();
+	}
+
+	private int count(String query) {
+		return ((Number) entityManager.createNativeQuery(query).getSingleResult()).intValue();
+	}
+
+	// statements end with a semicolon at the end of a line, comments take whole
+	// lines; a guard takes a whole line and applies to the statement after it
+	private static List<Statement> readScript(String name) {
+		InputStream input = MySqlSchema.class.getResourceAsStream(SCRIPT_DIRECTORY + name);
+		if (input == null)
+			throw new PersistenceException("Schema script not found: " + name);
+		List<Statement> statements = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+			StringBuilder statement = new StringBuilder();
+			String guard = null;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String trimmed = line.trim();
+				if (trimmed.startsWith(GUARD_PREFIX)) {
+					guard = trimmed.substring(GUARD_PREFIX.length()).trim();
+					continue;
+				}
+				if (trimmed.isEmpty() || trimmed.startsWith("--"))
+					continue;
+				statement.append(trimmed).append(' ');
+				if (trimmed.endsWith(";")) {
+					statements.add(new Statement(guard, statement.substring(0, statement.lastIndexOf(";"))));
+					statement.setLength(0);
+					guard = null;
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return statements;
+	}
+
+	private static final class Statement {
+
+		// null when the statement always runs
+		private final String guard;
+		private final String sql;
+
+		private Statement(String guard, String sql) {
+			this.guard = guard;
+			this.sql = sql;
+		}
+
+	}
+
+}
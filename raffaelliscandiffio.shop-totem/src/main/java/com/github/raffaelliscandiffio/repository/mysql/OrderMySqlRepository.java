@@ -28,6 +28,19 @@ public class OrderMySqlRepository implements OrderRepository {
 		return entityManager.find(Order.class, id);
 	}
 
+	@Override
+	public void addToTotals(String id, double amount, int lines) {
+		entityManager
+				.createQuery("UPDATE Order o SET o.total = o.total + :amount, o.lineCount = o.lineCount + :lines "
+						+ "WHERE o.id = :order_id")
+				.setParameter("amount", amount).setParameter("lines", lines).setParameter("order_id", id)
+				.executeUpdate();
+		// the bulk update bypasses the persistence context, which may hold the old totals
+		Order cached = entityManager.find(Order.class, id);
+		if (cached != null)
+			entityManager.refresh(cached);
+	}
+
 	@Override
 	public void delete(String id) {
 		entityManager.createQuery("DELETE FROM Order where id=:order_id").setParameter("order_id", id).executeUpdate();
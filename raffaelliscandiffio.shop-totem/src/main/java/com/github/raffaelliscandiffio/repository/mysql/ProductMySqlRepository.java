@@ -3,6 +3,7 @@ package com.github.raffaelliscandiffio.repository.mysql;
 import java.util.List;
 
 import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
 
 import com.github.raffaelliscandiffio.model.Product;
 import com.github.raffaelliscandiffio.repository.ProductRepository;
@@ -30,4 +31,15 @@ public class ProductMySqlRepository implements ProductRepository {
 		return entityManager.createQuery("select p from Product p", Product.class).getResultList();
 	}
 
+	@Override
+	public List<Product> findPage(String afterId, int limit) {
+		TypedQuery<Product> query;
+		if (afterId == null)
+			query = entityManager.createQuery("select p from Product p order by p.id", Product.class);
+		else
+			query = entityManager.createQuery("select p from Product p where p.id > :afterId order by p.id",
+					Product.class).setParameter("afterId", afterId);
+		return query.setMaxResults(limit).getResultList();
+	}
+
 }
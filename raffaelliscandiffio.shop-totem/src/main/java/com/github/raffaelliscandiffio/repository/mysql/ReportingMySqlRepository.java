@@ -0,0 +1,59 @@
+package com.github.raffaelliscandiffio.repository.mysql;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import com.github.raffaelliscandiffio.model.OrderStatus;
+import com.github.raffaelliscandiffio.model.ProductSales;
+import com.github.raffaelliscandiffio.repository.ReportingRepository;
+
+public class ReportingMySqlRepository implements ReportingRepository {
+
+	// the items of the closed orders still in ORDER_ITEMS are joined through the
+	// (order_id, product, quantity) index, the archived ones read on the
+	// (product, quantity) index: both cover the aggregation
+	private static final String SALES_BY_PRODUCT = "SELECT p.id, p.name, SUM(s.quantity), SUM(s.quantity * p.price) "
+			+ "FROM (SELECT i.product, i.quantity FROM ORDER_ITEMS i JOIN ORDERS o ON o.id = i.order_id "
+			+ "WHERE o.status = ? UNION ALL SELECT a.product, a.quantity FROM ORDER_ITEMS_ARCHIVE a) s "
+			+ "JOIN PRODUCTS p ON p.id = s.product GROUP BY p.id, p.name ";
+
+	// MySQL Connector/J streams the rows one by one only with this fetch size
+	private static final int STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+
+	private EntityManager entityManager;
+
+	public ReportingMySqlRepository(EntityManager entityManager) {
+		this.entityManager = entityManager;
+	}
+
+	@Override
+	public List<ProductSales> findTopSellers(int limit) {
+		@SuppressWarnings("unchecked")
+		List<Object[]> rows = salesQuery("ORDER BY SUM(s.quantity) DESC, p.id").setMaxResults(limit)
+				.getResultList();
+		return rows.stream().map(this::fromRowToSales).collect(Collectors.toList());
+	}
+
+	@Override
+	public Stream<ProductSales> streamRevenueByProduct() {
+		@SuppressWarnings("unchecked")
+		Stream<Object[]> rows = salesQuery("ORDER BY SUM(s.quantity * p.price) DESC, p.id")
+				.setHint("org.hibernate.fetchSize", STREAMING_FETCH_SIZE).getResultStream();
+		return rows.map(this::fromRowToSales);
+	}
+
+	private Query salesQuery(String orderBy) {
+		return entityManager.createNativeQuery(SALES_BY_PRODUCT + orderBy).setParameter(1,
+				OrderStatus.CLOSED.name());
+	}
+
+	private ProductSales fromRowToSales(Object[] row) {
+		return new ProductSales((String) row[0], (String) row[1], ((Number) row[2]).longValue(),
+				((Number) row[3]).doubleValue());
+	}
+
+}
@@ -1,18 +1,40 @@
 package com.github.raffaelliscandiffio.repository.mysql;
 
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
 import javax.persistence.EntityManager;
 import javax.persistence.LockModeType;
 import javax.persistence.TypedQuery;
 
+import com.github.raffaelliscandiffio.exception.TransactionConflictException;
 import com.github.raffaelliscandiffio.model.Stock;
+import com.github.raffaelliscandiffio.profiling.LockWaitProfiler;
 import com.github.raffaelliscandiffio.repository.StockRepository;
+import com.github.raffaelliscandiffio.transaction.LockingStrategy;
 
 public class StockMySqlRepository implements StockRepository {
 
 	private EntityManager entityManager;
+	private LockModeType lockMode;
+	// null when the lock waits are not profiled
+	private LockWaitProfiler lockWaits;
 
 	public StockMySqlRepository(EntityManager entityManager) {
+		this(entityManager, LockingStrategy.PESSIMISTIC);
+	}
+
+	public StockMySqlRepository(EntityManager entityManager, LockingStrategy lockingStrategy) {
+		this(entityManager, lockingStrategy, null);
+	}
+
+	public StockMySqlRepository(EntityManager entityManager, LockingStrategy lockingStrategy,
+			LockWaitProfiler lockWaits) {
 		this.entityManager = entityManager;
+		this.lockWaits = lockWaits;
+		// with OPTIMISTIC the version column makes the UPDATE conditional at flush time
+		this.lockMode = lockingStrategy == LockingStrategy.PESSIMISTIC ? LockModeType.PESSIMISTIC_WRITE
+				: LockModeType.NONE;
 	}
 
 	@Override
@@ -33,12 +55,82 @@ public class StockMySqlRepository implements StockRepository {
 
 	@Override
 	public Stock findByProductId(String productId) {
+		List<String> shardIds = findShardIds(productId, 0);
+		if (shardIds.isEmpty())
+			return null;
+		return lockShard(shardIds.get(ThreadLocalRandom.current().nextInt(shardIds.size())));
+	}
+
+	@Override
+	public Stock findByProductIdWithQuantity(String productId, int quantity) {
+		List<String> shardIds = findShardIds(productId, quantity);
+		if (shardIds.isEmpty())
+			return null;
+		Stock s = lockShard(shardIds.get(ThreadLocalRandom.current().nextInt(shardIds.size())));
+		// the candidate was drained while waiting for its lock: locking another
+		// shard, or all of them to drain, after this random one could deadlock
+		// with a transaction locking them in shard order
+		if (s == null || s.getQuantity() < quantity)
+			throw new TransactionConflictException(
+					"Stock shard of product " + productId + " was drained while waiting for its lock.");
+		return s;
+	}
+
+	@Override
+	public List<Stock> findAllByProductId(String productId) {
 		TypedQuery<Stock> query = entityManager
-				.createQuery("SELECT s FROM Stock s WHERE s.product.id = :productId", Stock.class)
-				.setParameter("productId", productId).setLockMode(LockModeType.PESSIMISTIC_WRITE);
-		Stock s = query.getResultList().stream().findFirst().orElse(null);
-		if (s != null)
+				.createQuery("SELECT s FROM Stock s WHERE s.product.id = :productId ORDER BY s.shard", Stock.class)
+				.setParameter("productId", productId).setLockMode(lockMode);
+		long start = System.nanoTime();
+		List<Stock> shards = query.getResultList();
+		recordLockWait(productId, start);
+		for (Stock s : shards)
 			entityManager.refresh(s);
+		return shards;
+	}
+
+	@Override
+	public int getTotalQuantityByProductId(String productId) {
+		// the return value of SUM is always long
+		Long total = entityManager
+				.createQuery("SELECT SUM(s.quantity) FROM Stock s WHERE s.product.id = :productId", Long.class)
+				.setParameter("productId", productId).getSingleResult();
+		return total == null ? 0 : Math.toIntExact(total);
+	}
+
+	@Override
+	public void addToQuantity(String id, int delta) {
+		entityManager
+				.createQuery("UPDATE Stock s SET s.quantity = s.quantity + :delta, s.version = s.version + 1 "
+						+ "WHERE s.id = :stock_id")
+				.setParameter("delta", delta).setParameter("stock_id", id).executeUpdate();
+		// the bulk update bypasses the persistence context, which may hold the old quantity
+		Stock cached = entityManager.find(Stock.class, id);
+		if (cached != null)
+			entityManager.refresh(cached);
+	}
+
+	private List<String> findShardIds(String productId, int minQuantity) {
+		return entityManager
+				.createQuery("SELECT s.id FROM Stock s WHERE s.product.id = :productId AND s.quantity >= :quantity",
+						String.class)
+				.setParameter("productId", productId).setParameter("quantity", minQuantity).getResultList();
+	}
+
+	private Stock lockShard(String id) {
+		Stock s = entityManager.find(Stock.class, id);
+		if (s != null) {
+			long start = System.nanoTime();
+			entityManager.refresh(s, lockMode);
+			recordLockWait(s.getProduct().getId(), start);
+		}
 		return s;
 	}
-}
\ No newline at end of file
+
+	// the SELECT ... FOR UPDATE returns once the rows are locked, so its time
+	// is mostly the wait for the transactions holding them
+	private void recordLockWait(String productId, long start) {
+		if (lockWaits != null && lockMode == LockModeType.PESSIMISTIC_WRITE)
+			lockWaits.record(productId, System.nanoTime() - start);
+	}
+}
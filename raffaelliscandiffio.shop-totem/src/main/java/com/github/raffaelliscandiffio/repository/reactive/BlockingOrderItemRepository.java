@@ -0,0 +1,49 @@
+package com.github.raffaelliscandiffio.repository.reactive;
+
+import static com.github.raffaelliscandiffio.utils.Publishers.await;
+import static com.github.raffaelliscandiffio.utils.Publishers.awaitList;
+
+import java.util.List;
+
+import com.github.raffaelliscandiffio.model.OrderItem;
+import com.github.raffaelliscandiffio.repository.OrderItemRepository;
+
+public class BlockingOrderItemRepository implements OrderItemRepository {
+
+	private ReactiveOrderItemRepository repository;
+
+	public BlockingOrderItemRepository(ReactiveOrderItemRepository repository) {
+		this.repository = repository;
+	}
+
+	@Override
+	public void save(OrderItem orderItem) {
+		await(repository.save(orderItem));
+	}
+
+	@Override
+	public OrderItem findById(String id) {
+		return await(repository.findById(id));
+	}
+
+	@Override
+	public void delete(String id) {
+		await(repository.delete(id));
+	}
+
+	@Override
+	public void update(OrderItem orderItem) {
+		await(repository.update(orderItem));
+	}
+
+	@Override
+	public List<OrderItem> getListByOrderId(String orderId) {
+		return awaitList(repository.getListByOrderId(orderId));
+	}
+
+	@Override
+	public OrderItem findByProductAndOrderId(String productId, String orderId) {
+		return await(repository.findByProductAndOrderId(productId, orderId));
+	}
+
+}
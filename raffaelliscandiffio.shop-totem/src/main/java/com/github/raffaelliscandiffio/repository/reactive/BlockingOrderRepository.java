@@ -0,0 +1,41 @@
+package com.github.raffaelliscandiffio.repository.reactive;
+
+import static com.github.raffaelliscandiffio.utils.Publishers.await;
+
+import com.github.raffaelliscandiffio.model.Order;
+import com.github.raffaelliscandiffio.repository.OrderRepository;
+
+public class BlockingOrderRepository implements OrderRepository {
+
+	private ReactiveOrderRepository repository;
+
+	public BlockingOrderRepository(ReactiveOrderRepository repository) {
+		this.repository = repository;
+	}
+
+	@Override
+	public void save(Order order) {
+		await(repository.save(order));
+	}
+
+	@Override
+	public Order findById(String id) {
+		return await(repository.findById(id));
+	}
+
+	@Override
+	public void delete(String id) {
+		await(repository.delete(id));
+	}
+
+	@Override
+	public void update(Order order) {
+		await(repository.update(order));
+	}
+
+	@Override
+	public void addToTotals(String id, double amount, int lines) {
+		await(repository.addToTotals(id, amount, lines));
+	}
+
+}
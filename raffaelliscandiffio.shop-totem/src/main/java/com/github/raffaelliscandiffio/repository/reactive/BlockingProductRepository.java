@@ -0,0 +1,39 @@
+package com.github.raffaelliscandiffio.repository.reactive;
+
+import static com.github.raffaelliscandiffio.utils.Publishers.await;
+import static com.github.raffaelliscandiffio.utils.Publishers.awaitList;
+
+import java.util.List;
+
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.repository.ProductRepository;
+
+public class BlockingProductRepository implements ProductRepository {
+
+	private ReactiveProductRepository repository;
+
+	public BlockingProductRepository(ReactiveProductRepository repository) {
+		this.repository = repository;
+	}
+
+	@Override
+	public List<Product> findAll() {
+		return awaitList(repository.findAll());
+	}
+
+	@Override
+	public Product findById(String id) {
+		return await(repository.findById(id));
+	}
+
+	@Override
+	public List<Product> findPage(String afterId, int limit) {
+		return awaitList(repository.findPage(afterId, limit));
+	}
+
+	@Override
+	public void save(Product product) {
+		await(repository.save(product));
+	}
+
+}
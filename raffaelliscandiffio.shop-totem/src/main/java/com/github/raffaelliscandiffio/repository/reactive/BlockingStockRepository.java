@@ -0,0 +1,60 @@
+package com.github.raffaelliscandiffio.repository.reactive;
+
+import static com.github.raffaelliscandiffio.utils.Publishers.await;
+import static com.github.raffaelliscandiffio.utils.Publishers.awaitList;
+
+import java.util.List;
+
+import com.github.raffaelliscandiffio.model.Stock;
+import com.github.raffaelliscandiffio.repository.StockRepository;
+
+public class BlockingStockRepository implements StockRepository {
+
+	private ReactiveStockRepository repository;
+
+	public BlockingStockRepository(ReactiveStockRepository repository) {
+		this.repository = repository;
+	}
+
+	@Override
+	public Stock findById(String id) {
+		return await(repository.findById(id));
+	}
+
+	@Override
+	public void save(Stock stock) {
+		await(repository.save(stock));
+	}
+
+	@Override
+	public void update(Stock stock) {
+		await(repository.update(stock));
+	}
+
+	@Override
+	public Stock findByProductId(String productId) {
+		return await(repository.findByProductId(productId));
+	}
+
+	@Override
+	public Stock findByProductIdWithQuantity(String productId, int quantity) {
+		return await(repository.findByProductIdWithQuantity(productId, quantity));
+	}
+
+	@Override
+	public List<Stock> findAllByProductId(String productId) {
+		return awaitList(repository.findAllByProductId(productId));
+	}
+
+	@Override
+	public int getTotalQuantityByProductId(String productId) {
+		Integer total = await(repository.getTotalQuantityByProductId(productId));
+		return total == null ? 0 : total;
+	}
+
+	@Override
+	public void addToQuantity(String id, int delta) {
+		await(repository.addToQuantity(id, delta));
+	}
+
+}
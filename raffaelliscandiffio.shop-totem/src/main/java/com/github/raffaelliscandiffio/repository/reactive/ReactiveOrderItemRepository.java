@@ -0,0 +1,21 @@
+package com.github.raffaelliscandiffio.repository.reactive;
+
+import org.reactivestreams.Publisher;
+
+import com.github.raffaelliscandiffio.model.OrderItem;
+
+public interface ReactiveOrderItemRepository {
+
+	Publisher<Void> save(OrderItem orderItem);
+
+	Publisher<OrderItem> findById(String id);
+
+	Publisher<Void> delete(String id);
+
+	Publisher<Void> update(OrderItem orderItem);
+
+	Publisher<OrderItem> getListByOrderId(String orderId);
+
+	Publisher<OrderItem> findByProductAndOrderId(String productId, String orderId);
+
+}
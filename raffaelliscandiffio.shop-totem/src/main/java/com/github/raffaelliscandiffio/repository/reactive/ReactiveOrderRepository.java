@@ -0,0 +1,18 @@
+package com.github.raffaelliscandiffio.repository.reactive;
+
+import org.reactivestreams.Publisher;
+
+import com.github.raffaelliscandiffio.model.Order;
+
+public interface ReactiveOrderRepository {
+
+	Publisher<Void> save(Order order);
+
+	Publisher<Order> findById(String id);
+
+	Publisher<Void> delete(String id);
+
+	Publisher<Void> update(Order order);
+
+	Publisher<Void> addToTotals(String id, double amount, int lines);
+}
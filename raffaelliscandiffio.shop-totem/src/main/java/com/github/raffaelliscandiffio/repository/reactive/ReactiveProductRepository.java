@@ -0,0 +1,17 @@
+package com.github.raffaelliscandiffio.repository.reactive;
+
+import org.reactivestreams.Publisher;
+
+import com.github.raffaelliscandiffio.model.Product;
+
+public interface ReactiveProductRepository {
+
+	public Publisher<Product> findAll();
+
+	public Publisher<Product> findById(String id);
+
+	public Publisher<Product> findPage(String afterId, int limit);
+
+	public Publisher<Void> save(Product product);
+
+}
@@ -0,0 +1,29 @@
+package com.github.raffaelliscandiffio.repository.reactive;
+
+import org.reactivestreams.Publisher;
+
+import com.github.raffaelliscandiffio.model.Stock;
+
+/**
+ * Non-blocking variant of
+ * {@link com.github.raffaelliscandiffio.repository.StockRepository}: the
+ * lookups emit nothing where the blocking methods return null.
+ */
+public interface ReactiveStockRepository {
+
+	public Publisher<Stock> findById(String id);
+
+	public Publisher<Void> save(Stock stock);
+
+	public Publisher<Void> update(Stock stock);
+
+	public Publisher<Stock> findByProductId(String productId);
+
+	public Publisher<Stock> findByProductIdWithQuantity(String productId, int quantity);
+
+	public Publisher<Stock> findAllByProductId(String productId);
+
+	public Publisher<Integer> getTotalQuantityByProductId(String productId);
+
+	public Publisher<Void> addToQuantity(String id, int delta);
+}
@@ -0,0 +1,48 @@
+package com.github.raffaelliscandiffio.repository.recorded;
+
+import java.util.List;
+
+import com.github.raffaelliscandiffio.model.OrderItem;
+import com.github.raffaelliscandiffio.repository.OrderItemRepository;
+
+public class RecordedOrderItemRepository extends RecordedRepository implements OrderItemRepository {
+
+	private OrderItemRepository repository;
+
+	public RecordedOrderItemRepository(OrderItemRepository repository, String backend) {
+		super(backend, "OrderItem");
+		this.repository = repository;
+	}
+
+	@Override
+	public void save(OrderItem orderItem) {
+		record("save", () -> repository.save(orderItem));
+	}
+
+	@Override
+	public OrderItem findById(String id) {
+		return record("findById", () -> repository.findById(id), RecordedRepository::found);
+	}
+
+	@Override
+	public void delete(String id) {
+		record("delete", () -> repository.delete(id));
+	}
+
+	@Override
+	public void update(OrderItem orderItem) {
+		record("update", () -> repository.update(orderItem));
+	}
+
+	@Override
+	public List<OrderItem> getListByOrderId(String orderId) {
+		return record("getListByOrderId", () -> repository.getListByOrderId(orderId), List::size);
+	}
+
+	@Override
+	public OrderItem findByProductAndOrderId(String productId, String orderId) {
+		return record("findByProductAndOrderId", () -> repository.findByProductAndOrderId(productId, orderId),
+				RecordedRepository::found);
+	}
+
+}
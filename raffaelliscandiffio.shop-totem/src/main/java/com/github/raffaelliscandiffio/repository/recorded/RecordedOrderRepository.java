@@ -0,0 +1,40 @@
+package com.github.raffaelliscandiffio.repository.recorded;
+
+import com.github.raffaelliscandiffio.model.Order;
+import com.github.raffaelliscandiffio.repository.OrderRepository;
+
+public class RecordedOrderRepository extends RecordedRepository implements OrderRepository {
+
+	private OrderRepository repository;
+
+	public RecordedOrderRepository(OrderRepository repository, String backend) {
+		super(backend, "Order");
+		this.repository = repository;
+	}
+
+	@Override
+	public void save(Order order) {
+		record("save", () -> repository.save(order));
+	}
+
+	@Override
+	public Order findById(String id) {
+		return record("findById", () -> repository.findById(id), RecordedRepository::found);
+	}
+
+	@Override
+	public void delete(String id) {
+		record("delete", () -> repository.delete(id));
+	}
+
+	@Override
+	public void update(Order order) {
+		record("update", () -> repository.update(order));
+	}
+
+	@Override
+	public void addToTotals(String id, double amount, int lines) {
+		record("addToTotals", () -> repository.addToTotals(id, amount, lines));
+	}
+
+}
@@ -0,0 +1,37 @@
+package com.github.raffaelliscandiffio.repository.recorded;
+
+import java.util.List;
+
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.repository.ProductRepository;
+
+public class RecordedProductRepository extends RecordedRepository implements ProductRepository {
+
+	private ProductRepository repository;
+
+	public RecordedProductRepository(ProductRepository repository, String backend) {
+		super(backend, "Product");
+		this.repository = repository;
+	}
+
+	@Override
+	public List<Product> findAll() {
+		return record("findAll", repository::findAll, List::size);
+	}
+
+	@Override
+	public Product findById(String id) {
+		return record("findById", () -> repository.findById(id), RecordedRepository::found);
+	}
+
+	@Override
+	public List<Product> findPage(String afterId, int limit) {
+		return record("findPage", () -> repository.findPage(afterId, limit), List::size);
+	}
+
+	@Override
+	public void save(Product product) {
+		record("save", () -> repository.save(product));
+	}
+
+}
@@ -0,0 +1,32 @@
+package com.github.raffaelliscandiffio.repository.recorded;
+
+import com.github.raffaelliscandiffio.jfr.RepositoryEvent;
+import com.github.raffaelliscandiffio.repository.OrderItemRepository;
+import com.github.raffaelliscandiffio.repository.OrderRepository;
+import com.github.raffaelliscandiffio.repository.ProductRepository;
+import com.github.raffaelliscandiffio.repository.StockRepository;
+import com.github.raffaelliscandiffio.transaction.TransactionCode;
+
+/**
+ * Applies the code of a transaction to its repositories, wrapped so that every
+ * call emits a {@link RepositoryEvent} while a flight recording takes them and
+ * is timed while {@link RepositoryTimings} are collected. Otherwise the
+ * repositories are given as they are.
+ */
+public final class RecordedRepositories {
+
+	private RecordedRepositories() {
+	}
+
+	public static <T> T apply(TransactionCode<T> code, String backend, ProductRepository productRepository,
+			StockRepository stockRepository, OrderRepository orderRepository,
+			OrderItemRepository orderItemRepository) {
+		if (!RepositoryTimings.isCollecting() && !RepositoryEvent.isRecording())
+			return code.apply(productRepository, stockRepository, orderRepository, orderItemRepository);
+		return code.apply(new RecordedProductRepository(productRepository, backend),
+				new RecordedStockRepository(stockRepository, backend),
+				new RecordedOrderRepository(orderRepository, backend),
+				new RecordedOrderItemRepository(orderItemRepository, backend));
+	}
+
+}
@@ -0,0 +1,44 @@
+package com.github.raffaelliscandiffio.repository.recorded;
+
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import com.github.raffaelliscandiffio.jfr.RepositoryEvent;
+
+abstract class RecordedRepository {
+
+	private final String backend;
+	private final String entity;
+
+	RecordedRepository(String backend, String entity) {
+		this.backend = backend;
+		this.entity = entity;
+	}
+
+	<T> T record(String operation, Supplier<T> call, ToIntFunction<T> entities) {
+		RepositoryEvent event = RepositoryEvent.start(backend, entity, operation);
+		long start = System.nanoTime();
+		int count = 0;
+		try {
+			T result = call.get();
+			count = entities.applyAsInt(result);
+			return result;
+		} finally {
+			RepositoryTimings.record(entity, operation, System.nanoTime() - start);
+			event.finish(count);
+		}
+	}
+
+	// a write of a single entity
+	void record(String operation, Runnable call) {
+		record(operation, () -> {
+			call.run();
+			return null;
+		}, result -> 1);
+	}
+
+	static int found(Object entity) {
+		return entity == null ? 0 : 1;
+	}
+
+}
@@ -0,0 +1,60 @@
+package com.github.raffaelliscandiffio.repository.recorded;
+
+import java.util.List;
+
+import com.github.raffaelliscandiffio.model.Stock;
+import com.github.raffaelliscandiffio.repository.StockRepository;
+
+public class RecordedStockRepository extends RecordedRepository implements StockRepository {
+
+	private StockRepository repository;
+
+	public RecordedStockRepository(StockRepository repository, String backend) {
+		super(backend, "Stock");
+		this.repository = repository;
+	}
+
+	@Override
+	public Stock findById(String id) {
+		return record("findById", () -> repository.findById(id), RecordedRepository::found);
+	}
+
+	@Override
+	public void save(Stock stock) {
+		record("save", () -> repository.save(stock));
+	}
+
+	@Override
+	public void update(Stock stock) {
+		record("update", () -> repository.update(stock));
+	}
+
+	@Override
+	public Stock findByProductId(String productId) {
+		return record("findByProductId", () -> repository.findByProductId(productId), RecordedRepository::found);
+	}
+
+	@Override
+	public Stock findByProductIdWithQuantity(String productId, int quantity) {
+		return record("findByProductIdWithQuantity", () -> repository.findByProductIdWithQuantity(productId, quantity),
+				RecordedRepository::found);
+	}
+
+	@Override
+	public List<Stock> findAllByProductId(String productId) {
+		return record("findAllByProductId", () -> repository.findAllByProductId(productId), List::size);
+	}
+
+	@Override
+	public int getTotalQuantityByProductId(String productId) {
+		// the shards summed are not known, the sum counts as one result
+		return record("getTotalQuantityByProductId", () -> repository.getTotalQuantityByProductId(productId),
+				total -> 1);
+	}
+
+	@Override
+	public void addToQuantity(String id, int delta) {
+		record("addToQuantity", () -> repository.addToQuantity(id, delta));
+	}
+
+}
@@ -0,0 +1,80 @@
+package com.github.raffaelliscandiffio.repository.recorded;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The time an operation spends in each repository method, collected on the
+ * thread running the operation between {@link #start()} and {@link #stop()}.
+ * While a collection is open the transaction managers give the code recorded
+ * repositories.
+ */
+public final class RepositoryTimings {
+
+	private static final ThreadLocal<RepositoryTimings> CURRENT = new ThreadLocal<>();
+
+	private final RepositoryTimings outer;
+	// by entity and method, such as Stock.update, in order of first call
+	private final Map<String, Call> calls = new LinkedHashMap<>();
+
+	private RepositoryTimings(RepositoryTimings outer) {
+		this.outer = outer;
+	}
+
+	public static RepositoryTimings start() {
+		RepositoryTimings timings = new RepositoryTimings(CURRENT.get());
+		CURRENT.set(timings);
+		return timings;
+	}
+
+	public void stop() {
+		if (outer == null)
+			CURRENT.remove();
+		else
+			CURRENT.set(outer);
+	}
+
+	public List<Call> getCalls() {
+		return new ArrayList<>(calls.values());
+	}
+
+	static boolean isCollecting() {
+		return CURRENT.get() != null;
+	}
+
+	static void record(String entity, String operation, long nanos) {
+		RepositoryTimings timings = CURRENT.get();
+		if (timings == null)
+			return;
+		Call call = timings.calls.computeIfAbsent(entity + "." + operation, Call::new);
+		call.count++;
+		call.nanos += nanos;
+	}
+
+	public static final class Call {
+
+		private final String name;
+		private int count;
+		private long nanos;
+
+		private Call(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+
+	}
+
+}
@@ -0,0 +1,116 @@
+package com.github.raffaelliscandiffio.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.github.raffaelliscandiffio.service.AsyncShoppingService;
+import com.github.raffaelliscandiffio.service.StockAvailability;
+import com.github.raffaelliscandiffio.view.socket.TotemProtocol;
+
+/**
+ * Hosts many virtual totems in one JVM. Each kiosk connecting to the local
+ * port gets a session of its own, with its own controller and view, while all
+ * of them share the same service, and with it the database connections and the
+ * catalog. A kiosk over the limit is told the server is busy and disconnected.
+ */
+public class TotemServer implements Closeable {
+
+	private static final Logger LOGGER = LogManager.getLogger(TotemServer.class);
+
+	private final AsyncShoppingService shoppingService;
+	private final StockAvailability availability;
+	private final int maxTotems;
+	private final ServerSocket serverSocket;
+	private final Set<TotemSession> sessions = ConcurrentHashMap.newKeySet();
+	// two per session, the reader and the writer, plus the one accepting kiosks
+	private final ExecutorService threads;
+
+	public TotemServer(AsyncShoppingService shoppingService, int port, int maxTotems) throws IOException {
+		this(shoppingService, null, port, maxTotems);
+	}
+
+	/**
+	 * The changes of the given availability, if any, are pushed to every kiosk.
+	 */
+	public TotemServer(AsyncShoppingService shoppingService, StockAvailability availability, int port,
+			int maxTotems) throws IOException {
+		if (maxTotems <= 0)
+			throw new IllegalArgumentException("Max totems must be positive. Received: " + maxTotems);
+		this.shoppingService = shoppingService;
+		this.availability = availability;
+		this.maxTotems = maxTotems;
+		// only the kiosks of this machine may connect
+		this.serverSocket = new ServerSocket(port, maxTotems, InetAddress.getLoopbackAddress());
+		AtomicInteger threadCount = new AtomicInteger();
+		this.threads = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "totem-server-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public void start() {
+		threads.execute(this::accept);
+		LOGGER.log(Level.INFO, "Serving up to " + maxTotems + " totems on port " + getPort());
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	public int getTotemCount() {
+		return sessions.size();
+	}
+
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+		for (TotemSession session : sessions)
+			session.close();
+		threads.shutdown();
+	}
+
+	private void accept() {
+		while (!serverSocket.isClosed()) {
+			Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (IOException e) {
+				if (!serverSocket.isClosed())
+					LOGGER.log(Level.ERROR, "Cannot accept a kiosk", e);
+				continue;
+			}
+			if (sessions.size() >= maxTotems) {
+				refuse(socket);
+				continue;
+			}
+			TotemSession session = new TotemSession(socket, shoppingService, availability);
+			sessions.add(session);
+			session.start(threads, () -> sessions.remove(session));
+		}
+	}
+
+	private void refuse(Socket socket) {
+		try (Socket refused = socket; OutputStream out = refused.getOutputStream()) {
+			out.write((TotemProtocol.encode("BUSY", "All " + maxTotems + " totems are in use") + "\n")
+					.getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			LOGGER.log(Level.WARN, "Cannot refuse a kiosk", e);
+		}
+	}
+
+}
@@ -0,0 +1,211 @@
+package com.github.raffaelliscandiffio.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.github.raffaelliscandiffio.controller.TotemController;
+import com.github.raffaelliscandiffio.model.OrderItem;
+import com.github.raffaelliscandiffio.service.AsyncShoppingService;
+import com.github.raffaelliscandiffio.service.StockAvailability;
+import com.github.raffaelliscandiffio.view.socket.TotemProtocol;
+import com.github.raffaelliscandiffio.view.socket.TotemSocketView;
+
+/**
+ * One virtual totem, driven by the kiosk connected to the socket. The commands
+ * of the kiosk are read on one thread and the changes of the view are written
+ * on another, so a kiosk that stops reading never blocks the workers of the
+ * shared service: once its outbox is full the session is closed.
+ */
+class TotemSession {
+
+	private static final Logger LOGGER = LogManager.getLogger(TotemSession.class);
+	private static final int OUTBOX_CAPACITY = 1024;
+	// tells the writer that the session is over
+	private static final String CLOSED = new String("CLOSED");
+
+	private final Socket socket;
+	private final TotemSocketView view;
+	private final TotemController controller;
+	private final BlockingQueue<String> outbox = new ArrayBlockingQueue<>(OUTBOX_CAPACITY);
+
+	TotemSession(Socket socket, AsyncShoppingService shoppingService, StockAvailability availability) {
+		this.socket = socket;
+		this.view = new TotemSocketView(this::send);
+		this.controller = new TotemController(shoppingService, view, availability);
+	}
+
+	/**
+	 * Starts the reader and the writer of the session, the given callback runs
+	 * once the kiosk has gone.
+	 */
+	void start(Executor threads, Runnable onClose) {
+		threads.execute(this::write);
+		threads.execute(() -> {
+			try {
+				read();
+			} finally {
+				onClose.run();
+			}
+		});
+	}
+
+	void close() {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			LOGGER.log(Level.WARN, "Cannot close the totem socket", e);
+		}
+	}
+
+	private void read() {
+		send(TotemProtocol.encode("WELCOME"));
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!handle(TotemProtocol.decode(line)))
+					break;
+			}
+		} catch (IOException e) {
+			// the kiosk has gone or the server is closing
+		} finally {
+			controller.stopWatchingCatalog();
+			// the stock held by an order left open by the kiosk is given back
+			String orderId = view.getOrderId();
+			if (orderId != null)
+				controller.cancelShopping(orderId);
+			outbox.clear();
+			outbox.offer(CLOSED);
+		}
+	}
+
+	// false when the kiosk quits
+	private boolean handle(List<String> command) {
+		try {
+			switch (command.get(0)) {
+			case "START":
+				controller.startShopping();
+				break;
+			case "SHOP":
+				controller.openShopping();
+				break;
+			case "MORE":
+				controller.loadMoreProducts(argument(command, 1));
+				break;
+			case "SEARCH":
+				controller.searchProducts(argument(command, 1));
+				break;
+			case "ORDER":
+				controller.openOrder();
+				break;
+			case "BUY":
+				controller.buyProduct(openOrderId(), argument(command, 1), quantity(command));
+				break;
+			case "REMOVE":
+				controller.removeItem(shownItem(command));
+				break;
+			case "RETURN":
+				OrderItem item = shownItem(command);
+				controller.returnItem(item, quantityToReturn(command, item));
+				break;
+			case "CANCEL":
+				controller.cancelShopping(openOrderId());
+				break;
+			case "CHECKOUT":
+				controller.checkout(openOrderId());
+				break;
+			case "QUIT":
+				return false;
+			default:
+				throw new IllegalArgumentException("Unknown command: " + command.get(0));
+			}
+		} catch (IllegalArgumentException | IllegalStateException e) {
+			send(TotemProtocol.encode("ERROR", e.getMessage()));
+		}
+		return true;
+	}
+
+	private String openOrderId() {
+		String orderId = view.getOrderId();
+		if (orderId == null)
+			throw new IllegalStateException("No order is open");
+		return orderId;
+	}
+
+	private OrderItem shownItem(List<String> command) {
+		String itemId = argument(command, 1);
+		OrderItem item = view.getItem(itemId);
+		if (item == null)
+			throw new IllegalArgumentException("Item not in the cart: " + itemId);
+		return item;
+	}
+
+	private int quantity(List<String> command) {
+		String quantity = argument(command, 2);
+		int parsed;
+		try {
+			parsed = Integer.parseInt(quantity);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Quantity must be a number. Received: " + quantity);
+		}
+		if (parsed <= 0)
+			throw new IllegalArgumentException("Quantity must be positive. Received: " + parsed);
+		return parsed;
+	}
+
+	// the whole item is removed with REMOVE
+	private int quantityToReturn(List<String> command, OrderItem item) {
+		int quantity = quantity(command);
+		if (quantity >= item.getQuantity())
+			throw new IllegalArgumentException("Quantity to return must be less than the quantity of the item ("
+					+ item.getQuantity() + "). Received: " + quantity);
+		return quantity;
+	}
+
+	private String argument(List<String> command, int index) {
+		if (index >= command.size())
+			throw new IllegalArgumentException(command.get(0) + " needs " + index + " argument(s)");
+		return command.get(index);
+	}
+
+	private void send(String line) {
+		if (!outbox.offer(line)) {
+			LOGGER.log(Level.WARN, "The kiosk of a totem does not read its messages, closing its session");
+			close();
+		}
+	}
+
+	private void write() {
+		try (Writer writer = new BufferedWriter(
+				new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+			for (String line = outbox.take(); line != CLOSED; line = outbox.take()) {
+				writer.write(line);
+				writer.write('\n');
+				// more lines are coming, they are flushed together
+				if (outbox.isEmpty())
+					writer.flush();
+			}
+		} catch (IOException e) {
+			// the kiosk has gone, the reader ends the session
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			close();
+		}
+	}
+
+}
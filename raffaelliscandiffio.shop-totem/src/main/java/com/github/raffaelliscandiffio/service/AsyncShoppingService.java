@@ -0,0 +1,171 @@
+package com.github.raffaelliscandiffio.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.github.raffaelliscandiffio.exception.TransactionException;
+import com.github.raffaelliscandiffio.exception.TransactionTimeoutException;
+import com.github.raffaelliscandiffio.jfr.ShoppingOperationEvent;
+import com.github.raffaelliscandiffio.model.Order;
+import com.github.raffaelliscandiffio.model.OrderItem;
+import com.github.raffaelliscandiffio.model.Product;
+
+/**
+ * Runs every {@link ShoppingService} operation on the given executor.
+ * 
+ * Failures complete the returned future exceptionally with the original
+ * exception, see {@link #unwrap(Throwable)}. A future that is cancelled or
+ * times out before its operation starts skips the operation; an operation that
+ * is already running is never interrupted, since its transaction could still
+ * commit.
+ */
+public class AsyncShoppingService {
+
+	private static final ScheduledThreadPoolExecutor TIMEOUTS = createTimeoutScheduler();
+
+	private ShoppingService shoppingService;
+	private Executor executor;
+	private long timeoutMillis;
+
+	public AsyncShoppingService(ShoppingService shoppingService, Executor executor) {
+		this(shoppingService, executor, 0);
+	}
+
+	public AsyncShoppingService(ShoppingService shoppingService, Executor executor, long timeoutMillis) {
+		if (timeoutMillis < 0)
+			throw new IllegalArgumentException("Timeout must be non-negative. Received: " + timeoutMillis);
+		this.shoppingService = shoppingService;
+		this.executor = executor;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	public CompletableFuture<Order> openNewOrder() {
+		return supply("openNewOrder", shoppingService::openNewOrder);
+	}
+
+	public CompletableFuture<List<Product>> getAllProducts() {
+		return supply("getAllProducts", shoppingService::getAllProducts);
+	}
+
+	public CompletableFuture<List<Product>> getProductsPage(String afterId, int limit) {
+		return supply("getProductsPage", () -> shoppingService.getProductsPage(afterId, limit));
+	}
+
+	public CompletableFuture<List<Product>> searchProducts(String query, int limit) {
+		return supply("searchProducts", () -> shoppingService.searchProducts(query, limit));
+	}
+
+	public CompletableFuture<Order> getOrder(String orderId) {
+		return supply("getOrder", () -> shoppingService.getOrder(orderId));
+	}
+
+	public CompletableFuture<Void> deleteOrder(String orderId) {
+		return run("deleteOrder", () -> shoppingService.deleteOrder(orderId));
+	}
+
+	public CompletableFuture<Void> closeOrder(String orderId) {
+		return run("closeOrder", () -> shoppingService.closeOrder(orderId));
+	}
+
+	public CompletableFuture<Void> deleteItem(OrderItem orderItem) {
+		return run("deleteItem", () -> shoppingService.deleteItem(orderItem));
+	}
+
+	public CompletableFuture<OrderItem> returnItem(OrderItem orderItem, int quantityToReturn) {
+		return supply("returnItem", () -> shoppingService.returnItem(orderItem, quantityToReturn));
+	}
+
+	public CompletableFuture<List<OrderItem>> getOrderItems(String orderId) {
+		return supply("getOrderItems", () -> shoppingService.getOrderItems(orderId));
+	}
+
+	public CompletableFuture<OrderItem> buyProduct(String orderId, String productId, int purchaseQuantity) {
+		return supply("buyProduct", () -> shoppingService.buyProduct(orderId, productId, purchaseQuantity));
+	}
+
+	public CompletableFuture<Void> saveProductAndStock(String productName, double price, int quantity, int shards) {
+		return run("saveProductAndStock",
+				() -> shoppingService.saveProductAndStock(productName, price, quantity, shards));
+	}
+
+	public CompletableFuture<Integer> getAvailableQuantity(String productId) {
+		return supply("getAvailableQuantity", () -> shoppingService.getAvailableQuantity(productId));
+	}
+
+	public CompletableFuture<Map<String, Integer>> getAvailableQuantities(Collection<String> productIds) {
+		return supply("getAvailableQuantities", () -> shoppingService.getAvailableQuantities(productIds));
+	}
+
+	public CompletableFuture<Void> rebalanceStock(String productId) {
+		return run("rebalanceStock", () -> shoppingService.rebalanceStock(productId));
+	}
+
+	/**
+	 * Strips the CompletionException and ExecutionException wrappers added by
+	 * the future chain, returning the exception thrown by the service.
+	 */
+	public static Throwable unwrap(Throwable throwable) {
+		Throwable cause = throwable;
+		while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+				&& cause.getCause() != null)
+			cause = cause.getCause();
+		return cause;
+	}
+
+	private CompletableFuture<Void> run(String name, Runnable operation) {
+		return supply(name, () -> {
+			operation.run();
+			return null;
+		});
+	}
+
+	private <T> CompletableFuture<T> supply(String name, Supplier<T> operation) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		// the event spans from the request of the view to the completion
+		ShoppingOperationEvent event = ShoppingOperationEvent.start(name);
+		long requested = System.nanoTime();
+		future.whenComplete((result, error) -> event.finish(error == null));
+		try {
+			executor.execute(() -> {
+				if (future.isDone())
+					return;
+				event.setQueueTime(System.nanoTime() - requested);
+				try {
+					future.complete(operation.get());
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(new TransactionException("Operation rejected: the service is shutting down"));
+		}
+		if (timeoutMillis > 0 && !future.isDone()) {
+			ScheduledFuture<?> timeout = TIMEOUTS.schedule(() -> future.completeExceptionally(
+					new TransactionTimeoutException("Operation timed out after " + timeoutMillis + " ms")),
+					timeoutMillis, TimeUnit.MILLISECONDS);
+			future.whenComplete((result, error) -> timeout.cancel(false));
+		}
+		return future;
+	}
+
+	private static ScheduledThreadPoolExecutor createTimeoutScheduler() {
+		ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "shopping-service-timeout");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.setRemoveOnCancelPolicy(true);
+		return scheduler;
+	}
+
+}
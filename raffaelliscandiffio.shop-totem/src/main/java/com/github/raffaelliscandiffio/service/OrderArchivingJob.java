@@ -0,0 +1,87 @@
+package com.github.raffaelliscandiffio.service;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.github.raffaelliscandiffio.repository.OrderArchiver;
+
+/**
+ * Archives the closed orders past the retention window every interval, on a
+ * thread of its own. A run moves batches until one comes back short. Each
+ * batch commits on its own, so the database itself keeps the progress: a run
+ * stopped halfway loses nothing, and the next one starts again from the
+ * oldest order left.
+ */
+public class OrderArchivingJob implements Closeable {
+
+	private static final Logger LOGGER = LogManager.getLogger(OrderArchivingJob.class);
+
+	private final OrderArchiver archiver;
+	private final long retentionSeconds;
+	private final int batchSize;
+	private final long intervalMillis;
+	private final ScheduledExecutorService scheduler;
+	private volatile boolean running = true;
+
+	public OrderArchivingJob(OrderArchiver archiver, long retentionSeconds, int batchSize, long intervalMillis) {
+		if (retentionSeconds <= 0)
+			throw new IllegalArgumentException("Retention must be positive. Received: " + retentionSeconds);
+		if (batchSize <= 0)
+			throw new IllegalArgumentException("Batch size must be positive. Received: " + batchSize);
+		if (intervalMillis <= 0)
+			throw new IllegalArgumentException("Interval must be positive. Received: " + intervalMillis);
+		this.archiver = archiver;
+		this.retentionSeconds = retentionSeconds;
+		this.batchSize = batchSize;
+		this.intervalMillis = intervalMillis;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "order-archiver");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public void start() {
+		scheduler.scheduleWithFixedDelay(this::archiveDueOrders, 0, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	// the batch running when the job is closed is let commit
+	@Override
+	public void close() {
+		running = false;
+		scheduler.shutdown();
+		try {
+			if (!scheduler.awaitTermination(30, TimeUnit.SECONDS))
+				LOGGER.log(Level.WARN, "The archiving of the orders did not end in time");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Archive the orders due, and return how many were moved. A failed batch
+	 * ends the run, it is tried again by the next one.
+	 */
+	int archiveDueOrders() {
+		int archived = 0;
+		try {
+			int moved;
+			do {
+				moved = archiver.archive(retentionSeconds, batchSize);
+				archived += moved;
+			} while (moved == batchSize && running);
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.WARN, "Cannot archive the closed orders", e);
+		}
+		if (archived > 0)
+			LOGGER.log(Level.INFO, "Archived " + archived + " closed orders");
+		return archived;
+	}
+
+}
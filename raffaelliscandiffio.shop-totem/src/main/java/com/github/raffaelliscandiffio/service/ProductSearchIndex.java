@@ -0,0 +1,285 @@
+package com.github.raffaelliscandiffio.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.github.raffaelliscandiffio.model.Product;
+
+/**
+ * In-memory index over the product names. Every substring of up to three
+ * characters of a name maps to the ordinals of the products containing it, so
+ * a query intersects a few posting lists instead of scanning the catalog.
+ * Substrings at the start of the name and at the start of a word are indexed
+ * again under their own marker, so that the better ranked matches are found
+ * first and the search stops as soon as they fill the limit. A product renamed
+ * is indexed again under a new ordinal and its old ordinal is left empty, which
+ * keeps every posting list sorted; the lists are built again once half of the
+ * ordinals are empty.
+ */
+public class ProductSearchIndex {
+
+	private static final int GRAM_LENGTH = 3;
+	private static final char NAME_START = '\u0000';
+	private static final char WORD_START = '\u0001';
+
+	private static final int EXACT_MATCH = 0;
+	private static final int PREFIX_MATCH = 1;
+	private static final int WORD_PREFIX_MATCH = 2;
+	private static final int SUBSTRING_MATCH = 3;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final List<Product> products = new ArrayList<>();
+	private final List<String> names = new ArrayList<>();
+	private final Map<String, Integer> ordinalsById = new HashMap<>();
+	private final Map<String, Postings> postingsByGram = new HashMap<>();
+	private int removed;
+
+	/**
+	 * Index the product, unless a product with the same id is already indexed.
+	 * Products without an id are ignored.
+	 */
+	public void add(Product product) {
+		addAll(Collections.singletonList(product));
+	}
+
+	public void addAll(Collection<Product> newProducts) {
+		lock.writeLock().lock();
+		try {
+			for (Product product : newProducts)
+				index(product);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Index the product, replacing the one with the same id. Products without an
+	 * id are ignored.
+	 */
+	public void put(Product product) {
+		if (product.getId() == null)
+			return;
+		lock.writeLock().lock();
+		try {
+			Integer ordinal = ordinalsById.get(product.getId());
+			if (ordinal != null && names.get(ordinal).equals(normalize(product.getName()))) {
+				products.set(ordinal, product);
+				return;
+			}
+			unindex(product.getId());
+			index(product);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void remove(String productId) {
+		lock.writeLock().lock();
+		try {
+			unindex(productId);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return products.size() - removed;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Return at most limit products whose name contains the query, ignoring case.
+	 * Exact matches come first, then names starting with the query, then names
+	 * with a word starting with it; shorter names win ties.
+	 */
+	public List<Product> search(String query, int limit) {
+		if (limit <= 0)
+			throw new IllegalArgumentException("Limit must be positive. Received: " + limit);
+		String normalizedQuery = normalize(query);
+		if (normalizedQuery.isEmpty())
+			return Collections.emptyList();
+		lock.readLock().lock();
+		try {
+			Comparator<Match> ranking = Comparator.<Match>comparingInt(match -> match.name.length())
+					.thenComparing(match -> match.name).thenComparingInt(match -> match.ordinal);
+			List<Product> result = new ArrayList<>(limit);
+			// every tier only accepts its own ranks and ranks below those of the
+			// previous tier, a tier is searched only if the limit is not reached yet
+			collect(candidates(normalizedQuery, NAME_START), normalizedQuery, PREFIX_MATCH, ranking, limit, result);
+			if (result.size() < limit)
+				collect(candidates(normalizedQuery, WORD_START), normalizedQuery, WORD_PREFIX_MATCH, ranking, limit,
+						result);
+			if (result.size() < limit)
+				collect(candidates(normalizedQuery, null), normalizedQuery, SUBSTRING_MATCH, ranking, limit, result);
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void collect(int[] ordinals, String query, int tier, Comparator<Match> ranking, int limit,
+			List<Product> result) {
+		Comparator<Match> tierRanking = Comparator.<Match>comparingInt(match -> match.rank).thenComparing(ranking);
+		// the head of the queue is the worst of the best matches found so far
+		PriorityQueue<Match> best = new PriorityQueue<>(limit + 1, tierRanking.reversed());
+		int wanted = limit - result.size();
+		for (int ordinal : ordinals) {
+			String name = names.get(ordinal);
+			if (name == null)
+				continue;
+			int rank = rank(name, query);
+			if (rank < 0 || rank > tier || (tier > PREFIX_MATCH && rank < tier))
+				continue;
+			Match match = new Match(ordinal, name, rank);
+			if (best.size() < wanted) {
+				best.add(match);
+			} else if (tierRanking.compare(match, best.peek()) < 0) {
+				best.poll();
+				best.add(match);
+			}
+		}
+		List<Match> matches = new ArrayList<>(best);
+		matches.sort(tierRanking);
+		for (Match match : matches)
+			result.add(products.get(match.ordinal));
+	}
+
+	private void index(Product product) {
+		if (product.getId() == null || ordinalsById.containsKey(product.getId()))
+			return;
+		int ordinal = products.size();
+		String name = normalize(product.getName());
+		products.add(product);
+		names.add(name);
+		ordinalsById.put(product.getId(), ordinal);
+		Set<String> grams = new HashSet<>();
+		for (int start = 0; start < name.length(); start++)
+			for (int end = start + 1; end <= Math.min(name.length(), start + GRAM_LENGTH); end++)
+				grams.add(name.substring(start, end));
+		for (int start = 0; start < name.length(); start++) {
+			if (start > 0 && Character.isLetterOrDigit(name.charAt(start - 1)))
+				continue;
+			char marker = start == 0 ? NAME_START : WORD_START;
+			for (int end = start + 1; end <= Math.min(name.length(), start + GRAM_LENGTH); end++)
+				grams.add(marker + name.substring(start, end));
+		}
+		for (String gram : grams)
+			postingsByGram.computeIfAbsent(gram, key -> new Postings()).add(ordinal);
+	}
+
+	private void unindex(String productId) {
+		Integer ordinal = ordinalsById.remove(productId);
+		if (ordinal == null)
+			return;
+		products.set(ordinal, null);
+		names.set(ordinal, null);
+		removed++;
+		if (removed * 2 > products.size())
+			rebuild();
+	}
+
+	private void rebuild() {
+		List<Product> kept = new ArrayList<>(products.size() - removed);
+		for (Product product : products)
+			if (product != null)
+				kept.add(product);
+		products.clear();
+		names.clear();
+		ordinalsById.clear();
+		postingsByGram.clear();
+		removed = 0;
+		for (Product product : kept)
+			index(product);
+	}
+
+	// a short query is itself a gram; a longer one is intersected over its
+	// trigrams, starting from the rarest, and the candidates left still have to
+	// be checked against the whole query. A marker restricts the candidates to
+	// the names or words starting like the query.
+	private int[] candidates(String query, Character marker) {
+		List<Postings> lists = new ArrayList<>();
+		String head = query.substring(0, Math.min(query.length(), GRAM_LENGTH));
+		lists.add(postingsByGram.get(marker == null ? head : marker + head));
+		for (int start = 1; start + GRAM_LENGTH <= query.length(); start++)
+			lists.add(postingsByGram.get(query.substring(start, start + GRAM_LENGTH)));
+		if (lists.contains(null))
+			return new int[0];
+		lists.sort(Comparator.comparingInt(postings -> postings.size));
+		int[] result = lists.get(0).toArray();
+		int length = result.length;
+		// both sides are sorted, so a single forward pass intersects them
+		for (int i = 1; i < lists.size() && length > 0; i++) {
+			Postings postings = lists.get(i);
+			int kept = 0;
+			int position = 0;
+			for (int j = 0; j < length && position < postings.size; j++) {
+				while (position < postings.size && postings.ordinals[position] < result[j])
+					position++;
+				if (position < postings.size && postings.ordinals[position] == result[j])
+					result[kept++] = result[j];
+			}
+			length = kept;
+		}
+		return Arrays.copyOf(result, length);
+	}
+
+	private int rank(String name, String query) {
+		int position = name.indexOf(query);
+		if (position < 0)
+			return -1;
+		if (position == 0)
+			return name.length() == query.length() ? EXACT_MATCH : PREFIX_MATCH;
+		for (; position > 0; position = name.indexOf(query, position + 1))
+			if (!Character.isLetterOrDigit(name.charAt(position - 1)))
+				return WORD_PREFIX_MATCH;
+		return SUBSTRING_MATCH;
+	}
+
+	private static String normalize(String text) {
+		return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+	}
+
+	private static final class Match {
+		private final int ordinal;
+		private final String name;
+		private final int rank;
+
+		private Match(int ordinal, String name, int rank) {
+			this.ordinal = ordinal;
+			this.name = name;
+			this.rank = rank;
+		}
+	}
+
+	private static final class Postings {
+		private int[] ordinals = new int[4];
+		private int size;
+
+		private void add(int ordinal) {
+			if (size == ordinals.length)
+				ordinals = Arrays.copyOf(ordinals, size * 2);
+			ordinals[size++] = ordinal;
+		}
+
+		private int[] toArray() {
+			return Arrays.copyOf(ordinals, size);
+		}
+	}
+
+}
@@ -0,0 +1,39 @@
+package com.github.raffaelliscandiffio.service;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import com.github.raffaelliscandiffio.model.ProductSales;
+import com.github.raffaelliscandiffio.repository.ReportingRepository;
+
+/**
+ * Sales reports over the closed orders. The aggregations run in the database,
+ * only one row per product is sent back. The repositories share the connection
+ * of the shopping service, so reports must run on the same thread.
+ */
+public class ReportingService {
+
+	private ReportingRepository reportingRepository;
+
+	public ReportingService(ReportingRepository reportingRepository) {
+		this.reportingRepository = reportingRepository;
+	}
+
+	public List<ProductSales> getTopSellers(int limit) {
+		if (limit <= 0)
+			throw new IllegalArgumentException("Limit must be positive. Received: " + limit);
+		return reportingRepository.findTopSellers(limit);
+	}
+
+	/**
+	 * Pass the sales of every sold product to the consumer, the highest revenue
+	 * first, reading them from the database as they are consumed.
+	 */
+	public void forEachRevenueByProduct(Consumer<ProductSales> consumer) {
+		try (Stream<ProductSales> sales = reportingRepository.streamRevenueByProduct()) {
+			sales.forEach(consumer);
+		}
+	}
+
+}
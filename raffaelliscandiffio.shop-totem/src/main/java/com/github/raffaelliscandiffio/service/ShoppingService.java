@@ -1,164 +1,549 @@
 package com.github.raffaelliscandiffio.service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import com.github.raffaelliscandiffio.exception.RepositoryException;
+import com.github.raffaelliscandiffio.exception.TransactionConflictException;
+import com.github.raffaelliscandiffio.jfr.ShoppingOperations;
+import com.github.raffaelliscandiffio.ledger.SalesLedger;
+import com.github.raffaelliscandiffio.ledger.SalesRecord;
 import com.github.raffaelliscandiffio.model.Order;
 import com.github.raffaelliscandiffio.model.OrderItem;
 import com.github.raffaelliscandiffio.model.OrderStatus;
 import com.github.raffaelliscandiffio.model.Product;
 import com.github.raffaelliscandiffio.model.Stock;
+import com.github.raffaelliscandiffio.repository.OrderItemRepository;
+import com.github.raffaelliscandiffio.repository.OrderRepository;
+import com.github.raffaelliscandiffio.repository.StockRepository;
+import com.github.raffaelliscandiffio.transaction.TransactionCode;
 import com.github.raffaelliscandiffio.transaction.TransactionManager;
 
 public class ShoppingService {
 
+	private static final Logger LOGGER = LogManager.getLogger(ShoppingService.class);
+	private static final int DEFAULT_CONFLICT_RETRIES = 3;
+	private static final int SEARCH_INDEX_BATCH_SIZE = 500;
+	private static final Object[] NO_PARAMETERS = {};
+
 	private TransactionManager transactionManager;
+	// for the catalog reads, which may be served by a replica that lags behind
+	private TransactionManager catalogTransactionManager;
+	private int conflictRetries;
+	private SalesLedger salesLedger;
+	private WriteBehindStockCache stockCache;
+	private SlowOperationDetector slowOperationDetector;
+	private final ProductSearchIndex searchIndex = new ProductSearchIndex();
+	private volatile boolean searchIndexLoaded;
 
 	public ShoppingService(TransactionManager transactionManager) {
-		this.transactionManager = transactionManager;
+		this(builder(transactionManager));
+	}
+
+	private ShoppingService(Builder builder) {
+		this.transactionManager = builder.transactionManager;
+		this.catalogTransactionManager = builder.catalogTransactionManager != null
+				? builder.catalogTransactionManager
+				: builder.transactionManager;
+		this.conflictRetries = builder.conflictRetries;
+		this.salesLedger = builder.salesLedger;
+		this.stockCache = builder.stockCache;
+		this.slowOperationDetector = builder.slowOperationDetector;
+	}
+
+	/**
+	 * A service running its transactions on the given manager; the other
+	 * collaborators are optional and left out when not set.
+	 */
+	public static Builder builder(TransactionManager transactionManager) {
+		return new Builder(transactionManager);
+	}
+
+	public static final class Builder {
+
+		private final TransactionManager transactionManager;
+		private TransactionManager catalogTransactionManager;
+		private int conflictRetries = DEFAULT_CONFLICT_RETRIES;
+		private SalesLedger salesLedger;
+		private WriteBehindStockCache stockCache;
+		private SlowOperationDetector slowOperationDetector;
+
+		private Builder(TransactionManager transactionManager) {
+			this.transactionManager = transactionManager;
+		}
+
+		/**
+		 * The manager of the catalog reads, the main one when null.
+		 */
+		public Builder catalogTransactionManager(TransactionManager catalogTransactionManager) {
+			this.catalogTransactionManager = catalogTransactionManager;
+			return this;
+		}
+
+		public Builder conflictRetries(int conflictRetries) {
+			if (conflictRetries < 0)
+				throw new IllegalArgumentException("Conflict retries must not be negative. Received: " + conflictRetries);
+			this.conflictRetries = conflictRetries;
+			return this;
+		}
+
+		public Builder salesLedger(SalesLedger salesLedger) {
+			this.salesLedger = salesLedger;
+			return this;
+		}
+
+		public Builder stockCache(WriteBehindStockCache stockCache) {
+			this.stockCache = stockCache;
+			return this;
+		}
+
+		public Builder slowOperationDetector(SlowOperationDetector slowOperationDetector) {
+			this.slowOperationDetector = slowOperationDetector;
+			return this;
+		}
+
+		public ShoppingService build() {
+			return new ShoppingService(this);
+		}
+
 	}
 
 	public Order openNewOrder() {
-		return transactionManager
-				.runInTransaction((productRepository, stockRepository, orderRepository, itemRepository) -> {
-					Order order = new Order(OrderStatus.OPEN);
-					orderRepository.save(order);
-					return order;
-				});
+		return runInTransaction("openNewOrder", (productRepository, stockRepository, orderRepository,
+				itemRepository) -> {
+			Order order = new Order(OrderStatus.OPEN);
+			orderRepository.save(order);
+			return order;
+		});
 	}
 
 	public List<Product> getAllProducts() {
-		return transactionManager.runInTransaction(
+		return readCatalog("getAllProducts",
 				(productRepository, stockRepository, orderRepository, itemRepository) -> productRepository.findAll());
 	}
 
-	public void deleteOrder(String orderId) {
-		transactionManager.runInTransaction((productRepository, stockRepository, orderRepository, itemRepository) -> {
-			if (orderRepository.findById(orderId) != null) {
-				for (OrderItem item : itemRepository.getListByOrderId(orderId)) {
-					Stock stock = stockRepository.findByProductId(item.getProduct().getId());
-					if (stock != null) {
-						stock.setQuantity(stock.getQuantity() + item.getQuantity());
-						stockRepository.update(stock);
-					}
-					itemRepository.delete(item.getId());
-				}
-				orderRepository.delete(orderId);
-			}
-			return null;
+	public List<Product> getProductsPage(String afterId, int limit) {
+		return readCatalog("getProductsPage", parameters("afterId", afterId, "limit", limit),
+				(productRepository, stockRepository, orderRepository, itemRepository) -> {
+			if (limit <= 0)
+				throw new IllegalArgumentException("Limit must be positive. Received: " + limit);
+			return productRepository.findPage(afterId, limit);
 		});
 	}
 
-	public void closeOrder(String orderId) {
-		transactionManager.runInTransaction((productRepository, stockRepository, orderRepository, itemRepository) -> {
-			Order storedOrder = orderRepository.findById(orderId);
-			if (storedOrder == null)
+	public List<Product> searchProducts(String query, int limit) {
+		loadSearchIndex();
+		return searchIndex.search(query, limit);
+	}
+
+	public Order getOrder(String orderId) {
+		return runInTransaction("getOrder", parameters("orderId", orderId),
+				(productRepository, stockRepository, orderRepository, itemRepository) -> {
+			Order order = orderRepository.findById(orderId);
+			if (order == null)
 				throw new RepositoryException("Order not found: " + orderId);
-			storedOrder.setStatus(OrderStatus.CLOSED);
-			orderRepository.update(storedOrder);
-			return null;
+			return order;
 		});
 	}
 
+	public void deleteOrder(String orderId) {
+		StockChange change = new StockChange();
+		runChangingStock("deleteOrder", parameters("orderId", orderId), change,
+				(productRepository, stockRepository, orderRepository, itemRepository) -> {
+					if (orderRepository.findById(orderId) == null)
+						return null;
+					for (OrderItem item : itemRepository.getListByOrderId(orderId)) {
+						restock(stockRepository, change, item.getProduct().getId(), item.getQuantity());
+						itemRepository.delete(item.getId());
+						change.expectItem(item.getId(), 0);
+					}
+					orderRepository.delete(orderId);
+					return null;
+				});
+	}
+
+	public void closeOrder(String orderId) {
+		SalesRecord salesRecord = runInTransaction("closeOrder", parameters("orderId", orderId),
+				(productRepository, stockRepository, orderRepository, itemRepository) -> {
+					Order storedOrder = orderRepository.findById(orderId);
+					if (storedOrder == null)
+						throw new RepositoryException("Order not found: " + orderId);
+					// a checkout sent again must neither touch the order nor record the sale twice
+					if (storedOrder.getStatus() == OrderStatus.CLOSED)
+						return null;
+					storedOrder.setStatus(OrderStatus.CLOSED);
+					orderRepository.update(storedOrder);
+					if (salesLedger == null)
+						return null;
+					List<SalesRecord.Line> lines = new ArrayList<>();
+					for (OrderItem item : itemRepository.getListByOrderId(orderId))
+						lines.add(new SalesRecord.Line(item.getProduct().getId(), item.getQuantity(),
+								item.getProduct().getPrice()));
+					return new SalesRecord(orderId, System.currentTimeMillis(), lines);
+				});
+		// the order is closed even if the ledger cannot take the record
+		if (salesRecord != null)
+			appendToLedger(salesRecord);
+	}
+
 	public void deleteItem(OrderItem orderItem) {
-		transactionManager.runInTransaction((productRepository, stockRepository, orderRepository, itemRepository) -> {
+		StockChange change = new StockChange();
+		runChangingStock("deleteItem", parameters("itemId", orderItem.getId()), change,
+				(productRepository, stockRepository, orderRepository, itemRepository) -> {
 			OrderItem repositoryItem = itemRepository.findById(orderItem.getId());
 			if (repositoryItem != null) {
-				Stock stock = stockRepository.findByProductId(repositoryItem.getProduct().getId());
-				if (stock != null) {
-					stock.setQuantity(stock.getQuantity() + repositoryItem.getQuantity());
-					stockRepository.update(stock);
-				}
+				restock(stockRepository, change, repositoryItem.getProduct().getId(), repositoryItem.getQuantity());
 				itemRepository.delete(orderItem.getId());
+				change.expectItem(orderItem.getId(), 0);
+				orderRepository.addToTotals(repositoryItem.getOrder().getId(),
+						-repositoryItem.getQuantity() * repositoryItem.getProduct().getPrice(), -1);
 			} else
 				throw new RepositoryException("Item not found: " + orderItem.getId());
-			return null;
+			return repositoryItem;
 		});
 	}
 
 	public OrderItem returnItem(OrderItem orderItem, int quantityToReturn) {
-		return transactionManager
-				.runInTransaction((productRepository, stockRepository, orderRepository, itemRepository) -> {
-					String itemId = orderItem.getId();
-					OrderItem repositoryItem = itemRepository.findById(itemId);
-
-					if (repositoryItem == null)
-						throw new RepositoryException("Item not found: " + itemId);
-
-					if (orderItem.getQuantity() != repositoryItem.getQuantity()
-							|| !orderItem.getOrder().equals(repositoryItem.getOrder())
-							|| !orderItem.getProduct().equals(repositoryItem.getProduct()))
-						throw new RepositoryException("Stale data detected in OrderItem with id " + itemId);
-
-					String productId = orderItem.getProduct().getId();
-					Stock stock = stockRepository.findByProductId(productId);
-
-					orderItem.setQuantity(orderItem.getQuantity() - quantityToReturn);
-					itemRepository.update(orderItem);
-					if (stock != null) {
-						stock.setQuantity(stock.getQuantity() + quantityToReturn);
-						stockRepository.update(stock);
-					}
-					return orderItem;
-				});
+		requirePositive(quantityToReturn);
+		// the whole item is removed with deleteItem; a stale item is refused below
+		if (quantityToReturn >= orderItem.getQuantity())
+			throw new IllegalArgumentException("Quantity to return must be less than the quantity of the item ("
+					+ orderItem.getQuantity() + "). Received: " + quantityToReturn);
+		StockChange change = new StockChange();
+		return runChangingStock("returnItem", parameters("itemId", orderItem.getId(), "quantity", quantityToReturn),
+				change,
+				(productRepository, stockRepository, orderRepository, itemRepository) -> {
+			String itemId = orderItem.getId();
+			OrderItem repositoryItem = itemRepository.findById(itemId);
+
+			if (repositoryItem == null)
+				throw new RepositoryException("Item not found: " + itemId);
 
+			if (orderItem.getVersion() != repositoryItem.getVersion()
+					|| orderItem.getQuantity() != repositoryItem.getQuantity()
+					|| !orderItem.getOrder().equals(repositoryItem.getOrder())
+					|| !orderItem.getProduct().equals(repositoryItem.getProduct()))
+				throw new RepositoryException("Stale data detected in OrderItem with id " + itemId);
+
+			// update the stored item so that the caller gets back its new version
+			repositoryItem.setQuantity(repositoryItem.getQuantity() - quantityToReturn);
+			itemRepository.update(repositoryItem);
+			restock(stockRepository, change, orderItem.getProduct().getId(), quantityToReturn);
+			change.expectItem(itemId, repositoryItem.getQuantity());
+			orderRepository.addToTotals(repositoryItem.getOrder().getId(),
+					-quantityToReturn * repositoryItem.getProduct().getPrice(), 0);
+			return repositoryItem;
+		});
 	}
 
 	public List<OrderItem> getOrderItems(String orderId) {
-		return transactionManager
-				.runInTransaction((productRepository, stockRepository, orderRepository, itemRepository) -> {
-					if (orderRepository.findById(orderId) == null)
-						throw new RepositoryException("Order with id " + orderId + " not found.");
-					return itemRepository.getListByOrderId(orderId);
-				});
+		return runInTransaction("getOrderItems", parameters("orderId", orderId),
+				(productRepository, stockRepository, orderRepository, itemRepository) -> {
+			if (orderRepository.findById(orderId) == null)
+				throw new RepositoryException("Order with id " + orderId + " not found.");
+			return itemRepository.getListByOrderId(orderId);
+		});
 	}
 
 	public OrderItem buyProduct(String orderId, String productId, int purchaseQuantity) {
-		return transactionManager
-				.runInTransaction((productRepository, stockRepository, orderRepository, itemRepository) -> {
-					Order order = orderRepository.findById(orderId);
-					if (order == null)
-						throw new RepositoryException("Order not found: " + orderId);
-					Product product = productRepository.findById(productId);
-					if (product == null)
-						throw new RepositoryException("Product not found: " + productId);
-					Stock stock = stockRepository.findByProductId(productId);
-					if (stock == null)
-						throw new RepositoryException("Stock not found. Query by product: " + productId);
-					if (purchaseQuantity > stock.getQuantity())
-						throw new RepositoryException("Not enough quantity. Cannot buy product: " + product.getName());
-
-					stock.setQuantity(stock.getQuantity() - purchaseQuantity);
-					stockRepository.update(stock);
-					OrderItem item = itemRepository.findByProductAndOrderId(productId, orderId);
-					if (item != null) {
-						item.setQuantity(item.getQuantity() + purchaseQuantity);
-						itemRepository.update(item);
-					} else {
-						item = new OrderItem(product, order, purchaseQuantity);
-						itemRepository.save(item);
-					}
-					return item;
-
-				});
+		requirePositive(purchaseQuantity);
+		StockChange change = new StockChange();
+		return runChangingStock("buyProduct",
+				parameters("orderId", orderId, "productId", productId, "quantity", purchaseQuantity), change,
+				(productRepository, stockRepository, orderRepository, itemRepository) -> {
+			Order order = orderRepository.findById(orderId);
+			if (order == null)
+				throw new RepositoryException("Order not found: " + orderId);
+			Product product = productRepository.findById(productId);
+			if (product == null)
+				throw new RepositoryException("Product not found: " + productId);
+			if (stockCache != null) {
+				if (!stockCache.take(change, productId, purchaseQuantity, stockRepository))
+					throw new RepositoryException("Not enough quantity. Cannot buy product: " + product.getName());
+			} else
+				takeFromShards(stockRepository, product, purchaseQuantity);
+			OrderItem item = addToOrder(itemRepository, orderRepository, order, product, purchaseQuantity);
+			change.expectItem(item.getId(), item.getQuantity());
+			return item;
+		});
 	}
 
 	public void saveProductAndStock(String productName, double price, int quantity) {
-		transactionManager.runInTransaction((productRepository, stockRepository, orderRepository, itemRepository) -> {
+		saveProductAndStock(productName, price, quantity, 1);
+	}
+
+	public void saveProductAndStock(String productName, double price, int quantity, int shards) {
+		Product savedProduct = runInTransaction("saveProductAndStock",
+				parameters("name", productName, "price", price, "quantity", quantity, "shards", shards),
+				(productRepository, stockRepository, orderRepository, itemRepository) -> {
 			if (productName == null)
 				throw new NullPointerException("The Product name cannot be null");
 			if (price <= 0)
 				throw new IllegalArgumentException("Price must be positive. Received: " + price);
 			if (quantity <= 0)
 				throw new IllegalArgumentException("Quantity must be positive. Received: " + quantity);
+			if (shards <= 0)
+				throw new IllegalArgumentException("Shards must be positive. Received: " + shards);
 
 			Product product = new Product(productName, price);
-			Stock stock = new Stock(product, quantity);
 			productRepository.save(product);
-			stockRepository.save(stock);
+			for (int shard = 0; shard < shards; shard++)
+				stockRepository.save(new Stock(product, evenShare(quantity, shards, shard), shard));
+			return product;
+		});
+		// indexed only once committed, a rolled back product must not be found
+		searchIndex.add(savedProduct);
+
+	}
+
+	/**
+	 * Keep the search index up to date with the products written or removed by
+	 * others, as told by the feed of the catalog changes. Without a feed only the
+	 * products saved through this service are seen once the index is loaded.
+	 */
+	public void watchCatalog(StockAvailability availability) {
+		availability.addListener(new StockAvailability.Listener() {
+
+			@Override
+			public void availabilityChanged(String productId, int available) {
+				// the index holds no quantities
+			}
+
+			@Override
+			public void productChanged(Product product) {
+				searchIndex.put(product);
+			}
+
+			@Override
+			public void productRemoved(String productId) {
+				searchIndex.remove(productId);
+			}
+
+		});
+	}
+
+	public int getAvailableQuantity(String productId) {
+		return runInTransaction("getAvailableQuantity", parameters("productId", productId),
+				(productRepository, stockRepository, orderRepository, itemRepository) -> stockCache != null
+						? stockCache.getQuantity(productId, stockRepository)
+						: stockRepository.getTotalQuantityByProductId(productId));
+	}
+
+	/**
+	 * The quantity available of each product, read in a single transaction.
+	 */
+	public Map<String, Integer> getAvailableQuantities(Collection<String> productIds) {
+		return runInTransaction("getAvailableQuantities", parameters("products", productIds.size()),
+				(productRepository, stockRepository, orderRepository, itemRepository) -> {
+			Map<String, Integer> quantities = new HashMap<>();
+			for (String productId : productIds)
+				quantities.put(productId, stockCache != null ? stockCache.getQuantity(productId, stockRepository)
+						: stockRepository.getTotalQuantityByProductId(productId));
+			return quantities;
+		});
+	}
+
+	public void rebalanceStock(String productId) {
+		// the shards must hold every change before they are evened out
+		if (stockCache != null)
+			stockCache.flush();
+		runInTransaction("rebalanceStock", parameters("productId", productId),
+				(productRepository, stockRepository, orderRepository, itemRepository) -> {
+			List<Stock> shards = stockRepository.findAllByProductId(productId);
+			if (shards.isEmpty())
+				throw new RepositoryException("Stock not found. Query by product: " + productId);
+			int total = shards.stream().mapToInt(Stock::getQuantity).sum();
+			for (int i = 0; i < shards.size(); i++) {
+				Stock shard = shards.get(i);
+				int share = evenShare(total, shards.size(), i);
+				if (shard.getQuantity() != share) {
+					shard.setQuantity(share);
+					stockRepository.update(shard);
+				}
+			}
 			return null;
 		});
+	}
+
+	// The catalog is indexed on the first search, one keyset page per
+	// transaction; products saved through this service are added as they commit,
+	// those changed by others as the feed tells them. A product indexed by the
+	// feed is not replaced by the page read meanwhile, which may be older.
+	private void loadSearchIndex() {
+		if (searchIndexLoaded)
+			return;
+		synchronized (searchIndex) {
+			if (searchIndexLoaded)
+				return;
+			String afterId = null;
+			List<Product> page;
+			do {
+				page = getProductsPage(afterId, SEARCH_INDEX_BATCH_SIZE);
+				searchIndex.addAll(page);
+				if (!page.isEmpty())
+					afterId = page.get(page.size() - 1).getId();
+			} while (page.size() == SEARCH_INDEX_BATCH_SIZE);
+			searchIndexLoaded = true;
+		}
+	}
+
+	private void takeFromShards(StockRepository stockRepository, Product product, int purchaseQuantity) {
+		Stock stock = stockRepository.findByProductIdWithQuantity(product.getId(), purchaseQuantity);
+		if (stock != null) {
+			stock.setQuantity(stock.getQuantity() - purchaseQuantity);
+			stockRepository.update(stock);
+		} else
+			drainShards(stockRepository, product, purchaseQuantity);
+	}
+
+	private void restock(StockRepository stockRepository, StockChange change, String productId, int quantity) {
+		if (stockCache != null) {
+			stockCache.put(change, productId, quantity);
+			return;
+		}
+		Stock stock = stockRepository.findByProductId(productId);
+		if (stock != null) {
+			stock.setQuantity(stock.getQuantity() + quantity);
+			stockRepository.update(stock);
+		}
+	}
+
+	private OrderItem addToOrder(OrderItemRepository itemRepository, OrderRepository orderRepository, Order order,
+			Product product, int purchaseQuantity) {
+		OrderItem item = itemRepository.findByProductAndOrderId(product.getId(), order.getId());
+		int newLines = 0;
+		if (item != null) {
+			item.setQuantity(item.getQuantity() + purchaseQuantity);
+			itemRepository.update(item);
+		} else {
+			item = new OrderItem(product, order, purchaseQuantity);
+			itemRepository.save(item);
+			newLines = 1;
+		}
+		orderRepository.addToTotals(order.getId(), purchaseQuantity * product.getPrice(), newLines);
+		return item;
+	}
+
+	// Used when no single shard can serve the purchase: every shard is locked and
+	// the quantity is taken from them in shard order. No shard was locked before,
+	// so two drains take the locks in the same order.
+	private void drainShards(StockRepository stockRepository, Product product, int purchaseQuantity) {
+		List<Stock> shards = stockRepository.findAllByProductId(product.getId());
+		if (shards.isEmpty())
+			throw new RepositoryException("Stock not found. Query by product: " + product.getId());
+		if (purchaseQuantity > shards.stream().mapToInt(Stock::getQuantity).sum())
+			throw new RepositoryException("Not enough quantity. Cannot buy product: " + product.getName());
+		int remaining = purchaseQuantity;
+		for (Stock shard : shards) {
+			int taken = Math.min(remaining, shard.getQuantity());
+			if (taken > 0) {
+				shard.setQuantity(shard.getQuantity() - taken);
+				stockRepository.update(shard);
+				remaining -= taken;
+			}
+		}
+	}
+
+	private void appendToLedger(SalesRecord salesRecord) {
+		try {
+			salesLedger.append(salesRecord);
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.ERROR, "Cannot append the sales record of order " + salesRecord.getOrderId(), e);
+		}
+	}
+
+	private <T> T runInTransaction(String operation, TransactionCode<T> code) {
+		return runInTransaction(operation, NO_PARAMETERS, code);
+	}
+
+	private <T> T runInTransaction(String operation, Object[] parameters, TransactionCode<T> code) {
+		return run(operation, parameters, transactionManager, conflictRetries, code);
+	}
+
+	private <T> T readCatalog(String operation, TransactionCode<T> code) {
+		return readCatalog(operation, NO_PARAMETERS, code);
+	}
+
+	private <T> T readCatalog(String operation, Object[] parameters, TransactionCode<T> code) {
+		return run(operation, parameters, catalogTransactionManager, 0, code);
+	}
+
+	// With the write-behind cache, the stock changes of the code are journaled
+	// before its transaction commits, and become pending once it has.
+	private <T> T runChangingStock(String operation, Object[] parameters, StockChange change,
+			TransactionCode<T> code) {
+		if (stockCache == null)
+			return runInTransaction(operation, parameters, code);
+		T result;
+		try {
+			result = runInTransaction(operation, parameters,
+					(productRepository, stockRepository, orderRepository, itemRepository) -> {
+						// an attempt before this one was rolled back by a conflict
+						stockCache.abort(change);
+						T attempt = code.apply(productRepository, stockRepository, orderRepository, itemRepository);
+						stockCache.prepare(change);
+						return attempt;
+					});
+		} catch (RuntimeException e) {
+			stockCache.abort(change);
+			throw e;
+		}
+		stockCache.commit(change);
+		return result;
+	}
+
+	// Conflicts on the version of an entity are retried from scratch, the code
+	// must not depend on state mutated by a previous attempt.
+	private <T> T run(String operation, Object[] parameters, TransactionManager manager, int retries,
+			TransactionCode<T> code) {
+		String outerOperation = ShoppingOperations.enter(operation);
+		SlowOperationDetector.Watch watch = slowOperationDetector != null
+				? slowOperationDetector.start(operation, parameters)
+				: null;
+		int attempts = 0;
+		Throwable failure = null;
+		try {
+			while (true) {
+				attempts++;
+				try {
+					return manager.runInTransaction(code);
+				} catch (TransactionConflictException e) {
+					if (attempts > retries)
+						throw e;
+				}
+			}
+		} catch (RuntimeException | Error e) {
+			failure = e;
+			throw e;
+		} finally {
+			if (watch != null)
+				watch.stop(attempts, failure);
+			ShoppingOperations.exit(outerOperation);
+		}
+	}
+
+	// checked before the transaction, whose managers report any failure as a
+	// TransactionException
+	private static void requirePositive(int quantity) {
+		if (quantity <= 0)
+			throw new IllegalArgumentException("Quantity must be positive. Received: " + quantity);
+	}
+
+	// the parameters of an operation for the slow operation log, as name and
+	// value pairs
+	private static Object[] parameters(Object... namesAndValues) {
+		return namesAndValues;
+	}
 
+	private int evenShare(int total, int shards, int index) {
+		return total / shards + (index < total % shards ? 1 : 0);
 	}
 
 }
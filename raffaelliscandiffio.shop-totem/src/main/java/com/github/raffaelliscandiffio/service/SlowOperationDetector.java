@@ -0,0 +1,169 @@
+package com.github.raffaelliscandiffio.service;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.github.raffaelliscandiffio.repository.recorded.RepositoryTimings;
+import com.github.raffaelliscandiffio.utils.JsonWriter;
+
+/**
+ * Logs the operations of the service that take at least a threshold, one JSON
+ * line each with the parameters, the retries and the time spent in every
+ * repository method. The lines go to their own logger, written by an
+ * asynchronous appender so that a slow operation is not slowed further by the
+ * log. At most burst lines are written at once and permitsPerSecond afterwards,
+ * the lines over the rate are counted and reported by the next line written.
+ */
+public class SlowOperationDetector {
+
+	private static final Logger LOGGER = LogManager.getLogger(SlowOperationDetector.class);
+	private static final double DEFAULT_PERMITS_PER_SECOND = 10;
+	private static final int DEFAULT_BURST = 20;
+
+	private final long thresholdNanos;
+	private final double permitsPerNano;
+	private final int burst;
+	private final Consumer<String> sink;
+	private final LongSupplier clock;
+
+	// token bucket, guarded by this
+	private double permits;
+	private long refilledAt;
+	private long suppressed;
+
+	public SlowOperationDetector(long thresholdMillis) {
+		this(thresholdMillis, DEFAULT_PERMITS_PER_SECOND, DEFAULT_BURST);
+	}
+
+	public SlowOperationDetector(long thresholdMillis, double permitsPerSecond, int burst) {
+		this(thresholdMillis, permitsPerSecond, burst, line -> LOGGER.log(Level.WARN, line), System::nanoTime);
+	}
+
+	SlowOperationDetector(long thresholdMillis, double permitsPerSecond, int burst, Consumer<String> sink,
+			LongSupplier clock) {
+		if (thresholdMillis < 0)
+			throw new IllegalArgumentException("Threshold must not be negative. Received: " + thresholdMillis);
+		if (permitsPerSecond <= 0)
+			throw new IllegalArgumentException("Permits per second must be positive. Received: " + permitsPerSecond);
+		if (burst <= 0)
+			throw new IllegalArgumentException("Burst must be positive. Received: " + burst);
+		this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+		this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+		this.burst = burst;
+		this.sink = sink;
+		this.clock = clock;
+		this.permits = burst;
+		this.refilledAt = clock.getAsLong();
+	}
+
+	/**
+	 * Starts timing an operation on the calling thread. The parameters are given
+	 * as name and value pairs. The returned watch must be stopped on the same
+	 * thread.
+	 */
+	public Watch start(String operation, Object... parameters) {
+		return new Watch(operation, parameters);
+	}
+
+	public final class Watch {
+
+		private final String operation;
+		private final Object[] parameters;
+		private final RepositoryTimings timings;
+		private final long startedAt;
+
+		private Watch(String operation, Object[] parameters) {
+			this.operation = operation;
+			this.parameters = parameters;
+			this.timings = RepositoryTimings.start();
+			this.startedAt = clock.getAsLong();
+		}
+
+		/**
+		 * Ends the operation after the given attempts, with the failure that ended
+		 * it or null when it succeeded.
+		 */
+		public void stop(int attempts, Throwable failure) {
+			long elapsed = clock.getAsLong() - startedAt;
+			timings.stop();
+			if (elapsed < thresholdNanos)
+				return;
+			long suppressedBefore = acquire();
+			if (suppressedBefore >= 0)
+				sink.accept(toJson(elapsed, attempts, failure, suppressedBefore));
+		}
+
+		private String toJson(long elapsed, int attempts, Throwable failure, long suppressedBefore) {
+			StringWriter line = new StringWriter(256);
+			try {
+				JsonWriter json = new JsonWriter(line).beginObject();
+				json.name("timestamp").value(Instant.now().toString());
+				json.name("thread").value(Thread.currentThread().getName());
+				json.name("operation").value(operation);
+				json.name("parameters").beginObject();
+				for (int i = 0; i + 1 < parameters.length; i += 2)
+					writeValue(json.name(String.valueOf(parameters[i])), parameters[i + 1]);
+				json.endObject();
+				json.name("elapsedMs").value(millis(elapsed), 3);
+				json.name("attempts").value(attempts);
+				json.name("retries").value(Math.max(0, attempts - 1));
+				json.name("outcome").value(failure == null ? "committed" : "failed");
+				if (failure != null)
+					json.name("error").value(failure.getClass().getSimpleName() + ": " + failure.getMessage());
+				json.name("repositoryCalls").beginArray();
+				for (RepositoryTimings.Call call : timings.getCalls())
+					json.beginObject().name("call").value(call.getName()).name("count").value(call.getCount())
+							.name("ms").value(millis(call.getNanos()), 3).endObject();
+				json.endArray().name("suppressed").value(suppressedBefore).endObject();
+			} catch (IOException e) {
+				// a StringWriter does not fail
+				throw new UncheckedIOException(e);
+			}
+			return line.toString();
+		}
+
+	}
+
+	// Takes a permit, returning the lines suppressed since the last one written,
+	// or -1 when the line must be suppressed as well.
+	private synchronized long acquire() {
+		long now = clock.getAsLong();
+		permits = Math.min(burst, permits + (now - refilledAt) * permitsPerNano);
+		refilledAt = now;
+		if (permits < 1) {
+			suppressed++;
+			return -1;
+		}
+		permits--;
+		long suppressedBefore = suppressed;
+		suppressed = 0;
+		return suppressedBefore;
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1_000_000.0;
+	}
+
+	private static void writeValue(JsonWriter json, Object value) throws IOException {
+		if (value == null)
+			json.value((String) null);
+		else if (value instanceof Boolean)
+			json.value((boolean) (Boolean) value);
+		else if (value instanceof Integer || value instanceof Long)
+			json.value(((Number) value).longValue());
+		else if (value instanceof Double && Double.isFinite((Double) value))
+			json.value((double) (Double) value);
+		else
+			json.value(value.toString());
+	}
+
+}
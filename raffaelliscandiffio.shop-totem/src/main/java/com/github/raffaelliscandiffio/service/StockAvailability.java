@@ -0,0 +1,81 @@
+package com.github.raffaelliscandiffio.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.github.raffaelliscandiffio.model.Product;
+
+/**
+ * The quantity available of each product, summed over its stock shards, kept
+ * up to date by a feed of the changes of the database and shared by all the
+ * totems of the JVM. The listeners are told of every product whose
+ * availability changes and of every product written or removed, on the thread
+ * of the feed, so they must not block.
+ */
+public class StockAvailability {
+
+	private static final Logger LOGGER = LogManager.getLogger(StockAvailability.class);
+
+	private final Map<String, Integer> available = new ConcurrentHashMap<>();
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+	public interface Listener {
+
+		void availabilityChanged(String productId, int available);
+
+		void productChanged(Product product);
+
+		default void productRemoved(String productId) {
+		}
+
+	}
+
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * The quantity available of the product, null if it is not known yet.
+	 */
+	public Integer getAvailable(String productId) {
+		return available.get(productId);
+	}
+
+	public void setAvailable(String productId, int quantity) {
+		if (Objects.equals(available.put(productId, quantity), quantity))
+			return;
+		for (Listener listener : listeners)
+			notify(() -> listener.availabilityChanged(productId, quantity));
+	}
+
+	public void productChanged(Product product) {
+		for (Listener listener : listeners)
+			notify(() -> listener.productChanged(product));
+	}
+
+	public void productRemoved(String productId) {
+		for (Listener listener : listeners)
+			notify(() -> listener.productRemoved(productId));
+	}
+
+	// a failing totem must not keep the others from being told
+	private void notify(Runnable notification) {
+		try {
+			notification.run();
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.ERROR, "Cannot notify a change of the catalog", e);
+		}
+	}
+
+}
@@ -0,0 +1,54 @@
+package com.github.raffaelliscandiffio.service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The stock changes made by one transaction of the service through the
+ * write-behind cache, with the order items the transaction leaves behind. The
+ * items tell after a crash whether the transaction committed: it did when every
+ * item holds the expected quantity, zero standing for a deleted item.
+ */
+final class StockChange {
+
+	private final Map<String, Integer> deltas = new LinkedHashMap<>();
+	private final Map<String, Integer> itemQuantities = new LinkedHashMap<>();
+	// the id of the journal record, -1 until it is journaled
+	private long id = -1;
+
+	void add(String productId, int delta) {
+		deltas.merge(productId, delta, Integer::sum);
+	}
+
+	void expectItem(String itemId, int quantity) {
+		itemQuantities.put(itemId, quantity);
+	}
+
+	Map<String, Integer> getDeltas() {
+		return Collections.unmodifiableMap(deltas);
+	}
+
+	Map<String, Integer> getItemQuantities() {
+		return Collections.unmodifiableMap(itemQuantities);
+	}
+
+	boolean isEmpty() {
+		return deltas.isEmpty();
+	}
+
+	long getId() {
+		return id;
+	}
+
+	void setId(long id) {
+		this.id = id;
+	}
+
+	void clear() {
+		deltas.clear();
+		itemQuantities.clear();
+		id = -1;
+	}
+
+}
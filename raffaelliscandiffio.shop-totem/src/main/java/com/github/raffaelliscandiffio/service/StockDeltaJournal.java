@@ -0,0 +1,327 @@
+package com.github.raffaelliscandiffio.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Durable record of the stock changes not yet flushed to the database. The
+ * changes of a transaction are prepared, appended and forced before the
+ * transaction commits, then marked committed or aborted; only the committed
+ * ones are pending for the flush. A change left prepared by a crash is
+ * returned by {@link #open()}, for the caller to resolve against the database.
+ * A flush takes every pending change and switches to a new file, so the files
+ * of a flushed batch can be deleted as a whole once the batch is committed.
+ *
+ * A file holds frames made of the payload length, the CRC32 of the payload and
+ * the payload: the kind and the id of the change, followed for a prepared change
+ * by its deltas by product and by the quantities of the items it expects.
+ */
+final class StockDeltaJournal implements Closeable {
+
+	private static final String FILE_PREFIX = "stock-deltas-";
+	private static final String FILE_SUFFIX = ".journal";
+	private static final String INTENT_FILE = "stock-flush.intent";
+	private static final String INTENT_TEMP_FILE = "stock-flush.tmp";
+	private static final int FRAME_HEADER_SIZE = 8;
+
+	private static final byte PREPARED = 'P';
+	private static final byte COMMITTED = 'C';
+	private static final byte ABORTED = 'A';
+
+	/**
+	 * The changes of the journal files up to a generation, summed by product.
+	 */
+	static final class Batch {
+		final long generation;
+		final Map<String, Integer> deltas;
+		// the changes journaled, counted as by getPendingChanges
+		final int changes;
+
+		Batch(long generation, Map<String, Integer> deltas, int changes) {
+			this.generation = generation;
+			this.deltas = deltas;
+			this.changes = changes;
+		}
+	}
+
+	/**
+	 * A change journaled before its transaction committed.
+	 */
+	static final class Prepared {
+		final long id;
+		final Map<String, Integer> deltas;
+		final Map<String, Integer> itemQuantities;
+
+		Prepared(long id, Map<String, Integer> deltas, Map<String, Integer> itemQuantities) {
+			this.id = id;
+			this.deltas = deltas;
+			this.itemQuantities = itemQuantities;
+		}
+	}
+
+	private final Path directory;
+	private Map<String, Integer> pending = new HashMap<>();
+	private int pendingChanges;
+	// the changes whose transaction has not ended yet, by id
+	private final Map<Long, Prepared> prepared = new LinkedHashMap<>();
+	private long nextId;
+	private long generation;
+	private FileChannel channel;
+
+	StockDeltaJournal(Path directory) throws IOException {
+		this.directory = directory;
+		Files.createDirectories(directory);
+	}
+
+	/**
+	 * Load the changes left by the previous run and start a new file. Return the
+	 * changes prepared but neither committed nor aborted, which stay prepared
+	 * until they are resolved.
+	 */
+	synchronized List<Prepared> open() throws IOException {
+		for (Path file : listFiles()) {
+			readFile(file);
+			generation = Math.max(generation, generationOf(file));
+		}
+		channel = openFile(++generation);
+		// the next flush deletes the files holding them
+		for (Prepared change : prepared.values())
+			write(prepareFrame(change));
+		return new ArrayList<>(prepared.values());
+	}
+
+	/**
+	 * Journal the changes of a transaction about to commit, and return their id.
+	 */
+	synchronized long prepare(Map<String, Integer> deltas, Map<String, Integer> itemQuantities) throws IOException {
+		Prepared change = new Prepared(nextId, new LinkedHashMap<>(deltas), new LinkedHashMap<>(itemQuantities));
+		write(prepareFrame(change));
+		prepared.put(nextId, change);
+		return nextId++;
+	}
+
+	/**
+	 * Mark the prepared change as committed or aborted. The deltas of a committed
+	 * change are made pending by the caller with addPending.
+	 */
+	synchronized void resolve(long id, boolean committed) throws IOException {
+		prepared.remove(id);
+		write(resolveFrame(committed ? COMMITTED : ABORTED, id));
+	}
+
+	synchronized void addPending(String productId, int delta) {
+		pending.merge(productId, delta, Integer::sum);
+		pendingChanges++;
+	}
+
+	synchronized int getPendingChanges() {
+		return pendingChanges;
+	}
+
+	synchronized int getPendingDelta(String productId) {
+		return pending.getOrDefault(productId, 0);
+	}
+
+	/**
+	 * Take every pending change and write the next ones to a new file.
+	 */
+	synchronized Batch rotate() throws IOException {
+		Batch batch = new Batch(generation, pending, pendingChanges);
+		pending = new HashMap<>();
+		pendingChanges = 0;
+		channel.close();
+		channel = openFile(++generation);
+		// the files of the batch are deleted once flushed, with the changes still
+		// prepared in them
+		for (Prepared change : prepared.values())
+			write(prepareFrame(change));
+		return batch;
+	}
+
+	/**
+	 * Give back the changes of a batch that could not be flushed. Its files are
+	 * kept, so they are still covered by the next batch.
+	 */
+	synchronized void restore(Batch batch) {
+		for (Map.Entry<String, Integer> delta : batch.deltas.entrySet())
+			pending.merge(delta.getKey(), delta.getValue(), Integer::sum);
+		pendingChanges += batch.changes;
+	}
+
+	void deleteUpTo(long lastGeneration) throws IOException {
+		for (Path file : listFiles())
+			if (generationOf(file) <= lastGeneration)
+				Files.delete(file);
+	}
+
+	/**
+	 * Record the totals the database will hold once the batch commits, so that
+	 * after a crash the outcome of the flush can be told from the database.
+	 */
+	void writeIntent(long lastGeneration, Map<String, Integer> expectedTotals) throws IOException {
+		Path temp = directory.resolve(INTENT_TEMP_FILE);
+		try (FileChannel intent = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (DataOutputStream out = new DataOutputStream(bytes)) {
+				out.writeLong(lastGeneration);
+				out.writeInt(expectedTotals.size());
+				for (Map.Entry<String, Integer> total : expectedTotals.entrySet()) {
+					out.writeUTF(total.getKey());
+					out.writeInt(total.getValue());
+				}
+			}
+			intent.write(ByteBuffer.wrap(bytes.toByteArray()));
+			intent.force(true);
+		}
+		Files.move(temp, directory.resolve(INTENT_FILE), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	Batch readIntent() throws IOException {
+		Path file = directory.resolve(INTENT_FILE);
+		if (!Files.exists(file))
+			return null;
+		try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+			long lastGeneration = in.readLong();
+			int count = in.readInt();
+			Map<String, Integer> expectedTotals = new HashMap<>();
+			for (int i = 0; i < count; i++)
+				expectedTotals.put(in.readUTF(), in.readInt());
+			return new Batch(lastGeneration, expectedTotals, 0);
+		}
+	}
+
+	void deleteIntent() throws IOException {
+		Files.deleteIfExists(directory.resolve(INTENT_FILE));
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (channel != null)
+			channel.close();
+	}
+
+	private List<Path> listFiles() throws IOException {
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+			for (Path file : stream)
+				files.add(file);
+		}
+		Collections.sort(files);
+		return files;
+	}
+
+	private long generationOf(Path file) {
+		String name = file.getFileName().toString();
+		return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+	}
+
+	private FileChannel openFile(long fileGeneration) throws IOException {
+		Path file = directory.resolve(String.format("%s%016d%s", FILE_PREFIX, fileGeneration, FILE_SUFFIX));
+		return FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+	}
+
+	private void write(byte[] payload) throws IOException {
+		ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + payload.length);
+		frame.putInt(payload.length).putInt(checksum(payload)).put(payload);
+		((Buffer) frame).flip();
+		while (frame.hasRemaining())
+			channel.write(frame);
+		channel.force(false);
+	}
+
+	private static byte[] prepareFrame(Prepared change) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(PREPARED);
+			out.writeLong(change.id);
+			writeMap(out, change.deltas);
+			writeMap(out, change.itemQuantities);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] resolveFrame(byte kind, long id) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(kind);
+			out.writeLong(id);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void writeMap(DataOutputStream out, Map<String, Integer> map) throws IOException {
+		out.writeInt(map.size());
+		for (Map.Entry<String, Integer> entry : map.entrySet()) {
+			out.writeUTF(entry.getKey());
+			out.writeInt(entry.getValue());
+		}
+	}
+
+	private static Map<String, Integer> readMap(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		Map<String, Integer> map = new LinkedHashMap<>();
+		for (int i = 0; i < size; i++)
+			map.put(in.readUTF(), in.readInt());
+		return map;
+	}
+
+	// a torn frame can only be the last one of a file, written during a crash and
+	// never acknowledged
+	private void readFile(Path file) throws IOException {
+		ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(file));
+		while (content.remaining() >= FRAME_HEADER_SIZE) {
+			int length = content.getInt();
+			int crc = content.getInt();
+			if (length <= 0 || length > content.remaining())
+				return;
+			byte[] payload = new byte[length];
+			content.get(payload);
+			if (checksum(payload) != crc)
+				return;
+			try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+				readFrame(in);
+			}
+		}
+	}
+
+	private void readFrame(DataInputStream in) throws IOException {
+		byte kind = in.readByte();
+		long id = in.readLong();
+		nextId = Math.max(nextId, id + 1);
+		if (kind == PREPARED) {
+			prepared.put(id, new Prepared(id, readMap(in), readMap(in)));
+			return;
+		}
+		Prepared change = prepared.remove(id);
+		if (kind == COMMITTED && change != null)
+			change.deltas.forEach(this::addPending);
+	}
+
+	private static int checksum(byte[] payload) {
+		CRC32 crc = new CRC32();
+		crc.update(payload, 0, payload.length);
+		return (int) crc.getValue();
+	}
+
+}
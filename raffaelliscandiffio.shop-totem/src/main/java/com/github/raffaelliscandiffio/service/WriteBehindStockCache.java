@@ -0,0 +1,361 @@
+package com.github.raffaelliscandiffio.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.github.raffaelliscandiffio.model.OrderItem;
+import com.github.raffaelliscandiffio.model.Stock;
+import com.github.raffaelliscandiffio.repository.StockRepository;
+import com.github.raffaelliscandiffio.transaction.TransactionManager;
+
+/**
+ * Keeps the available quantity of each product in memory, so purchases are
+ * checked and applied without touching the stock shards. The changes of a
+ * transaction are journaled before it commits and become pending once it has,
+ * and the pending changes are added to the shards in one transaction every
+ * flush interval, or earlier once flushThreshold changes are pending. After a
+ * crash between the two, the order items the transaction leaves behind tell
+ * whether it committed, so each change is applied exactly once.
+ *
+ * A counter is loaded on first use as the quantity in the database plus the
+ * changes still in the journal. Flushes run on the flushExecutor, which must be
+ * the one running the transactions of the service, so that a counter is never
+ * loaded in the middle of a flush.
+ */
+public class WriteBehindStockCache implements Closeable {
+
+	private static final Logger LOGGER = LogManager.getLogger(WriteBehindStockCache.class);
+
+	public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+	public static final int DEFAULT_FLUSH_THRESHOLD = 500;
+
+	private static final long CLOSE_TIMEOUT_SECONDS = 30;
+
+	private final TransactionManager transactionManager;
+	private final Executor flushExecutor;
+	private final int flushThreshold;
+	private final StockDeltaJournal journal;
+	private final ConcurrentHashMap<String, AtomicInteger> counters = new ConcurrentHashMap<>();
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+	private final ScheduledExecutorService scheduler;
+
+	// generation of a committed flush whose journal files are still on disk
+	private long uncleanGeneration = -1;
+
+	public WriteBehindStockCache(TransactionManager transactionManager, Path journalDirectory, Executor flushExecutor)
+			throws IOException {
+		this(transactionManager, journalDirectory, flushExecutor, DEFAULT_FLUSH_INTERVAL_MILLIS,
+				DEFAULT_FLUSH_THRESHOLD);
+	}
+
+	public WriteBehindStockCache(TransactionManager transactionManager, Path journalDirectory, Executor flushExecutor,
+			long flushIntervalMillis, int flushThreshold) throws IOException {
+		if (flushIntervalMillis <= 0)
+			throw new IllegalArgumentException("Flush interval must be positive. Received: " + flushIntervalMillis);
+		if (flushThreshold <= 0)
+			throw new IllegalArgumentException("Flush threshold must be positive. Received: " + flushThreshold);
+		this.transactionManager = transactionManager;
+		this.flushExecutor = flushExecutor;
+		this.flushThreshold = flushThreshold;
+		this.journal = new StockDeltaJournal(journalDirectory);
+		recover();
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "stock-flush");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::scheduleFlush, flushIntervalMillis, flushIntervalMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * The quantity available for the product. The stock repository loads the
+	 * counter when it is not in memory yet.
+	 */
+	public int getQuantity(String productId, StockRepository stockRepository) {
+		return counter(productId, stockRepository).get();
+	}
+
+	/**
+	 * Take the quantity from the product for the change if enough is available,
+	 * and return whether it was taken. The quantity is not available to the other
+	 * transactions until the change is aborted.
+	 */
+	boolean take(StockChange change, String productId, int quantity, StockRepository stockRepository) {
+		AtomicInteger counter = counter(productId, stockRepository);
+		int available;
+		do {
+			available = counter.get();
+			if (available < quantity)
+				return false;
+		} while (!counter.compareAndSet(available, available - quantity));
+		change.add(productId, -quantity);
+		return true;
+	}
+
+	/**
+	 * Give the quantity back to the product with the change, available once the
+	 * change is committed.
+	 */
+	void put(StockChange change, String productId, int quantity) {
+		if (quantity != 0)
+			change.add(productId, quantity);
+	}
+
+	/**
+	 * Journal the change, in the transaction making it and before it commits.
+	 */
+	void prepare(StockChange change) {
+		if (change.isEmpty())
+			return;
+		try {
+			change.setId(journal.prepare(change.getDeltas(), change.getItemQuantities()));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * The transaction of the change committed: its deltas become pending for the
+	 * flush, and the quantities given back available.
+	 */
+	void commit(StockChange change) {
+		if (change.getId() < 0) {
+			change.clear();
+			return;
+		}
+		// a counter loaded concurrently must see a delta either in the journal or
+		// in itself, never in both
+		change.getDeltas().forEach((productId, delta) -> counters.compute(productId, (id, counter) -> {
+			journal.addPending(id, delta);
+			if (counter != null && delta > 0)
+				counter.addAndGet(delta);
+			return counter;
+		}));
+		try {
+			journal.resolve(change.getId(), true);
+		} catch (IOException e) {
+			// the change stays prepared in the journal, and the recovery finds its items
+			LOGGER.log(Level.ERROR, "Cannot journal the commit of stock change " + change.getId(), e);
+		}
+		change.clear();
+		flushIfThresholdReached();
+	}
+
+	/**
+	 * The transaction of the change did not commit: the quantities it took are
+	 * available again.
+	 */
+	void abort(StockChange change) {
+		change.getDeltas().forEach((productId, delta) -> {
+			AtomicInteger counter = counters.get(productId);
+			if (counter != null && delta < 0)
+				counter.addAndGet(-delta);
+		});
+		if (change.getId() >= 0) {
+			try {
+				journal.resolve(change.getId(), false);
+			} catch (IOException e) {
+				LOGGER.log(Level.ERROR, "Cannot journal the abort of stock change " + change.getId(), e);
+			}
+		}
+		change.clear();
+	}
+
+	/**
+	 * Add the pending changes to the stock shards now, on the calling thread.
+	 */
+	public void flush() {
+		if (journal.getPendingChanges() == 0 && uncleanGeneration < 0)
+			return;
+		try {
+			if (uncleanGeneration >= 0) {
+				deleteFlushed(uncleanGeneration);
+				uncleanGeneration = -1;
+			}
+			StockDeltaJournal.Batch batch = journal.rotate();
+			try {
+				applyBatch(batch);
+			} catch (RuntimeException | IOException e) {
+				journal.restore(batch);
+				throw e;
+			}
+			try {
+				deleteFlushed(batch.generation);
+			} catch (IOException e) {
+				uncleanGeneration = batch.generation;
+				throw e;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		scheduler.shutdownNow();
+		try {
+			CompletableFuture.runAsync(this::flushQuietly, flushExecutor).get(CLOSE_TIMEOUT_SECONDS,
+					TimeUnit.SECONDS);
+		} catch (RejectedExecutionException | ExecutionException | TimeoutException e) {
+			LOGGER.log(Level.ERROR, "Cannot flush the stock changes on close, they stay in the journal", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			journal.close();
+		}
+	}
+
+	private AtomicInteger counter(String productId, StockRepository stockRepository) {
+		return counters.computeIfAbsent(productId, id -> new AtomicInteger(
+				stockRepository.getTotalQuantityByProductId(id) + journal.getPendingDelta(id)));
+	}
+
+	private void flushIfThresholdReached() {
+		if (journal.getPendingChanges() >= flushThreshold)
+			scheduleFlush();
+	}
+
+	private void scheduleFlush() {
+		if (!flushScheduled.compareAndSet(false, true))
+			return;
+		try {
+			flushExecutor.execute(() -> {
+				flushScheduled.set(false);
+				flushQuietly();
+			});
+		} catch (RejectedExecutionException e) {
+			flushScheduled.set(false);
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.ERROR, "Cannot flush the stock changes, they will be retried", e);
+		}
+	}
+
+	// The intent holds the totals the shards reach if the transaction commits, so
+	// after a crash a batch is never added twice nor lost.
+	private void applyBatch(StockDeltaJournal.Batch batch) throws IOException {
+		Map<String, Integer> deltas = new LinkedHashMap<>();
+		batch.deltas.forEach((productId, delta) -> {
+			if (delta != 0)
+				deltas.put(productId, delta);
+		});
+		if (deltas.isEmpty())
+			return;
+		try {
+			transactionManager.runInTransaction((productRepository, stockRepository, orderRepository, itemRepository) -> {
+				Map<String, List<Stock>> shardsByProduct = new HashMap<>();
+				Map<String, Integer> expectedTotals = new HashMap<>();
+				for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+					List<Stock> shards = stockRepository.findAllByProductId(delta.getKey());
+					if (shards.isEmpty()) {
+						LOGGER.log(Level.WARN, "Stock not found, dropping a change of " + delta.getValue()
+								+ " for product " + delta.getKey());
+						continue;
+					}
+					shardsByProduct.put(delta.getKey(), shards);
+					expectedTotals.put(delta.getKey(),
+							shards.stream().mapToInt(Stock::getQuantity).sum() + delta.getValue());
+				}
+				try {
+					journal.writeIntent(batch.generation, expectedTotals);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				shardsByProduct.forEach((productId, shards) -> addToShards(stockRepository, shards,
+						deltas.get(productId)));
+				return null;
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	// A return goes to the first shard, a purchase drains the shards in order.
+	private void addToShards(StockRepository stockRepository, List<Stock> shards, int delta) {
+		if (delta > 0) {
+			stockRepository.addToQuantity(shards.get(0).getId(), delta);
+			return;
+		}
+		int remaining = -delta;
+		for (int i = 0; i < shards.size() && remaining > 0; i++) {
+			Stock shard = shards.get(i);
+			int taken = i == shards.size() - 1 ? remaining : Math.min(remaining, Math.max(shard.getQuantity(), 0));
+			if (taken > 0) {
+				stockRepository.addToQuantity(shard.getId(), -taken);
+				remaining -= taken;
+			}
+		}
+	}
+
+	private void deleteFlushed(long generation) throws IOException {
+		journal.deleteUpTo(generation);
+		journal.deleteIntent();
+	}
+
+	private void recover() throws IOException {
+		StockDeltaJournal.Batch intent = journal.readIntent();
+		if (intent != null) {
+			boolean committed = transactionManager.runInTransaction((productRepository, stockRepository,
+					orderRepository, itemRepository) -> intent.deltas.entrySet().stream().allMatch(
+							total -> stockRepository.getTotalQuantityByProductId(total.getKey()) == total.getValue()));
+			if (committed)
+				journal.deleteUpTo(intent.generation);
+			journal.deleteIntent();
+		}
+		List<StockDeltaJournal.Prepared> unresolved = journal.open();
+		if (!unresolved.isEmpty())
+			resolve(unresolved);
+		if (journal.getPendingChanges() > 0)
+			flush();
+	}
+
+	// A change was journaled but the crash came before its outcome: its
+	// transaction committed if the items hold the quantities it left them with.
+	private void resolve(List<StockDeltaJournal.Prepared> unresolved) throws IOException {
+		List<Boolean> outcomes = transactionManager.runInTransaction((productRepository, stockRepository,
+				orderRepository, itemRepository) -> {
+			List<Boolean> committed = new ArrayList<>();
+			for (StockDeltaJournal.Prepared change : unresolved)
+				committed.add(change.itemQuantities.entrySet().stream().allMatch(expected -> {
+					OrderItem item = itemRepository.findById(expected.getKey());
+					return (item == null ? 0 : item.getQuantity()) == expected.getValue();
+				}));
+			return committed;
+		});
+		for (int i = 0; i < unresolved.size(); i++) {
+			StockDeltaJournal.Prepared change = unresolved.get(i);
+			if (outcomes.get(i))
+				change.deltas.forEach(journal::addPending);
+			journal.resolve(change.id, outcomes.get(i));
+		}
+	}
+
+}
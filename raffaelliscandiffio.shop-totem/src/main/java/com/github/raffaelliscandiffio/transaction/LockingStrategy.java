@@ -0,0 +1,6 @@
+package com.github.raffaelliscandiffio.transaction;
+
+public enum LockingStrategy {
+
+	PESSIMISTIC, OPTIMISTIC
+}
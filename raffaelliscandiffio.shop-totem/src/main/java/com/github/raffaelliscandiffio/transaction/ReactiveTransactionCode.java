@@ -0,0 +1,16 @@
+package com.github.raffaelliscandiffio.transaction;
+
+import org.reactivestreams.Publisher;
+
+import com.github.raffaelliscandiffio.repository.reactive.ReactiveOrderItemRepository;
+import com.github.raffaelliscandiffio.repository.reactive.ReactiveOrderRepository;
+import com.github.raffaelliscandiffio.repository.reactive.ReactiveProductRepository;
+import com.github.raffaelliscandiffio.repository.reactive.ReactiveStockRepository;
+
+@FunctionalInterface
+public interface ReactiveTransactionCode<T> {
+
+	Publisher<T> apply(ReactiveProductRepository productRepository, ReactiveStockRepository stockRepository,
+			ReactiveOrderRepository orderRepository, ReactiveOrderItemRepository orderItemRepository);
+
+}
@@ -0,0 +1,13 @@
+package com.github.raffaelliscandiffio.transaction;
+
+import org.reactivestreams.Publisher;
+
+public interface ReactiveTransactionManager {
+
+	/**
+	 * Return a publisher that, on each subscription, runs the code in a new
+	 * transaction and emits its elements once the transaction has committed.
+	 */
+	<T> Publisher<T> runInTransaction(ReactiveTransactionCode<T> code);
+
+}
@@ -0,0 +1,42 @@
+package com.github.raffaelliscandiffio.transaction.embedded;
+
+import com.github.raffaelliscandiffio.exception.TransactionException;
+import com.github.raffaelliscandiffio.jfr.TransactionEvent;
+import com.github.raffaelliscandiffio.repository.embedded.EmbeddedStore;
+import com.github.raffaelliscandiffio.repository.embedded.EmbeddedTransaction;
+import com.github.raffaelliscandiffio.repository.embedded.OrderEmbeddedRepository;
+import com.github.raffaelliscandiffio.repository.embedded.OrderItemEmbeddedRepository;
+import com.github.raffaelliscandiffio.repository.embedded.ProductEmbeddedRepository;
+import com.github.raffaelliscandiffio.repository.embedded.StockEmbeddedRepository;
+import com.github.raffaelliscandiffio.repository.recorded.RecordedRepositories;
+import com.github.raffaelliscandiffio.transaction.TransactionCode;
+import com.github.raffaelliscandiffio.transaction.TransactionManager;
+
+public class TransactionManagerEmbedded implements TransactionManager {
+
+	private static final String BACKEND = "embedded";
+
+	private EmbeddedStore store;
+
+	public TransactionManagerEmbedded(EmbeddedStore store) {
+		this.store = store;
+	}
+
+	@Override
+	public <T> T runInTransaction(TransactionCode<T> code) {
+		TransactionEvent event = TransactionEvent.start(BACKEND);
+		// the transaction rolls back on close unless it committed
+		try (EmbeddedTransaction transaction = store.begin()) {
+			T result = RecordedRepositories.apply(code, BACKEND, new ProductEmbeddedRepository(transaction),
+					new StockEmbeddedRepository(transaction), new OrderEmbeddedRepository(transaction),
+					new OrderItemEmbeddedRepository(transaction));
+			transaction.commit();
+			event.finish(true);
+			return result;
+		} catch (Exception e) {
+			event.finish(false);
+			throw new TransactionException(e.getMessage());
+		}
+	}
+
+}
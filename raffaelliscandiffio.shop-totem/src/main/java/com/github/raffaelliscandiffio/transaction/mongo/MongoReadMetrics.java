@@ -0,0 +1,73 @@
+package com.github.raffaelliscandiffio.transaction.mongo;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+/**
+ * Counts the read commands sent to each node of the replica set, by address
+ * and by the role the node had when the command was sent. Register one
+ * instance on every client whose reads should be counted.
+ */
+public class MongoReadMetrics implements CommandListener {
+
+	private static final Set<String> READ_COMMANDS = new HashSet<>(
+			Arrays.asList("find", "getMore", "aggregate", "count", "distinct"));
+
+	private final Map<String, LongAdder> readsByNode = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> readsByRole = new ConcurrentHashMap<>();
+
+	@Override
+	public void commandStarted(CommandStartedEvent event) {
+		if (!READ_COMMANDS.contains(event.getCommandName()))
+			return;
+		ConnectionDescription connection = event.getConnectionDescription();
+		readsByNode.computeIfAbsent(connection.getServerAddress().toString(), key -> new LongAdder()).increment();
+		readsByRole.computeIfAbsent(connection.getServerType().name(), key -> new LongAdder()).increment();
+	}
+
+	@Override
+	public void commandSucceeded(CommandSucceededEvent event) {
+		// only the start of a command tells where it was sent
+	}
+
+	@Override
+	public void commandFailed(CommandFailedEvent event) {
+		// only the start of a command tells where it was sent
+	}
+
+	/**
+	 * The reads so far by node address, such as localhost:27018.
+	 */
+	public Map<String, Long> getReadsByNode() {
+		return snapshot(readsByNode);
+	}
+
+	/**
+	 * The reads so far by server type, such as REPLICA_SET_SECONDARY.
+	 */
+	public Map<String, Long> getReadsByRole() {
+		return snapshot(readsByRole);
+	}
+
+	public String summary() {
+		return "reads by node " + getReadsByNode() + ", by role " + getReadsByRole();
+	}
+
+	private static Map<String, Long> snapshot(Map<String, LongAdder> counters) {
+		Map<String, Long> snapshot = new TreeMap<>();
+		counters.forEach((key, counter) -> snapshot.put(key, counter.sum()));
+		return snapshot;
+	}
+
+}
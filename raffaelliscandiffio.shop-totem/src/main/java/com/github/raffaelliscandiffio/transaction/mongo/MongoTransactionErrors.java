@@ -0,0 +1,22 @@
+package com.github.raffaelliscandiffio.transaction.mongo;
+
+import com.github.raffaelliscandiffio.exception.TransactionConflictException;
+import com.github.raffaelliscandiffio.exception.TransactionException;
+import com.mongodb.MongoException;
+
+final class MongoTransactionErrors {
+
+	private MongoTransactionErrors() {
+	}
+
+	static TransactionException translate(Throwable error) {
+		if (error instanceof TransactionConflictException)
+			return (TransactionConflictException) error;
+		// write conflicts between concurrent transactions are labelled as transient
+		if (error instanceof MongoException
+				&& ((MongoException) error).hasErrorLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL))
+			return new TransactionConflictException(error.getMessage());
+		return new TransactionException(error.getMessage());
+	}
+
+}
@@ -0,0 +1,85 @@
+package com.github.raffaelliscandiffio.transaction.mongo;
+
+import static com.github.raffaelliscandiffio.utils.Publishers.first;
+import static com.github.raffaelliscandiffio.utils.Publishers.toList;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.reactivestreams.Publisher;
+
+import com.github.raffaelliscandiffio.repository.mongo.ReactiveOrderItemMongoRepository;
+import com.github.raffaelliscandiffio.repository.mongo.ReactiveOrderMongoRepository;
+import com.github.raffaelliscandiffio.repository.mongo.ReactiveProductMongoRepository;
+import com.github.raffaelliscandiffio.repository.mongo.ReactiveStockMongoRepository;
+import com.github.raffaelliscandiffio.transaction.LockingStrategy;
+import com.github.raffaelliscandiffio.transaction.ReactiveTransactionCode;
+import com.github.raffaelliscandiffio.transaction.ReactiveTransactionManager;
+import com.github.raffaelliscandiffio.utils.Publishers;
+import com.mongodb.reactivestreams.client.ClientSession;
+import com.mongodb.reactivestreams.client.MongoClient;
+
+public class ReactiveTransactionManagerMongo implements ReactiveTransactionManager {
+
+	private MongoClient client;
+	private final String mongoDatabaseName;
+	private final String productCollectionName;
+	private final String stockCollectionName;
+	private final String orderCollectionName;
+	private final String orderItemCollectionName;
+	private final LockingStrategy lockingStrategy;
+
+	public ReactiveTransactionManagerMongo(MongoClient client, String dbName, String productCollectionName,
+			String stockCollectionName, String orderCollectionName, String orderItemCollectionName) {
+		this(client, dbName, productCollectionName, stockCollectionName, orderCollectionName, orderItemCollectionName,
+				LockingStrategy.PESSIMISTIC);
+	}
+
+	public ReactiveTransactionManagerMongo(MongoClient client, String dbName, String productCollectionName,
+			String stockCollectionName, String orderCollectionName, String orderItemCollectionName,
+			LockingStrategy lockingStrategy) {
+		this.client = client;
+		this.mongoDatabaseName = dbName;
+		this.productCollectionName = productCollectionName;
+		this.stockCollectionName = stockCollectionName;
+		this.orderCollectionName = orderCollectionName;
+		this.orderItemCollectionName = orderItemCollectionName;
+		this.lockingStrategy = lockingStrategy;
+	}
+
+	@Override
+	public <T> Publisher<T> runInTransaction(ReactiveTransactionCode<T> code) {
+		return Publishers.fromFutureList(() -> first(client.startSession()).thenCompose(session -> {
+			CompletableFuture<List<T>> outcome = new CompletableFuture<>();
+			runInSession(session, code).whenComplete((items, error) -> {
+				// closing the session aborts the transaction if it is still active
+				session.close();
+				if (error == null)
+					outcome.complete(items);
+				else
+					outcome.completeExceptionally(MongoTransactionErrors.translate(Publishers.unwrap(error)));
+			});
+			return outcome;
+		}));
+	}
+
+	private <T> CompletableFuture<List<T>> runInSession(ClientSession session, ReactiveTransactionCode<T> code) {
+		CompletableFuture<List<T>> result;
+		try {
+			session.startTransaction();
+			result = toList(code.apply(
+					new ReactiveProductMongoRepository(client, session, mongoDatabaseName, productCollectionName),
+					new ReactiveStockMongoRepository(client, session, mongoDatabaseName, productCollectionName,
+							stockCollectionName, lockingStrategy),
+					new ReactiveOrderMongoRepository(client, session, mongoDatabaseName, orderCollectionName,
+							orderItemCollectionName, lockingStrategy),
+					new ReactiveOrderItemMongoRepository(client, session, mongoDatabaseName, productCollectionName,
+							orderCollectionName, orderItemCollectionName, lockingStrategy)));
+		} catch (RuntimeException e) {
+			result = new CompletableFuture<>();
+			result.completeExceptionally(e);
+		}
+		return result.thenCompose(items -> first(session.commitTransaction()).thenApply(committed -> items));
+	}
+
+}
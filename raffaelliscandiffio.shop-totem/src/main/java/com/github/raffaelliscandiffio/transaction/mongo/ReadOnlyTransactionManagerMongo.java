@@ -0,0 +1,68 @@
+package com.github.raffaelliscandiffio.transaction.mongo;
+
+import com.github.raffaelliscandiffio.jfr.TransactionEvent;
+import com.github.raffaelliscandiffio.repository.mongo.MongoIdentityMap;
+import com.github.raffaelliscandiffio.repository.mongo.OrderItemMongoRepository;
+import com.github.raffaelliscandiffio.repository.mongo.OrderMongoRepository;
+import com.github.raffaelliscandiffio.repository.mongo.ProductMongoRepository;
+import com.github.raffaelliscandiffio.repository.mongo.StockMongoRepository;
+import com.github.raffaelliscandiffio.repository.recorded.RecordedRepositories;
+import com.github.raffaelliscandiffio.transaction.LockingStrategy;
+import com.github.raffaelliscandiffio.transaction.TransactionCode;
+import com.github.raffaelliscandiffio.transaction.TransactionManager;
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.MongoClient;
+
+/**
+ * Runs code that only reads, such as the catalog queries, outside of a
+ * transaction. Mongo transactions must read from the primary, while these
+ * reads follow the read preference of the client, so a client reading from
+ * the secondaries takes them off the primary. Each read may see data as old as
+ * the maxStalenessSeconds of the client, and two reads may see different
+ * points in time. The code must not write: its writes would not be atomic.
+ */
+public class ReadOnlyTransactionManagerMongo implements TransactionManager {
+
+	// the strategy only matters to the updates, which this manager does not run
+	private static final LockingStrategy READS_ONLY = LockingStrategy.PESSIMISTIC;
+	private static final String BACKEND = "mongo-catalog";
+
+	private final MongoClient client;
+	private final String mongoDatabaseName;
+	private final String productCollectionName;
+	private final String stockCollectionName;
+	private final String orderCollectionName;
+	private final String orderItemCollectionName;
+
+	public ReadOnlyTransactionManagerMongo(MongoClient client, String dbName, String productCollectionName,
+			String stockCollectionName, String orderCollectionName, String orderItemCollectionName) {
+		this.client = client;
+		this.mongoDatabaseName = dbName;
+		this.productCollectionName = productCollectionName;
+		this.stockCollectionName = stockCollectionName;
+		this.orderCollectionName = orderCollectionName;
+		this.orderItemCollectionName = orderItemCollectionName;
+	}
+
+	@Override
+	public <T> T runInTransaction(TransactionCode<T> code) {
+		TransactionEvent event = TransactionEvent.start(BACKEND);
+		try (ClientSession session = client.startSession()) {
+			MongoIdentityMap identityMap = new MongoIdentityMap();
+			T result = RecordedRepositories.apply(code, BACKEND,
+					new ProductMongoRepository(client, session, mongoDatabaseName, productCollectionName, identityMap),
+					new StockMongoRepository(client, session, mongoDatabaseName, productCollectionName,
+							stockCollectionName, READS_ONLY, identityMap),
+					new OrderMongoRepository(client, session, mongoDatabaseName, orderCollectionName,
+							orderItemCollectionName, READS_ONLY, identityMap),
+					new OrderItemMongoRepository(client, session, mongoDatabaseName, productCollectionName,
+							orderCollectionName, orderItemCollectionName, READS_ONLY, identityMap));
+			event.finish(true);
+			return result;
+		} catch (Exception e) {
+			event.finish(false);
+			throw MongoTransactionErrors.translate(e);
+		}
+	}
+
+}
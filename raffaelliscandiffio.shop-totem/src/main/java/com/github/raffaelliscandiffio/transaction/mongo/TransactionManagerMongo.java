@@ -1,59 +1,106 @@
 package com.github.raffaelliscandiffio.transaction.mongo;
 
-import com.github.raffaelliscandiffio.exception.TransactionException;
+import com.github.raffaelliscandiffio.jfr.TransactionEvent;
+import com.github.raffaelliscandiffio.profiling.LockWaitProfiler;
+import com.github.raffaelliscandiffio.repository.mongo.MongoIdentityMap;
 import com.github.raffaelliscandiffio.repository.mongo.OrderItemMongoRepository;
 import com.github.raffaelliscandiffio.repository.mongo.OrderMongoRepository;
 import com.github.raffaelliscandiffio.repository.mongo.ProductMongoRepository;
 import com.github.raffaelliscandiffio.repository.mongo.StockMongoRepository;
+import com.github.raffaelliscandiffio.repository.recorded.RecordedRepositories;
+import com.github.raffaelliscandiffio.transaction.LockingStrategy;
 import com.github.raffaelliscandiffio.transaction.TransactionCode;
 import com.github.raffaelliscandiffio.transaction.TransactionManager;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.ClientSession;
 
+/**
+ * Runs each transaction in a session of its own, so one manager can be shared
+ * by any number of threads and a transaction can start another one.
+ */
 public class TransactionManagerMongo implements TransactionManager {
 
-	private MongoClient client;
+	private static final String BACKEND = "mongo";
+
+	private final MongoClient client;
 	private final String mongoDatabaseName;
 	private final String productCollectionName;
 	private final String stockCollectionName;
 	private final String orderCollectionName;
 	private final String orderItemCollectionName;
-	private ClientSession session;
+	private final LockingStrategy lockingStrategy;
+	// null when the lock waits are not profiled
+	private final LockWaitProfiler lockWaits;
+	// the session of the innermost transaction of each thread, for the tests
+	private final ThreadLocal<ClientSession> currentSession = new ThreadLocal<>();
 
 	public TransactionManagerMongo(MongoClient client, String dbName, String productCollectionName,
 			String stockCollectionName, String orderCollectionName, String orderItemCollectionName) {
+		this(client, dbName, productCollectionName, stockCollectionName, orderCollectionName, orderItemCollectionName,
+				LockingStrategy.PESSIMISTIC);
+	}
+
+	public TransactionManagerMongo(MongoClient client, String dbName, String productCollectionName,
+			String stockCollectionName, String orderCollectionName, String orderItemCollectionName,
+			LockingStrategy lockingStrategy) {
+		this(client, dbName, productCollectionName, stockCollectionName, orderCollectionName, orderItemCollectionName,
+				lockingStrategy, null);
+	}
+
+	public TransactionManagerMongo(MongoClient client, String dbName, String productCollectionName,
+			String stockCollectionName, String orderCollectionName, String orderItemCollectionName,
+			LockingStrategy lockingStrategy, LockWaitProfiler lockWaits) {
 		this.client = client;
 		this.mongoDatabaseName = dbName;
 		this.productCollectionName = productCollectionName;
 		this.stockCollectionName = stockCollectionName;
 		this.orderCollectionName = orderCollectionName;
 		this.orderItemCollectionName = orderItemCollectionName;
-
+		this.lockingStrategy = lockingStrategy;
+		this.lockWaits = lockWaits;
 	}
 
 	@Override
 	public <T> T runInTransaction(TransactionCode<T> code) {
+		ClientSession outerSession = currentSession.get();
+		ClientSession session = null;
+		TransactionEvent event = TransactionEvent.start(BACKEND);
 		try {
 			session = client.startSession();
+			currentSession.set(session);
 			session.startTransaction();
-			T result = code.apply(new ProductMongoRepository(client, session, mongoDatabaseName, productCollectionName),
+			// the repositories of the transaction return the same instance of an entity
+			MongoIdentityMap identityMap = new MongoIdentityMap();
+			T result = RecordedRepositories.apply(code, BACKEND,
+					new ProductMongoRepository(client, session, mongoDatabaseName, productCollectionName, identityMap),
 					new StockMongoRepository(client, session, mongoDatabaseName, productCollectionName,
-							stockCollectionName),
+							stockCollectionName, lockingStrategy, identityMap, lockWaits),
 					new OrderMongoRepository(client, session, mongoDatabaseName, orderCollectionName,
-							orderItemCollectionName),
+							orderItemCollectionName, lockingStrategy, identityMap),
 					new OrderItemMongoRepository(client, session, mongoDatabaseName, productCollectionName,
-							orderCollectionName, orderItemCollectionName));
+							orderCollectionName, orderItemCollectionName, lockingStrategy, identityMap));
 			session.commitTransaction();
+			event.finish(true);
 			return result;
 		} catch (Exception e) {
-			throw new TransactionException(e.getMessage());
+			event.finish(false);
+			throw MongoTransactionErrors.translate(e);
 		} finally {
-			session.close();
+			if (session != null)
+				session.close();
+			if (outerSession == null)
+				currentSession.remove();
+			else
+				currentSession.set(outerSession);
 		}
 	}
 
+	/**
+	 * The session of the transaction running in the calling thread, null outside
+	 * of a transaction.
+	 */
 	ClientSession getSession() {
-		return session;
+		return currentSession.get();
 	}
 
 }
@@ -0,0 +1,79 @@
+package com.github.raffaelliscandiffio.transaction.mongo;
+
+import static com.github.raffaelliscandiffio.utils.Publishers.await;
+
+import com.github.raffaelliscandiffio.jfr.TransactionEvent;
+import com.github.raffaelliscandiffio.repository.mongo.ReactiveOrderItemMongoRepository;
+import com.github.raffaelliscandiffio.repository.mongo.ReactiveOrderMongoRepository;
+import com.github.raffaelliscandiffio.repository.mongo.ReactiveProductMongoRepository;
+import com.github.raffaelliscandiffio.repository.mongo.ReactiveStockMongoRepository;
+import com.github.raffaelliscandiffio.repository.reactive.BlockingOrderItemRepository;
+import com.github.raffaelliscandiffio.repository.reactive.BlockingOrderRepository;
+import com.github.raffaelliscandiffio.repository.reactive.BlockingProductRepository;
+import com.github.raffaelliscandiffio.repository.reactive.BlockingStockRepository;
+import com.github.raffaelliscandiffio.repository.recorded.RecordedRepositories;
+import com.github.raffaelliscandiffio.transaction.LockingStrategy;
+import com.github.raffaelliscandiffio.transaction.TransactionCode;
+import com.github.raffaelliscandiffio.transaction.TransactionManager;
+import com.mongodb.reactivestreams.client.ClientSession;
+import com.mongodb.reactivestreams.client.MongoClient;
+
+/**
+ * Runs the blocking {@link TransactionCode} of ShoppingService against the
+ * reactive repositories. The calling thread waits for each operation, while
+ * the I/O runs on the shared threads of the reactive driver.
+ */
+public class TransactionManagerMongoReactiveAdapter implements TransactionManager {
+
+	private static final String BACKEND = "mongo-reactive";
+
+	private MongoClient client;
+	private final String mongoDatabaseName;
+	private final String productCollectionName;
+	private final String stockCollectionName;
+	private final String orderCollectionName;
+	private final String orderItemCollectionName;
+	private final LockingStrategy lockingStrategy;
+
+	public TransactionManagerMongoReactiveAdapter(MongoClient client, String dbName, String productCollectionName,
+			String stockCollectionName, String orderCollectionName, String orderItemCollectionName,
+			LockingStrategy lockingStrategy) {
+		this.client = client;
+		this.mongoDatabaseName = dbName;
+		this.productCollectionName = productCollectionName;
+		this.stockCollectionName = stockCollectionName;
+		this.orderCollectionName = orderCollectionName;
+		this.orderItemCollectionName = orderItemCollectionName;
+		this.lockingStrategy = lockingStrategy;
+	}
+
+	@Override
+	public <T> T runInTransaction(TransactionCode<T> code) {
+		ClientSession session = null;
+		TransactionEvent event = TransactionEvent.start(BACKEND);
+		try {
+			session = await(client.startSession());
+			session.startTransaction();
+			T result = RecordedRepositories.apply(code, BACKEND,
+					new BlockingProductRepository(new ReactiveProductMongoRepository(client, session,
+							mongoDatabaseName, productCollectionName)),
+					new BlockingStockRepository(new ReactiveStockMongoRepository(client, session, mongoDatabaseName,
+							productCollectionName, stockCollectionName, lockingStrategy)),
+					new BlockingOrderRepository(new ReactiveOrderMongoRepository(client, session, mongoDatabaseName,
+							orderCollectionName, orderItemCollectionName, lockingStrategy)),
+					new BlockingOrderItemRepository(new ReactiveOrderItemMongoRepository(client, session,
+							mongoDatabaseName, productCollectionName, orderCollectionName, orderItemCollectionName,
+							lockingStrategy)));
+			await(session.commitTransaction());
+			event.finish(true);
+			return result;
+		} catch (Exception e) {
+			event.finish(false);
+			throw MongoTransactionErrors.translate(e);
+		} finally {
+			if (session != null)
+				session.close();
+		}
+	}
+
+}
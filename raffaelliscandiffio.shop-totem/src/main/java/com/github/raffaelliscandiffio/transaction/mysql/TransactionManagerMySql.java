@@ -1,34 +1,75 @@
 package com.github.raffaelliscandiffio.transaction.mysql;
 
 import javax.persistence.EntityManager;
+import javax.persistence.OptimisticLockException;
 
+import org.hibernate.StaleStateException;
+
+import com.github.raffaelliscandiffio.exception.TransactionConflictException;
 import com.github.raffaelliscandiffio.exception.TransactionException;
+import com.github.raffaelliscandiffio.jfr.TransactionEvent;
+import com.github.raffaelliscandiffio.profiling.LockWaitProfiler;
 import com.github.raffaelliscandiffio.repository.mysql.OrderItemMySqlRepository;
 import com.github.raffaelliscandiffio.repository.mysql.OrderMySqlRepository;
 import com.github.raffaelliscandiffio.repository.mysql.ProductMySqlRepository;
 import com.github.raffaelliscandiffio.repository.mysql.StockMySqlRepository;
+import com.github.raffaelliscandiffio.repository.recorded.RecordedRepositories;
+import com.github.raffaelliscandiffio.transaction.LockingStrategy;
 import com.github.raffaelliscandiffio.transaction.TransactionCode;
 import com.github.raffaelliscandiffio.transaction.TransactionManager;
 
 public class TransactionManagerMySql implements TransactionManager {
 
+	private static final String BACKEND = "mysql";
+
 	private EntityManager entityManager;
+	private LockingStrategy lockingStrategy;
+	private LockWaitProfiler lockWaits;
 
 	public TransactionManagerMySql(EntityManager entityManager) {
+		this(entityManager, LockingStrategy.PESSIMISTIC);
+	}
+
+	public TransactionManagerMySql(EntityManager entityManager, LockingStrategy lockingStrategy) {
+		this(entityManager, lockingStrategy, null);
+	}
+
+	public TransactionManagerMySql(EntityManager entityManager, LockingStrategy lockingStrategy,
+			LockWaitProfiler lockWaits) {
 		this.entityManager = entityManager;
+		this.lockingStrategy = lockingStrategy;
+		this.lockWaits = lockWaits;
 	}
 
 	@Override
 	public <T> T runInTransaction(TransactionCode<T> code) {
+		TransactionEvent event = TransactionEvent.start(BACKEND);
 		try {
 			entityManager.getTransaction().begin();
-			T result = code.apply(new ProductMySqlRepository(entityManager), new StockMySqlRepository(entityManager),
+			T result = RecordedRepositories.apply(code, BACKEND, new ProductMySqlRepository(entityManager),
+					new StockMySqlRepository(entityManager, lockingStrategy, lockWaits),
 					new OrderMySqlRepository(entityManager), new OrderItemMySqlRepository(entityManager));
 			entityManager.getTransaction().commit();
+			event.finish(true);
 			return result;
 		} catch (Exception e) {
-			entityManager.getTransaction().rollback();
+			if (entityManager.getTransaction().isActive())
+				entityManager.getTransaction().rollback();
+			event.finish(false);
+			if (isVersionConflict(e)) {
+				// the persistence context holds the rejected versions
+				entityManager.clear();
+				throw new TransactionConflictException(e.getMessage());
+			}
 			throw new TransactionException(e.getMessage());
 		}
 	}
+
+	private boolean isVersionConflict(Throwable e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause())
+			if (cause instanceof OptimisticLockException || cause instanceof StaleStateException
+					|| cause instanceof TransactionConflictException)
+				return true;
+		return false;
+	}
 }
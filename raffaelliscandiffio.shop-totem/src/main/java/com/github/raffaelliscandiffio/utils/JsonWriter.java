@@ -0,0 +1,152 @@
+package com.github.raffaelliscandiffio.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.BitSet;
+
+/**
+ * Writes JSON straight to a writer as it is produced, without building the
+ * document or its strings in memory. The caller is trusted to nest the calls
+ * correctly; only the commas are tracked. Shared by the HTTP responses and the
+ * slow operation lines, so that strings are escaped in one place.
+ */
+public class JsonWriter {
+
+	private final Writer out;
+	// whether the container at each depth already has a member
+	private final BitSet hasMembers = new BitSet();
+	private int depth;
+	private boolean afterName;
+
+	public JsonWriter(Writer out) {
+		this.out = out;
+	}
+
+	public JsonWriter beginObject() throws IOException {
+		return open('{');
+	}
+
+	public JsonWriter endObject() throws IOException {
+		return close('}');
+	}
+
+	public JsonWriter beginArray() throws IOException {
+		return open('[');
+	}
+
+	public JsonWriter endArray() throws IOException {
+		return close(']');
+	}
+
+	public JsonWriter name(String name) throws IOException {
+		separate();
+		string(name);
+		out.write(':');
+		afterName = true;
+		return this;
+	}
+
+	public JsonWriter value(String value) throws IOException {
+		separate();
+		if (value == null)
+			out.write("null");
+		else
+			string(value);
+		return this;
+	}
+
+	public JsonWriter value(long value) throws IOException {
+		separate();
+		out.write(Long.toString(value));
+		return this;
+	}
+
+	public JsonWriter value(boolean value) throws IOException {
+		separate();
+		out.write(Boolean.toString(value));
+		return this;
+	}
+
+	public JsonWriter value(double value) throws IOException {
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			throw new IllegalArgumentException("JSON numbers must be finite. Received: " + value);
+		separate();
+		out.write(Double.toString(value));
+		return this;
+	}
+
+	/**
+	 * A number rounded to the given decimal places and written with all of them,
+	 * such as 12.500.
+	 */
+	public JsonWriter value(double value, int scale) throws IOException {
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			throw new IllegalArgumentException("JSON numbers must be finite. Received: " + value);
+		separate();
+		out.write(BigDecimal.valueOf(value).setScale(scale, RoundingMode.HALF_UP).toPlainString());
+		return this;
+	}
+
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	private JsonWriter open(char bracket) throws IOException {
+		separate();
+		out.write(bracket);
+		hasMembers.clear(++depth);
+		return this;
+	}
+
+	private JsonWriter close(char bracket) throws IOException {
+		out.write(bracket);
+		depth--;
+		return this;
+	}
+
+	// a value right after its name needs no comma
+	private void separate() throws IOException {
+		if (afterName) {
+			afterName = false;
+			return;
+		}
+		if (hasMembers.get(depth))
+			out.write(',');
+		hasMembers.set(depth);
+	}
+
+	private void string(String value) throws IOException {
+		out.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				out.write("\\\"");
+				break;
+			case '\\':
+				out.write("\\\\");
+				break;
+			case '\n':
+				out.write("\\n");
+				break;
+			case '\r':
+				out.write("\\r");
+				break;
+			case '\t':
+				out.write("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					out.write("\\u00");
+					out.write(Character.forDigit(c >> 4, 16));
+					out.write(Character.forDigit(c & 0xF, 16));
+				} else
+					out.write(c);
+			}
+		}
+		out.write('"');
+	}
+
+}
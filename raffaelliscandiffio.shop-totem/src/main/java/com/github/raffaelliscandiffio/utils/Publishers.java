@@ -0,0 +1,260 @@
+package com.github.raffaelliscandiffio.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Bridges Reactive Streams publishers and CompletableFuture, so that
+ * publishers can be composed without an operator library.
+ */
+public final class Publishers {
+
+	private Publishers() {
+	}
+
+	/**
+	 * Complete with the first element emitted, or with null when the publisher
+	 * completes empty.
+	 */
+	public static <T> CompletableFuture<T> first(Publisher<T> publisher) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		publisher.subscribe(new Subscriber<T>() {
+			private Subscription subscription;
+
+			@Override
+			public void onSubscribe(Subscription s) {
+				subscription = s;
+				s.request(1);
+			}
+
+			@Override
+			public void onNext(T item) {
+				if (future.complete(item))
+					subscription.cancel();
+			}
+
+			@Override
+			public void onError(Throwable t) {
+				future.completeExceptionally(t);
+			}
+
+			@Override
+			public void onComplete() {
+				future.complete(null);
+			}
+		});
+		return future;
+	}
+
+	public static <T> CompletableFuture<List<T>> toList(Publisher<T> publisher) {
+		CompletableFuture<List<T>> future = new CompletableFuture<>();
+		publisher.subscribe(new Subscriber<T>() {
+			private final List<T> items = new ArrayList<>();
+
+			@Override
+			public void onSubscribe(Subscription s) {
+				s.request(Long.MAX_VALUE);
+			}
+
+			@Override
+			public void onNext(T item) {
+				items.add(item);
+			}
+
+			@Override
+			public void onError(Throwable t) {
+				future.completeExceptionally(t);
+			}
+
+			@Override
+			public void onComplete() {
+				future.complete(items);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Block until the first element is available, rethrowing the exception that
+	 * failed the publisher.
+	 */
+	public static <T> T await(Publisher<T> publisher) {
+		return join(first(publisher));
+	}
+
+	public static <T> List<T> awaitList(Publisher<T> publisher) {
+		return join(toList(publisher));
+	}
+
+	/**
+	 * A publisher emitting the value of the future, or nothing when the value is
+	 * null. The future is created on the first request of each subscriber.
+	 */
+	public static <T> Publisher<T> fromFuture(Supplier<CompletableFuture<T>> source) {
+		return new FuturePublisher<>(() -> source.get()
+				.thenApply(value -> value == null ? Collections.<T>emptyList() : Collections.singletonList(value)));
+	}
+
+	public static <T> Publisher<T> fromFutureList(Supplier<CompletableFuture<List<T>>> source) {
+		return new FuturePublisher<>(source::get);
+	}
+
+	public static Throwable unwrap(Throwable throwable) {
+		Throwable cause = throwable;
+		while (cause instanceof CompletionException && cause.getCause() != null)
+			cause = cause.getCause();
+		return cause;
+	}
+
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			Throwable cause = unwrap(e);
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw e;
+		}
+	}
+
+	private static final class FuturePublisher<T> implements Publisher<T> {
+
+		private final Supplier<CompletableFuture<? extends Iterable<T>>> source;
+
+		private FuturePublisher(Supplier<CompletableFuture<? extends Iterable<T>>> source) {
+			this.source = source;
+		}
+
+		@Override
+		public void subscribe(Subscriber<? super T> subscriber) {
+			Objects.requireNonNull(subscriber, "subscriber");
+			subscriber.onSubscribe(new FutureSubscription<>(subscriber, source));
+		}
+	}
+
+	private static final class FutureSubscription<T> implements Subscription {
+
+		private final Subscriber<? super T> subscriber;
+		private final Supplier<CompletableFuture<? extends Iterable<T>>> source;
+
+		private Iterator<T> items;
+		private Throwable error;
+		private long requested;
+		private boolean started;
+		private boolean cancelled;
+		private boolean done;
+		private boolean emitting;
+
+		private FutureSubscription(Subscriber<? super T> subscriber,
+				Supplier<CompletableFuture<? extends Iterable<T>>> source) {
+			this.subscriber = subscriber;
+			this.source = source;
+		}
+
+		@Override
+		public void request(long n) {
+			boolean start;
+			synchronized (this) {
+				if (cancelled || done)
+					return;
+				if (n <= 0) {
+					error = new IllegalArgumentException("Request must be positive. Received: " + n);
+				} else {
+					requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+				}
+				start = !started && error == null;
+				started = true;
+			}
+			if (start)
+				subscribeToSource();
+			drain();
+		}
+
+		@Override
+		public synchronized void cancel() {
+			cancelled = true;
+		}
+
+		private void subscribeToSource() {
+			CompletableFuture<? extends Iterable<T>> future;
+			try {
+				future = source.get();
+			} catch (RuntimeException e) {
+				future = failed(e);
+			}
+			future.whenComplete((result, failure) -> {
+				synchronized (this) {
+					if (failure != null)
+						error = unwrap(failure);
+					else
+						items = result == null ? Collections.<T>emptyIterator() : result.iterator();
+				}
+				drain();
+			});
+		}
+
+		private void drain() {
+			synchronized (this) {
+				if (emitting)
+					return;
+				emitting = true;
+			}
+			while (true) {
+				T next = null;
+				Throwable failure = null;
+				boolean complete = false;
+				synchronized (this) {
+					if (cancelled || done) {
+						emitting = false;
+						return;
+					}
+					if (error != null) {
+						done = true;
+						failure = error;
+					} else if (items == null || (items.hasNext() && requested == 0)) {
+						emitting = false;
+						return;
+					} else if (!items.hasNext()) {
+						done = true;
+						complete = true;
+					} else {
+						next = items.next();
+						if (requested != Long.MAX_VALUE)
+							requested--;
+					}
+				}
+				if (failure != null) {
+					subscriber.onError(failure);
+				} else if (complete) {
+					subscriber.onComplete();
+				} else {
+					subscriber.onNext(next);
+					continue;
+				}
+				synchronized (this) {
+					emitting = false;
+				}
+				return;
+			}
+		}
+
+		private static <T> CompletableFuture<T> failed(Throwable throwable) {
+			CompletableFuture<T> future = new CompletableFuture<>();
+			future.completeExceptionally(throwable);
+			return future;
+		}
+	}
+
+}
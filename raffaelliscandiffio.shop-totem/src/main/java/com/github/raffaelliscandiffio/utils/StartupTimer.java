@@ -0,0 +1,49 @@
+package com.github.raffaelliscandiffio.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.LongSupplier;
+
+/**
+ * Collects the timing of the startup phases, which may run on different
+ * threads, for a single line in the log. Points in time are measured from the
+ * start of the JVM.
+ */
+public class StartupTimer {
+
+	private final long originMillis;
+	private final LongSupplier clock;
+	private final List<String> entries = new ArrayList<>();
+
+	public StartupTimer() {
+		this(ManagementFactory.getRuntimeMXBean().getStartTime(), System::currentTimeMillis);
+	}
+
+	StartupTimer(long originMillis, LongSupplier clock) {
+		this.originMillis = originMillis;
+		this.clock = clock;
+	}
+
+	public void mark(String event) {
+		long at = clock.getAsLong() - originMillis;
+		add(event + " at " + at + " ms");
+	}
+
+	public <T> T time(String phase, Callable<T> code) throws Exception {
+		long start = clock.getAsLong();
+		T result = code.call();
+		add(phase + " took " + (clock.getAsLong() - start) + " ms");
+		return result;
+	}
+
+	public synchronized String summary() {
+		return "Startup: " + String.join(", ", entries);
+	}
+
+	private synchronized void add(String entry) {
+		entries.add(entry);
+	}
+
+}
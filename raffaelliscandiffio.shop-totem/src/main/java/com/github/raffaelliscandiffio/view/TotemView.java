@@ -10,9 +10,17 @@ public interface TotemView {
 	void showShopping();
 
 	void showAllProducts(List<Product> allProducts);
+
+	void showFirstProductsPage(List<Product> firstPage, boolean hasMore);
+
+	void showNextProductsPage(List<Product> nextPage, boolean hasMore);
+
+	void nextProductsPageFailed();
 	
 	void showAllOrderItems(List<OrderItem> allOrderItems);
 
+	void showOrderTotal(double total, int lineCount);
+
 	void showWelcome();
 
 	void itemAdded(OrderItem item);
@@ -41,4 +49,8 @@ public interface TotemView {
 	
 	void resetLabels();
 
+	void showAvailability(String productId, int available);
+
+	void productChanged(Product product);
+
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+package com.github.raffaelliscandiffio.view.socket;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The text protocol between a kiosk and its totem session: one message per
+ * line, made of fields separated by tabs. Backslashes, tabs and line breaks
+ * inside a field are escaped with a backslash, so any line client can talk to
+ * a session.
+ */
+public final class TotemProtocol {
+
+	private static final char SEPARATOR = '\t';
+	private static final char ESCAPE = '\\';
+
+	private TotemProtocol() {
+	}
+
+	/**
+	 * A line of the given fields, null fields are empty.
+	 */
+	public static String encode(Object... fields) {
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < fields.length; i++) {
+			if (i > 0)
+				line.append(SEPARATOR);
+			if (fields[i] != null)
+				escape(line, fields[i].toString());
+		}
+		return line.toString();
+	}
+
+	public static List<String> decode(String line) {
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == SEPARATOR) {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else if (c == ESCAPE && i + 1 < line.length()) {
+				char escaped = line.charAt(++i);
+				field.append(escaped == 't' ? '\t' : escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped);
+			} else
+				field.append(c);
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+
+	private static void escape(StringBuilder line, String field) {
+		for (int i = 0; i < field.length(); i++) {
+			char c = field.charAt(i);
+			switch (c) {
+			case ESCAPE:
+				line.append(ESCAPE).append(ESCAPE);
+				break;
+			case SEPARATOR:
+				line.append(ESCAPE).append('t');
+				break;
+			case '\n':
+				line.append(ESCAPE).append('n');
+				break;
+			case '\r':
+				line.append(ESCAPE).append('r');
+				break;
+			default:
+				line.append(c);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,197 @@
+package com.github.raffaelliscandiffio.view.socket;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.github.raffaelliscandiffio.model.OrderItem;
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.view.TotemView;
+
+/**
+ * A totem without a window: every change of the view is sent to a kiosk as a
+ * line of the {@link TotemProtocol}. The view keeps the order and the items
+ * shown, which the kiosk refers to by id. Called by the worker threads of the
+ * service, so the lines must be handed off without blocking.
+ */
+public class TotemSocketView implements TotemView {
+
+	private final Consumer<String> kiosk;
+	private volatile String orderId;
+	// the items shown in the cart by id, guarded by this
+	private final Map<String, OrderItem> items = new LinkedHashMap<>();
+
+	public TotemSocketView(Consumer<String> kiosk) {
+		this.kiosk = kiosk;
+	}
+
+	/**
+	 * The item of the cart with the given id, null if it is not shown.
+	 */
+	public synchronized OrderItem getItem(String itemId) {
+		return items.get(itemId);
+	}
+
+	@Override
+	public void showShopping() {
+		send("SHOPPING");
+	}
+
+	@Override
+	public void showAllProducts(List<Product> allProducts) {
+		sendProducts("all", allProducts, false);
+	}
+
+	@Override
+	public void showFirstProductsPage(List<Product> firstPage, boolean hasMore) {
+		sendProducts("first", firstPage, hasMore);
+	}
+
+	@Override
+	public void showNextProductsPage(List<Product> nextPage, boolean hasMore) {
+		sendProducts("next", nextPage, hasMore);
+	}
+
+	// the kiosk asks for each page, it is told the error and may ask again
+	@Override
+	public void nextProductsPageFailed() {
+	}
+
+	@Override
+	public synchronized void showAllOrderItems(List<OrderItem> allOrderItems) {
+		items.clear();
+		List<Object> fields = new ArrayList<>();
+		fields.add("ITEMS");
+		for (OrderItem item : allOrderItems) {
+			items.put(item.getId(), item);
+			addFields(fields, item);
+		}
+		send(fields.toArray());
+	}
+
+	@Override
+	public void showOrderTotal(double total, int lineCount) {
+		send("TOTAL", total, lineCount);
+	}
+
+	@Override
+	public void showWelcome() {
+		send("WELCOME");
+	}
+
+	@Override
+	public synchronized void itemAdded(OrderItem item) {
+		items.put(item.getId(), item);
+		List<Object> fields = new ArrayList<>();
+		fields.add("ITEM_ADDED");
+		addFields(fields, item);
+		send(fields.toArray());
+	}
+
+	@Override
+	public void showShoppingMessage(String msg) {
+		send("MESSAGE", "shopping", msg);
+	}
+
+	@Override
+	public void showCartMessage(String msg) {
+		send("MESSAGE", "cart", msg);
+	}
+
+	@Override
+	public void showCartErrorMessage(String msg) {
+		send("MESSAGE", "cart-error", msg);
+	}
+
+	@Override
+	public void showShoppingErrorMessage(String msg) {
+		send("MESSAGE", "shopping-error", msg);
+	}
+
+	@Override
+	public synchronized void itemModified(OrderItem old, OrderItem modified) {
+		items.remove(old.getId());
+		items.put(modified.getId(), modified);
+		List<Object> fields = new ArrayList<>();
+		fields.add("ITEM_MODIFIED");
+		fields.add(old.getId());
+		addFields(fields, modified);
+		send(fields.toArray());
+	}
+
+	@Override
+	public synchronized void itemRemoved(OrderItem item) {
+		items.remove(item.getId());
+		send("ITEM_REMOVED", item.getId());
+	}
+
+	@Override
+	public void showGoodbye() {
+		send("GOODBYE");
+	}
+
+	@Override
+	public void showOrder() {
+		send("ORDER");
+	}
+
+	@Override
+	public void setOrderId(String orderId) {
+		this.orderId = orderId;
+		send("ORDER_ID", orderId);
+	}
+
+	@Override
+	public String getOrderId() {
+		return orderId;
+	}
+
+	@Override
+	public synchronized void resetView() {
+		items.clear();
+		send("RESET");
+	}
+
+	@Override
+	public void resetLabels() {
+		send("RESET_LABELS");
+	}
+
+	@Override
+	public void showAvailability(String productId, int available) {
+		send("AVAILABLE", productId, available);
+	}
+
+	@Override
+	public void productChanged(Product product) {
+		send("PRODUCT", product.getId(), product.getName(), product.getPrice());
+	}
+
+	private void sendProducts(String page, List<Product> products, boolean hasMore) {
+		List<Object> fields = new ArrayList<>();
+		fields.add("PRODUCTS");
+		fields.add(page);
+		fields.add(hasMore);
+		for (Product product : products) {
+			fields.add(product.getId());
+			fields.add(product.getName());
+			fields.add(product.getPrice());
+		}
+		send(fields.toArray());
+	}
+
+	private void addFields(List<Object> fields, OrderItem item) {
+		fields.add(item.getId());
+		fields.add(item.getProduct().getId());
+		fields.add(item.getProduct().getName());
+		fields.add(item.getProduct().getPrice());
+		fields.add(item.getQuantity());
+	}
+
+	private void send(Object... fields) {
+		kiosk.accept(TotemProtocol.encode(fields));
+	}
+
+}
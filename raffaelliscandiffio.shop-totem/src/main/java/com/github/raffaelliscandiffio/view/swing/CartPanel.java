@@ -6,6 +6,7 @@ import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
 import java.awt.event.ActionListener;
+import java.util.Locale;
 
 import javax.swing.Box;
 import javax.swing.DefaultListCellRenderer;
@@ -37,6 +38,7 @@ public class CartPanel extends JPanel {
 	private JButton btnCancelShopping;
 	private JButton btnCheckout;
 	private JLabel messageLabel;
+	private JLabel totalLabel;
 	private JLabel lblRemoveSelectedItem;
 	private JButton btnRemoveSelected;
 	private JButton btnReturnQuantity;
@@ -178,6 +180,16 @@ public class CartPanel extends JPanel {
 
 		});
 
+		totalLabel = new JLabel();
+		totalLabel.setName("totalLabel");
+		GridBagConstraints gbc_totalLabel = new GridBagConstraints();
+		gbc_totalLabel.anchor = GridBagConstraints.EAST;
+		gbc_totalLabel.insets = new Insets(0, 0, 5, 0);
+		gbc_totalLabel.gridx = 8;
+		gbc_totalLabel.gridy = 3;
+		add(totalLabel, gbc_totalLabel);
+		showTotal(0, 0);
+
 		btnCheckout = new JButton("Checkout");
 		btnCheckout.setActionCommand("checkout");
 		btnCheckout.setName("checkoutButton");
@@ -250,6 +262,10 @@ public class CartPanel extends JPanel {
 				+ orderItem.getProduct().getPrice() + " € - Subtotal: " + orderItem.getSubTotal() + " €";
 	}
 
+	void showTotal(double total, int lineCount) {
+		totalLabel.setText("Items: " + lineCount + " - Total: " + String.format(Locale.ROOT, "%.2f", total) + " €");
+	}
+
 	private void resetSpinnerForm() {
 		spinner.setValue(1);
 		spinnerTextField.setText("1");
@@ -264,6 +280,10 @@ public class CartPanel extends JPanel {
 		return listOrderItems;
 	}
 
+	JLabel getTotalLabel() {
+		return totalLabel;
+	}
+
 	JLabel getMessageLabel() {
 		return messageLabel;
 	}
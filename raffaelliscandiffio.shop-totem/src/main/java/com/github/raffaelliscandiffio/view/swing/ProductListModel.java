@@ -0,0 +1,143 @@
+package com.github.raffaelliscandiffio.view.swing;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.swing.DefaultListModel;
+
+import com.github.raffaelliscandiffio.model.Product;
+
+/**
+ * List model of the catalog that holds only the pages read so far and asks for
+ * the next page, after the id of its last product, when the list is scrolled
+ * close to its end. The changes of the catalog pushed meanwhile update the
+ * rows in place, found by the id of their product: the row of each product is
+ * kept up to date as the list changes, so a change does not scan the list on
+ * the event dispatch thread.
+ */
+class ProductListModel extends DefaultListModel<Product> {
+
+	private static final long serialVersionUID = 1L;
+
+	static final int PREFETCH_DISTANCE = 10;
+
+	private transient Consumer<String> nextPageRequester = afterId -> {
+	};
+	private boolean hasMore;
+	private boolean loading;
+	// the quantity available of each product, kept across the pages
+	private final Map<String, Integer> available = new HashMap<>();
+	// the row of each product shown
+	private final Map<String, Integer> rows = new HashMap<>();
+
+	void setNextPageRequester(Consumer<String> nextPageRequester) {
+		this.nextPageRequester = nextPageRequester;
+	}
+
+	void showFirstPage(List<Product> firstPage, boolean hasMore) {
+		removeAllElements();
+		appendPage(firstPage, hasMore);
+	}
+
+	void appendPage(List<Product> page, boolean hasMore) {
+		page.forEach(this::addElement);
+		this.hasMore = hasMore;
+		this.loading = false;
+	}
+
+	// the page is asked for again on the next scroll
+	void pageFailed() {
+		loading = false;
+	}
+
+	void requestNextPageIfNeeded(int lastVisibleIndex) {
+		if (!hasMore || loading || isEmpty() || lastVisibleIndex < getSize() - PREFETCH_DISTANCE)
+			return;
+		loading = true;
+		nextPageRequester.accept(lastElement().getId());
+	}
+
+	void setAvailable(String productId, int quantity) {
+		available.put(productId, quantity);
+		int index = indexOfProduct(productId);
+		if (index != -1)
+			fireContentsChanged(this, index, index);
+	}
+
+	/**
+	 * The quantity available of the product, null if it is not known.
+	 */
+	Integer getAvailable(String productId) {
+		return available.get(productId);
+	}
+
+	// a product not shown is read with its page
+	void replaceProduct(Product product) {
+		int index = indexOfProduct(product.getId());
+		if (index != -1)
+			setElementAt(product, index);
+	}
+
+	// a product replaced by another keeps its old row until the list starts over
+	private int indexOfProduct(String productId) {
+		Integer row = rows.get(productId);
+		return row != null && getElementAt(row).getId().equals(productId) ? row : -1;
+	}
+
+	// a list shown again reads the quantities of its products again
+	@Override
+	public void removeAllElements() {
+		super.removeAllElements();
+		available.clear();
+		hasMore = false;
+		loading = false;
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		available.clear();
+	}
+
+	// Every change of the list is notified, so the rows are indexed there: the
+	// rows added and those after them, the rows replaced, and all of them again
+	// after a removal, which the paged list only does to start over.
+	@Override
+	protected void fireIntervalAdded(Object source, int index0, int index1) {
+		indexRows(index0, getSize() - 1);
+		super.fireIntervalAdded(source, index0, index1);
+	}
+
+	@Override
+	protected void fireContentsChanged(Object source, int index0, int index1) {
+		if (index0 >= 0)
+			indexRows(index0, index1);
+		super.fireContentsChanged(source, index0, index1);
+	}
+
+	@Override
+	protected void fireIntervalRemoved(Object source, int index0, int index1) {
+		rows.clear();
+		indexRows(0, getSize() - 1);
+		super.fireIntervalRemoved(source, index0, index1);
+	}
+
+	private void indexRows(int from, int to) {
+		for (int i = from; i <= to; i++) {
+			Product product = getElementAt(i);
+			if (product != null)
+				rows.put(product.getId(), i);
+		}
+	}
+
+	boolean hasMore() {
+		return hasMore;
+	}
+
+	boolean isLoading() {
+		return loading;
+	}
+
+}
@@ -6,9 +6,10 @@ import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
 import java.awt.event.ActionListener;
+import java.util.List;
+import java.util.function.Consumer;
 
 import javax.swing.DefaultListCellRenderer;
-import javax.swing.DefaultListModel;
 import javax.swing.JButton;
 import javax.swing.JComponent;
 import javax.swing.JFormattedTextField;
@@ -17,20 +18,33 @@ import javax.swing.JList;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSpinner;
+import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
 import javax.swing.SpinnerModel;
 import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
 
 import com.github.raffaelliscandiffio.model.Product;
 
 public class ShoppingPanel extends JPanel {
 
 	private static final long serialVersionUID = 1L;
+	static final int SEARCH_DELAY_MILLIS = 300;
+
 	private JButton btnCancelButton;
+	private JTextField searchField;
+	private Timer searchTimer;
+	private transient Consumer<String> searchRequester = query -> {
+	};
 
 	private JList<Product> listProducts;
-	private DefaultListModel<Product> listProductsModel;
+	private ProductListModel listProductsModel;
 	private JButton btnAddButton;
 	private JLabel lblQuantity;
 	private JScrollPane scrollPane;
@@ -61,6 +75,38 @@ public class ShoppingPanel extends JPanel {
 		gbc_btnCancelButton.gridy = 0;
 		add(btnCancelButton, gbc_btnCancelButton);
 
+		searchField = new JTextField();
+		searchField.setName("searchField");
+		searchField.setToolTipText("Search products");
+		GridBagConstraints gbc_searchField = new GridBagConstraints();
+		gbc_searchField.insets = new Insets(0, 0, 5, 5);
+		gbc_searchField.gridwidth = 7;
+		gbc_searchField.fill = GridBagConstraints.HORIZONTAL;
+		gbc_searchField.gridx = 1;
+		gbc_searchField.gridy = 0;
+		add(searchField, gbc_searchField);
+
+		// only the last keystroke of a burst starts a search, the search itself
+		// runs on the controller side
+		searchTimer = new Timer(SEARCH_DELAY_MILLIS, e -> searchRequester.accept(searchField.getText()));
+		searchTimer.setRepeats(false);
+		searchField.getDocument().addDocumentListener(new DocumentListener() {
+			@Override
+			public void insertUpdate(DocumentEvent e) {
+				searchTimer.restart();
+			}
+
+			@Override
+			public void removeUpdate(DocumentEvent e) {
+				searchTimer.restart();
+			}
+
+			@Override
+			public void changedUpdate(DocumentEvent e) {
+				searchTimer.restart();
+			}
+		});
+
 		btnCart = new JButton("Cart");
 		btnCart.setName("cartButton");
 		btnCart.setActionCommand("openCart");
@@ -80,12 +126,31 @@ public class ShoppingPanel extends JPanel {
 		gbc_scrollPane.gridy = 1;
 		add(scrollPane, gbc_scrollPane);
 
-		listProductsModel = new DefaultListModel<>();
+		listProductsModel = new ProductListModel();
 		listProducts = new JList<>(listProductsModel);
 		listProducts.addListSelectionListener(e -> {
 			btnAddButton.setEnabled(listProducts.getSelectedIndex() != -1);
 			quantitySpinner.setEnabled(listProducts.getSelectedIndex() != -1);
 			lblMessage.setText(" ");
+			limitQuantityToAvailable();
+		});
+		listProductsModel.addListDataListener(new ListDataListener() {
+			@Override
+			public void contentsChanged(ListDataEvent e) {
+				int selected = listProducts.getSelectedIndex();
+				if (selected >= e.getIndex0() && selected <= e.getIndex1())
+					limitQuantityToAvailable();
+			}
+
+			@Override
+			public void intervalAdded(ListDataEvent e) {
+				// a new row is never selected
+			}
+
+			@Override
+			public void intervalRemoved(ListDataEvent e) {
+				// the selection listener follows the removal
+			}
 		});
 
 		listProducts.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
@@ -102,6 +167,8 @@ public class ShoppingPanel extends JPanel {
 			}
 		});
 		scrollPane.setViewportView(listProducts);
+		scrollPane.getViewport()
+				.addChangeListener(e -> listProductsModel.requestNextPageIfNeeded(listProducts.getLastVisibleIndex()));
 
 		lblQuantity = new JLabel("Quantity:");
 		GridBagConstraints gbc_lblQuantity = new GridBagConstraints();
@@ -128,10 +195,10 @@ public class ShoppingPanel extends JPanel {
 		tf = ((JSpinner.DefaultEditor) editor).getTextField();
 		tf.setColumns(4);
 		tf.addCaretListener(e -> {
-			boolean isValueValid = tf.getText().matches("^[1-9]\\d*");
-			btnAddButton.setEnabled(isValueValid && listProducts.getSelectedIndex() != -1);
-			if (!isValueValid) {
-				lblMessage.setText("Invalid quantity");
+			String quantityError = getQuantityError();
+			btnAddButton.setEnabled(quantityError == null && listProducts.getSelectedIndex() != -1);
+			if (quantityError != null) {
+				lblMessage.setText(quantityError);
 				lblMessage.setForeground(Color.RED);
 			} else {
 				lblMessage.setText(" ");
@@ -162,7 +229,45 @@ public class ShoppingPanel extends JPanel {
 	}
 
 	private String getDisplayRow(Product product) {
-		return product.getName() + " - Price: " + product.getPrice() + " €";
+		String row = product.getName() + " - Price: " + product.getPrice() + " €";
+		Integer available = listProductsModel.getAvailable(product.getId());
+		if (available != null)
+			row += available == 0 ? " - Sold out" : " - " + available + " left";
+		return row;
+	}
+
+	// the quantity is capped at the stock last known of the selected product, and
+	// a product sold out cannot be added; nothing is capped while it is unknown
+	private void limitQuantityToAvailable() {
+		Integer available = getSelectedAvailable();
+		SpinnerNumberModel quantityModel = (SpinnerNumberModel) quantitySpinner.getModel();
+		quantityModel.setMaximum(available != null && available > 0 ? available : null);
+		if (available == null)
+			return;
+		if (available > 0 && (Integer) quantityModel.getValue() > available)
+			quantityModel.setValue(available);
+		quantitySpinner.setEnabled(available > 0);
+		btnAddButton.setEnabled(getQuantityError() == null);
+	}
+
+	private String getQuantityError() {
+		String quantity = tf.getText();
+		if (!quantity.matches("^[1-9]\\d*"))
+			return "Invalid quantity";
+		Integer available = getSelectedAvailable();
+		if (available == null)
+			return null;
+		if (available == 0)
+			return "Sold out";
+		// too many digits for an int are more than any stock
+		if (quantity.length() > 9 || Integer.parseInt(quantity) > available)
+			return "Only " + available + " available";
+		return null;
+	}
+
+	private Integer getSelectedAvailable() {
+		Product selected = listProducts.getSelectedValue();
+		return selected != null ? listProductsModel.getAvailable(selected.getId()) : null;
 	}
 
 	void addActionListener(ActionListener listener) {
@@ -170,10 +275,39 @@ public class ShoppingPanel extends JPanel {
 		btnCart.addActionListener(listener);
 	}
 
-	DefaultListModel<Product> getListProductsModel() {
+	// runs on the event dispatch thread; the check after the page is added covers
+	// pages too short to fill the viewport, which never scroll
+	void showProductsPage(List<Product> page, boolean firstPage, boolean hasMore) {
+		if (firstPage)
+			listProductsModel.showFirstPage(page, hasMore);
+		else
+			listProductsModel.appendPage(page, hasMore);
+		SwingUtilities.invokeLater(
+				() -> listProductsModel.requestNextPageIfNeeded(listProducts.getLastVisibleIndex()));
+	}
+
+	void setNextPageRequester(Consumer<String> nextPageRequester) {
+		listProductsModel.setNextPageRequester(nextPageRequester);
+	}
+
+	void setSearchRequester(Consumer<String> searchRequester) {
+		this.searchRequester = searchRequester;
+	}
+
+	// clears the query without starting a search
+	void clearSearch() {
+		searchField.setText("");
+		searchTimer.stop();
+	}
+
+	ProductListModel getListProductsModel() {
 		return listProductsModel;
 	}
 
+	JTextField getSearchField() {
+		return searchField;
+	}
+
 	JList<Product> getListProducts() {
 		return listProducts;
 	}
@@ -34,6 +34,18 @@ public class TotemSwingView extends JFrame implements TotemView {
 		this.totemController = totemController;
 	}
 
+	/**
+	 * Let the customer start shopping, once the application has connected to the
+	 * database.
+	 */
+	public void setStartShoppingEnabled(boolean enabled) {
+		welcomePane.setStartShoppingEnabled(enabled);
+	}
+
+	public void showStartupError(String msg) {
+		welcomePane.showErrorMessage(msg);
+	}
+
 	public TotemSwingView() {
 		setResizable(false);
 		setTitle("Totem");
@@ -98,6 +110,9 @@ public class TotemSwingView extends JFrame implements TotemView {
 		});
 
 		goodbyePane.addActionListener(e -> startShoppingAction());
+
+		shoppingPane.setNextPageRequester(afterId -> this.totemController.loadMoreProducts(afterId));
+		shoppingPane.setSearchRequester(query -> this.totemController.searchProducts(query));
 	}
 
 	private void returnProductAction() {
@@ -168,6 +183,21 @@ public class TotemSwingView extends JFrame implements TotemView {
 		});
 	}
 
+	@Override
+	public void showFirstProductsPage(List<Product> firstPage, boolean hasMore) {
+		SwingUtilities.invokeLater(() -> getShoppingPane().showProductsPage(firstPage, true, hasMore));
+	}
+
+	@Override
+	public void showNextProductsPage(List<Product> nextPage, boolean hasMore) {
+		SwingUtilities.invokeLater(() -> getShoppingPane().showProductsPage(nextPage, false, hasMore));
+	}
+
+	@Override
+	public void nextProductsPageFailed() {
+		SwingUtilities.invokeLater(() -> getShoppingPane().getListProductsModel().pageFailed());
+	}
+
 	@Override
 	public void showShopping() {
 		changePane("shopping");
@@ -189,7 +219,10 @@ public class TotemSwingView extends JFrame implements TotemView {
 	}
 
 	private void changePane(String pane) {
-		this.layout.show(getContentPane(), pane);
+		if (SwingUtilities.isEventDispatchThread())
+			this.layout.show(getContentPane(), pane);
+		else
+			SwingUtilities.invokeLater(() -> this.layout.show(getContentPane(), pane));
 	}
 
 	@Override
@@ -210,6 +243,11 @@ public class TotemSwingView extends JFrame implements TotemView {
 		SwingUtilities.invokeLater(() -> getCartPane().getListOrderItemsModel().removeElement(item));
 	}
 
+	@Override
+	public void showOrderTotal(double total, int lineCount) {
+		SwingUtilities.invokeLater(() -> getCartPane().showTotal(total, lineCount));
+	}
+
 	@Override
 	public void showShoppingMessage(String msg) {
 		SwingUtilities.invokeLater(() -> setMessageWithColor(getShoppingLabel(), msg, Color.BLACK));
@@ -262,8 +300,10 @@ public class TotemSwingView extends JFrame implements TotemView {
 	@Override
 	public void resetView() {
 		SwingUtilities.invokeLater(() -> {
+			getShoppingPane().clearSearch();
 			getShoppingPane().getListProductsModel().removeAllElements();
 			getCartPane().getListOrderItemsModel().removeAllElements();
+			getCartPane().showTotal(0, 0);
 		});
 	}
 
@@ -275,6 +315,16 @@ public class TotemSwingView extends JFrame implements TotemView {
 		});
 	}
 
+	@Override
+	public void showAvailability(String productId, int available) {
+		SwingUtilities.invokeLater(() -> getShoppingPane().getListProductsModel().setAvailable(productId, available));
+	}
+
+	@Override
+	public void productChanged(Product product) {
+		SwingUtilities.invokeLater(() -> getShoppingPane().getListProductsModel().replaceProduct(product));
+	}
+
 	@Override
 	public void showAllOrderItems(List<OrderItem> allOrderItems) {
 		SwingUtilities.invokeLater(() -> {
@@ -1,10 +1,13 @@
 package com.github.raffaelliscandiffio.view.swing;
 
+import java.awt.Color;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
+import java.awt.Insets;
 import java.awt.event.ActionListener;
 
 import javax.swing.JButton;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.border.EmptyBorder;
 
@@ -13,13 +16,14 @@ public class WelcomePanel extends JPanel {
 	private static final long serialVersionUID = 1L;
 
 	private JButton btnStartShopping;
+	private JLabel lblMessage;
 
 	public WelcomePanel() {
 
 		this.setBorder(new EmptyBorder(5, 5, 5, 5));
 		GridBagLayout gbl_contentPane = new GridBagLayout();
 		gbl_contentPane.columnWeights = new double[] { 0.0, Double.MIN_VALUE };
-		gbl_contentPane.rowWeights = new double[] { 0.0, Double.MIN_VALUE };
+		gbl_contentPane.rowWeights = new double[] { 0.0, 0.0, Double.MIN_VALUE };
 		this.setLayout(gbl_contentPane);
 
 		btnStartShopping = new JButton("Start shopping");
@@ -30,10 +34,27 @@ public class WelcomePanel extends JPanel {
 		gbc_btnStartShopping.gridx = 0;
 		gbc_btnStartShopping.gridy = 0;
 		this.add(btnStartShopping, gbc_btnStartShopping);
+
+		lblMessage = new JLabel(" ");
+		lblMessage.setName("welcomeMessage");
+		lblMessage.setForeground(Color.RED);
+		GridBagConstraints gbc_lblMessage = new GridBagConstraints();
+		gbc_lblMessage.insets = new Insets(5, 0, 0, 0);
+		gbc_lblMessage.gridx = 0;
+		gbc_lblMessage.gridy = 1;
+		this.add(lblMessage, gbc_lblMessage);
 	}
 
 	public void addActionListener(ActionListener listener) {
 		btnStartShopping.addActionListener(listener);
 	}
 
+	public void setStartShoppingEnabled(boolean enabled) {
+		btnStartShopping.setEnabled(enabled);
+	}
+
+	public void showErrorMessage(String msg) {
+		lblMessage.setText(msg);
+	}
+
 }
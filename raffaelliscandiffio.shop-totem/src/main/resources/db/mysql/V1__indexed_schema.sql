@@ -0,0 +1,50 @@
+-- Replaces the tables created by the Hibernate schema update. The application
+-- resets the data at every launch, so nothing is migrated.
+DROP TABLE IF EXISTS ORDER_ITEMS;
+DROP TABLE IF EXISTS STOCKS;
+DROP TABLE IF EXISTS ORDERS;
+DROP TABLE IF EXISTS PRODUCTS;
+
+CREATE TABLE PRODUCTS (
+	id varchar(36) NOT NULL,
+	name varchar(255),
+	price double precision,
+	PRIMARY KEY (id)
+) ENGINE=InnoDB;
+
+-- stock lookups filter by product and sort the shards
+CREATE TABLE STOCKS (
+	id varchar(36) NOT NULL,
+	version bigint NOT NULL,
+	quantity integer NOT NULL,
+	product_id varchar(36) NOT NULL,
+	shard integer NOT NULL,
+	PRIMARY KEY (id),
+	CONSTRAINT UK_STOCKS_PRODUCT_SHARD UNIQUE (product_id, shard),
+	CONSTRAINT FK_STOCKS_PRODUCT FOREIGN KEY (product_id) REFERENCES PRODUCTS (id)
+) ENGINE=InnoDB;
+
+CREATE TABLE ORDERS (
+	id varchar(36) NOT NULL,
+	version bigint NOT NULL,
+	status varchar(16) NOT NULL,
+	total double precision NOT NULL,
+	line_count integer NOT NULL,
+	PRIMARY KEY (id),
+	INDEX IDX_ORDERS_STATUS (status)
+) ENGINE=InnoDB;
+
+-- the cart holds one line per product: the unique key serves the cart lookups,
+-- the sales index covers the reports
+CREATE TABLE ORDER_ITEMS (
+	id varchar(36) NOT NULL,
+	version bigint NOT NULL,
+	order_id varchar(36) NOT NULL,
+	product varchar(36) NOT NULL,
+	quantity integer NOT NULL,
+	PRIMARY KEY (id),
+	CONSTRAINT UK_ORDER_ITEMS_ORDER_PRODUCT UNIQUE (order_id, product),
+	INDEX IDX_ORDER_ITEMS_SALES (order_id, product, quantity),
+	CONSTRAINT FK_ORDER_ITEMS_ORDER FOREIGN KEY (order_id) REFERENCES ORDERS (id),
+	CONSTRAINT FK_ORDER_ITEMS_PRODUCT FOREIGN KEY (product) REFERENCES PRODUCTS (id)
+) ENGINE=InnoDB;
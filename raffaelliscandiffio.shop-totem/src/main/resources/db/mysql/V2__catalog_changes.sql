@@ -0,0 +1,36 @@
+-- Every write of a product or of its stock appends the product to
+-- CATALOG_CHANGES, read by the totems to update their catalog without reloading
+-- it. The sequence number counts the changes: a totem reads the ones after the
+-- last it has seen. A row holds no lock another writer waits for, so the
+-- shards of a product are still written concurrently.
+DROP TABLE IF EXISTS CATALOG_CHANGES;
+
+-- kind is P for a product, S for a stock shard
+CREATE TABLE CATALOG_CHANGES (
+	seq bigint NOT NULL AUTO_INCREMENT,
+	product_id varchar(36) NOT NULL,
+	kind char(1) NOT NULL,
+	changed_at timestamp(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+	PRIMARY KEY (seq),
+	INDEX IDX_CATALOG_CHANGES_CHANGED_AT (changed_at)
+) ENGINE=InnoDB;
+
+DROP TRIGGER IF EXISTS TRG_PRODUCTS_INSERT;
+CREATE TRIGGER TRG_PRODUCTS_INSERT AFTER INSERT ON PRODUCTS FOR EACH ROW
+	INSERT INTO CATALOG_CHANGES (product_id, kind) VALUES (NEW.id, 'P');
+
+DROP TRIGGER IF EXISTS TRG_PRODUCTS_UPDATE;
+CREATE TRIGGER TRG_PRODUCTS_UPDATE AFTER UPDATE ON PRODUCTS FOR EACH ROW
+	INSERT INTO CATALOG_CHANGES (product_id, kind) VALUES (NEW.id, 'P');
+
+DROP TRIGGER IF EXISTS TRG_STOCKS_INSERT;
+CREATE TRIGGER TRG_STOCKS_INSERT AFTER INSERT ON STOCKS FOR EACH ROW
+	INSERT INTO CATALOG_CHANGES (product_id, kind) VALUES (NEW.product_id, 'S');
+
+DROP TRIGGER IF EXISTS TRG_STOCKS_UPDATE;
+CREATE TRIGGER TRG_STOCKS_UPDATE AFTER UPDATE ON STOCKS FOR EACH ROW
+	INSERT INTO CATALOG_CHANGES (product_id, kind) VALUES (NEW.product_id, 'S');
+
+DROP TRIGGER IF EXISTS TRG_STOCKS_DELETE;
+CREATE TRIGGER TRG_STOCKS_DELETE AFTER DELETE ON STOCKS FOR EACH ROW
+	INSERT INTO CATALOG_CHANGES (product_id, kind) VALUES (OLD.product_id, 'S');
@@ -0,0 +1,46 @@
+-- The closed orders older than the retention window are moved with their items
+-- to the archive tables, so that ORDERS and ORDER_ITEMS, and their indexes,
+-- only grow with the open carts and the recent sales. The database stamps the
+-- time an order is closed; the archiver finds the oldest on the index.
+-- Each ALTER commits on its own, so both are skipped when a failed run already
+-- applied them.
+--? SELECT COUNT(*) FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'ORDERS' AND COLUMN_NAME = 'closed_at'
+ALTER TABLE ORDERS ADD COLUMN closed_at timestamp(3) NULL;
+
+--? SELECT COUNT(*) FROM information_schema.STATISTICS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'ORDERS' AND INDEX_NAME = 'IDX_ORDERS_CLOSED'
+ALTER TABLE ORDERS ADD INDEX IDX_ORDERS_CLOSED (status, closed_at);
+
+DROP TRIGGER IF EXISTS TRG_ORDERS_INSERT;
+CREATE TRIGGER TRG_ORDERS_INSERT BEFORE INSERT ON ORDERS FOR EACH ROW
+	SET NEW.closed_at = IF(NEW.status = 'CLOSED', CURRENT_TIMESTAMP(3), NULL);
+
+DROP TRIGGER IF EXISTS TRG_ORDERS_UPDATE;
+CREATE TRIGGER TRG_ORDERS_UPDATE BEFORE UPDATE ON ORDERS FOR EACH ROW
+	SET NEW.closed_at = IF(NEW.status = 'CLOSED' AND OLD.status <> 'CLOSED', CURRENT_TIMESTAMP(3), OLD.closed_at);
+
+DROP TABLE IF EXISTS ORDER_ITEMS_ARCHIVE;
+DROP TABLE IF EXISTS ORDERS_ARCHIVE;
+
+CREATE TABLE ORDERS_ARCHIVE (
+	id varchar(36) NOT NULL,
+	status varchar(16) NOT NULL,
+	total double precision NOT NULL,
+	line_count integer NOT NULL,
+	closed_at timestamp(3) NOT NULL,
+	archived_at timestamp(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+	PRIMARY KEY (id),
+	INDEX IDX_ORDERS_ARCHIVE_CLOSED_AT (closed_at)
+) ENGINE=InnoDB;
+
+-- the sales index covers the reports, which add the archived items to those of
+-- the closed orders still in ORDER_ITEMS; the history keeps no key to the
+-- products, which are reset with the catalog
+CREATE TABLE ORDER_ITEMS_ARCHIVE (
+	id varchar(36) NOT NULL,
+	order_id varchar(36) NOT NULL,
+	product varchar(36) NOT NULL,
+	quantity integer NOT NULL,
+	PRIMARY KEY (id),
+	INDEX IDX_ORDER_ITEMS_ARCHIVE_SALES (product, quantity),
+	CONSTRAINT FK_ORDER_ITEMS_ARCHIVE_ORDER FOREIGN KEY (order_id) REFERENCES ORDERS_ARCHIVE (id)
+) ENGINE=InnoDB;
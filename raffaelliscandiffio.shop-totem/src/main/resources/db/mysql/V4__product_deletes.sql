@@ -0,0 +1,5 @@
+-- A product deleted is appended to CATALOG_CHANGES too, so that the totems
+-- drop it from their search index; reading it back finds no row.
+DROP TRIGGER IF EXISTS TRG_PRODUCTS_DELETE;
+CREATE TRIGGER TRG_PRODUCTS_DELETE AFTER DELETE ON PRODUCTS FOR EACH ROW
+	INSERT INTO CATALOG_CHANGES (product_id, kind) VALUES (OLD.id, 'P');
@@ -0,0 +1,55 @@
+package com.github.raffaelliscandiffio.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Test the availability snapshot")
+class AvailabilitySnapshotTest {
+
+	private static final String PRODUCT_ID = "1";
+	private static final long MAX_STALENESS_MILLIS = 1000;
+
+	private long now;
+	private AvailabilitySnapshot snapshot;
+
+	@BeforeEach
+	void setup() {
+		snapshot = new AvailabilitySnapshot(MAX_STALENESS_MILLIS, () -> now);
+	}
+
+	@Test
+	@DisplayName("A quantity should be trusted only within the staleness bound")
+	void testQuantityShouldBeTrustedOnlyWithinTheStalenessBound() {
+		assertThat(snapshot.getFresh(PRODUCT_ID)).isNull();
+		snapshot.put(PRODUCT_ID, 5);
+		now += MAX_STALENESS_MILLIS;
+		assertThat(snapshot.getFresh(PRODUCT_ID)).isEqualTo(5);
+		now++;
+		assertThat(snapshot.getFresh(PRODUCT_ID)).isNull();
+	}
+
+	@Test
+	@DisplayName("An adjustment should keep the time of the read and never go below zero")
+	void testAdjustmentShouldKeepTheTimeOfTheRead() {
+		assertThat(snapshot.adjust(PRODUCT_ID, -1)).isNull();
+		snapshot.put(PRODUCT_ID, 5);
+		now += MAX_STALENESS_MILLIS;
+
+		assertThat(snapshot.adjust(PRODUCT_ID, -7)).isZero();
+		assertThat(snapshot.adjust(PRODUCT_ID, 2)).isEqualTo(2);
+		now++;
+		assertThat(snapshot.getFresh(PRODUCT_ID)).isNull();
+	}
+
+	@Test
+	@DisplayName("The staleness bound should be positive")
+	void testStalenessBoundShouldBePositive() {
+		assertThatThrownBy(() -> new AvailabilitySnapshot(0)).isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Max staleness must be positive. Received: 0");
+	}
+
+}
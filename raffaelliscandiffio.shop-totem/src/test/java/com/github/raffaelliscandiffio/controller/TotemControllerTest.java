@@ -1,17 +1,26 @@
 package com.github.raffaelliscandiffio.controller;
 
+import static com.github.raffaelliscandiffio.controller.TotemController.PRODUCTS_PAGE_SIZE;
+import static com.github.raffaelliscandiffio.controller.TotemController.SEARCH_RESULTS_LIMIT;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -19,7 +28,6 @@ import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InOrder;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -29,13 +37,14 @@ import com.github.raffaelliscandiffio.model.Order;
 import com.github.raffaelliscandiffio.model.OrderItem;
 import com.github.raffaelliscandiffio.model.OrderStatus;
 import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.service.AsyncShoppingService;
 import com.github.raffaelliscandiffio.service.ShoppingService;
+import com.github.raffaelliscandiffio.service.StockAvailability;
 import com.github.raffaelliscandiffio.view.TotemView;
 
 @ExtendWith(MockitoExtension.class)
 class TotemControllerTest {
 
-	@InjectMocks
 	private TotemController totemController;
 
 	@Mock
@@ -44,6 +53,11 @@ class TotemControllerTest {
 	@Mock
 	private TotemView totemView;
 
+	@BeforeEach
+	void setupController() {
+		totemController = new TotemController(shoppingService, totemView);
+	}
+
 	@Nested
 	@DisplayName("Test 'startShopping' method")
 	class startShoppingTests {
@@ -59,7 +73,7 @@ class TotemControllerTest {
 			returnedOrder.setId(idReturned);
 
 			when(shoppingService.openNewOrder()).thenReturn(returnedOrder);
-			when(shoppingService.getAllProducts()).thenReturn(productList);
+			when(shoppingService.getProductsPage(null, PRODUCTS_PAGE_SIZE)).thenReturn(productList);
 
 			totemController.startShopping();
 
@@ -69,7 +83,7 @@ class TotemControllerTest {
 			inOrder.verify(totemView, times(1)).resetLabels();
 			inOrder.verify(totemView, times(1)).setOrderId(idReturned);
 			inOrder.verify(totemView, times(1)).showShopping();
-			inOrder.verify(totemView, times(1)).showAllProducts(productList);
+			inOrder.verify(totemView, times(1)).showFirstProductsPage(productList, false);
 		}
 
 		@Test
@@ -87,6 +101,9 @@ class TotemControllerTest {
 			inOrder.verify(totemView, times(1)).showShopping();
 			inOrder.verify(totemView, times(1)).showShoppingErrorMessage(errorMessage);
 
+			// products are loaded concurrently with the order
+			verify(shoppingService).openNewOrder();
+			verify(shoppingService).getProductsPage(null, PRODUCTS_PAGE_SIZE);
 			verifyNoMoreInteractions(shoppingService, totemView);
 		}
 
@@ -96,7 +113,8 @@ class TotemControllerTest {
 
 			String errorMessage = "Error message";
 
-			doThrow(new TransactionException(errorMessage)).when(shoppingService).getAllProducts();
+			doThrow(new TransactionException(errorMessage)).when(shoppingService).getProductsPage(null,
+					PRODUCTS_PAGE_SIZE);
 
 			totemController.startShopping();
 
@@ -119,12 +137,12 @@ class TotemControllerTest {
 
 			List<Product> productList = Arrays.asList(new Product("Pasta", 3));
 			InOrder inOrder = Mockito.inOrder(totemView);
-			when(shoppingService.getAllProducts()).thenReturn(productList);
+			when(shoppingService.getProductsPage(null, PRODUCTS_PAGE_SIZE)).thenReturn(productList);
 
 			totemController.openShopping();
 
 			inOrder.verify(totemView, times(1)).showShopping();
-			inOrder.verify(totemView, times(1)).showAllProducts(productList);
+			inOrder.verify(totemView, times(1)).showFirstProductsPage(productList, false);
 		}
 
 		@Test
@@ -133,7 +151,8 @@ class TotemControllerTest {
 
 			String errorMessage = "Error message";
 
-			doThrow(new TransactionException(errorMessage)).when(shoppingService).getAllProducts();
+			doThrow(new TransactionException(errorMessage)).when(shoppingService).getProductsPage(null,
+					PRODUCTS_PAGE_SIZE);
 
 			totemController.openShopping();
 
@@ -145,6 +164,93 @@ class TotemControllerTest {
 		}
 	}
 
+	@Nested
+	@DisplayName("Test 'loadMoreProducts' method")
+	class LoadMoreProductsTests {
+
+		private static final String LAST_PRODUCT_ID = "last_product_id";
+
+		@Test
+		@DisplayName("Should get the page after the given id and append it to view, with more pages when it is full")
+		void testLoadMoreProductsWhenPageIsFull() {
+			List<Product> fullPage = Collections.nCopies(PRODUCTS_PAGE_SIZE, new Product("Pasta", 3));
+			when(shoppingService.getProductsPage(LAST_PRODUCT_ID, PRODUCTS_PAGE_SIZE)).thenReturn(fullPage);
+
+			totemController.loadMoreProducts(LAST_PRODUCT_ID);
+
+			verify(totemView).showNextProductsPage(fullPage, true);
+			verifyNoMoreInteractions(totemView);
+		}
+
+		@Test
+		@DisplayName("Should append the last page to view without more pages when it is not full")
+		void testLoadMoreProductsWhenPageIsNotFull() {
+			List<Product> lastPage = Arrays.asList(new Product("Pasta", 3));
+			when(shoppingService.getProductsPage(LAST_PRODUCT_ID, PRODUCTS_PAGE_SIZE)).thenReturn(lastPage);
+
+			totemController.loadMoreProducts(LAST_PRODUCT_ID);
+
+			verify(totemView).showNextProductsPage(lastPage, false);
+			verifyNoMoreInteractions(totemView);
+		}
+
+		@Test
+		@DisplayName("Should tell the view the page failed and show an error message when getProductsPage throws")
+		void testLoadMoreProductsWhenGetProductsPageThrows() {
+			String errorMessage = "Error message";
+			doThrow(new TransactionException(errorMessage)).when(shoppingService).getProductsPage(LAST_PRODUCT_ID,
+					PRODUCTS_PAGE_SIZE);
+
+			totemController.loadMoreProducts(LAST_PRODUCT_ID);
+
+			verify(totemView).nextProductsPageFailed();
+			verify(totemView).showShoppingErrorMessage(errorMessage);
+			verifyNoMoreInteractions(totemView);
+		}
+	}
+
+	@Nested
+	@DisplayName("Test 'searchProducts' method")
+	class SearchProductsTests {
+
+		@Test
+		@DisplayName("Should show the search results as a single page")
+		void testSearchProductsShouldShowResultsWithoutMorePages() {
+			List<Product> results = Arrays.asList(new Product("Pasta", 3));
+			when(shoppingService.searchProducts("pas", SEARCH_RESULTS_LIMIT)).thenReturn(results);
+
+			totemController.searchProducts("pas");
+
+			verify(totemView).showFirstProductsPage(results, false);
+			verifyNoMoreInteractions(totemView);
+		}
+
+		@Test
+		@DisplayName("Should go back to the first page of the catalog when the query is blank")
+		void testSearchProductsWhenQueryIsBlankShouldShowFirstPage() {
+			List<Product> firstPage = Arrays.asList(new Product("Pasta", 3));
+			when(shoppingService.getProductsPage(null, PRODUCTS_PAGE_SIZE)).thenReturn(firstPage);
+
+			totemController.searchProducts("  ");
+
+			verify(totemView).showFirstProductsPage(firstPage, false);
+			verify(shoppingService, times(0)).searchProducts(anyString(), anyInt());
+		}
+
+		@Test
+		@DisplayName("Should show an error message when searchProducts throws")
+		void testSearchProductsWhenServiceThrows() {
+			String errorMessage = "Error message";
+			doThrow(new TransactionException(errorMessage)).when(shoppingService).searchProducts("pas",
+					SEARCH_RESULTS_LIMIT);
+
+			totemController.searchProducts("pas");
+
+			verify(totemView).showShoppingErrorMessage(errorMessage);
+			verifyNoMoreInteractions(totemView);
+		}
+	}
+
 	@Nested
 	@DisplayName("Test closing tests")
 	class closingTests {
@@ -210,6 +316,20 @@ class TotemControllerTest {
 			verifyNoMoreInteractions(shoppingService, totemView);
 
 		}
+
+		@Test
+		@DisplayName("'checkout' should set a generic error on view when closeOrder fails unexpectedly")
+		void testCheckoutShouldSetAGenericErrorMessageWhenCloseOrderFailsUnexpectedly() {
+			String orderId = "3";
+
+			doThrow(new UncheckedIOException(new IOException("No space left on device"))).when(shoppingService)
+					.closeOrder(orderId);
+
+			totemController.checkout(orderId);
+
+			verify(totemView).showCartErrorMessage(TotemController.UNEXPECTED_ERROR_MESSAGE);
+			verifyNoMoreInteractions(totemView);
+		}
 	}
 
 	@Nested
@@ -220,6 +340,7 @@ class TotemControllerTest {
 		private OrderItem orderItem;
 
 		private static final int QUANTITY = 1;
+		private static final String ORDER_ID = "1";
 
 		@BeforeEach
 		void setup() {
@@ -231,6 +352,8 @@ class TotemControllerTest {
 		@Test
 		@DisplayName("'removeItem' should call deleteItem with orderItem and call itemRemoved on view and show ok message")
 		void testRemoveItemShouldCallDeleteItemWithOrderItemAndItemRemovedWithOrderItemAndShowMessage() {
+			when(totemView.getOrderId()).thenReturn(ORDER_ID);
+			when(shoppingService.getOrder(ORDER_ID)).thenReturn(newOrderWithTotal(3.0, 1));
 			InOrder inOrder = Mockito.inOrder(shoppingService, totemView);
 
 			totemController.removeItem(orderItem);
@@ -238,6 +361,19 @@ class TotemControllerTest {
 			inOrder.verify(shoppingService, times(1)).deleteItem(orderItem);
 			inOrder.verify(totemView, times(1)).itemRemoved(orderItem);
 			inOrder.verify(totemView, times(1)).showCartMessage("Removed all pizza");
+			inOrder.verify(totemView, times(1)).showOrderTotal(3.0, 1);
+		}
+
+		@Test
+		@DisplayName("'removeItem' should show an error message when the order total cannot be read")
+		void testRemoveItemWhenGetOrderThrowsShouldShowErrorMessage() {
+			when(totemView.getOrderId()).thenReturn(ORDER_ID);
+			doThrow(new TransactionException(errorMessage)).when(shoppingService).getOrder(ORDER_ID);
+
+			totemController.removeItem(orderItem);
+
+			verify(totemView).itemRemoved(orderItem);
+			verify(totemView).showCartErrorMessage(errorMessage);
 		}
 
 		@Test
@@ -248,7 +384,7 @@ class TotemControllerTest {
 			List<OrderItem> orderItemList = Arrays.asList(orderItem);
 
 			doThrow(new TransactionException(errorMessage)).when(shoppingService).deleteItem(any(OrderItem.class));
-			when(shoppingService.getAllProducts()).thenReturn(productList);
+			when(shoppingService.getProductsPage(null, PRODUCTS_PAGE_SIZE)).thenReturn(productList);
 			when(shoppingService.getOrderItems(orderId)).thenReturn(orderItemList);
 			when(totemView.getOrderId()).thenReturn(orderId);
 			InOrder inOrder = Mockito.inOrder(shoppingService, totemView);
@@ -257,9 +393,9 @@ class TotemControllerTest {
 
 			inOrder.verify(shoppingService, times(1)).deleteItem(orderItem);
 			inOrder.verify(totemView, times(1)).resetView();
-			inOrder.verify(shoppingService, times(1)).getAllProducts();
+			inOrder.verify(shoppingService, times(1)).getProductsPage(null, PRODUCTS_PAGE_SIZE);
 			inOrder.verify(shoppingService, times(1)).getOrderItems(orderId);
-			inOrder.verify(totemView, times(1)).showAllProducts(productList);
+			inOrder.verify(totemView, times(1)).showFirstProductsPage(productList, false);
 			inOrder.verify(totemView, times(1)).showAllOrderItems(orderItemList);
 			inOrder.verify(totemView, times(1)).showCartErrorMessage(errorMessage);
 			verifyNoMoreInteractions(totemView);
@@ -270,13 +406,14 @@ class TotemControllerTest {
 		void testRemoveItemShouldResetViewAndSetErrorMessageWhenDeleteItemAndGetAllProductsThrows() {
 
 			doThrow(new TransactionException(errorMessage)).when(shoppingService).deleteItem(any(OrderItem.class));
-			doThrow(new TransactionException(errorMessage)).when(shoppingService).getAllProducts();
+			doThrow(new TransactionException(errorMessage)).when(shoppingService).getProductsPage(null,
+					PRODUCTS_PAGE_SIZE);
 
 			totemController.removeItem(orderItem);
 
 			InOrder inOrder = Mockito.inOrder(shoppingService, totemView);
 			inOrder.verify(totemView, times(1)).resetView();
-			inOrder.verify(shoppingService, times(1)).getAllProducts();
+			inOrder.verify(shoppingService, times(1)).getProductsPage(null, PRODUCTS_PAGE_SIZE);
 			inOrder.verify(totemView, times(1)).showCartErrorMessage(errorMessage);
 			verifyNoMoreInteractions(totemView, shoppingService);
 		}
@@ -296,7 +433,7 @@ class TotemControllerTest {
 			totemController.removeItem(orderItem);
 
 			inOrder.verify(totemView, times(1)).resetView();
-			inOrder.verify(shoppingService, times(1)).getAllProducts();
+			inOrder.verify(shoppingService, times(1)).getProductsPage(null, PRODUCTS_PAGE_SIZE);
 			inOrder.verify(shoppingService, times(1)).getOrderItems(orderId);
 			inOrder.verify(totemView, times(1)).showCartErrorMessage(errorMessage);
 			verifyNoMoreInteractions(totemView, shoppingService);
@@ -308,12 +445,15 @@ class TotemControllerTest {
 			OrderItem orderItemModified = new OrderItem(new Product("pizza", 3.0), new Order(OrderStatus.OPEN), 3);
 
 			when(shoppingService.returnItem(any(OrderItem.class), anyInt())).thenReturn(orderItemModified);
+			when(totemView.getOrderId()).thenReturn(ORDER_ID);
+			when(shoppingService.getOrder(ORDER_ID)).thenReturn(newOrderWithTotal(9.0, 1));
 			InOrder inOrder = Mockito.inOrder(shoppingService, totemView);
 
 			totemController.returnItem(orderItem, QUANTITY);
 
 			inOrder.verify(totemView, times(1)).itemModified(orderItem, orderItemModified);
 			inOrder.verify(totemView, times(1)).showCartMessage("Removed 1 pizza");
+			inOrder.verify(totemView, times(1)).showOrderTotal(9.0, 1);
 		}
 
 		@Test
@@ -325,7 +465,7 @@ class TotemControllerTest {
 
 			doThrow(new TransactionException(errorMessage)).when(shoppingService).returnItem(any(OrderItem.class),
 					anyInt());
-			when(shoppingService.getAllProducts()).thenReturn(productList);
+			when(shoppingService.getProductsPage(null, PRODUCTS_PAGE_SIZE)).thenReturn(productList);
 			when(shoppingService.getOrderItems(orderId)).thenReturn(orderItemList);
 			when(totemView.getOrderId()).thenReturn(orderId);
 			InOrder inOrder = Mockito.inOrder(shoppingService, totemView);
@@ -333,27 +473,44 @@ class TotemControllerTest {
 			totemController.returnItem(orderItem, QUANTITY);
 
 			inOrder.verify(totemView, times(1)).resetView();
-			inOrder.verify(shoppingService, times(1)).getAllProducts();
+			inOrder.verify(shoppingService, times(1)).getProductsPage(null, PRODUCTS_PAGE_SIZE);
 			inOrder.verify(shoppingService, times(1)).getOrderItems(orderId);
-			inOrder.verify(totemView, times(1)).showAllProducts(productList);
+			inOrder.verify(totemView, times(1)).showFirstProductsPage(productList, false);
 			inOrder.verify(totemView, times(1)).showAllOrderItems(orderItemList);
 			inOrder.verify(totemView, times(1)).showCartErrorMessage(errorMessage);
 			verifyNoMoreInteractions(totemView);
 		}
 
+		@Test
+		@DisplayName("'returnItem' should show the reason on view when returnItem refuses the quantity")
+		void testReturnItemShouldShowTheReasonWhenReturnItemRefusesTheQuantity() {
+			String orderId = "1";
+			String reason = "Quantity to return must be less than the quantity of the item (3). Received: 3";
+
+			doThrow(new IllegalArgumentException(reason)).when(shoppingService).returnItem(orderItem, 3);
+			when(shoppingService.getProductsPage(null, PRODUCTS_PAGE_SIZE)).thenReturn(Collections.emptyList());
+			when(shoppingService.getOrderItems(orderId)).thenReturn(Arrays.asList(orderItem));
+			when(totemView.getOrderId()).thenReturn(orderId);
+
+			totemController.returnItem(orderItem, 3);
+
+			verify(totemView).showCartErrorMessage(reason);
+		}
+
 		@Test
 		@DisplayName("'returnItem' should resetView and set error message when returnItem throws and getAllProducts throws")
 		void testReturnItemShouldResetViewAndSetErrorMessageWhenReturnItemAndGetAllProductsThrows() {
 
 			doThrow(new TransactionException(errorMessage)).when(shoppingService).returnItem(any(OrderItem.class),
 					anyInt());
-			doThrow(new TransactionException(errorMessage)).when(shoppingService).getAllProducts();
+			doThrow(new TransactionException(errorMessage)).when(shoppingService).getProductsPage(null,
+					PRODUCTS_PAGE_SIZE);
 
 			totemController.returnItem(orderItem, QUANTITY);
 
 			InOrder inOrder = Mockito.inOrder(shoppingService, totemView);
 			inOrder.verify(totemView, times(1)).resetView();
-			inOrder.verify(shoppingService, times(1)).getAllProducts();
+			inOrder.verify(shoppingService, times(1)).getProductsPage(null, PRODUCTS_PAGE_SIZE);
 			inOrder.verify(totemView, times(1)).showCartErrorMessage(errorMessage);
 			verifyNoMoreInteractions(totemView, shoppingService);
 		}
@@ -374,7 +531,7 @@ class TotemControllerTest {
 			totemController.returnItem(orderItem, QUANTITY);
 
 			inOrder.verify(totemView, times(1)).resetView();
-			inOrder.verify(shoppingService, times(1)).getAllProducts();
+			inOrder.verify(shoppingService, times(1)).getProductsPage(null, PRODUCTS_PAGE_SIZE);
 			inOrder.verify(shoppingService, times(1)).getOrderItems(orderId);
 			inOrder.verify(totemView, times(1)).showCartErrorMessage(errorMessage);
 			verifyNoMoreInteractions(totemView, shoppingService);
@@ -405,6 +562,7 @@ class TotemControllerTest {
 
 			when(shoppingService.buyProduct(ORDER_ID, PRODUCT_ID, QUANTITY)).thenReturn(orderItem);
 			when(shoppingService.getOrderItems(ORDER_ID)).thenReturn(orderItemList);
+			when(shoppingService.getOrder(ORDER_ID)).thenReturn(newOrderWithTotal(15.0, 1));
 			when(totemView.getOrderId()).thenReturn(ORDER_ID);
 			
 			totemController.buyProduct(ORDER_ID, PRODUCT_ID, QUANTITY);
@@ -414,6 +572,7 @@ class TotemControllerTest {
 			inOrder.verify(totemView, times(1)).showAllOrderItems(orderItemList);
 
 			inOrder.verify(totemView, times(1)).showShoppingMessage("Added 2 pizza");
+			inOrder.verify(totemView, times(1)).showOrderTotal(15.0, 1);
 		}
 
 		@Test
@@ -453,4 +612,198 @@ class TotemControllerTest {
 
 	}
 
+	@Nested
+	@DisplayName("Test the changes of the catalog")
+	class CatalogChangesTests {
+
+		private StockAvailability availability;
+
+		@BeforeEach
+		void setup() {
+			availability = new StockAvailability();
+			totemController = new TotemController(new AsyncShoppingService(shoppingService, Runnable::run), totemView,
+					availability);
+		}
+
+		@Test
+		@DisplayName("The changes of the availability and of the products should be pushed to the view")
+		void testChangesShouldBePushedToTheView() {
+			Product product = new Product("Pasta", 3);
+			product.setId("1");
+
+			availability.setAvailable("1", 4);
+			availability.productChanged(product);
+
+			verify(totemView).showAvailability("1", 4);
+			verify(totemView).productChanged(product);
+		}
+
+		@Test
+		@DisplayName("The products shown should be told their known availability")
+		void testProductsShownShouldBeToldTheirAvailability() {
+			Product known = new Product("Pasta", 3);
+			known.setId("1");
+			Product unknown = new Product("Pizza", 2);
+			unknown.setId("2");
+			List<Product> page = Arrays.asList(known, unknown);
+			availability.setAvailable("1", 0);
+			when(shoppingService.getProductsPage(null, PRODUCTS_PAGE_SIZE)).thenReturn(page);
+
+			totemController.openShopping();
+
+			InOrder inOrder = inOrder(totemView);
+			inOrder.verify(totemView).showAvailability("1", 0);
+			inOrder.verify(totemView).showFirstProductsPage(page, false);
+			inOrder.verify(totemView).showAvailability("1", 0);
+			verify(totemView, never()).showAvailability(eq("2"), anyInt());
+		}
+
+		@Test
+		@DisplayName("No change should be pushed once the totem stops watching the catalog")
+		void testNoChangeShouldBePushedAfterStopping() {
+			totemController.stopWatchingCatalog();
+
+			availability.setAvailable("1", 4);
+
+			verifyNoMoreInteractions(totemView);
+		}
+
+	}
+
+	@Nested
+	@DisplayName("Test the availability known to the totem")
+	class AvailabilitySnapshotTests {
+
+		private static final String ORDER_ID = "1";
+		private static final String PRODUCT_ID = "2";
+		private static final long MAX_STALENESS_MILLIS = 1000;
+
+		private long now;
+
+		@BeforeEach
+		void setup() {
+			totemController = new TotemController(new AsyncShoppingService(shoppingService, Runnable::run), totemView,
+					null, new AvailabilitySnapshot(MAX_STALENESS_MILLIS, () -> now));
+		}
+
+		@Test
+		@DisplayName("The products shown should have their availability read in a single call")
+		void testProductsShownShouldHaveTheirAvailabilityRead() {
+			Product pasta = new Product("Pasta", 3);
+			pasta.setId("1");
+			Product pizza = new Product("Pizza", 2);
+			pizza.setId(PRODUCT_ID);
+			List<Product> page = Arrays.asList(pasta, pizza);
+			Map<String, Integer> quantities = new HashMap<>();
+			quantities.put("1", 4);
+			quantities.put(PRODUCT_ID, 0);
+			when(shoppingService.getProductsPage(null, PRODUCTS_PAGE_SIZE)).thenReturn(page);
+			when(shoppingService.getAvailableQuantities(Arrays.asList("1", PRODUCT_ID))).thenReturn(quantities);
+
+			totemController.openShopping();
+
+			verify(totemView).showAvailability("1", 4);
+			verify(totemView).showAvailability(PRODUCT_ID, 0);
+		}
+
+		@Test
+		@DisplayName("A purchase of more than the quantity read recently should be refused without being sent")
+		void testPurchaseOverTheFreshQuantityShouldNotBeSent() {
+			readAvailability(3);
+			now += MAX_STALENESS_MILLIS;
+
+			totemController.buyProduct(ORDER_ID, PRODUCT_ID, 4);
+
+			verify(totemView).showShoppingErrorMessage("Not enough quantity. Only 3 available");
+			verify(shoppingService, never()).buyProduct(anyString(), anyString(), anyInt());
+		}
+
+		@Test
+		@DisplayName("A quantity read too long ago should be read again before the purchase")
+		void testStaleQuantityShouldBeReadAgainBeforeThePurchase() {
+			readAvailability(3);
+			now += MAX_STALENESS_MILLIS + 1;
+			when(shoppingService.getAvailableQuantity(PRODUCT_ID)).thenReturn(0);
+
+			totemController.buyProduct(ORDER_ID, PRODUCT_ID, 1);
+
+			verify(totemView).showAvailability(PRODUCT_ID, 0);
+			verify(totemView).showShoppingErrorMessage("Sold out");
+			verify(shoppingService, never()).buyProduct(anyString(), anyString(), anyInt());
+		}
+
+		@Test
+		@DisplayName("A purchase sent should lower the quantity shown, and a failed one should read it again")
+		void testPurchaseShouldUpdateTheQuantityShown() {
+			readAvailability(3);
+			Product product = new Product("Pizza", 2);
+			product.setId(PRODUCT_ID);
+			when(shoppingService.buyProduct(ORDER_ID, PRODUCT_ID, 2))
+					.thenReturn(new OrderItem(product, new Order(OrderStatus.OPEN), 2));
+			when(totemView.getOrderId()).thenReturn(ORDER_ID);
+			when(shoppingService.getOrder(ORDER_ID)).thenReturn(newOrderWithTotal(4.0, 1));
+
+			totemController.buyProduct(ORDER_ID, PRODUCT_ID, 2);
+
+			verify(totemView).showAvailability(PRODUCT_ID, 1);
+
+			doThrow(new TransactionException("Not enough quantity")).when(shoppingService).buyProduct(ORDER_ID,
+					PRODUCT_ID, 1);
+			when(shoppingService.getAvailableQuantities(Collections.singletonList(PRODUCT_ID)))
+					.thenReturn(Collections.singletonMap(PRODUCT_ID, 0));
+
+			totemController.buyProduct(ORDER_ID, PRODUCT_ID, 1);
+
+			verify(totemView).showShoppingErrorMessage("Not enough quantity");
+			verify(totemView).showAvailability(PRODUCT_ID, 0);
+		}
+
+		@Test
+		@DisplayName("With a feed, a purchase should not be applied again to the quantity the feed already told")
+		void testFeedTellingThePurchaseFirstShouldNotCountItTwice() {
+			StockAvailability availability = new StockAvailability();
+			totemController = new TotemController(new AsyncShoppingService(shoppingService, Runnable::run), totemView,
+					availability, new AvailabilitySnapshot(MAX_STALENESS_MILLIS, () -> now));
+			Product product = new Product("Pizza", 2);
+			product.setId(PRODUCT_ID);
+			availability.setAvailable(PRODUCT_ID, 10);
+			// the feed tells the committed quantity before the purchase completes
+			when(shoppingService.buyProduct(ORDER_ID, PRODUCT_ID, 5)).thenAnswer(invocation -> {
+				availability.setAvailable(PRODUCT_ID, availability.getAvailable(PRODUCT_ID) - 5);
+				return new OrderItem(product, new Order(OrderStatus.OPEN), 5);
+			});
+			when(totemView.getOrderId()).thenReturn(ORDER_ID);
+			when(shoppingService.getOrder(ORDER_ID)).thenReturn(newOrderWithTotal(10.0, 1));
+
+			totemController.buyProduct(ORDER_ID, PRODUCT_ID, 5);
+			totemController.buyProduct(ORDER_ID, PRODUCT_ID, 5);
+
+			verify(shoppingService, times(2)).buyProduct(ORDER_ID, PRODUCT_ID, 5);
+			verify(totemView, never()).showShoppingErrorMessage("Sold out");
+			InOrder inOrder = inOrder(totemView);
+			inOrder.verify(totemView).showAvailability(PRODUCT_ID, 10);
+			inOrder.verify(totemView).showAvailability(PRODUCT_ID, 5);
+			inOrder.verify(totemView).showAvailability(PRODUCT_ID, 0);
+			verify(totemView, times(3)).showAvailability(eq(PRODUCT_ID), anyInt());
+		}
+
+		private void readAvailability(int quantity) {
+			Product product = new Product("Pizza", 2);
+			product.setId(PRODUCT_ID);
+			when(shoppingService.searchProducts("pizza", SEARCH_RESULTS_LIMIT)).thenReturn(Arrays.asList(product));
+			when(shoppingService.getAvailableQuantities(Collections.singletonList(PRODUCT_ID)))
+					.thenReturn(Collections.singletonMap(PRODUCT_ID, quantity));
+			totemController.searchProducts("pizza");
+			verify(totemView).showAvailability(PRODUCT_ID, quantity);
+		}
+
+	}
+
+	private Order newOrderWithTotal(double total, int lineCount) {
+		Order order = new Order(OrderStatus.OPEN);
+		order.setTotal(total);
+		order.setLineCount(lineCount);
+		return order;
+	}
+
 }
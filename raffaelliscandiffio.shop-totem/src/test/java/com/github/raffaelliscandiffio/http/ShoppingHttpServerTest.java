@@ -0,0 +1,210 @@
+package com.github.raffaelliscandiffio.http;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.repository.embedded.EmbeddedStore;
+import com.github.raffaelliscandiffio.service.AsyncShoppingService;
+import com.github.raffaelliscandiffio.service.ShoppingService;
+import com.github.raffaelliscandiffio.transaction.embedded.TransactionManagerEmbedded;
+
+class ShoppingHttpServerTest {
+
+	private static final int STOCK_QUANTITY = 10;
+	private static final Pattern ID = Pattern.compile("\"id\":\"([^\"]+)\"");
+
+	@TempDir
+	Path directory;
+
+	private EmbeddedStore store;
+	private ExecutorService executor;
+	private ShoppingService shoppingService;
+	private ShoppingHttpServer server;
+	private String productId;
+
+	@BeforeEach
+	void setup() throws IOException {
+		store = new EmbeddedStore(directory);
+		executor = Executors.newSingleThreadExecutor();
+		shoppingService = new ShoppingService(new TransactionManagerEmbedded(store));
+		shoppingService.saveProductAndStock("Bread \"white\"", 1.5, STOCK_QUANTITY);
+		productId = shoppingService.getAllProducts().get(0).getId();
+		server = new ShoppingHttpServer(new AsyncShoppingService(shoppingService, executor), 0, 2, 4);
+		server.start();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		server.close();
+		executor.shutdown();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+		store.close();
+	}
+
+	@Nested
+	@DisplayName("Catalog")
+	class CatalogTests {
+
+		@Test
+		@DisplayName("The catalog should be sent with an ETag, and not sent again while it does not change")
+		void testCatalogShouldBeSentOnlyWhenChanged() throws IOException {
+			Response first = request("GET", "/products", null);
+			assertThat(first.status).isEqualTo(200);
+			assertThat(first.body)
+					.isEqualTo("[{\"id\":\"" + productId + "\",\"name\":\"Bread \\\"white\\\"\",\"price\":1.5}]");
+
+			assertThat(request("GET", "/products", first.etag).status).isEqualTo(304);
+
+			shoppingService.saveProductAndStock("Milk", 1.0, 1);
+			Response changed = request("GET", "/products", first.etag);
+			assertThat(changed.status).isEqualTo(200);
+			assertThat(changed.etag).isNotEqualTo(first.etag);
+		}
+
+		@Test
+		@DisplayName("The tag should tell apart fields that concatenate to the same text")
+		void testTagShouldSeparateTheFields() {
+			Product first = new Product("bc", 1.0);
+			first.setId("a");
+			Product second = new Product("c", 1.0);
+			second.setId("ab");
+
+			assertThat(CatalogTag.of(Arrays.asList(first))).isNotEqualTo(CatalogTag.of(Arrays.asList(second)))
+					.startsWith("\"").endsWith("\"");
+		}
+
+	}
+
+	@Test
+	@DisplayName("An order should be shopped, returned and closed through the API")
+	void testOrderShouldBeShoppedThroughTheApi() throws IOException {
+		Response order = request("POST", "/orders", null);
+		assertThat(order.status).isEqualTo(201);
+		assertThat(order.body).contains("\"status\":\"OPEN\",\"total\":0.0,\"lineCount\":0");
+		String orderId = id(order.body);
+
+		Response bought = request("POST", "/orders/" + orderId + "/items?productId=" + productId + "&quantity=3",
+				null);
+		assertThat(bought.status).isEqualTo(201);
+		assertThat(bought.body).contains("\"orderId\":\"" + orderId + "\"", "\"quantity\":3");
+		String itemId = id(bought.body);
+
+		Response returned = request("POST", "/orders/" + orderId + "/items/" + itemId + "/return?quantity=1", null,
+				"If-Match", bought.etag);
+		assertThat(returned.status).isEqualTo(200);
+		assertThat(returned.body).contains("\"quantity\":2");
+		// the item changed, the old tag is stale
+		assertThat(request("POST", "/orders/" + orderId + "/items/" + itemId + "/return?quantity=1", null,
+				"If-Match", bought.etag).status).isEqualTo(409);
+
+		assertThat(request("POST", "/orders/" + orderId + "/close", null).status).isEqualTo(204);
+		assertThat(shoppingService.getAvailableQuantity(productId)).isEqualTo(STOCK_QUANTITY - 2);
+	}
+
+	@Test
+	@DisplayName("Deleting an item should give its stock back")
+	void testDeleteItemShouldGiveTheStockBack() throws IOException {
+		String orderId = id(request("POST", "/orders", null).body);
+		String itemId = id(
+				request("POST", "/orders/" + orderId + "/items?productId=" + productId + "&quantity=4", null).body);
+
+		assertThat(request("DELETE", "/orders/" + orderId + "/items/" + itemId, null).status).isEqualTo(204);
+		assertThat(request("DELETE", "/orders/" + orderId + "/items/" + itemId, null).body)
+				.isEqualTo("{\"error\":\"Item not found: " + itemId + "\"}");
+		assertThat(shoppingService.getAvailableQuantity(productId)).isEqualTo(STOCK_QUANTITY);
+	}
+
+	@Test
+	@DisplayName("Bad requests should be answered with the matching status and an error")
+	void testBadRequestsShouldBeRejected() throws IOException {
+		String orderId = id(request("POST", "/orders", null).body);
+
+		Response tooMany = request("POST",
+				"/orders/" + orderId + "/items?productId=" + productId + "&quantity=" + (STOCK_QUANTITY + 1), null);
+		assertThat(tooMany.status).isEqualTo(409);
+		assertThat(tooMany.body).startsWith("{\"error\":\"Not enough quantity");
+		assertThat(request("POST", "/orders/" + orderId + "/items?productId=" + productId, null).body)
+				.isEqualTo("{\"error\":\"Missing parameter: quantity\"}");
+		Response negative = request("POST", "/orders/" + orderId + "/items?productId=" + productId + "&quantity=-5",
+				null);
+		assertThat(negative.status).isEqualTo(400);
+		assertThat(negative.body).isEqualTo("{\"error\":\"Quantity must be positive. Received: -5\"}");
+		String itemId = id(
+				request("POST", "/orders/" + orderId + "/items?productId=" + productId + "&quantity=2", null).body);
+		assertThat(request("POST", "/orders/" + orderId + "/items/" + itemId + "/return?quantity=0", null).status)
+				.isEqualTo(400);
+		assertThat(request("POST", "/orders/" + orderId + "/items/" + itemId + "/return?quantity=2", null).status)
+				.isEqualTo(400);
+		assertThat(shoppingService.getAvailableQuantity(productId)).isEqualTo(STOCK_QUANTITY - 2);
+		assertThat(request("GET", "/orders", null).status).isEqualTo(405);
+		assertThat(request("GET", "/customers", null).status).isEqualTo(404);
+	}
+
+	private String id(String body) {
+		Matcher matcher = ID.matcher(body);
+		assertThat(matcher.find()).isTrue();
+		return matcher.group(1);
+	}
+
+	private Response request(String method, String path, String ifNoneMatch) throws IOException {
+		return request(method, path, ifNoneMatch, null, null);
+	}
+
+	private Response request(String method, String path, String ifNoneMatch, String header, String value)
+			throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path)
+				.openConnection();
+		connection.setRequestMethod(method);
+		if (ifNoneMatch != null)
+			connection.setRequestProperty("If-None-Match", ifNoneMatch);
+		if (header != null)
+			connection.setRequestProperty(header, value);
+		int status = connection.getResponseCode();
+		InputStream body = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		if (body != null) {
+			byte[] buffer = new byte[1024];
+			for (int read = body.read(buffer); read != -1; read = body.read(buffer))
+				bytes.write(buffer, 0, read);
+			body.close();
+		}
+		return new Response(status, connection.getHeaderField("ETag"),
+				new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	private static class Response {
+
+		private final int status;
+		private final String etag;
+		private final String body;
+
+		private Response(int status, String etag, String body) {
+			this.status = status;
+			this.etag = etag;
+			this.body = body;
+		}
+
+	}
+
+}
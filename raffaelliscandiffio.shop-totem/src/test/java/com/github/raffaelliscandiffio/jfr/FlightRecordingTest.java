@@ -0,0 +1,100 @@
+package com.github.raffaelliscandiffio.jfr;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.raffaelliscandiffio.repository.embedded.EmbeddedStore;
+import com.github.raffaelliscandiffio.service.AsyncShoppingService;
+import com.github.raffaelliscandiffio.service.ShoppingService;
+import com.github.raffaelliscandiffio.transaction.embedded.TransactionManagerEmbedded;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+class FlightRecordingTest {
+
+	private static final String PREFIX = "com.github.raffaelliscandiffio.";
+
+	@TempDir
+	Path directory;
+
+	private EmbeddedStore store;
+	private ShoppingService shoppingService;
+
+	@BeforeEach
+	void setup() throws IOException {
+		store = new EmbeddedStore(directory.resolve("data"));
+		shoppingService = new ShoppingService(new TransactionManagerEmbedded(store));
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		store.close();
+	}
+
+	@Test
+	@DisplayName("The bundled settings should enable the events of the application and of the JVM")
+	void testSettingsShouldEnableTheEvents() throws IOException, ParseException {
+		assertThat(FlightRecording.settings().getSettings()).containsEntry(PREFIX + "Transaction#enabled", "true")
+				.containsEntry(PREFIX + "Repository#enabled", "true")
+				.containsEntry(PREFIX + "ShoppingOperation#enabled", "true")
+				.containsEntry("jdk.SocketRead#enabled", "true")
+				.containsEntry("jdk.JavaMonitorEnter#enabled", "true");
+	}
+
+	@Test
+	@DisplayName("A recording should show an operation down to its transaction and repository calls")
+	void testRecordingShouldShowTheOperationDownToTheRepositories() throws Exception {
+		Path file = directory.resolve("totem.jfr");
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try (Recording recording = FlightRecording.start(file)) {
+			new AsyncShoppingService(shoppingService, executor).saveProductAndStock("Bread", 1.5, 10, 2).get();
+			recording.stop();
+		} finally {
+			executor.shutdown();
+		}
+
+		List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+				.filter(event -> event.getEventType().getName().startsWith(PREFIX)).collect(Collectors.toList());
+		assertThat(eventsOf(events, "ShoppingOperation")).extracting(event -> event.getString("operation"),
+				event -> event.getBoolean("succeeded")).containsExactly(tuple("saveProductAndStock", true));
+		assertThat(eventsOf(events, "Transaction")).extracting(event -> event.getString("backend"),
+				event -> event.getString("operation"), event -> event.getBoolean("committed"))
+				.containsExactly(tuple("embedded", "saveProductAndStock", true));
+		assertThat(eventsOf(events, "Repository")).extracting(event -> event.getString("entity"),
+				event -> event.getString("operation"), event -> event.getInt("entities"))
+				.containsExactly(tuple("Product", "save", 1), tuple("Stock", "save", 1), tuple("Stock", "save", 1));
+	}
+
+	@Test
+	@DisplayName("Without a recording the repositories should not be wrapped")
+	void testRepositoriesShouldNotBeWrappedWithoutARecording() {
+		String repositoryClass = new TransactionManagerEmbedded(store).runInTransaction(
+				(productRepository, stockRepository, orderRepository, itemRepository) -> productRepository.getClass()
+						.getSimpleName());
+
+		assertThat(repositoryClass).isEqualTo("ProductEmbeddedRepository");
+	}
+
+	private List<RecordedEvent> eventsOf(List<RecordedEvent> events, String name) {
+		return events.stream().filter(event -> event.getEventType().getName().equals(PREFIX + name))
+				.sorted((first, second) -> first.getStartTime().compareTo(second.getStartTime()))
+				.collect(Collectors.toList());
+	}
+
+}
@@ -0,0 +1,156 @@
+package com.github.raffaelliscandiffio.ledger;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedSalesLedgerTest {
+
+	private static final int SMALL_SEGMENT_SIZE = 256;
+
+	@TempDir
+	Path directory;
+
+	private MappedSalesLedger ledger;
+
+	@AfterEach
+	void tearDown() throws IOException {
+		if (ledger != null)
+			ledger.close();
+	}
+
+	@Test
+	@DisplayName("Read back the appended records in order")
+	void testAppendAndReadBack() throws IOException {
+		ledger = new MappedSalesLedger(directory);
+		SalesRecord first = newRecord("order_1", 1L, new SalesRecord.Line("product_1", 2, 1.40),
+				new SalesRecord.Line("product_2", 1, 2.20));
+		SalesRecord second = newRecord("order_2", 2L, new SalesRecord.Line("pröduct_€", 5, 0.80));
+		SalesRecord empty = newRecord("order_3", 3L);
+
+		ledger.append(first);
+		ledger.append(second);
+		ledger.append(empty);
+
+		assertThat(readAll()).containsExactly(first, second, empty);
+	}
+
+	@Test
+	@DisplayName("Roll over to a new segment when a record does not fit in the current one")
+	void testAppendShouldRollOver() throws IOException {
+		ledger = new MappedSalesLedger(directory, SMALL_SEGMENT_SIZE, 1, 0);
+		List<SalesRecord> appended = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			SalesRecord salesRecord = newRecord("order_" + i, i, new SalesRecord.Line("product_" + i, i, i));
+			ledger.append(salesRecord);
+			appended.add(salesRecord);
+		}
+
+		assertThat(ledger.getSegmentIndex()).isPositive();
+		assertThat(LedgerFormat.listSegments(directory)).hasSize((int) ledger.getSegmentIndex() + 1);
+		assertThat(readAll()).containsExactlyElementsOf(appended);
+	}
+
+	@Test
+	@DisplayName("A reopened ledger should continue after the last record")
+	void testReopenShouldContinueAppending() throws IOException {
+		SalesRecord first = newRecord("order_1", 1L, new SalesRecord.Line("product_1", 1, 1.0));
+		SalesRecord second = newRecord("order_2", 2L, new SalesRecord.Line("product_2", 2, 2.0));
+		ledger = new MappedSalesLedger(directory, SMALL_SEGMENT_SIZE, 1, 0);
+		ledger.append(first);
+		ledger.close();
+
+		ledger = new MappedSalesLedger(directory, SMALL_SEGMENT_SIZE, 1, 0);
+		ledger.append(second);
+
+		assertThat(readAll()).containsExactly(first, second);
+	}
+
+	@Test
+	@DisplayName("A torn record at the end of the ledger should be dropped on reopen")
+	void testReopenShouldDropATornRecord() throws IOException {
+		SalesRecord intact = newRecord("order_1", 1L, new SalesRecord.Line("product_1", 1, 1.0));
+		SalesRecord torn = newRecord("order_2", 2L, new SalesRecord.Line("product_2", 2, 2.0));
+		SalesRecord next = newRecord("order_3", 3L, new SalesRecord.Line("product_3", 3, 3.0));
+		ledger = new MappedSalesLedger(directory, SMALL_SEGMENT_SIZE, 1, 0);
+		ledger.append(intact);
+		ledger.append(torn);
+		ledger.close();
+		int tornPayloadStart = LedgerFormat.SEGMENT_HEADER_SIZE + 2 * LedgerFormat.FRAME_HEADER_SIZE
+				+ LedgerFormat.encode(intact).length;
+		corruptByte(LedgerFormat.segmentPath(directory, 0), tornPayloadStart);
+
+		assertThat(readAll()).containsExactly(intact);
+		ledger = new MappedSalesLedger(directory, SMALL_SEGMENT_SIZE, 1, 0);
+		ledger.append(next);
+
+		assertThat(readAll()).containsExactly(intact, next);
+	}
+
+	@Test
+	@DisplayName("Reject a record bigger than a segment")
+	void testAppendWhenTheRecordDoesNotFitInASegmentShouldThrow() throws IOException {
+		ledger = new MappedSalesLedger(directory, SMALL_SEGMENT_SIZE, 1, 0);
+		SalesRecord huge = newRecord(String.join("", Collections.nCopies(SMALL_SEGMENT_SIZE, "x")), 1L);
+
+		assertThatThrownBy(() -> ledger.append(huge)).isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("does not fit in a segment of " + SMALL_SEGMENT_SIZE + " bytes");
+		assertThat(readAll()).isEmpty();
+	}
+
+	@Test
+	@DisplayName("Reject appends after close")
+	void testAppendWhenClosedShouldThrow() throws IOException {
+		ledger = new MappedSalesLedger(directory, SMALL_SEGMENT_SIZE, 1, 0);
+		ledger.close();
+
+		assertThatThrownBy(() -> ledger.append(newRecord("order_1", 1L))).isInstanceOf(IllegalStateException.class)
+				.hasMessage("The sales ledger is closed");
+	}
+
+	@Test
+	@DisplayName("Reject invalid segment sizes and sync batches")
+	void testConstructorWithInvalidArgumentsShouldThrow() {
+		assertThatThrownBy(() -> new MappedSalesLedger(directory, LedgerFormat.SEGMENT_HEADER_SIZE, 1, 0))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Segment size is too small. Received: " + LedgerFormat.SEGMENT_HEADER_SIZE);
+		assertThatThrownBy(() -> new MappedSalesLedger(directory, SMALL_SEGMENT_SIZE, 0, 0))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Sync batch must be positive. Received: 0");
+	}
+
+	private List<SalesRecord> readAll() throws IOException {
+		List<SalesRecord> records = new ArrayList<>();
+		try (SalesLedgerReader reader = new SalesLedgerReader(directory)) {
+			reader.forEachRemaining(records::add);
+		}
+		return records;
+	}
+
+	private void corruptByte(Path segment, int position) throws IOException {
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.allocate(1);
+			channel.read(buffer, position);
+			buffer.put(0, (byte) (buffer.get(0) ^ 0xFF));
+			channel.write(ByteBuffer.wrap(new byte[] { buffer.get(0) }), position);
+		}
+	}
+
+	private SalesRecord newRecord(String orderId, long timestamp, SalesRecord.Line... lines) {
+		return new SalesRecord(orderId, timestamp, asList(lines));
+	}
+
+}
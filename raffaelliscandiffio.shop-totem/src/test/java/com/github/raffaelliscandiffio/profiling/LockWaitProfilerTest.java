@@ -0,0 +1,118 @@
+package com.github.raffaelliscandiffio.profiling;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import com.github.raffaelliscandiffio.profiling.LockWaitProfiler.ConflictedProduct;
+import com.github.raffaelliscandiffio.profiling.LockWaitProfiler.HotProduct;
+
+class LockWaitProfilerTest {
+
+	@Nested
+	@DisplayName("Space-Saving sketch")
+	class SketchTests {
+
+		@Test
+		@DisplayName("A full sketch should replace its lightest key, which passes on its weight as the error")
+		void testFullSketchShouldReplaceTheLightestKey() {
+			SpaceSavingSketch<String, Object> sketch = new SpaceSavingSketch<>(2, Object::new);
+			sketch.add("a", 10);
+			sketch.add("b", 3);
+			sketch.add("c", 4);
+
+			assertThat(sketch.top(3)).extracting(SpaceSavingSketch.Counter::getKey,
+					SpaceSavingSketch.Counter::getWeight, SpaceSavingSketch.Counter::getError)
+					.containsExactly(tuple("a", 10L, 0L), tuple("c", 7L, 3L));
+		}
+
+		@Test
+		@DisplayName("A key heavier than the total over the capacity should always be kept")
+		void testHeavyKeyShouldBeKept() {
+			SpaceSavingSketch<String, Object> sketch = new SpaceSavingSketch<>(4, Object::new);
+			for (int i = 0; i < 1000; i++) {
+				sketch.add("hot", 5);
+				sketch.add("cold-" + i, 1);
+			}
+
+			assertThat(sketch.top(1).get(0).getKey()).isEqualTo("hot");
+			assertThat(sketch.top(10)).hasSize(4);
+		}
+
+	}
+
+	@Nested
+	@DisplayName("Latency histogram")
+	class HistogramTests {
+
+		@Test
+		@DisplayName("Percentiles should be within an eighth of the recorded values")
+		void testPercentilesShouldBeCloseToTheValues() {
+			LatencyHistogram histogram = new LatencyHistogram();
+			for (long micros = 1; micros <= 1000; micros++)
+				histogram.record(micros);
+
+			assertThat(histogram.percentile(50)).isBetween(500L, 500L + 500 / 8);
+			assertThat(histogram.percentile(99)).isBetween(990L, 1000L);
+			assertThat(histogram.percentile(100)).isEqualTo(1000L);
+			assertThat(histogram.getCount()).isEqualTo(1000);
+		}
+
+		@Test
+		@DisplayName("An empty histogram should report zero and huge values should be kept in the last bucket")
+		void testEmptyAndHugeValues() {
+			LatencyHistogram histogram = new LatencyHistogram();
+			assertThat(histogram.percentile(99)).isZero();
+
+			histogram.record(Long.MAX_VALUE);
+			assertThat(histogram.percentile(50)).isEqualTo(Long.MAX_VALUE);
+		}
+
+	}
+
+	@Test
+	@DisplayName("The hottest products should be ranked by total wait with their percentiles")
+	void testHottestProductsShouldBeRankedByTotalWait() {
+		LockWaitProfiler profiler = new LockWaitProfiler(10);
+		for (int i = 0; i < 100; i++)
+			profiler.record("hot", TimeUnit.MILLISECONDS.toNanos(i < 95 ? 2 : 40));
+		for (int i = 0; i < 500; i++)
+			profiler.record("busy", TimeUnit.MICROSECONDS.toNanos(100));
+
+		assertThat(profiler.getHottest(1)).hasSize(1);
+		HotProduct hot = profiler.getHottest(2).get(0);
+		assertThat(hot.getProductId()).isEqualTo("hot");
+		assertThat(hot.getWaits()).isEqualTo(100);
+		assertThat(hot.getTotalMicros()).isEqualTo(95 * 2000 + 5 * 40000);
+		assertThat(hot.getErrorMicros()).isZero();
+		assertThat(hot.getP50Micros()).isBetween(2000L, 2000L + 2000 / 8);
+		assertThat(hot.getP99Micros()).isBetween(40000L, 40000L + 40000 / 8);
+		assertThat(hot.getMaxMicros()).isEqualTo(40000);
+		assertThat(profiler.summary(2)).startsWith("Stock lock waits by product:").contains(
+				"hot total 390.0 ms (error 0.0 ms), 100 waits", "busy total 50.0 ms (error 0.0 ms), 500 waits");
+	}
+
+	@Test
+	@DisplayName("The write conflicts should be counted by product, most first, after the waits")
+	void testWriteConflictsShouldBeCountedByProduct() {
+		LockWaitProfiler profiler = new LockWaitProfiler(10);
+		assertThat(profiler.summary(2)).doesNotContain("conflicts");
+		profiler.recordConflict("calm");
+		for (int i = 0; i < 3; i++)
+			profiler.recordConflict("contended");
+
+		ConflictedProduct contended = profiler.getMostConflicted(2).get(0);
+		assertThat(contended.getProductId()).isEqualTo("contended");
+		assertThat(contended.getConflicts()).isEqualTo(3);
+		assertThat(contended.getError()).isZero();
+		assertThat(profiler.getHottest(2)).isEmpty();
+		assertThat(profiler.summary(2)).contains("Stock write conflicts by product:",
+				"contended 3 conflicts (error 0)", "calm 1 conflicts (error 0)");
+	}
+
+}
@@ -0,0 +1,256 @@
+package com.github.raffaelliscandiffio.repository.embedded;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.raffaelliscandiffio.model.Order;
+import com.github.raffaelliscandiffio.model.OrderStatus;
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.model.Stock;
+
+class EmbeddedStoreTest {
+
+	@TempDir
+	Path root;
+
+	private Path directory;
+	private List<EmbeddedStore> stores = new ArrayList<>();
+
+	@BeforeEach
+	void setup() {
+		directory = root.resolve("store");
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		for (EmbeddedStore store : stores)
+			store.close();
+	}
+
+	@Test
+	@DisplayName("Committed transactions should be recovered from the log after a crash")
+	void testRecoverFromTheLog() throws IOException {
+		EmbeddedStore store = open(directory, 1000);
+		Product product = saveProduct(store, "product", 1.5);
+		Stock stock = saveStock(store, product, 10);
+		updateStock(store, stock.getId(), 7);
+
+		EmbeddedStore recovered = open(crashCopy(), 1000);
+
+		try (EmbeddedTransaction transaction = recovered.begin()) {
+			assertThat(new ProductEmbeddedRepository(transaction).findAll()).containsExactly(product);
+			Stock recoveredStock = new StockEmbeddedRepository(transaction).findById(stock.getId());
+			assertThat(recoveredStock.getQuantity()).isEqualTo(7);
+			assertThat(recoveredStock.getVersion()).isEqualTo(1);
+		}
+		assertThat(saveProduct(recovered, "next", 2).getId()).isGreaterThan(stock.getId());
+	}
+
+	@Test
+	@DisplayName("A rolled back transaction should leave neither memory nor log changed")
+	void testRollback() throws IOException {
+		EmbeddedStore store = open(directory, 1000);
+		Product product = saveProduct(store, "product", 1.5);
+		Stock stock = saveStock(store, product, 10);
+
+		try (EmbeddedTransaction transaction = store.begin()) {
+			Stock shard = new StockEmbeddedRepository(transaction).findById(stock.getId());
+			shard.setQuantity(0);
+			new StockEmbeddedRepository(transaction).update(shard);
+			new ProductEmbeddedRepository(transaction).save(new Product("rolled back", 1));
+		}
+
+		assertThat(readQuantity(store, stock.getId())).isEqualTo(10);
+		assertThat(readProducts(store)).containsExactly(product);
+		EmbeddedStore recovered = open(crashCopy(), 1000);
+		assertThat(readQuantity(recovered, stock.getId())).isEqualTo(10);
+		assertThat(readProducts(recovered)).containsExactly(product);
+	}
+
+	@Test
+	@DisplayName("A snapshot should replace the log files it covers")
+	void testSnapshotShouldDeleteTheCoveredLog() throws IOException {
+		EmbeddedStore store = open(directory, 3);
+		List<Product> products = new ArrayList<>();
+		for (int i = 0; i < 3; i++)
+			products.add(saveProduct(store, "product_" + i, i));
+
+		await().atMost(5, TimeUnit.SECONDS).until(() -> Files.exists(directory.resolve("snapshot.bin")));
+		await().atMost(5, TimeUnit.SECONDS).until(() -> WriteAheadLog.listFiles(directory).stream()
+				.allMatch(file -> WriteAheadLog.firstLsn(file) > 3));
+		products.add(saveProduct(store, "after snapshot", 4));
+
+		assertThat(readProducts(open(crashCopy(), 3))).containsExactlyElementsOf(products);
+	}
+
+	@Test
+	@DisplayName("A store closed cleanly should restart from the snapshot alone")
+	void testCloseShouldTakeASnapshot() throws IOException {
+		EmbeddedStore store = new EmbeddedStore(directory, 1000);
+		Product product = saveProduct(store, "product", 1.5);
+		Order order = saveOrder(store);
+		store.close();
+
+		assertThat(WriteAheadLog.listFiles(directory)).allMatch(file -> file.toFile().length() == 0);
+		EmbeddedStore reopened = open(directory, 1000);
+		assertThat(readProducts(reopened)).containsExactly(product);
+		try (EmbeddedTransaction transaction = reopened.begin()) {
+			assertThat(new OrderEmbeddedRepository(transaction).findById(order.getId())).isEqualTo(order);
+		}
+		assertThatThrownBy(store::begin).isInstanceOf(IllegalStateException.class)
+				.hasMessage("The embedded store is closed");
+	}
+
+	@Test
+	@DisplayName("A torn record at the end of the log should be ignored")
+	void testRecoverShouldIgnoreATornRecord() throws IOException {
+		EmbeddedStore store = open(directory, 1000);
+		Product product = saveProduct(store, "product", 1.5);
+		Path copy = crashCopy();
+		List<Path> logs = WriteAheadLog.listFiles(copy);
+		Files.write(logs.get(logs.size() - 1), new byte[] { 0, 0, 0, 40, 1, 2, 3 }, StandardOpenOption.APPEND);
+
+		EmbeddedStore recovered = open(copy, 1000);
+		Product next = saveProduct(recovered, "next", 2);
+
+		assertThat(readProducts(recovered)).containsExactly(product, next);
+		assertThat(readProducts(open(crashCopy(copy), 1000))).containsExactly(product, next);
+	}
+
+	@Test
+	@DisplayName("Concurrent commits should all be durable")
+	void testConcurrentCommits() throws Exception {
+		EmbeddedStore store = open(directory, 1000);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < 400; i++) {
+			int index = i;
+			futures.add(executor.submit(() -> saveProduct(store, "product_" + index, index)));
+		}
+		for (Future<?> future : futures)
+			future.get(10, TimeUnit.SECONDS);
+		executor.shutdown();
+
+		assertThat(readProducts(open(crashCopy(), 1000))).hasSize(400);
+	}
+
+	@Test
+	@DisplayName("A commit whose sync fails should fail the store, which then refuses every transaction")
+	void testSyncFailureShouldFailTheStore() throws IOException {
+		AtomicBoolean failSync = new AtomicBoolean();
+		EmbeddedStore store = new EmbeddedStore(directory, 1000, channel -> {
+			if (failSync.get())
+				throw new IOException("No space left on device");
+			channel.force(false);
+		});
+		Product product = saveProduct(store, "product", 1.5);
+		Stock stock = saveStock(store, product, 10);
+		failSync.set(true);
+
+		assertThatThrownBy(() -> updateStock(store, stock.getId(), 7)).isInstanceOf(UncheckedIOException.class)
+				.hasRootCauseMessage("No space left on device");
+		assertThatThrownBy(store::begin).isInstanceOf(IllegalStateException.class)
+				.hasMessageStartingWith("The embedded store failed");
+		assertThatThrownBy(store::close).isInstanceOf(IOException.class);
+		assertThat(Files.exists(directory.resolve("snapshot.bin"))).isFalse();
+	}
+
+	@Test
+	@DisplayName("Reject a snapshot interval that is not positive")
+	void testConstructorWithInvalidSnapshotIntervalShouldThrow() {
+		assertThatThrownBy(() -> new EmbeddedStore(directory, 0)).isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Snapshot interval must be positive. Received: 0");
+	}
+
+	private EmbeddedStore open(Path path, int snapshotEveryTransactions) throws IOException {
+		EmbeddedStore store = new EmbeddedStore(path, snapshotEveryTransactions);
+		stores.add(store);
+		return store;
+	}
+
+	private Path crashCopy() throws IOException {
+		return crashCopy(directory);
+	}
+
+	// the files as a crash would leave them: only what was written so far
+	private Path crashCopy(Path source) throws IOException {
+		Path target = Files.createTempDirectory(root, "crash");
+		try (Stream<Path> files = Files.list(source)) {
+			for (Path file : files.collect(Collectors.toList()))
+				Files.copy(file, target.resolve(file.getFileName()));
+		}
+		return target;
+	}
+
+	private Product saveProduct(EmbeddedStore store, String name, double price) {
+		Product product = new Product(name, price);
+		try (EmbeddedTransaction transaction = store.begin()) {
+			new ProductEmbeddedRepository(transaction).save(product);
+			transaction.commit();
+		}
+		return product;
+	}
+
+	private Stock saveStock(EmbeddedStore store, Product product, int quantity) {
+		Stock stock = new Stock(product, quantity);
+		try (EmbeddedTransaction transaction = store.begin()) {
+			new StockEmbeddedRepository(transaction).save(stock);
+			transaction.commit();
+		}
+		return stock;
+	}
+
+	private Order saveOrder(EmbeddedStore store) {
+		Order order = new Order(OrderStatus.OPEN);
+		try (EmbeddedTransaction transaction = store.begin()) {
+			new OrderEmbeddedRepository(transaction).save(order);
+			transaction.commit();
+		}
+		return order;
+	}
+
+	private void updateStock(EmbeddedStore store, String stockId, int quantity) {
+		try (EmbeddedTransaction transaction = store.begin()) {
+			StockEmbeddedRepository repository = new StockEmbeddedRepository(transaction);
+			Stock stock = repository.findById(stockId);
+			stock.setQuantity(quantity);
+			repository.update(stock);
+			transaction.commit();
+		}
+	}
+
+	private int readQuantity(EmbeddedStore store, String stockId) {
+		try (EmbeddedTransaction transaction = store.begin()) {
+			return new StockEmbeddedRepository(transaction).findById(stockId).getQuantity();
+		}
+	}
+
+	private List<Product> readProducts(EmbeddedStore store) {
+		try (EmbeddedTransaction transaction = store.begin()) {
+			return new ProductEmbeddedRepository(transaction).findAll();
+		}
+	}
+
+}
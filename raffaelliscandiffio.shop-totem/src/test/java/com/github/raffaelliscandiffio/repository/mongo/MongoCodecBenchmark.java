@@ -0,0 +1,89 @@
+package com.github.raffaelliscandiffio.repository.mongo;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Function;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.model.Stock;
+
+/**
+ * Compares the time and the memory allocated to decode an entity from the bytes
+ * of a reply, through an intermediate Document as the repositories used to and
+ * through the codecs. Not a test: run the main method on a quiet machine.
+ */
+public class MongoCodecBenchmark {
+
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int ROUNDS = 10;
+	private static final int DECODES_PER_ROUND = 1_000_000;
+
+	private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec();
+	private static final ProductCodec PRODUCT_CODEC = new ProductCodec();
+	private static final StockCodec STOCK_CODEC = new StockCodec();
+
+	// keeps the results reachable so the decoding is not optimized away
+	private static Object sink;
+
+	public static void main(String[] args) {
+		RawBsonDocument product = new RawBsonDocument(new Document("_id", new ObjectId()).append("name", "Bread")
+				.append("price", 1.40), DOCUMENT_CODEC);
+		RawBsonDocument stock = new RawBsonDocument(new Document("_id", new ObjectId())
+				.append("product", new ObjectId().toHexString()).append("quantity", 100).append("shard", 0)
+				.append("version", 3L), DOCUMENT_CODEC);
+
+		run("Product via Document", product, MongoCodecBenchmark::productFromDocument);
+		run("Product via codec", product, raw -> raw.decode(PRODUCT_CODEC));
+		run("Stock via Document", stock, MongoCodecBenchmark::stockFromDocument);
+		run("Stock via codec", stock, raw -> raw.decode(STOCK_CODEC));
+	}
+
+	private static void run(String name, RawBsonDocument raw, Function<RawBsonDocument, Object> decoder) {
+		for (int i = 0; i < WARMUP_ROUNDS; i++)
+			measure(raw, decoder);
+		long bestNanos = Long.MAX_VALUE;
+		long bytes = 0;
+		for (int i = 0; i < ROUNDS; i++) {
+			long[] result = measure(raw, decoder);
+			bestNanos = Math.min(bestNanos, result[0]);
+			bytes = result[1];
+		}
+		System.out.printf("%-22s %8.1f ns/op %8d B/op%n", name, (double) bestNanos / DECODES_PER_ROUND,
+				bytes / DECODES_PER_ROUND);
+	}
+
+	// the elapsed nanoseconds and the bytes allocated by the round
+	private static long[] measure(RawBsonDocument raw, Function<RawBsonDocument, Object> decoder) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+		long start = System.nanoTime();
+		for (int i = 0; i < DECODES_PER_ROUND; i++)
+			sink = decoder.apply(raw);
+		long elapsed = System.nanoTime() - start;
+		return new long[] { elapsed, threads.getThreadAllocatedBytes(thread) - allocatedBefore };
+	}
+
+	private static Product productFromDocument(RawBsonDocument raw) {
+		Document d = raw.decode(DOCUMENT_CODEC);
+		Product p = new Product(d.getString("name"), d.getDouble("price"));
+		p.setId(d.get("_id").toString());
+		return p;
+	}
+
+	private static Stock stockFromDocument(RawBsonDocument raw) {
+		Document d = raw.decode(DOCUMENT_CODEC);
+		Product product = new Product(null, 0);
+		product.setId(d.getString("product"));
+		Stock stock = new Stock(product, d.getInteger("quantity"), d.getInteger("shard", 0));
+		stock.setId(d.get("_id").toString());
+		stock.setVersion(MongoVersion.read(d));
+		return stock;
+	}
+
+}
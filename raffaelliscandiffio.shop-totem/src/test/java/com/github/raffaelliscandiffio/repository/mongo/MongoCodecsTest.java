@@ -0,0 +1,133 @@
+package com.github.raffaelliscandiffio.repository.mongo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonObjectId;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.github.raffaelliscandiffio.model.Order;
+import com.github.raffaelliscandiffio.model.OrderItem;
+import com.github.raffaelliscandiffio.model.OrderStatus;
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.model.Stock;
+
+class MongoCodecsTest {
+
+	private static final String PRODUCT_ID = new ObjectId().toHexString();
+	private static final String ORDER_ID = new ObjectId().toHexString();
+
+	@Test
+	@DisplayName("A product should be written with the fields of the product documents and read back")
+	void testProductRoundTrip() {
+		Product product = new Product("Bread", 1.5);
+		product.setId(PRODUCT_ID);
+
+		BsonDocument encoded = encode(new ProductCodec(), product);
+		Product decoded = decode(new ProductCodec(), new Document("_id", new ObjectId(PRODUCT_ID))
+				.append("name", "Bread").append("price", 1.5));
+
+		assertThat(encoded).isEqualTo(BsonDocument
+				.parse("{_id: {$oid: '" + PRODUCT_ID + "'}, name: 'Bread', price: 1.5}"));
+		assertThat(decoded).isEqualTo(product);
+		assertThat(decoded.getName()).isEqualTo("Bread");
+		assertThat(decoded.getPrice()).isEqualTo(1.5);
+	}
+
+	@Test
+	@DisplayName("A stock should reference its product by id and default the fields written before they existed")
+	void testStockDecodeWithoutShardAndVersion() {
+		ObjectId id = new ObjectId();
+
+		Stock decoded = decode(new StockCodec(),
+				new Document("_id", id).append("product", PRODUCT_ID).append("quantity", 10).append("unknown", "x"));
+
+		assertThat(decoded.getId()).isEqualTo(id.toHexString());
+		assertThat(decoded.getProduct().getId()).isEqualTo(PRODUCT_ID);
+		assertThat(decoded.getQuantity()).isEqualTo(10);
+		assertThat(decoded.getShard()).isZero();
+		assertThat(decoded.getVersion()).isZero();
+	}
+
+	@Test
+	@DisplayName("An order should keep its totals, whatever the numeric type they were written with")
+	void testOrderRoundTrip() {
+		Order order = new Order(OrderStatus.CLOSED);
+		order.setId(ORDER_ID);
+		order.setVersion(3);
+		order.setTotal(7.5);
+		order.setLineCount(2);
+
+		Order decoded = decode(new OrderCodec(), encode(new OrderCodec(), order));
+		Order withIntegerTotal = decode(new OrderCodec(), new Document("_id", new ObjectId(ORDER_ID))
+				.append("status", "OPEN").append("total", 4).append("lineCount", 1L));
+
+		assertThat(decoded).isEqualTo(order);
+		assertThat(decoded.getVersion()).isEqualTo(3);
+		assertThat(decoded.getTotal()).isEqualTo(7.5);
+		assertThat(decoded.getLineCount()).isEqualTo(2);
+		assertThat(withIntegerTotal.getTotal()).isEqualTo(4.0);
+		assertThat(withIntegerTotal.getLineCount()).isEqualTo(1);
+	}
+
+	@Test
+	@DisplayName("An item should reference its product and its order by id")
+	void testOrderItemRoundTrip() {
+		Product product = new Product("Bread", 1.5);
+		product.setId(PRODUCT_ID);
+		Order order = new Order(OrderStatus.OPEN);
+		order.setId(ORDER_ID);
+		OrderItem item = new OrderItem(product, order, 4);
+		item.setId(new ObjectId().toHexString());
+		item.setVersion(1);
+
+		BsonDocument encoded = encode(new OrderItemCodec(), item);
+		OrderItem decoded = decode(new OrderItemCodec(), encoded);
+
+		assertThat(encoded.getString("product").getValue()).isEqualTo(PRODUCT_ID);
+		assertThat(encoded.getString("order").getValue()).isEqualTo(ORDER_ID);
+		assertThat(decoded.getId()).isEqualTo(item.getId());
+		assertThat(decoded.getProduct().getId()).isEqualTo(PRODUCT_ID);
+		assertThat(decoded.getOrder().getId()).isEqualTo(ORDER_ID);
+		assertThat(decoded.getQuantity()).isEqualTo(4);
+		assertThat(decoded.getVersion()).isEqualTo(1);
+	}
+
+	@Test
+	@DisplayName("A model inserted without an id should get a new ObjectId")
+	void testGenerateIdIfAbsent() {
+		ProductCodec codec = new ProductCodec();
+		Product product = new Product("Bread", 1.5);
+
+		assertThat(codec.documentHasId(product)).isFalse();
+		codec.generateIdIfAbsentFromDocument(product);
+
+		assertThat(ObjectId.isValid(product.getId())).isTrue();
+		assertThat(codec.getDocumentId(product)).isEqualTo(new BsonObjectId(new ObjectId(product.getId())));
+	}
+
+	private <T> BsonDocument encode(Codec<T> codec, T value) {
+		BsonDocument document = new BsonDocument();
+		codec.encode(new BsonDocumentWriter(document), value, EncoderContext.builder().build());
+		return document;
+	}
+
+	// decodes the bytes, as the driver does with the replies of the server
+	private <T> T decode(Codec<T> codec, Document document) {
+		return new RawBsonDocument(document, new DocumentCodec()).decode(codec);
+	}
+
+	private <T> T decode(Codec<T> codec, BsonDocument document) {
+		return new RawBsonDocument(document, new BsonDocumentCodec()).decode(codec);
+	}
+
+}
@@ -0,0 +1,85 @@
+package com.github.raffaelliscandiffio.repository.mongo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.model.Stock;
+
+class MongoIdentityMapTest {
+
+	private static final String ID = "1";
+
+	private MongoIdentityMap identityMap;
+	private AtomicInteger loads;
+
+	@BeforeEach
+	void setup() {
+		identityMap = new MongoIdentityMap();
+		loads = new AtomicInteger();
+	}
+
+	@Test
+	@DisplayName("An entity should be loaded once and then returned as the same instance")
+	void testFindShouldLoadOnce() {
+		Product first = identityMap.find(Product.class, ID, this::loadProduct);
+		Product second = identityMap.find(Product.class, ID, this::loadProduct);
+
+		assertThat(second).isSameAs(first);
+		assertThat(loads).hasValue(1);
+	}
+
+	@Test
+	@DisplayName("A missing entity should be looked up again, since it may be saved later")
+	void testFindShouldNotRememberMissingEntities() {
+		identityMap.find(Product.class, ID, id -> {
+			loads.incrementAndGet();
+			return null;
+		});
+		Product loaded = identityMap.find(Product.class, ID, this::loadProduct);
+
+		assertThat(loaded).isNotNull();
+		assertThat(loads).hasValue(2);
+	}
+
+	@Test
+	@DisplayName("A query result should be replaced by the instance already known")
+	void testRegisterShouldReturnTheKnownInstance() {
+		Product known = identityMap.find(Product.class, ID, this::loadProduct);
+		Product decoded = newProduct();
+
+		assertThat(identityMap.register(Product.class, ID, decoded)).isSameAs(known);
+		assertThat(identityMap.register(Product.class, "2", decoded)).isSameAs(decoded);
+	}
+
+	@Test
+	@DisplayName("Entities of different types with the same id should be kept apart")
+	void testEntitiesShouldBeKeptByType() {
+		Product product = identityMap.find(Product.class, ID, this::loadProduct);
+		Stock stock = new Stock(product, 10, 0);
+		identityMap.put(Stock.class, ID, stock);
+
+		assertThat(identityMap.get(Product.class, ID)).isSameAs(product);
+		assertThat(identityMap.get(Stock.class, ID)).isSameAs(stock);
+		identityMap.remove(Stock.class, ID);
+		assertThat(identityMap.get(Stock.class, ID)).isNull();
+		assertThat(identityMap.get(Product.class, ID)).isSameAs(product);
+	}
+
+	private Product loadProduct(String id) {
+		loads.incrementAndGet();
+		Product product = newProduct();
+		product.setId(id);
+		return product;
+	}
+
+	private Product newProduct() {
+		return new Product("Bread", 1.5);
+	}
+
+}
@@ -0,0 +1,191 @@
+package com.github.raffaelliscandiffio.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.raffaelliscandiffio.repository.embedded.EmbeddedStore;
+import com.github.raffaelliscandiffio.service.AsyncShoppingService;
+import com.github.raffaelliscandiffio.service.ShoppingService;
+import com.github.raffaelliscandiffio.transaction.embedded.TransactionManagerEmbedded;
+import com.github.raffaelliscandiffio.view.socket.TotemProtocol;
+
+class TotemServerTest {
+
+	private static final int MAX_TOTEMS = 2;
+	private static final int STOCK_QUANTITY = 10;
+
+	@TempDir
+	Path directory;
+
+	private EmbeddedStore store;
+	private ExecutorService executor;
+	private ShoppingService shoppingService;
+	private TotemServer server;
+	private String productId;
+
+	@BeforeEach
+	void setup() throws IOException {
+		store = new EmbeddedStore(directory);
+		executor = Executors.newSingleThreadExecutor();
+		shoppingService = new ShoppingService(new TransactionManagerEmbedded(store));
+		shoppingService.saveProductAndStock("Bread", 1.5, STOCK_QUANTITY);
+		productId = shoppingService.getAllProducts().get(0).getId();
+		server = new TotemServer(new AsyncShoppingService(shoppingService, executor), 0, MAX_TOTEMS);
+		server.start();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		server.close();
+		executor.shutdown();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+		store.close();
+	}
+
+	@Test
+	@DisplayName("A kiosk should shop, return and check out through its session")
+	void testKioskShouldShopThroughItsSession() throws IOException {
+		try (Kiosk kiosk = new Kiosk()) {
+			kiosk.expect("WELCOME");
+			kiosk.send("START");
+			assertThat(kiosk.expect("PRODUCTS")).containsExactly("PRODUCTS", "first", "false", productId, "Bread",
+					"1.5");
+
+			kiosk.send("BUY", productId, 3);
+			List<String> items = kiosk.expect("ITEMS");
+			assertThat(items).hasSize(6).endsWith(productId, "Bread", "1.5", "3");
+			assertThat(kiosk.expect("TOTAL")).containsExactly("TOTAL", "4.5", "1");
+
+			kiosk.send("RETURN", items.get(1), 1);
+			assertThat(kiosk.expect("ITEM_MODIFIED")).endsWith("2");
+			kiosk.send("CHECKOUT");
+			kiosk.expect("GOODBYE");
+		}
+
+		assertThat(shoppingService.getAvailableQuantity(productId)).isEqualTo(STOCK_QUANTITY - 2);
+	}
+
+	@Test
+	@DisplayName("Totems should have orders of their own, and a kiosk over the limit should be refused")
+	void testTotemsShouldHaveTheirOwnOrders() throws IOException {
+		try (Kiosk first = new Kiosk(); Kiosk second = new Kiosk()) {
+			first.send("START");
+			second.send("START");
+			String firstOrder = first.expect("ORDER_ID").get(1);
+			String secondOrder = second.expect("ORDER_ID").get(1);
+
+			assertThat(firstOrder).isNotEmpty().isNotEqualTo(secondOrder);
+			assertThat(server.getTotemCount()).isEqualTo(MAX_TOTEMS);
+			try (Kiosk refused = new Kiosk()) {
+				assertThat(refused.expect("BUSY")).containsExactly("BUSY", "All 2 totems are in use");
+			}
+		}
+	}
+
+	@Test
+	@DisplayName("A kiosk leaving with an open order should give its stock back")
+	void testKioskLeavingShouldCancelItsOrder() throws IOException {
+		try (Kiosk kiosk = new Kiosk()) {
+			kiosk.send("START");
+			kiosk.expect("ORDER_ID");
+			kiosk.send("BUY", productId, 4);
+			kiosk.expect("ITEMS");
+		}
+
+		await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> {
+			assertThat(shoppingService.getAvailableQuantity(productId)).isEqualTo(STOCK_QUANTITY);
+			assertThat(server.getTotemCount()).isZero();
+		});
+	}
+
+	@Test
+	@DisplayName("Invalid commands should be answered with an error, leaving the session open")
+	void testInvalidCommandsShouldBeAnsweredWithAnError() throws IOException {
+		try (Kiosk kiosk = new Kiosk()) {
+			kiosk.send("BUY", productId, 1);
+			assertThat(kiosk.expect("ERROR")).containsExactly("ERROR", "No order is open");
+			kiosk.send("START");
+			kiosk.expect("ORDER_ID");
+			kiosk.send("BUY", productId, "many");
+			assertThat(kiosk.expect("ERROR")).containsExactly("ERROR", "Quantity must be a number. Received: many");
+			kiosk.send("BUY", productId, -5);
+			assertThat(kiosk.expect("ERROR")).containsExactly("ERROR", "Quantity must be positive. Received: -5");
+			kiosk.send("BUY", productId, 0);
+			assertThat(kiosk.expect("ERROR")).containsExactly("ERROR", "Quantity must be positive. Received: 0");
+			kiosk.send("BUY", productId, 2);
+			String itemId = kiosk.expect("ITEMS").get(1);
+			kiosk.send("RETURN", itemId, 2);
+			assertThat(kiosk.expect("ERROR")).containsExactly("ERROR",
+					"Quantity to return must be less than the quantity of the item (2). Received: 2");
+			kiosk.send("REMOVE", "missing");
+			assertThat(kiosk.expect("ERROR")).containsExactly("ERROR", "Item not in the cart: missing");
+			kiosk.send("DANCE");
+			assertThat(kiosk.expect("ERROR")).containsExactly("ERROR", "Unknown command: DANCE");
+			kiosk.send("QUIT");
+			assertThat(kiosk.readLine()).isNull();
+		}
+
+		await().atMost(5, TimeUnit.SECONDS).untilAsserted(
+				() -> assertThat(shoppingService.getAvailableQuantity(productId)).isEqualTo(STOCK_QUANTITY));
+	}
+
+	private class Kiosk implements Closeable {
+
+		private final Socket socket;
+		private final BufferedReader reader;
+		private final PrintWriter writer;
+
+		Kiosk() throws IOException {
+			socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+			socket.setSoTimeout(5000);
+			reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+		}
+
+		void send(Object... fields) {
+			writer.println(TotemProtocol.encode(fields));
+		}
+
+		// skips the messages of other kinds
+		List<String> expect(String kind) throws IOException {
+			for (String line = readLine(); line != null; line = readLine()) {
+				List<String> message = TotemProtocol.decode(line);
+				if (message.get(0).equals(kind))
+					return message;
+			}
+			throw new IOException("Closed before " + kind);
+		}
+
+		String readLine() throws IOException {
+			return reader.readLine();
+		}
+
+		@Override
+		public void close() throws IOException {
+			socket.close();
+		}
+
+	}
+
+}
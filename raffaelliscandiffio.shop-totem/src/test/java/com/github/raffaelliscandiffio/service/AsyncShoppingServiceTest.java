@@ -0,0 +1,162 @@
+package com.github.raffaelliscandiffio.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.github.raffaelliscandiffio.exception.TransactionException;
+import com.github.raffaelliscandiffio.exception.TransactionTimeoutException;
+import com.github.raffaelliscandiffio.model.Order;
+import com.github.raffaelliscandiffio.model.OrderStatus;
+
+@ExtendWith(MockitoExtension.class)
+class AsyncShoppingServiceTest {
+
+	private static final String ORDER_ID = "order_id";
+
+	@Mock
+	private ShoppingService shoppingService;
+
+	@Test
+	@DisplayName("Complete the future with the value returned by the service")
+	void testOperationCompletesWithServiceResult() {
+		Order order = new Order(OrderStatus.OPEN);
+		when(shoppingService.openNewOrder()).thenReturn(order);
+		AsyncShoppingService asyncService = new AsyncShoppingService(shoppingService, Runnable::run);
+
+		assertThat(asyncService.openNewOrder().join()).isSameAs(order);
+	}
+
+	@Test
+	@DisplayName("Complete the future exceptionally with the TransactionException thrown by the service")
+	void testOperationPropagatesTransactionException() {
+		TransactionException exception = new TransactionException("error");
+		when(shoppingService.getOrderItems(ORDER_ID)).thenThrow(exception);
+		AsyncShoppingService asyncService = new AsyncShoppingService(shoppingService, Runnable::run);
+
+		CompletableFuture<?> future = asyncService.getOrderItems(ORDER_ID);
+
+		assertThatThrownBy(future::join).isInstanceOf(CompletionException.class).hasCause(exception);
+		assertThat(AsyncShoppingService.unwrap(catchJoin(future))).isSameAs(exception);
+	}
+
+	@Test
+	@DisplayName("Run the operation on the given executor")
+	void testOperationRunsOnExecutor() {
+		List<Runnable> submitted = new ArrayList<>();
+		AsyncShoppingService asyncService = new AsyncShoppingService(shoppingService, submitted::add);
+
+		CompletableFuture<Void> future = asyncService.closeOrder(ORDER_ID);
+
+		assertThat(future).isNotDone();
+		verifyNoInteractions(shoppingService);
+		submitted.get(0).run();
+		assertThat(future).isCompleted();
+		verify(shoppingService).closeOrder(ORDER_ID);
+	}
+
+	@Test
+	@DisplayName("Fail with TransactionException when the executor rejects the operation")
+	void testRejectedOperation() {
+		AsyncShoppingService asyncService = new AsyncShoppingService(shoppingService, runnable -> {
+			throw new RejectedExecutionException();
+		});
+
+		CompletableFuture<Void> future = asyncService.deleteOrder(ORDER_ID);
+
+		assertThat(AsyncShoppingService.unwrap(catchJoin(future))).isInstanceOf(TransactionException.class)
+				.hasMessage("Operation rejected: the service is shutting down");
+	}
+
+	@Test
+	@DisplayName("Reject a negative timeout")
+	void testNegativeTimeout() {
+		assertThatThrownBy(() -> new AsyncShoppingService(shoppingService, Runnable::run, -1))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Timeout must be non-negative. Received: -1");
+	}
+
+	@Nested
+	@DisplayName("Cancellation and timeout")
+	class CancellationTests {
+
+		@Test
+		@DisplayName("Skip an operation cancelled before it starts")
+		void testCancelledOperationIsSkipped() {
+			List<Runnable> submitted = new ArrayList<>();
+			AsyncShoppingService asyncService = new AsyncShoppingService(shoppingService, submitted::add);
+
+			CompletableFuture<Void> future = asyncService.deleteOrder(ORDER_ID);
+			future.cancel(false);
+			submitted.get(0).run();
+
+			assertThat(future).isCancelled();
+			verifyNoInteractions(shoppingService);
+		}
+
+		@Test
+		@DisplayName("Fail with TransactionTimeoutException when the operation does not complete in time")
+		void testTimeout() throws InterruptedException {
+			CountDownLatch release = new CountDownLatch(1);
+			when(shoppingService.openNewOrder()).thenAnswer(invocation -> {
+				release.await(5, TimeUnit.SECONDS);
+				return new Order(OrderStatus.OPEN);
+			});
+			ExecutorService executor = Executors.newSingleThreadExecutor();
+			try {
+				AsyncShoppingService asyncService = new AsyncShoppingService(shoppingService, executor, 50);
+
+				CompletableFuture<Order> future = asyncService.openNewOrder();
+
+				assertThat(AsyncShoppingService.unwrap(catchJoin(future)))
+						.isInstanceOf(TransactionTimeoutException.class)
+						.hasMessage("Operation timed out after 50 ms");
+			} finally {
+				release.countDown();
+				executor.shutdown();
+				executor.awaitTermination(5, TimeUnit.SECONDS);
+			}
+		}
+
+		@Test
+		@DisplayName("Skip an operation that timed out while waiting in the executor queue")
+		void testTimedOutOperationIsSkipped() throws InterruptedException {
+			List<Runnable> submitted = new ArrayList<>();
+			AsyncShoppingService asyncService = new AsyncShoppingService(shoppingService, submitted::add, 10);
+
+			CompletableFuture<Void> future = asyncService.closeOrder(ORDER_ID);
+			assertThat(AsyncShoppingService.unwrap(catchJoin(future))).isInstanceOf(TransactionTimeoutException.class);
+			submitted.get(0).run();
+
+			verifyNoInteractions(shoppingService);
+		}
+	}
+
+	private static Throwable catchJoin(CompletableFuture<?> future) {
+		try {
+			future.join();
+		} catch (CompletionException e) {
+			return e;
+		}
+		throw new AssertionError("Expected the future to complete exceptionally");
+	}
+
+}
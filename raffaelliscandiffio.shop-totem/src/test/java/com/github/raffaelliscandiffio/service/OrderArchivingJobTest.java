@@ -0,0 +1,116 @@
+package com.github.raffaelliscandiffio.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.github.raffaelliscandiffio.repository.OrderArchiver;
+
+@ExtendWith(MockitoExtension.class)
+class OrderArchivingJobTest {
+
+	private static final long RETENTION_SECONDS = 3600;
+	private static final int BATCH_SIZE = 2;
+	private static final long INTERVAL_MILLIS = 60000;
+
+	@Mock
+	private OrderArchiver archiver;
+
+	private OrderArchivingJob job;
+
+	@BeforeEach
+	void setup() {
+		job = new OrderArchivingJob(archiver, RETENTION_SECONDS, BATCH_SIZE, INTERVAL_MILLIS);
+	}
+
+	@AfterEach
+	void tearDown() {
+		job.close();
+	}
+
+	@Nested
+	@DisplayName("Test 'archiveDueOrders'")
+	class ArchiveDueOrdersTests {
+
+		@Test
+		@DisplayName("Batches should be moved until one comes back short")
+		void testBatchesShouldBeMovedUntilOneIsShort() {
+			when(archiver.archive(RETENTION_SECONDS, BATCH_SIZE)).thenReturn(2, 2, 1);
+
+			assertThat(job.archiveDueOrders()).isEqualTo(5);
+			verify(archiver, times(3)).archive(RETENTION_SECONDS, BATCH_SIZE);
+		}
+
+		@Test
+		@DisplayName("Nothing due should take a single batch")
+		void testNothingDueShouldTakeASingleBatch() {
+			when(archiver.archive(RETENTION_SECONDS, BATCH_SIZE)).thenReturn(0);
+
+			assertThat(job.archiveDueOrders()).isZero();
+			verify(archiver, times(1)).archive(RETENTION_SECONDS, BATCH_SIZE);
+		}
+
+		@Test
+		@DisplayName("A failed batch should end the run, keeping the batches already moved")
+		void testFailedBatchShouldEndTheRun() {
+			when(archiver.archive(RETENTION_SECONDS, BATCH_SIZE)).thenReturn(2)
+					.thenThrow(new IllegalStateException("lost connection"));
+
+			assertThat(job.archiveDueOrders()).isEqualTo(2);
+			verify(archiver, times(2)).archive(RETENTION_SECONDS, BATCH_SIZE);
+		}
+
+		@Test
+		@DisplayName("A closed job should stop after the batch running")
+		void testClosedJobShouldStop() {
+			when(archiver.archive(RETENTION_SECONDS, BATCH_SIZE)).thenReturn(2);
+			job.close();
+
+			assertThat(job.archiveDueOrders()).isEqualTo(2);
+			verify(archiver, times(1)).archive(RETENTION_SECONDS, BATCH_SIZE);
+		}
+
+	}
+
+	@Nested
+	@DisplayName("Test the constructor")
+	class ConstructorTests {
+
+		@Test
+		@DisplayName("A non positive retention should be refused")
+		void testNonPositiveRetentionShouldBeRefused() {
+			assertThatThrownBy(() -> new OrderArchivingJob(archiver, 0, BATCH_SIZE, INTERVAL_MILLIS))
+					.isInstanceOf(IllegalArgumentException.class)
+					.hasMessage("Retention must be positive. Received: 0");
+		}
+
+		@Test
+		@DisplayName("A non positive batch size should be refused")
+		void testNonPositiveBatchSizeShouldBeRefused() {
+			assertThatThrownBy(() -> new OrderArchivingJob(archiver, RETENTION_SECONDS, -1, INTERVAL_MILLIS))
+					.isInstanceOf(IllegalArgumentException.class)
+					.hasMessage("Batch size must be positive. Received: -1");
+		}
+
+		@Test
+		@DisplayName("A non positive interval should be refused")
+		void testNonPositiveIntervalShouldBeRefused() {
+			assertThatThrownBy(() -> new OrderArchivingJob(archiver, RETENTION_SECONDS, BATCH_SIZE, 0))
+					.isInstanceOf(IllegalArgumentException.class)
+					.hasMessage("Interval must be positive. Received: 0");
+		}
+
+	}
+
+}
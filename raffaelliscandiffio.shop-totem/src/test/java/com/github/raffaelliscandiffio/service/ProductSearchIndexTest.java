@@ -0,0 +1,143 @@
+package com.github.raffaelliscandiffio.service;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.github.raffaelliscandiffio.model.Product;
+
+class ProductSearchIndexTest {
+
+	private ProductSearchIndex index;
+
+	@BeforeEach
+	void setup() {
+		index = new ProductSearchIndex();
+	}
+
+	@Test
+	@DisplayName("Find the products whose name contains the query, ignoring case")
+	void testSearchShouldMatchSubstringsIgnoringCase() {
+		Product pasta = newProduct("1", "Pasta");
+		Product pastry = newProduct("2", "Pastry");
+		Product bread = newProduct("3", "Bread");
+		index.addAll(asList(pasta, pastry, bread));
+
+		assertThat(index.search("AST", 10)).containsExactlyInAnyOrder(pasta, pastry);
+		assertThat(index.search("a", 10)).containsExactlyInAnyOrder(pasta, pastry, bread);
+		assertThat(index.search("rice", 10)).isEmpty();
+	}
+
+	@Test
+	@DisplayName("Queries longer than a trigram should not match names containing only their trigrams")
+	void testSearchShouldVerifyLongQueries() {
+		Product match = newProduct("1", "Whole wheat");
+		Product trigramsOnly = newProduct("2", "le wheat hole");
+		index.addAll(asList(match, trigramsOnly));
+
+		assertThat(index.search("ole whe", 10)).containsExactly(match);
+	}
+
+	@Test
+	@DisplayName("Rank exact matches, then prefixes, then word prefixes, then other substrings")
+	void testSearchShouldRankMatches() {
+		Product substring = newProduct("1", "Spasta");
+		Product wordPrefix = newProduct("2", "Fresh pasta");
+		Product longPrefix = newProduct("3", "Pasta sauce");
+		Product shortPrefix = newProduct("4", "Pastas");
+		Product exact = newProduct("5", "pasta");
+		index.addAll(asList(substring, wordPrefix, longPrefix, shortPrefix, exact));
+
+		assertThat(index.search("pasta", 10)).containsExactly(exact, shortPrefix, longPrefix, wordPrefix, substring);
+		assertThat(index.search("pasta", 2)).containsExactly(exact, shortPrefix);
+	}
+
+	@Test
+	@DisplayName("Products already indexed and products without id are not indexed again")
+	void testAddShouldIgnoreDuplicatesAndProductsWithoutId() {
+		Product pasta = newProduct("1", "Pasta");
+		index.add(pasta);
+		index.add(pasta);
+		index.add(new Product("Pasta", 1.0));
+
+		assertThat(index.size()).isEqualTo(1);
+		assertThat(index.search("pasta", 10)).containsExactly(pasta);
+	}
+
+	@Test
+	@DisplayName("A product put again should be found by its new name only")
+	void testPutShouldReplaceTheProductWithTheSameId() {
+		Product pasta = newProduct("1", "Pasta");
+		Product bread = newProduct("2", "Bread");
+		index.addAll(asList(pasta, bread));
+		Product renamed = newProduct("1", "Fresh bread");
+
+		index.put(renamed);
+
+		assertThat(index.size()).isEqualTo(2);
+		assertThat(index.search("pasta", 10)).isEmpty();
+		assertThat(index.search("bread", 10)).containsExactly(bread, renamed);
+	}
+
+	@Test
+	@DisplayName("A product put again with the same name should be returned as put")
+	void testPutWithTheSameNameShouldReplaceTheProduct() {
+		index.add(newProduct("1", "Pasta"));
+		Product cheaper = new Product("Pasta", 0.5);
+		cheaper.setId("1");
+
+		index.put(cheaper);
+
+		assertThat(index.search("pasta", 10)).singleElement().isSameAs(cheaper);
+	}
+
+	@Test
+	@DisplayName("A product removed should no longer be found, the others still should")
+	void testRemoveShouldDropTheProduct() {
+		Product pasta = newProduct("1", "Pasta");
+		Product pastry = newProduct("2", "Pastry");
+		Product pasty = newProduct("3", "Pasty");
+		index.addAll(asList(pasta, pastry, pasty));
+
+		index.remove("1");
+		assertThat(index.size()).isEqualTo(2);
+		assertThat(index.search("past", 10)).containsExactly(pasty, pastry);
+		// the index is built again once most of it is removed
+		index.remove("3");
+		index.remove("missing");
+		assertThat(index.size()).isEqualTo(1);
+		assertThat(index.search("past", 10)).containsExactly(pastry);
+		index.put(pasta);
+		assertThat(index.search("past", 10)).containsExactly(pasta, pastry);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "", "  " })
+	@DisplayName("A blank query finds nothing")
+	void testSearchWhenQueryIsBlankShouldReturnEmpty(String query) {
+		index.add(newProduct("1", "Pasta"));
+
+		assertThat(index.search(query, 10)).isEmpty();
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 0, -1 })
+	@DisplayName("When the limit is not positive, throw exception")
+	void testSearchWhenLimitIsNotPositiveShouldThrow(int limit) {
+		assertThatThrownBy(() -> index.search("pasta", limit)).isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Limit must be positive. Received: " + limit);
+	}
+
+	private Product newProduct(String id, String name) {
+		Product product = new Product(name, 1.0);
+		product.setId(id);
+		return product;
+	}
+
+}
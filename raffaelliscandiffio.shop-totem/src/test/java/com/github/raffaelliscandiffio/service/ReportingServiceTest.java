@@ -0,0 +1,86 @@
+package com.github.raffaelliscandiffio.service;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.github.raffaelliscandiffio.model.ProductSales;
+import com.github.raffaelliscandiffio.repository.ReportingRepository;
+
+@ExtendWith(MockitoExtension.class)
+class ReportingServiceTest {
+
+	private static final ProductSales BREAD = new ProductSales("product_id_1", "Bread", 10, 14.0);
+	private static final ProductSales PIZZA = new ProductSales("product_id_2", "Pizza", 4, 8.8);
+
+	@Mock
+	private ReportingRepository reportingRepository;
+
+	private ReportingService reportingService;
+
+	@BeforeEach
+	void setup() {
+		reportingService = new ReportingService(reportingRepository);
+	}
+
+	@Test
+	@DisplayName("Return the top sellers computed by the repository")
+	void testGetTopSellers() {
+		when(reportingRepository.findTopSellers(2)).thenReturn(asList(BREAD, PIZZA));
+
+		assertThat(reportingService.getTopSellers(2)).containsExactly(BREAD, PIZZA);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 0, -1 })
+	@DisplayName("When the limit is not positive, do not query and throw exception")
+	void testGetTopSellersWhenLimitIsNotPositiveShouldThrow(int limit) {
+		assertThatThrownBy(() -> reportingService.getTopSellers(limit)).isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Limit must be positive. Received: " + limit);
+		verifyNoInteractions(reportingRepository);
+	}
+
+	@Test
+	@DisplayName("Pass the revenue of each product to the consumer and close the stream")
+	void testForEachRevenueByProduct() {
+		AtomicBoolean closed = new AtomicBoolean();
+		when(reportingRepository.streamRevenueByProduct())
+				.thenReturn(Stream.of(BREAD, PIZZA).onClose(() -> closed.set(true)));
+		List<ProductSales> consumed = new ArrayList<>();
+
+		reportingService.forEachRevenueByProduct(consumed::add);
+
+		assertThat(consumed).containsExactly(BREAD, PIZZA);
+		assertThat(closed).isTrue();
+	}
+
+	@Test
+	@DisplayName("Close the stream when the consumer throws")
+	void testForEachRevenueByProductWhenTheConsumerThrowsShouldCloseTheStream() {
+		AtomicBoolean closed = new AtomicBoolean();
+		when(reportingRepository.streamRevenueByProduct())
+				.thenReturn(Stream.of(BREAD, PIZZA).onClose(() -> closed.set(true)));
+
+		assertThatThrownBy(() -> reportingService.forEachRevenueByProduct(sales -> {
+			throw new IllegalStateException("consumer failure");
+		})).isInstanceOf(IllegalStateException.class).hasMessage("consumer failure");
+		assertThat(closed).isTrue();
+	}
+
+}
@@ -3,10 +3,16 @@ package com.github.raffaelliscandiffio.service;
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
 import static org.mockito.AdditionalAnswers.answer;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -14,6 +20,7 @@ import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -23,12 +30,15 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import com.github.raffaelliscandiffio.exception.RepositoryException;
+import com.github.raffaelliscandiffio.exception.TransactionConflictException;
+import com.github.raffaelliscandiffio.ledger.SalesLedger;
+import com.github.raffaelliscandiffio.ledger.SalesRecord;
 import com.github.raffaelliscandiffio.model.Order;
 import com.github.raffaelliscandiffio.model.OrderItem;
 import com.github.raffaelliscandiffio.model.OrderStatus;
@@ -45,12 +55,15 @@ import com.github.raffaelliscandiffio.transaction.TransactionManager;
 class ShoppingServiceTest {
 
 	private static final String PRODUCT_NAME = "product_name";
+	private static final int CONFLICT_RETRIES = 2;
 
 	private static final OrderStatus OPEN = OrderStatus.OPEN;
 
 	private static final String ORDER_ID = "order_id";
 	private static final String ITEM_ID_1 = "item_id_1";
 	private static final String STOCK_ID_1 = "stock_id_1";
+	private static final String STOCK_ID_2 = "stock_id_2";
+	private static final String STOCK_ID_3 = "stock_id_3";
 	private static final String PRODUCT_ID_1 = "product_id_1";
 
 	@Mock
@@ -68,12 +81,16 @@ class ShoppingServiceTest {
 	@Mock
 	private TransactionManager transactionManager;
 
-	@InjectMocks
+	@Mock
+	private SalesLedger salesLedger;
+
 	private ShoppingService shoppingService;
 
 	@BeforeEach
 	void setup() {
-		when(transactionManager.runInTransaction(any())).thenAnswer(answer((TransactionCode<?> code) -> code
+		shoppingService = ShoppingService.builder(transactionManager).conflictRetries(CONFLICT_RETRIES).build();
+		// lenient, the invalid arguments are refused before any transaction
+		lenient().when(transactionManager.runInTransaction(any())).thenAnswer(answer((TransactionCode<?> code) -> code
 				.apply(productRepository, stockRepository, orderRepository, itemRepository)));
 	}
 
@@ -97,6 +114,161 @@ class ShoppingServiceTest {
 		assertThat(shoppingService.getAllProducts()).isEqualTo(products);
 	}
 
+	@Test
+	@DisplayName("Return the page of Products after the given id from the repository")
+	void testGetProductsPage() {
+		List<Product> products = asList(new Product("product_2", 2.0));
+		when(productRepository.findPage(PRODUCT_ID_1, 1)).thenReturn(products);
+
+		assertThat(shoppingService.getProductsPage(PRODUCT_ID_1, 1)).isEqualTo(products);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 0, -1 })
+	@DisplayName("When the page limit is not positive, do not query and throw exception")
+	void testGetProductsPageWhenLimitIsNotPositiveShouldThrow(int limit) {
+		assertThatThrownBy(() -> shoppingService.getProductsPage(null, limit))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Limit must be positive. Received: " + limit);
+		verifyNoInteractions(productRepository);
+	}
+
+	@Test
+	@DisplayName("The builder should refuse negative conflict retries")
+	void testBuilderShouldRefuseNegativeConflictRetries() {
+		assertThatThrownBy(() -> ShoppingService.builder(transactionManager).conflictRetries(-1))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Conflict retries must not be negative. Received: -1");
+	}
+
+	@Test
+	@DisplayName("Without a catalog transaction manager the catalog should be read through the main one")
+	void testCatalogReadsWithoutCatalogTransactionManagerShouldUseTheMainOne() {
+		when(productRepository.findAll()).thenReturn(asList());
+
+		ShoppingService.builder(transactionManager).build().getAllProducts();
+		verify(transactionManager).runInTransaction(any());
+	}
+
+	@Nested
+	@DisplayName("Test cases for the catalog reads")
+	class CatalogReadsTests {
+
+		@Mock
+		private TransactionManager catalogTransactionManager;
+
+		@BeforeEach
+		void setup() {
+			shoppingService = ShoppingService.builder(transactionManager)
+					.catalogTransactionManager(catalogTransactionManager).build();
+			when(catalogTransactionManager.runInTransaction(any())).thenAnswer(answer((TransactionCode<?> code) -> code
+					.apply(productRepository, stockRepository, orderRepository, itemRepository)));
+		}
+
+		@Test
+		@DisplayName("The catalog should be read through the catalog transaction manager, the rest through the main one")
+		void testCatalogReadsShouldUseTheCatalogTransactionManager() {
+			List<Product> products = asList(new Product("product_1", 1.0));
+			when(productRepository.findAll()).thenReturn(products);
+			when(productRepository.findPage(null, 1)).thenReturn(products);
+
+			assertThat(shoppingService.getAllProducts()).isEqualTo(products);
+			assertThat(shoppingService.getProductsPage(null, 1)).isEqualTo(products);
+			verify(catalogTransactionManager, times(2)).runInTransaction(any());
+			verifyNoInteractions(transactionManager);
+
+			shoppingService.openNewOrder();
+			verify(transactionManager).runInTransaction(any());
+			verifyNoMoreInteractions(catalogTransactionManager);
+		}
+
+	}
+
+	@Nested
+	@DisplayName("Test cases for 'searchProducts'")
+	class SearchProductsTests {
+
+		@Test
+		@DisplayName("Index the catalog page by page on the first search only")
+		void testSearchProductsShouldLoadTheCatalogOnce() {
+			Product pasta = newTestProductWithId(PRODUCT_ID_1, "Pasta");
+			when(productRepository.findPage(null, 500)).thenReturn(asList(pasta));
+
+			assertThat(shoppingService.searchProducts("pas", 10)).containsExactly(pasta);
+			assertThat(shoppingService.searchProducts("bread", 10)).isEmpty();
+			verify(productRepository, times(1)).findPage(null, 500);
+			verifyNoMoreInteractions(productRepository);
+		}
+
+		@Test
+		@DisplayName("Keep paging through the catalog while the pages are full")
+		void testSearchProductsShouldFollowFullPages() {
+			List<Product> fullPage = new ArrayList<>();
+			for (int i = 0; i < 500; i++)
+				fullPage.add(newTestProductWithId("id_" + i, "Pasta " + i));
+			Product bread = newTestProductWithId("id_500", "Bread");
+			when(productRepository.findPage(null, 500)).thenReturn(fullPage);
+			when(productRepository.findPage("id_499", 500)).thenReturn(asList(bread));
+
+			assertThat(shoppingService.searchProducts("bread", 10)).containsExactly(bread);
+		}
+
+		@Test
+		@DisplayName("A product saved through the service can be found by the next search")
+		void testSearchProductsShouldFindSavedProducts() {
+			when(productRepository.findPage(null, 500)).thenReturn(asList());
+			shoppingService.searchProducts("pasta", 10);
+			doAnswer(answer((Product product) -> {
+				product.setId(PRODUCT_ID_1);
+				return null;
+			})).when(productRepository).save(any());
+
+			shoppingService.saveProductAndStock("Pasta", 1.0, 1);
+
+			assertThat(shoppingService.searchProducts("pasta", 10)).extracting(Product::getId)
+					.containsExactly(PRODUCT_ID_1);
+		}
+
+		@Test
+		@DisplayName("A product is not indexed when saving it fails")
+		void testSearchProductsShouldNotFindProductsWhenSaveFails() {
+			when(productRepository.findPage(null, 500)).thenReturn(asList());
+			doAnswer(answer((Product product) -> {
+				product.setId(PRODUCT_ID_1);
+				return null;
+			})).when(productRepository).save(any());
+			doThrow(new RepositoryException("error")).when(stockRepository).save(any());
+
+			assertThatThrownBy(() -> shoppingService.saveProductAndStock("Pasta", 1.0, 1))
+					.isInstanceOf(RepositoryException.class);
+			assertThat(shoppingService.searchProducts("pasta", 10)).isEmpty();
+		}
+
+		@Test
+		@DisplayName("The products changed and removed by others should be found as the feed tells them")
+		void testSearchProductsShouldFollowTheCatalogFeed() {
+			when(productRepository.findPage(null, 500))
+					.thenReturn(asList(newTestProductWithId(PRODUCT_ID_1, "Pasta")));
+			StockAvailability availability = new StockAvailability();
+			shoppingService.watchCatalog(availability);
+			assertThat(shoppingService.searchProducts("pasta", 10)).hasSize(1);
+			Product renamed = newTestProductWithId(PRODUCT_ID_1, "Bread");
+			Product added = newTestProductWithId("product_id_2", "Pastry");
+
+			availability.productChanged(renamed);
+			availability.productChanged(added);
+			assertThat(shoppingService.searchProducts("pas", 10)).containsExactly(added);
+			assertThat(shoppingService.searchProducts("bread", 10)).containsExactly(renamed);
+			availability.productRemoved(added.getId());
+			assertThat(shoppingService.searchProducts("pas", 10)).isEmpty();
+		}
+
+		private Product newTestProductWithId(String id, String name) {
+			Product product = new Product(name, 1.0);
+			product.setId(id);
+			return product;
+		}
+	}
+
 	@Nested
 	@DisplayName("Test cases for 'deleteOrder'")
 	class DeleteOrderTests {
@@ -199,6 +371,33 @@ class ShoppingServiceTest {
 
 	}
 
+	@Nested
+	@DisplayName("Test cases for 'getOrder'")
+	class GetOrderTests {
+
+		@Test
+		@DisplayName("Return the Order with its running total")
+		void testGetOrder() {
+			Order order = newTestOrderWithId(ORDER_ID, OPEN);
+			order.setTotal(7.5);
+			order.setLineCount(2);
+			when(orderRepository.findById(ORDER_ID)).thenReturn(order);
+
+			Order found = shoppingService.getOrder(ORDER_ID);
+
+			assertThat(found.getTotal()).isEqualTo(7.5);
+			assertThat(found.getLineCount()).isEqualTo(2);
+			verifyNoInteractions(itemRepository);
+		}
+
+		@Test
+		@DisplayName("Throw exception when the Order is not found")
+		void testGetOrderWhenNotFoundShouldThrow() {
+			assertThatThrownBy(() -> shoppingService.getOrder(ORDER_ID)).isInstanceOf(RepositoryException.class)
+					.hasMessage("Order not found: " + ORDER_ID);
+		}
+	}
+
 	@Nested
 	@DisplayName("Test cases for 'closeOrder'")
 	class CloseOrderTests {
@@ -213,6 +412,28 @@ class ShoppingServiceTest {
 			verify(transactionManager, times(1)).runInTransaction(any());
 		}
 
+		@Test
+		@DisplayName("Close the Order should run the transaction again when a version conflict occurs")
+		void testCloseOrderWhenAConflictOccursShouldRetry() {
+			when(orderRepository.findById(ORDER_ID)).thenThrow(new TransactionConflictException("conflict"))
+					.thenReturn(newTestOrderWithId(ORDER_ID, OPEN));
+
+			shoppingService.closeOrder(ORDER_ID);
+			verify(orderRepository, times(1)).update(newTestOrderWithId(ORDER_ID, OrderStatus.CLOSED));
+			verify(transactionManager, times(2)).runInTransaction(any());
+		}
+
+		@Test
+		@DisplayName("Close the Order should give up and rethrow when the conflicts exceed the retries")
+		void testCloseOrderWhenConflictsExceedTheRetriesShouldThrow() {
+			when(orderRepository.findById(ORDER_ID)).thenThrow(new TransactionConflictException("conflict"));
+
+			assertThatThrownBy(() -> shoppingService.closeOrder(ORDER_ID))
+					.isInstanceOf(TransactionConflictException.class).hasMessage("conflict");
+			verify(orderRepository, never()).update(any());
+			verify(transactionManager, times(CONFLICT_RETRIES + 1)).runInTransaction(any());
+		}
+
 		@Test
 		@DisplayName("In close Order, throw exception when the order does not exist")
 		void testCloseOrderWhenTheOrderDoesNotExistShouldThrow() {
@@ -222,6 +443,66 @@ class ShoppingServiceTest {
 			verify(orderRepository, never()).update(any());
 		}
 
+		@Test
+		@DisplayName("Close the Order should append its items to the sales ledger after the transaction")
+		void testCloseOrderShouldAppendTheSalesRecordAfterTheTransaction() {
+			shoppingService = ShoppingService.builder(transactionManager).conflictRetries(CONFLICT_RETRIES)
+					.salesLedger(salesLedger).build();
+			Order storedOrder = newTestOrderWithId(ORDER_ID, OPEN);
+			Product product = newTestDefaultProductWithId(PRODUCT_ID_1);
+			when(orderRepository.findById(ORDER_ID)).thenReturn(storedOrder);
+			when(itemRepository.getListByOrderId(ORDER_ID))
+					.thenReturn(asList(newTestOrderItemWithId(ITEM_ID_1, product, storedOrder, 2)));
+
+			long before = System.currentTimeMillis();
+			shoppingService.closeOrder(ORDER_ID);
+			ArgumentCaptor<SalesRecord> salesRecord = ArgumentCaptor.forClass(SalesRecord.class);
+			InOrder inOrder = inOrder(transactionManager, salesLedger);
+			inOrder.verify(transactionManager).runInTransaction(any());
+			inOrder.verify(salesLedger).append(salesRecord.capture());
+			assertThat(salesRecord.getValue().getOrderId()).isEqualTo(ORDER_ID);
+			assertThat(salesRecord.getValue().getTimestamp()).isBetween(before, System.currentTimeMillis());
+			assertThat(salesRecord.getValue().getLines())
+					.containsExactly(new SalesRecord.Line(PRODUCT_ID_1, 2, product.getPrice()));
+		}
+
+		@Test
+		@DisplayName("Close the Order should not append to the sales ledger when the transaction fails")
+		void testCloseOrderWhenTheTransactionFailsShouldNotAppendTheSalesRecord() {
+			shoppingService = ShoppingService.builder(transactionManager).conflictRetries(CONFLICT_RETRIES)
+					.salesLedger(salesLedger).build();
+
+			assertThatThrownBy(() -> shoppingService.closeOrder(ORDER_ID)).isInstanceOf(RepositoryException.class);
+			verifyNoInteractions(salesLedger);
+		}
+
+		@Test
+		@DisplayName("Close the Order should succeed even when the sales ledger cannot take the record")
+		void testCloseOrderWhenTheSalesLedgerFailsShouldNotThrow() {
+			shoppingService = ShoppingService.builder(transactionManager).conflictRetries(CONFLICT_RETRIES)
+					.salesLedger(salesLedger).build();
+			when(orderRepository.findById(ORDER_ID)).thenReturn(newTestOrderWithId(ORDER_ID, OPEN));
+			doThrow(new IllegalStateException("The sales ledger is closed")).when(salesLedger).append(any());
+
+			shoppingService.closeOrder(ORDER_ID);
+			verify(orderRepository).update(newTestOrderWithId(ORDER_ID, OrderStatus.CLOSED));
+		}
+
+		@Test
+		@DisplayName("Close the Order again should neither update it nor append a second sales record")
+		void testCloseOrderTwiceShouldAppendOneSalesRecord() {
+			shoppingService = ShoppingService.builder(transactionManager).conflictRetries(CONFLICT_RETRIES)
+					.salesLedger(salesLedger).build();
+			Order storedOrder = newTestOrderWithId(ORDER_ID, OPEN);
+			when(orderRepository.findById(ORDER_ID)).thenReturn(storedOrder);
+
+			shoppingService.closeOrder(ORDER_ID);
+			shoppingService.closeOrder(ORDER_ID);
+			verify(orderRepository, times(1)).update(newTestOrderWithId(ORDER_ID, OrderStatus.CLOSED));
+			verify(itemRepository, times(1)).getListByOrderId(ORDER_ID);
+			verify(salesLedger, times(1)).append(any());
+		}
+
 	}
 
 	@Nested
@@ -247,6 +528,7 @@ class ShoppingServiceTest {
 
 			verify(stockRepository).update(updatedStock);
 			verify(itemRepository).delete(ITEM_ID_1);
+			verify(orderRepository).addToTotals(ORDER_ID, -QUANTITY_2 * product.getPrice(), -1);
 			verify(transactionManager, times(1)).runInTransaction(any());
 		}
 
@@ -327,6 +609,7 @@ class ShoppingServiceTest {
 			verify(transactionManager).runInTransaction(any());
 			verify(itemRepository).update(updatedItem);
 			verify(stockRepository).update(updatedStock);
+			verify(orderRepository).addToTotals(ORDER_ID, -MID_QUANTITY * product.getPrice(), 0);
 		}
 
 		@Test
@@ -396,6 +679,52 @@ class ShoppingServiceTest {
 			verifyNoInteractions(stockRepository);
 		}
 
+		@Test
+		@DisplayName("When the given item is found by id but has a different version than the retrieved one, should throw and not update")
+		void testReturnItemWhenIsFoundButHasDifferentVersionThanTheRetrievedOneShouldThrowException() {
+			Product product = newTestDefaultProductWithId(PRODUCT_ID_1);
+			Order storedOrder = newTestOrderWithId(ORDER_ID, OPEN);
+			OrderItem repositoryItem = newTestOrderItemWithId(ITEM_ID_1, product, storedOrder, MID_QUANTITY);
+			repositoryItem.setVersion(1);
+			OrderItem viewItem = newTestOrderItemWithId(ITEM_ID_1, product, storedOrder, MID_QUANTITY);
+			when(itemRepository.findById(ITEM_ID_1)).thenReturn(repositoryItem);
+
+			assertThatThrownBy(() -> shoppingService.returnItem(viewItem, LOW_QUANTITY))
+					.isInstanceOf(RepositoryException.class)
+					.hasMessage("Stale data detected in OrderItem with id " + ITEM_ID_1);
+			verify(itemRepository, never()).update(any());
+			verifyNoInteractions(stockRepository);
+		}
+
+		@ParameterizedTest
+		@ValueSource(ints = { 0, -1 })
+		@DisplayName("When the quantity is not positive should throw without a transaction")
+		void testReturnItemWhenQuantityIsNotPositiveShouldThrow(int quantity) {
+			Product product = newTestDefaultProductWithId(PRODUCT_ID_1);
+			OrderItem item = newTestOrderItemWithId(ITEM_ID_1, product, newTestOrderWithId(ORDER_ID, OPEN),
+					MID_QUANTITY);
+
+			assertThatThrownBy(() -> shoppingService.returnItem(item, quantity))
+					.isInstanceOf(IllegalArgumentException.class)
+					.hasMessage("Quantity must be positive. Received: " + quantity);
+			verifyNoInteractions(transactionManager);
+		}
+
+		@ParameterizedTest
+		@ValueSource(ints = { MID_QUANTITY, GREAT_QUANTITY })
+		@DisplayName("When the quantity is not less than the quantity of the item should throw without a transaction")
+		void testReturnItemWhenQuantityIsNotLessThanTheItemShouldThrow(int quantity) {
+			Product product = newTestDefaultProductWithId(PRODUCT_ID_1);
+			OrderItem item = newTestOrderItemWithId(ITEM_ID_1, product, newTestOrderWithId(ORDER_ID, OPEN),
+					MID_QUANTITY);
+
+			assertThatThrownBy(() -> shoppingService.returnItem(item, quantity))
+					.isInstanceOf(IllegalArgumentException.class)
+					.hasMessage("Quantity to return must be less than the quantity of the item (" + MID_QUANTITY
+							+ "). Received: " + quantity);
+			verifyNoInteractions(transactionManager);
+		}
+
 		@Test
 		@DisplayName("When the item is not found should throw and not update")
 		void testReturnItemWhenIsNotFoundShouldThrow() {
@@ -467,12 +796,13 @@ class ShoppingServiceTest {
 				item.setId(ITEM_ID_1);
 				return null;
 			})).when(itemRepository).save(new OrderItem(product, order, LOW_QUANTITY));
-			when(stockRepository.findByProductId(PRODUCT_ID_1)).thenReturn(stock);
+			when(stockRepository.findByProductIdWithQuantity(PRODUCT_ID_1, LOW_QUANTITY)).thenReturn(stock);
 			when(itemRepository.findByProductAndOrderId(PRODUCT_ID_1, ORDER_ID)).thenReturn(null);
 
 			assertThat(shoppingService.buyProduct(ORDER_ID, PRODUCT_ID_1, LOW_QUANTITY)).isEqualTo(newItem);
 			verify(transactionManager, times(1)).runInTransaction(any());
 			verify(stockRepository, times(1)).update(modifiedStock);
+			verify(orderRepository).addToTotals(ORDER_ID, LOW_QUANTITY * product.getPrice(), 1);
 			verifyNoMoreInteractions(itemRepository);
 
 		}
@@ -489,13 +819,14 @@ class ShoppingServiceTest {
 
 			when(orderRepository.findById(ORDER_ID)).thenReturn(order);
 			when(productRepository.findById(PRODUCT_ID_1)).thenReturn(product);
-			when(stockRepository.findByProductId(PRODUCT_ID_1)).thenReturn(stock);
+			when(stockRepository.findByProductIdWithQuantity(PRODUCT_ID_1, MID_QUANTITY)).thenReturn(stock);
 			when(itemRepository.findByProductAndOrderId(PRODUCT_ID_1, ORDER_ID)).thenReturn(repositoryItem);
 
 			assertThat(shoppingService.buyProduct(ORDER_ID, PRODUCT_ID_1, MID_QUANTITY)).isEqualTo(updatedItem);
 			verify(itemRepository, never()).save(any());
 			verify(itemRepository, times(1)).update(updatedItem);
 			verify(stockRepository, times(1)).update(modifiedStock);
+			verify(orderRepository).addToTotals(ORDER_ID, MID_QUANTITY * product.getPrice(), 0);
 			verify(transactionManager, times(1)).runInTransaction(any());
 
 		}
@@ -507,7 +838,8 @@ class ShoppingServiceTest {
 			Stock stock = newTestStockWithId(STOCK_ID_1, product, LOW_QUANTITY);
 			Order order = newTestOrderWithId(ORDER_ID, OPEN);
 			when(productRepository.findById(PRODUCT_ID_1)).thenReturn(product);
-			when(stockRepository.findByProductId(PRODUCT_ID_1)).thenReturn(stock);
+			when(stockRepository.findByProductIdWithQuantity(PRODUCT_ID_1, GREAT_QUANTITY)).thenReturn(null);
+			when(stockRepository.findAllByProductId(PRODUCT_ID_1)).thenReturn(asList(stock));
 			when(orderRepository.findById(ORDER_ID)).thenReturn(order);
 
 			assertThatThrownBy(() -> shoppingService.buyProduct(ORDER_ID, PRODUCT_ID_1, GREAT_QUANTITY))
@@ -530,7 +862,7 @@ class ShoppingServiceTest {
 
 			when(orderRepository.findById(ORDER_ID)).thenReturn(order);
 			when(productRepository.findById(PRODUCT_ID_1)).thenReturn(product);
-			when(stockRepository.findByProductId(PRODUCT_ID_1)).thenReturn(stock);
+			when(stockRepository.findByProductIdWithQuantity(PRODUCT_ID_1, MID_QUANTITY)).thenReturn(stock);
 			when(itemRepository.findByProductAndOrderId(PRODUCT_ID_1, ORDER_ID)).thenReturn(item);
 
 			assertThat(shoppingService.buyProduct(ORDER_ID, PRODUCT_ID_1, MID_QUANTITY)).isEqualTo(item);
@@ -540,6 +872,16 @@ class ShoppingServiceTest {
 
 		}
 
+		@ParameterizedTest
+		@ValueSource(ints = { 0, -5 })
+		@DisplayName("Buy Product when the quantity is not positive should throw without a transaction")
+		void testBuyProductWhenQuantityIsNotPositiveShouldThrow(int quantity) {
+			assertThatThrownBy(() -> shoppingService.buyProduct(ORDER_ID, PRODUCT_ID_1, quantity))
+					.isInstanceOf(IllegalArgumentException.class)
+					.hasMessage("Quantity must be positive. Received: " + quantity);
+			verifyNoInteractions(transactionManager);
+		}
+
 		@Test
 		@DisplayName("Buy Product when Order does not exist should throw exception")
 		void testBuyProductWhenOrderDoesNotExistShouldThrow() {
@@ -565,8 +907,9 @@ class ShoppingServiceTest {
 		@DisplayName("Buy Product when Stock does not exist should throw exception")
 		void testBuyProductWhenStockDoesNotExistShouldThrow() {
 			when(orderRepository.findById(ORDER_ID)).thenReturn(new Order(OPEN));
-			when(productRepository.findById(PRODUCT_ID_1)).thenReturn(new Product("name", 1.0));
-			when(stockRepository.findByProductId(PRODUCT_ID_1)).thenReturn(null);
+			when(productRepository.findById(PRODUCT_ID_1)).thenReturn(newTestDefaultProductWithId(PRODUCT_ID_1));
+			when(stockRepository.findByProductIdWithQuantity(PRODUCT_ID_1, 3)).thenReturn(null);
+			when(stockRepository.findAllByProductId(PRODUCT_ID_1)).thenReturn(asList());
 
 			assertThatThrownBy(() -> shoppingService.buyProduct(ORDER_ID, PRODUCT_ID_1, 3))
 					.isInstanceOf(RepositoryException.class)
@@ -575,6 +918,70 @@ class ShoppingServiceTest {
 			verifyNoInteractions(itemRepository);
 		}
 
+
+		@Test
+		@DisplayName("Buy Product when no single shard has enough quantity should drain the shards in order")
+		void testBuyProductWhenNoSingleShardHasEnoughQuantityShouldDrainTheShardsInOrder() {
+			Product product = newTestDefaultProductWithId(PRODUCT_ID_1);
+			Stock shard_0 = newTestStockShardWithId(STOCK_ID_1, product, LOW_QUANTITY, 0);
+			Stock shard_1 = newTestStockShardWithId(STOCK_ID_2, product, 0, 1);
+			Stock shard_2 = newTestStockShardWithId(STOCK_ID_3, product, MID_QUANTITY, 2);
+			Order order = newTestOrderWithId(ORDER_ID, OPEN);
+
+			when(orderRepository.findById(ORDER_ID)).thenReturn(order);
+			when(productRepository.findById(PRODUCT_ID_1)).thenReturn(product);
+			when(stockRepository.findByProductIdWithQuantity(PRODUCT_ID_1, MID_QUANTITY)).thenReturn(null);
+			when(stockRepository.findAllByProductId(PRODUCT_ID_1)).thenReturn(asList(shard_0, shard_1, shard_2));
+
+			shoppingService.buyProduct(ORDER_ID, PRODUCT_ID_1, MID_QUANTITY);
+
+			InOrder inOrder = inOrder(stockRepository);
+			inOrder.verify(stockRepository).update(newTestStockShardWithId(STOCK_ID_1, product, 0, 0));
+			inOrder.verify(stockRepository).update(
+					newTestStockShardWithId(STOCK_ID_3, product, MID_QUANTITY - (MID_QUANTITY - LOW_QUANTITY), 2));
+			verify(stockRepository, times(2)).update(any());
+			verify(itemRepository).save(new OrderItem(product, order, MID_QUANTITY));
+		}
+
+		@Test
+		@DisplayName("Buy Product when the shard locked was drained meanwhile should retry before draining the shards")
+		void testBuyProductWhenTheLockedShardWasDrainedShouldRetryBeforeDraining() {
+			Product product = newTestDefaultProductWithId(PRODUCT_ID_1);
+			Stock shard_0 = newTestStockShardWithId(STOCK_ID_1, product, LOW_QUANTITY, 0);
+			Stock shard_1 = newTestStockShardWithId(STOCK_ID_2, product, LOW_QUANTITY, 1);
+			Order order = newTestOrderWithId(ORDER_ID, OPEN);
+
+			when(orderRepository.findById(ORDER_ID)).thenReturn(order);
+			when(productRepository.findById(PRODUCT_ID_1)).thenReturn(product);
+			when(stockRepository.findByProductIdWithQuantity(PRODUCT_ID_1, 2 * LOW_QUANTITY))
+					.thenThrow(new TransactionConflictException("drained")).thenReturn(null);
+			when(stockRepository.findAllByProductId(PRODUCT_ID_1)).thenReturn(asList(shard_0, shard_1));
+
+			shoppingService.buyProduct(ORDER_ID, PRODUCT_ID_1, 2 * LOW_QUANTITY);
+
+			verify(transactionManager, times(2)).runInTransaction(any());
+			verify(stockRepository, times(1)).findAllByProductId(PRODUCT_ID_1);
+			verify(stockRepository, times(2)).update(any());
+			verify(itemRepository).save(new OrderItem(product, order, 2 * LOW_QUANTITY));
+		}
+
+		@Test
+		@DisplayName("Buy Product when the sum of the shards is not enough should throw and not update")
+		void testBuyProductWhenTheSumOfTheShardsIsNotEnoughShouldThrow() {
+			Product product = newTestDefaultProductWithId(PRODUCT_ID_1);
+			Stock shard_0 = newTestStockShardWithId(STOCK_ID_1, product, LOW_QUANTITY, 0);
+			Stock shard_1 = newTestStockShardWithId(STOCK_ID_2, product, LOW_QUANTITY, 1);
+			when(orderRepository.findById(ORDER_ID)).thenReturn(newTestOrderWithId(ORDER_ID, OPEN));
+			when(productRepository.findById(PRODUCT_ID_1)).thenReturn(product);
+			when(stockRepository.findAllByProductId(PRODUCT_ID_1)).thenReturn(asList(shard_0, shard_1));
+
+			assertThatThrownBy(() -> shoppingService.buyProduct(ORDER_ID, PRODUCT_ID_1, MID_QUANTITY))
+					.isInstanceOf(RepositoryException.class)
+					.hasMessage("Not enough quantity. Cannot buy product: " + PRODUCT_NAME);
+			verify(stockRepository, never()).update(any());
+			verifyNoInteractions(itemRepository);
+		}
+
 	}
 
 	@Nested
@@ -598,6 +1005,21 @@ class ShoppingServiceTest {
 			verify(transactionManager, times(1)).runInTransaction(any());
 		}
 
+		@Test
+		@DisplayName("Save new product and split the quantity evenly across the given number of shards")
+		void testSaveProductAndStockWithShards() {
+			Product productToStore = new Product(PRODUCT_NAME, POSITIVE_PRICE);
+
+			shoppingService.saveProductAndStock(PRODUCT_NAME, POSITIVE_PRICE, POSITIVE_QUANTITY, 3);
+
+			InOrder inOrder = inOrder(productRepository, stockRepository);
+			inOrder.verify(productRepository).save(productToStore);
+			inOrder.verify(stockRepository).save(new Stock(productToStore, 2, 0));
+			inOrder.verify(stockRepository).save(new Stock(productToStore, 2, 1));
+			inOrder.verify(stockRepository).save(new Stock(productToStore, 1, 2));
+			verify(transactionManager, times(1)).runInTransaction(any());
+		}
+
 		@Nested
 		@DisplayName("Exceptional cases")
 		class ExceptionTests {
@@ -633,11 +1055,207 @@ class ShoppingServiceTest {
 				verifyNoInteractions(productRepository, stockRepository);
 
 			}
+
+			@ParameterizedTest
+			@ValueSource(ints = { 0, -1 })
+			@DisplayName("When the number of shards is not positive, do not save and throw exception")
+			void testSaveProductAndStockWhenShardsIsNotPositiveShouldThrow(int shards) {
+
+				assertThatThrownBy(() -> shoppingService.saveProductAndStock(PRODUCT_NAME, POSITIVE_PRICE,
+						POSITIVE_QUANTITY, shards)).isInstanceOf(IllegalArgumentException.class)
+						.hasMessage("Shards must be positive. Received: " + shards);
+				verifyNoInteractions(productRepository, stockRepository);
+
+			}
 		}
 
 	}
 
-	// Private utility methods
+	@Nested
+	@DisplayName("Test cases for stock shards")
+	class StockShardsTests {
+
+		@Test
+		@DisplayName("Return the quantity summed across the shards")
+		void testGetAvailableQuantity() {
+			when(stockRepository.getTotalQuantityByProductId(PRODUCT_ID_1)).thenReturn(7);
+
+			assertThat(shoppingService.getAvailableQuantity(PRODUCT_ID_1)).isEqualTo(7);
+			verify(transactionManager, times(1)).runInTransaction(any());
+		}
+
+		@Test
+		@DisplayName("Return the quantity of each product read in a single transaction")
+		void testGetAvailableQuantities() {
+			when(stockRepository.getTotalQuantityByProductId(PRODUCT_ID_1)).thenReturn(7);
+			when(stockRepository.getTotalQuantityByProductId("product_id_2")).thenReturn(0);
+
+			assertThat(shoppingService.getAvailableQuantities(asList(PRODUCT_ID_1, "product_id_2")))
+					.containsOnly(entry(PRODUCT_ID_1, 7), entry("product_id_2", 0));
+			verify(transactionManager, times(1)).runInTransaction(any());
+		}
+
+		@Test
+		@DisplayName("Rebalance should spread the total evenly and update only the shards that change")
+		void testRebalanceStock() {
+			Product product = newTestDefaultProductWithId(PRODUCT_ID_1);
+			Stock shard_0 = newTestStockShardWithId(STOCK_ID_1, product, 3, 0);
+			Stock shard_1 = newTestStockShardWithId(STOCK_ID_2, product, 0, 1);
+			Stock shard_2 = newTestStockShardWithId(STOCK_ID_3, product, 4, 2);
+			when(stockRepository.findAllByProductId(PRODUCT_ID_1)).thenReturn(asList(shard_0, shard_1, shard_2));
+
+			shoppingService.rebalanceStock(PRODUCT_ID_1);
+
+			verify(stockRepository).update(newTestStockShardWithId(STOCK_ID_2, product, 2, 1));
+			verify(stockRepository).update(newTestStockShardWithId(STOCK_ID_3, product, 2, 2));
+			verify(stockRepository, times(2)).update(any());
+		}
+
+		@Test
+		@DisplayName("Rebalance should throw when the product has no stock")
+		void testRebalanceStockWhenStockIsNotFoundShouldThrow() {
+			when(stockRepository.findAllByProductId(PRODUCT_ID_1)).thenReturn(asList());
+
+			assertThatThrownBy(() -> shoppingService.rebalanceStock(PRODUCT_ID_1))
+					.isInstanceOf(RepositoryException.class)
+					.hasMessage("Stock not found. Query by product: " + PRODUCT_ID_1);
+			verify(stockRepository, never()).update(any());
+		}
+
+	}
+
+	@Nested
+	@DisplayName("Test cases for the write-behind stock cache")
+	class WriteBehindStockTests {
+
+		private static final int LOW_QUANTITY = 2;
+		private static final int GREAT_QUANTITY = 10;
+
+		@Mock
+		private WriteBehindStockCache stockCache;
+
+		@BeforeEach
+		void setup() {
+			shoppingService = ShoppingService.builder(transactionManager).conflictRetries(CONFLICT_RETRIES)
+					.stockCache(stockCache).build();
+		}
+
+		@Test
+		@DisplayName("Buy Product should take the quantity from the cache and leave the stock untouched")
+		void testBuyProductShouldTakeFromTheCache() {
+			Product product = newTestDefaultProductWithId(PRODUCT_ID_1);
+			Order order = newTestOrderWithId(ORDER_ID, OPEN);
+			when(orderRepository.findById(ORDER_ID)).thenReturn(order);
+			when(productRepository.findById(PRODUCT_ID_1)).thenReturn(product);
+			when(stockCache.take(any(), eq(PRODUCT_ID_1), eq(LOW_QUANTITY), eq(stockRepository))).thenReturn(true);
+
+			assertThat(shoppingService.buyProduct(ORDER_ID, PRODUCT_ID_1, LOW_QUANTITY))
+					.isEqualTo(new OrderItem(product, order, LOW_QUANTITY));
+			verify(itemRepository).save(new OrderItem(product, order, LOW_QUANTITY));
+			verify(orderRepository).addToTotals(ORDER_ID, LOW_QUANTITY * product.getPrice(), 1);
+			verifyNoInteractions(stockRepository);
+			// journaled before the commit, pending after it
+			InOrder inOrder = inOrder(stockCache);
+			inOrder.verify(stockCache).take(any(), eq(PRODUCT_ID_1), eq(LOW_QUANTITY), eq(stockRepository));
+			inOrder.verify(stockCache).prepare(any());
+			inOrder.verify(stockCache).commit(any());
+		}
+
+		@Test
+		@DisplayName("Buy Product when the cache has not enough quantity should throw and not store the item")
+		void testBuyProductWhenTheCacheHasNotEnoughQuantityShouldThrow() {
+			Product product = newTestDefaultProductWithId(PRODUCT_ID_1);
+			when(orderRepository.findById(ORDER_ID)).thenReturn(newTestOrderWithId(ORDER_ID, OPEN));
+			when(productRepository.findById(PRODUCT_ID_1)).thenReturn(product);
+			when(stockCache.take(any(), eq(PRODUCT_ID_1), eq(GREAT_QUANTITY), eq(stockRepository))).thenReturn(false);
+
+			assertThatThrownBy(() -> shoppingService.buyProduct(ORDER_ID, PRODUCT_ID_1, GREAT_QUANTITY))
+					.isInstanceOf(RepositoryException.class)
+					.hasMessage("Not enough quantity. Cannot buy product: " + PRODUCT_NAME);
+			verifyNoInteractions(itemRepository);
+			verify(stockCache, never()).put(any(), any(), anyInt());
+			verify(stockCache, never()).prepare(any());
+			verify(stockCache, never()).commit(any());
+		}
+
+		@Test
+		@DisplayName("Buy Product should give back the quantity taken by an attempt that does not commit")
+		void testBuyProductWhenTheTransactionFailsShouldGiveBackTheQuantity() {
+			Product product = newTestDefaultProductWithId(PRODUCT_ID_1);
+			when(orderRepository.findById(ORDER_ID)).thenReturn(newTestOrderWithId(ORDER_ID, OPEN));
+			when(productRepository.findById(PRODUCT_ID_1)).thenReturn(product);
+			when(stockCache.take(any(), eq(PRODUCT_ID_1), eq(LOW_QUANTITY), eq(stockRepository))).thenReturn(true);
+			doThrow(new TransactionConflictException("conflict")).when(orderRepository).addToTotals(any(), anyDouble(),
+					anyInt());
+
+			assertThatThrownBy(() -> shoppingService.buyProduct(ORDER_ID, PRODUCT_ID_1, LOW_QUANTITY))
+					.isInstanceOf(TransactionConflictException.class);
+			verify(transactionManager, times(CONFLICT_RETRIES + 1)).runInTransaction(any());
+			verify(stockCache, times(CONFLICT_RETRIES + 1)).take(any(), eq(PRODUCT_ID_1), eq(LOW_QUANTITY),
+					eq(stockRepository));
+			// at the start of every attempt, for the one before, and after the last
+			verify(stockCache, times(CONFLICT_RETRIES + 2)).abort(any());
+			verify(stockCache, never()).commit(any());
+		}
+
+		@Test
+		@DisplayName("Return item should give the quantity back to the cache once committed")
+		void testReturnItemShouldPutTheQuantityInTheCache() {
+			Product product = newTestDefaultProductWithId(PRODUCT_ID_1);
+			OrderItem item = newTestOrderItemWithId(ITEM_ID_1, product, newTestOrderWithId(ORDER_ID, OPEN),
+					GREAT_QUANTITY);
+			when(itemRepository.findById(ITEM_ID_1)).thenReturn(item);
+
+			shoppingService.returnItem(item, LOW_QUANTITY);
+
+			InOrder inOrder = inOrder(stockCache);
+			inOrder.verify(stockCache).put(any(), eq(PRODUCT_ID_1), eq(LOW_QUANTITY));
+			inOrder.verify(stockCache).prepare(any());
+			inOrder.verify(stockCache).commit(any());
+			verifyNoInteractions(stockRepository);
+		}
+
+		@Test
+		@DisplayName("Delete order should give the quantity of every item back to the cache")
+		void testDeleteOrderShouldPutTheQuantitiesInTheCache() {
+			Product product = newTestDefaultProductWithId(PRODUCT_ID_1);
+			Order order = newTestOrderWithId(ORDER_ID, OPEN);
+			when(orderRepository.findById(ORDER_ID)).thenReturn(order);
+			when(itemRepository.getListByOrderId(ORDER_ID))
+					.thenReturn(asList(newTestOrderItemWithId(ITEM_ID_1, product, order, LOW_QUANTITY)));
+
+			shoppingService.deleteOrder(ORDER_ID);
+
+			verify(itemRepository).delete(ITEM_ID_1);
+			verify(orderRepository).delete(ORDER_ID);
+			verify(stockCache).put(any(), eq(PRODUCT_ID_1), eq(LOW_QUANTITY));
+			verify(stockCache).commit(any());
+			verifyNoInteractions(stockRepository);
+		}
+
+		@Test
+		@DisplayName("The available quantity should be read from the cache")
+		void testGetAvailableQuantityShouldReadTheCache() {
+			when(stockCache.getQuantity(PRODUCT_ID_1, stockRepository)).thenReturn(7);
+
+			assertThat(shoppingService.getAvailableQuantity(PRODUCT_ID_1)).isEqualTo(7);
+		}
+
+		@Test
+		@DisplayName("Rebalance should flush the cache before reading the shards")
+		void testRebalanceStockShouldFlushFirst() {
+			Product product = newTestDefaultProductWithId(PRODUCT_ID_1);
+			when(stockRepository.findAllByProductId(PRODUCT_ID_1))
+					.thenReturn(asList(newTestStockShardWithId(STOCK_ID_1, product, 3, 0)));
+
+			shoppingService.rebalanceStock(PRODUCT_ID_1);
+
+			InOrder inOrder = inOrder(stockCache, stockRepository);
+			inOrder.verify(stockCache).flush();
+			inOrder.verify(stockRepository).findAllByProductId(PRODUCT_ID_1);
+		}
+
+	}
 
 	// Private utility methods
 
@@ -659,6 +1277,12 @@ class ShoppingServiceTest {
 		return s;
 	}
 
+	private Stock newTestStockShardWithId(String id, Product product, int quantity, int shard) {
+		Stock s = new Stock(product, quantity, shard);
+		s.setId(id);
+		return s;
+	}
+
 	private OrderItem newTestOrderItemWithId(String id, Product product, Order order, int quantity) {
 		OrderItem i = new OrderItem(product, order, quantity);
 		i.setId(id);
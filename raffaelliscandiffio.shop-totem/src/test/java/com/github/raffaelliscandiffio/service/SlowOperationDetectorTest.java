@@ -0,0 +1,116 @@
+package com.github.raffaelliscandiffio.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.raffaelliscandiffio.exception.RepositoryException;
+import com.github.raffaelliscandiffio.repository.embedded.EmbeddedStore;
+import com.github.raffaelliscandiffio.transaction.embedded.TransactionManagerEmbedded;
+
+class SlowOperationDetectorTest {
+
+	private static final long THRESHOLD_MILLIS = 100;
+
+	@TempDir
+	Path directory;
+
+	private final AtomicLong clock = new AtomicLong();
+	private final List<String> lines = new ArrayList<>();
+
+	@BeforeEach
+	void setup() {
+		clock.set(0);
+		lines.clear();
+	}
+
+	@Test
+	@DisplayName("Only the operations reaching the threshold should be logged")
+	void testOnlySlowOperationsShouldBeLogged() {
+		SlowOperationDetector detector = detector(10, 10);
+
+		run(detector.start("getOrder", "orderId", "1"), THRESHOLD_MILLIS - 1, 1, null);
+		run(detector.start("buyProduct", "orderId", "1", "productId", "2", "quantity", 3), THRESHOLD_MILLIS, 3,
+				null);
+
+		assertThat(lines).hasSize(1);
+		assertThat(lines.get(0)).contains("\"operation\":\"buyProduct\"")
+				.contains("\"parameters\":{\"orderId\":\"1\",\"productId\":\"2\",\"quantity\":3}")
+				.contains("\"elapsedMs\":100.000").contains("\"attempts\":3,\"retries\":2")
+				.contains("\"outcome\":\"committed\"").endsWith("\"repositoryCalls\":[],\"suppressed\":0}");
+	}
+
+	@Test
+	@DisplayName("A failed operation should be logged with its error, escaped as JSON")
+	void testFailureShouldBeLoggedWithItsError() {
+		SlowOperationDetector detector = detector(10, 10);
+
+		run(detector.start("getOrder", "orderId", "a\"b"), THRESHOLD_MILLIS, 1,
+				new RepositoryException("Order not found: a\"b\n"));
+
+		assertThat(lines.get(0)).contains("\"parameters\":{\"orderId\":\"a\\\"b\"}")
+				.contains("\"outcome\":\"failed\"")
+				.contains("\"error\":\"RepositoryException: Order not found: a\\\"b\\n\"");
+	}
+
+	@Test
+	@DisplayName("Lines over the rate should be suppressed and counted by the next line written")
+	void testLinesOverTheRateShouldBeSuppressed() {
+		SlowOperationDetector detector = detector(1, 2);
+
+		for (int i = 0; i < 5; i++)
+			run(detector.start("getOrder"), THRESHOLD_MILLIS, 1, null);
+		assertThat(lines).hasSize(2);
+
+		clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+		run(detector.start("getOrder"), THRESHOLD_MILLIS, 1, null);
+
+		assertThat(lines).hasSize(3);
+		assertThat(lines.get(2)).endsWith("\"suppressed\":3}");
+	}
+
+	@Test
+	@DisplayName("The repository calls of a slow operation should be timed by entity and method")
+	void testRepositoryCallsShouldBeTimed() throws IOException {
+		SlowOperationDetector detector = new SlowOperationDetector(0, 10, 10, lines::add, System::nanoTime);
+		try (EmbeddedStore store = new EmbeddedStore(directory)) {
+			TransactionManagerEmbedded transactionManager = new TransactionManagerEmbedded(store);
+			ShoppingService.builder(transactionManager).slowOperationDetector(detector).build()
+					.saveProductAndStock("Bread", 1.5, 10, 2);
+		}
+
+		assertThat(lines).hasSize(1);
+		assertThat(lines.get(0)).contains("\"operation\":\"saveProductAndStock\"")
+				.contains("\"parameters\":{\"name\":\"Bread\",\"price\":1.5,\"quantity\":10,\"shards\":2}")
+				.containsPattern("\\{\"call\":\"Product.save\",\"count\":1,\"ms\":[0-9.]+\\}")
+				.containsPattern("\\{\"call\":\"Stock.save\",\"count\":2,\"ms\":[0-9.]+\\}");
+	}
+
+	@Test
+	@DisplayName("A negative threshold should be rejected")
+	void testNegativeThresholdShouldBeRejected() {
+		assertThatThrownBy(() -> new SlowOperationDetector(-1)).isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Threshold must not be negative. Received: -1");
+	}
+
+	private SlowOperationDetector detector(double permitsPerSecond, int burst) {
+		return new SlowOperationDetector(THRESHOLD_MILLIS, permitsPerSecond, burst, lines::add, clock::get);
+	}
+
+	private void run(SlowOperationDetector.Watch watch, long millis, int attempts, Throwable failure) {
+		clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+		watch.stop(attempts, failure);
+	}
+
+}
@@ -0,0 +1,80 @@
+package com.github.raffaelliscandiffio.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.github.raffaelliscandiffio.model.Product;
+
+@ExtendWith(MockitoExtension.class)
+class StockAvailabilityTest {
+
+	@Mock
+	private StockAvailability.Listener first;
+
+	@Mock
+	private StockAvailability.Listener second;
+
+	private StockAvailability availability;
+
+	@BeforeEach
+	void setup() {
+		availability = new StockAvailability();
+		availability.addListener(first);
+		availability.addListener(second);
+	}
+
+	@Test
+	@DisplayName("Only the quantities that change should be notified")
+	void testOnlyChangesShouldBeNotified() {
+		availability.setAvailable("1", 5);
+		availability.setAvailable("1", 5);
+		availability.setAvailable("1", 0);
+
+		verify(first).availabilityChanged("1", 5);
+		verify(first).availabilityChanged("1", 0);
+		verifyNoMoreInteractions(first);
+		assertThat(availability.getAvailable("1")).isZero();
+		assertThat(availability.getAvailable("2")).isNull();
+	}
+
+	@Test
+	@DisplayName("A failing listener should not keep the others from being notified")
+	void testFailingListenerShouldNotStopTheOthers() {
+		Product product = new Product("Bread", 1.5);
+		doThrow(new IllegalStateException("closed")).when(first).productChanged(product);
+
+		availability.productChanged(product);
+
+		verify(second).productChanged(product);
+	}
+
+	@Test
+	@DisplayName("Every listener should be told of a product removed")
+	void testProductRemovedShouldBeNotified() {
+		availability.productRemoved("1");
+
+		verify(first).productRemoved("1");
+		verify(second).productRemoved("1");
+	}
+
+	@Test
+	@DisplayName("A removed listener should not be notified")
+	void testRemovedListenerShouldNotBeNotified() {
+		availability.removeListener(first);
+
+		availability.setAvailable("1", 5);
+
+		verifyNoMoreInteractions(first);
+		verify(second).availabilityChanged("1", 5);
+	}
+
+}
@@ -0,0 +1,285 @@
+package com.github.raffaelliscandiffio.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.raffaelliscandiffio.exception.TransactionException;
+import com.github.raffaelliscandiffio.model.Order;
+import com.github.raffaelliscandiffio.model.OrderItem;
+import com.github.raffaelliscandiffio.model.OrderStatus;
+import com.github.raffaelliscandiffio.model.Stock;
+import com.github.raffaelliscandiffio.repository.embedded.EmbeddedStore;
+import com.github.raffaelliscandiffio.transaction.embedded.TransactionManagerEmbedded;
+
+class WriteBehindStockCacheTest {
+
+	private static final long FLUSH_INTERVAL_MILLIS = 60_000;
+	private static final int FLUSH_THRESHOLD = 1000;
+
+	@TempDir
+	Path root;
+
+	private Path journalDirectory;
+	private EmbeddedStore store;
+	private TransactionManagerEmbedded transactionManager;
+	private String productId;
+	private List<Runnable> flushes = new ArrayList<>();
+	private boolean closing;
+	private List<WriteBehindStockCache> caches = new ArrayList<>();
+
+	@BeforeEach
+	void setup() throws IOException {
+		journalDirectory = root.resolve("journal");
+		store = new EmbeddedStore(root.resolve("store"));
+		transactionManager = new TransactionManagerEmbedded(store);
+		ShoppingService shoppingService = new ShoppingService(transactionManager);
+		shoppingService.saveProductAndStock("product", 1.0, 10, 2);
+		productId = shoppingService.getAllProducts().get(0).getId();
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		closing = true;
+		for (WriteBehindStockCache cache : caches)
+			cache.close();
+		store.close();
+	}
+
+	@Test
+	@DisplayName("Changes should be applied to the cache at once and to the shards only on flush")
+	void testFlushShouldApplyTheChangesToTheShards() throws IOException {
+		WriteBehindStockCache cache = open(journalDirectory, FLUSH_THRESHOLD);
+
+		assertThat(take(cache, 7)).isTrue();
+		put(cache, 1);
+		assertThat(take(cache, 5)).isFalse();
+
+		assertThat(quantity(cache)).isEqualTo(4);
+		assertThat(shardQuantities()).containsExactly(5, 5);
+		cache.flush();
+		// the changes are summed by product, a net purchase drains the shards in order
+		assertThat(shardQuantities()).containsExactly(0, 4);
+		assertThat(quantity(cache)).isEqualTo(4);
+	}
+
+	@Test
+	@DisplayName("Reaching the threshold should schedule a flush on the executor")
+	void testThresholdShouldScheduleAFlush() throws IOException {
+		WriteBehindStockCache cache = open(journalDirectory, 2);
+
+		take(cache, 1);
+		assertThat(flushes).isEmpty();
+		take(cache, 1);
+		assertThat(flushes).hasSize(1);
+		take(cache, 1);
+		assertThat(flushes).hasSize(1);
+
+		flushes.remove(0).run();
+		assertThat(shardQuantities()).containsExactly(2, 5);
+	}
+
+	@Test
+	@DisplayName("Changes not flushed before a crash should be recovered from the journal")
+	void testRecoverUnflushedChanges() throws IOException {
+		WriteBehindStockCache cache = open(journalDirectory, FLUSH_THRESHOLD);
+		take(cache, 6);
+		put(cache, 2);
+
+		WriteBehindStockCache recovered = open(crashCopy(), FLUSH_THRESHOLD);
+
+		assertThat(shardQuantities()).containsExactly(1, 5);
+		assertThat(quantity(recovered)).isEqualTo(6);
+	}
+
+	@Test
+	@DisplayName("A change journaled by a transaction that crashed before committing should be dropped on recovery")
+	void testRecoverShouldDropAChangeWhoseTransactionDidNotCommit() throws IOException {
+		WriteBehindStockCache cache = open(journalDirectory, FLUSH_THRESHOLD);
+		assertThatThrownBy(() -> buyWithoutCommittingTheChange(cache, 3, true))
+				.isInstanceOf(TransactionException.class);
+
+		WriteBehindStockCache recovered = open(crashCopy(), FLUSH_THRESHOLD);
+
+		assertThat(shardQuantities()).containsExactly(5, 5);
+		assertThat(quantity(recovered)).isEqualTo(10);
+	}
+
+	@Test
+	@DisplayName("A change whose transaction committed just before a crash should be applied on recovery")
+	void testRecoverShouldApplyAChangeWhoseTransactionCommitted() throws IOException {
+		WriteBehindStockCache cache = open(journalDirectory, FLUSH_THRESHOLD);
+		buyWithoutCommittingTheChange(cache, 3, false);
+
+		WriteBehindStockCache recovered = open(crashCopy(), FLUSH_THRESHOLD);
+
+		assertThat(shardQuantities()).containsExactly(2, 5);
+		assertThat(quantity(recovered)).isEqualTo(7);
+	}
+
+	@Test
+	@DisplayName("An aborted change should give the quantity back and not be applied")
+	void testAbortShouldGiveTheQuantityBack() throws IOException {
+		WriteBehindStockCache cache = open(journalDirectory, FLUSH_THRESHOLD);
+		StockChange change = new StockChange();
+		transactionManager.runInTransaction((productRepository, stockRepository, orderRepository, itemRepository) -> {
+			cache.take(change, productId, 3, stockRepository);
+			cache.prepare(change);
+			return null;
+		});
+		assertThat(quantity(cache)).isEqualTo(7);
+
+		cache.abort(change);
+
+		assertThat(quantity(cache)).isEqualTo(10);
+		WriteBehindStockCache recovered = open(crashCopy(), FLUSH_THRESHOLD);
+		assertThat(shardQuantities()).containsExactly(5, 5);
+		assertThat(quantity(recovered)).isEqualTo(10);
+	}
+
+	@Test
+	@DisplayName("A flush committed before a crash should not be applied again")
+	void testRecoverShouldNotApplyACommittedFlushTwice() throws IOException {
+		WriteBehindStockCache cache = open(journalDirectory, FLUSH_THRESHOLD);
+		take(cache, 3);
+		Path beforeFlush = crashCopy();
+		cache.flush();
+		// the intent of the flush is on disk but its journal files were not deleted
+		try (StockDeltaJournal journal = new StockDeltaJournal(beforeFlush)) {
+			journal.writeIntent(1, Collections.singletonMap(productId, 7));
+		}
+
+		open(beforeFlush, FLUSH_THRESHOLD);
+
+		assertThat(shardQuantities()).containsExactly(2, 5);
+		assertThat(Files.exists(beforeFlush.resolve("stock-flush.intent"))).isFalse();
+	}
+
+	@Test
+	@DisplayName("A flush that did not commit before a crash should be applied on recovery")
+	void testRecoverShouldApplyAFlushThatDidNotCommit() throws IOException {
+		WriteBehindStockCache cache = open(journalDirectory, FLUSH_THRESHOLD);
+		take(cache, 3);
+		try (StockDeltaJournal journal = new StockDeltaJournal(journalDirectory)) {
+			journal.writeIntent(1, Collections.singletonMap(productId, 7));
+		}
+
+		open(crashCopy(), FLUSH_THRESHOLD);
+
+		assertThat(shardQuantities()).containsExactly(2, 5);
+	}
+
+	@Test
+	@DisplayName("Close should flush the pending changes")
+	void testCloseShouldFlush() throws IOException {
+		WriteBehindStockCache cache = new WriteBehindStockCache(transactionManager, journalDirectory, Runnable::run,
+				FLUSH_INTERVAL_MILLIS, FLUSH_THRESHOLD);
+		take(cache, 4);
+
+		cache.close();
+
+		assertThat(shardQuantities()).containsExactly(1, 5);
+	}
+
+	@Test
+	@DisplayName("Reject a flush interval or threshold that is not positive")
+	void testConstructorWithInvalidArgumentsShouldThrow() {
+		assertThatThrownBy(() -> new WriteBehindStockCache(transactionManager, journalDirectory, Runnable::run, 0,
+				FLUSH_THRESHOLD)).isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Flush interval must be positive. Received: 0");
+		assertThatThrownBy(() -> new WriteBehindStockCache(transactionManager, journalDirectory, Runnable::run,
+				FLUSH_INTERVAL_MILLIS, -1)).isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Flush threshold must be positive. Received: -1");
+	}
+
+	private WriteBehindStockCache open(Path directory, int flushThreshold) throws IOException {
+		// flushes run when the test says so, and at once on close
+		WriteBehindStockCache cache = new WriteBehindStockCache(transactionManager, directory, task -> {
+			if (closing)
+				task.run();
+			else
+				flushes.add(task);
+		}, FLUSH_INTERVAL_MILLIS, flushThreshold);
+		caches.add(cache);
+		return cache;
+	}
+
+	// the journal as a crash would leave it
+	private Path crashCopy() throws IOException {
+		Path target = Files.createTempDirectory(root, "crash");
+		try (Stream<Path> files = Files.list(journalDirectory)) {
+			for (Path file : files.collect(Collectors.toList()))
+				Files.copy(file, target.resolve(file.getFileName()));
+		}
+		return target;
+	}
+
+	// a change committed at once, with no item to check
+	private boolean take(WriteBehindStockCache cache, int quantity) {
+		StockChange change = new StockChange();
+		boolean taken = transactionManager.runInTransaction((productRepository, stockRepository, orderRepository,
+				itemRepository) -> {
+			boolean enough = cache.take(change, productId, quantity, stockRepository);
+			cache.prepare(change);
+			return enough;
+		});
+		cache.commit(change);
+		return taken;
+	}
+
+	private void put(WriteBehindStockCache cache, int quantity) {
+		StockChange change = new StockChange();
+		transactionManager.runInTransaction((productRepository, stockRepository, orderRepository, itemRepository) -> {
+			cache.put(change, productId, quantity);
+			cache.prepare(change);
+			return null;
+		});
+		cache.commit(change);
+	}
+
+	// the purchase of an item, journaled by the cache but not committed in it
+	private StockChange buyWithoutCommittingTheChange(WriteBehindStockCache cache, int quantity, boolean rollBack) {
+		StockChange change = new StockChange();
+		transactionManager.runInTransaction((productRepository, stockRepository, orderRepository, itemRepository) -> {
+			Order order = new Order(OrderStatus.OPEN);
+			orderRepository.save(order);
+			OrderItem item = new OrderItem(productRepository.findById(productId), order, quantity);
+			itemRepository.save(item);
+			cache.take(change, productId, quantity, stockRepository);
+			change.expectItem(item.getId(), quantity);
+			cache.prepare(change);
+			if (rollBack)
+				throw new IllegalStateException("crash before the commit");
+			return null;
+		});
+		return change;
+	}
+
+	private int quantity(WriteBehindStockCache cache) {
+		int quantity = transactionManager.runInTransaction((productRepository, stockRepository, orderRepository,
+				itemRepository) -> cache.getQuantity(productId, stockRepository));
+		return quantity;
+	}
+
+	private List<Integer> shardQuantities() {
+		List<Integer> quantities = transactionManager.runInTransaction((productRepository, stockRepository,
+				orderRepository, itemRepository) -> stockRepository.findAllByProductId(productId).stream()
+						.map(Stock::getQuantity).collect(Collectors.toList()));
+		return quantities;
+	}
+
+}
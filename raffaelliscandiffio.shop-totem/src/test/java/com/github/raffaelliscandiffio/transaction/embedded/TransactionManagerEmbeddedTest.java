@@ -0,0 +1,127 @@
+package com.github.raffaelliscandiffio.transaction.embedded;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.raffaelliscandiffio.exception.TransactionException;
+import com.github.raffaelliscandiffio.model.Order;
+import com.github.raffaelliscandiffio.model.OrderItem;
+import com.github.raffaelliscandiffio.model.OrderStatus;
+import com.github.raffaelliscandiffio.model.Product;
+import com.github.raffaelliscandiffio.model.Stock;
+import com.github.raffaelliscandiffio.repository.embedded.EmbeddedStore;
+import com.github.raffaelliscandiffio.service.ShoppingService;
+
+class TransactionManagerEmbeddedTest {
+
+	private static final String PRODUCT_NAME = "product";
+	private static final double PRODUCT_PRICE = 2.0;
+
+	@TempDir
+	Path directory;
+
+	private EmbeddedStore store;
+	private TransactionManagerEmbedded transactionManager;
+
+	@BeforeEach
+	void setup() throws IOException {
+		store = new EmbeddedStore(directory);
+		transactionManager = new TransactionManagerEmbedded(store);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		store.close();
+	}
+
+	@Test
+	@DisplayName("Method 'runInTransaction' should commit the code and return its result")
+	void testRunInTransaction() {
+		Product product = transactionManager
+				.runInTransaction((productRepository, stockRepository, orderRepository, orderItemRepository) -> {
+					Product saved = new Product(PRODUCT_NAME, PRODUCT_PRICE);
+					productRepository.save(saved);
+					return saved;
+				});
+
+		Product stored = transactionManager.runInTransaction((productRepository, stockRepository, orderRepository,
+				orderItemRepository) -> productRepository.findById(product.getId()));
+		assertThat(stored).isEqualTo(product);
+	}
+
+	@Test
+	@DisplayName("Method 'runInTransaction' should rollback and throw a new exception when an Exception occurs")
+	void testRunInTransactionWhenExceptionOccursShouldRollbackAndThrowNew() {
+		String message = "Exception message";
+		assertThatThrownBy(() -> transactionManager
+				.runInTransaction((productRepository, stockRepository, orderRepository, orderItemRepository) -> {
+					productRepository.save(new Product(PRODUCT_NAME, PRODUCT_PRICE));
+					throw new RuntimeException(message);
+				})).isInstanceOf(TransactionException.class).hasMessage(message);
+
+		List<Product> products = transactionManager.runInTransaction(
+				(productRepository, stockRepository, orderRepository, orderItemRepository) -> productRepository.findAll());
+		assertThat(products).isEmpty();
+	}
+
+	@Test
+	@DisplayName("The repositories should keep the references between entities")
+	void testRepositoriesShouldCheckReferences() {
+		Product missing = new Product(PRODUCT_NAME, PRODUCT_PRICE);
+		missing.setId("missing");
+
+		assertThatThrownBy(() -> transactionManager.runInTransaction(
+				(productRepository, stockRepository, orderRepository, orderItemRepository) -> {
+					stockRepository.save(new Stock(missing, 1));
+					return null;
+				})).isInstanceOf(TransactionException.class)
+				.hasMessage("Referenced Product with id missing not found.");
+		assertThatThrownBy(() -> transactionManager.runInTransaction(
+				(productRepository, stockRepository, orderRepository, orderItemRepository) -> {
+					Product product = new Product(PRODUCT_NAME, PRODUCT_PRICE);
+					productRepository.save(product);
+					Order order = new Order(OrderStatus.OPEN);
+					orderRepository.save(order);
+					orderItemRepository.save(new OrderItem(product, order, 1));
+					orderRepository.delete(order.getId());
+					return null;
+				})).isInstanceOf(TransactionException.class).hasMessageStartingWith("Reference error");
+	}
+
+	@Test
+	@DisplayName("The shopping service should run on the embedded repositories")
+	void testShoppingService() {
+		ShoppingService shoppingService = new ShoppingService(transactionManager);
+		shoppingService.saveProductAndStock(PRODUCT_NAME, PRODUCT_PRICE, 10, 2);
+		Product product = shoppingService.getAllProducts().get(0);
+		Order order = shoppingService.openNewOrder();
+
+		shoppingService.buyProduct(order.getId(), product.getId(), 3);
+		OrderItem item = shoppingService.buyProduct(order.getId(), product.getId(), 2);
+		shoppingService.returnItem(item, 1);
+
+		List<OrderItem> items = shoppingService.getOrderItems(order.getId());
+		assertThat(items).hasSize(1);
+		assertThat(items.get(0).getQuantity()).isEqualTo(4);
+		Order stored = shoppingService.getOrder(order.getId());
+		assertThat(stored.getTotal()).isEqualTo(4 * PRODUCT_PRICE);
+		assertThat(stored.getLineCount()).isEqualTo(1);
+		int available = transactionManager.runInTransaction((productRepository, stockRepository, orderRepository,
+				orderItemRepository) -> stockRepository.getTotalQuantityByProductId(product.getId()));
+		assertThat(available).isEqualTo(6);
+
+		shoppingService.closeOrder(order.getId());
+		assertThat(shoppingService.getOrder(order.getId()).getStatus()).isEqualTo(OrderStatus.CLOSED);
+	}
+
+}
@@ -0,0 +1,62 @@
+package com.github.raffaelliscandiffio.transaction.mongo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ConnectionId;
+import com.mongodb.connection.ServerId;
+import com.mongodb.connection.ServerType;
+import com.mongodb.event.CommandStartedEvent;
+
+class MongoReadMetricsTest {
+
+	private static final ServerAddress PRIMARY = new ServerAddress("localhost", 27017);
+	private static final ServerAddress SECONDARY = new ServerAddress("localhost", 27018);
+
+	private MongoReadMetrics metrics;
+
+	@BeforeEach
+	void setup() {
+		metrics = new MongoReadMetrics();
+	}
+
+	@Test
+	@DisplayName("Reads should be counted by node and by role")
+	void testReadsShouldBeCountedByNodeAndRole() {
+		metrics.commandStarted(command("find", SECONDARY, ServerType.REPLICA_SET_SECONDARY));
+		metrics.commandStarted(command("aggregate", SECONDARY, ServerType.REPLICA_SET_SECONDARY));
+		metrics.commandStarted(command("find", PRIMARY, ServerType.REPLICA_SET_PRIMARY));
+
+		assertThat(metrics.getReadsByNode()).containsEntry("localhost:27018", 2L).containsEntry("localhost:27017",
+				1L);
+		assertThat(metrics.getReadsByRole()).containsEntry("REPLICA_SET_SECONDARY", 2L)
+				.containsEntry("REPLICA_SET_PRIMARY", 1L);
+	}
+
+	@Test
+	@DisplayName("Writes and other commands should not be counted as reads")
+	void testOtherCommandsShouldNotBeCounted() {
+		metrics.commandStarted(command("update", PRIMARY, ServerType.REPLICA_SET_PRIMARY));
+		metrics.commandStarted(command("commitTransaction", PRIMARY, ServerType.REPLICA_SET_PRIMARY));
+
+		assertThat(metrics.getReadsByNode()).isEmpty();
+		assertThat(metrics.summary()).isEqualTo("reads by node {}, by role {}");
+	}
+
+	private CommandStartedEvent command(String name, ServerAddress address, ServerType type) {
+		ConnectionDescription connection = new ConnectionDescription(
+				new ConnectionId(new ServerId(new ClusterId(), address)), 8, type, 1000, 16 * 1024 * 1024,
+				48 * 1024 * 1024, Collections.emptyList());
+		return new CommandStartedEvent(1, connection, "totem", name, new BsonDocument(name, new BsonDocument()));
+	}
+
+}
@@ -0,0 +1,35 @@
+package com.github.raffaelliscandiffio.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class JsonWriterTest {
+
+	@Test
+	@DisplayName("The JSON writer should separate the members and escape the strings")
+	void testJsonWriter() throws IOException {
+		StringWriter out = new StringWriter();
+		new JsonWriter(out).beginObject().name("list").beginArray().value(1).value("a\u0001").beginObject()
+				.endObject().endArray().name("price").value(2.5).name("none").value(null).endObject().flush();
+
+		assertThat(out).hasToString("{\"list\":[1,\"a\\u0001\",{}],\"price\":2.5,\"none\":null}");
+	}
+
+	@Test
+	@DisplayName("Booleans and numbers of a fixed scale should be written as such")
+	void testBooleansAndFixedScaleNumbers() throws IOException {
+		StringWriter out = new StringWriter();
+		new JsonWriter(out).beginArray().value(true).value(12.5, 3).value(0.0004, 3).value(0.0005, 3).endArray();
+
+		assertThat(out).hasToString("[true,12.500,0.000,0.001]");
+		assertThatThrownBy(() -> new JsonWriter(out).value(Double.NaN, 3))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("JSON numbers must be finite. Received: NaN");
+	}
+
+}
@@ -0,0 +1,142 @@
+package com.github.raffaelliscandiffio.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+class PublishersTest {
+
+	@Test
+	@DisplayName("'fromFuture' should emit the value of the future and 'await' should return it")
+	void testFromFutureAndAwait() {
+		assertThat(Publishers.await(Publishers.fromFuture(() -> CompletableFuture.completedFuture("value"))))
+				.isEqualTo("value");
+	}
+
+	@Test
+	@DisplayName("'fromFuture' should complete empty when the future value is null")
+	void testFromFutureWithNullValue() {
+		Publisher<String> publisher = Publishers.fromFuture(() -> CompletableFuture.completedFuture(null));
+
+		assertThat(Publishers.awaitList(publisher)).isEmpty();
+		assertThat(Publishers.await(publisher)).isNull();
+	}
+
+	@Test
+	@DisplayName("'fromFuture' should create the future only when a subscriber requests elements")
+	void testFromFutureIsDeferred() {
+		AtomicInteger calls = new AtomicInteger();
+		Publisher<Integer> publisher = Publishers
+				.fromFuture(() -> CompletableFuture.completedFuture(calls.incrementAndGet()));
+
+		assertThat(calls).hasValue(0);
+		assertThat(Publishers.await(publisher)).isEqualTo(1);
+		assertThat(Publishers.await(publisher)).isEqualTo(2);
+	}
+
+	@Test
+	@DisplayName("'await' should rethrow the exception that failed the publisher")
+	void testAwaitRethrowsFailure() {
+		CompletableFuture<String> failed = new CompletableFuture<>();
+		NoSuchElementException exception = new NoSuchElementException("not found");
+		failed.completeExceptionally(exception);
+
+		assertThatThrownBy(() -> Publishers.await(Publishers.fromFuture(() -> failed))).isSameAs(exception);
+	}
+
+	@Test
+	@DisplayName("'fromFutureList' should emit only as many elements as requested")
+	void testFromFutureListRespectsDemand() {
+		Publisher<Integer> publisher = Publishers
+				.fromFutureList(() -> CompletableFuture.completedFuture(Arrays.asList(1, 2, 3)));
+		RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+		publisher.subscribe(subscriber);
+
+		subscriber.subscription.request(2);
+		assertThat(subscriber.items).containsExactly(1, 2);
+		assertThat(subscriber.completed).isFalse();
+
+		subscriber.subscription.request(1);
+		assertThat(subscriber.items).containsExactly(1, 2, 3);
+		assertThat(subscriber.completed).isTrue();
+	}
+
+	@Test
+	@DisplayName("'fromFutureList' should signal an error on a non-positive request")
+	void testFromFutureListRejectsNonPositiveRequest() {
+		Publisher<Integer> publisher = Publishers
+				.fromFutureList(() -> CompletableFuture.completedFuture(Collections.singletonList(1)));
+		RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+		publisher.subscribe(subscriber);
+
+		subscriber.subscription.request(0);
+
+		assertThat(subscriber.error).isInstanceOf(IllegalArgumentException.class);
+		assertThat(subscriber.items).isEmpty();
+	}
+
+	@Test
+	@DisplayName("'fromFutureList' should emit the elements once the future completes")
+	void testFromFutureListWaitsForFuture() {
+		CompletableFuture<List<Integer>> future = new CompletableFuture<>();
+		RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+		Publishers.fromFutureList(() -> future).subscribe(subscriber);
+		subscriber.subscription.request(Long.MAX_VALUE);
+
+		assertThat(subscriber.items).isEmpty();
+		future.complete(Arrays.asList(1, 2));
+
+		assertThat(subscriber.items).containsExactly(1, 2);
+		assertThat(subscriber.completed).isTrue();
+	}
+
+	@Test
+	@DisplayName("'first' should cancel the subscription after the first element")
+	void testFirstCancelsAfterFirstElement() {
+		assertThat(Publishers.first(Publishers
+				.fromFutureList(() -> CompletableFuture.completedFuture(Arrays.asList("a", "b")))).join())
+						.isEqualTo("a");
+	}
+
+	private static class RecordingSubscriber<T> implements Subscriber<T> {
+
+		private final List<T> items = new ArrayList<>();
+		private Subscription subscription;
+		private Throwable error;
+		private boolean completed;
+
+		@Override
+		public void onSubscribe(Subscription s) {
+			subscription = s;
+		}
+
+		@Override
+		public void onNext(T item) {
+			items.add(item);
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			error = t;
+		}
+
+		@Override
+		public void onComplete() {
+			completed = true;
+		}
+	}
+
+}
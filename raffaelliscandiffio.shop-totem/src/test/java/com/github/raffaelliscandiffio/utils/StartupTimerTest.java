@@ -0,0 +1,50 @@
+package com.github.raffaelliscandiffio.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class StartupTimerTest {
+
+	private static final long ORIGIN = 1000;
+
+	private AtomicLong now = new AtomicLong(ORIGIN);
+	private StartupTimer timer;
+
+	@BeforeEach
+	void setup() {
+		timer = new StartupTimer(ORIGIN, now::get);
+	}
+
+	@Test
+	@DisplayName("'summary' should list the marks from the origin and the phase durations in order")
+	void testSummary() throws Exception {
+		now.set(ORIGIN + 120);
+		timer.mark("window shown");
+		String result = timer.time("persistence", () -> {
+			now.addAndGet(300);
+			return "result";
+		});
+		timer.mark("ready");
+
+		assertThat(result).isEqualTo("result");
+		assertThat(timer.summary())
+				.isEqualTo("Startup: window shown at 120 ms, persistence took 300 ms, ready at 420 ms");
+	}
+
+	@Test
+	@DisplayName("A phase that throws should not be recorded")
+	void testTimeWhenThePhaseThrowsShouldNotRecordIt() {
+		assertThatThrownBy(() -> timer.time("persistence", () -> {
+			throw new IllegalStateException("no database");
+		})).isInstanceOf(IllegalStateException.class);
+
+		assertThat(timer.summary()).isEqualTo("Startup: ");
+	}
+
+}
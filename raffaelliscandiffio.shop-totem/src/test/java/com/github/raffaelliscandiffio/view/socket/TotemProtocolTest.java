@@ -0,0 +1,27 @@
+package com.github.raffaelliscandiffio.view.socket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class TotemProtocolTest {
+
+	@Test
+	@DisplayName("Fields should survive the line with their tabs, line breaks and backslashes")
+	void testFieldsShouldBeEscaped() {
+		String line = TotemProtocol.encode("MESSAGE", "a\tb", "two\nlines\r", "back\\slash", null, 1.5);
+
+		assertThat(line).doesNotContain("\n", "\r").startsWith("MESSAGE\ta\\tb\t");
+		assertThat(TotemProtocol.decode(line)).containsExactly("MESSAGE", "a\tb", "two\nlines\r", "back\\slash", "",
+				"1.5");
+	}
+
+	@Test
+	@DisplayName("A line without separators should be a single field")
+	void testLineWithoutSeparatorsShouldBeOneField() {
+		assertThat(TotemProtocol.decode("START")).containsExactly("START");
+		assertThat(TotemProtocol.decode("")).containsExactly("");
+	}
+
+}
@@ -0,0 +1,231 @@
+package com.github.raffaelliscandiffio.view.swing;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.github.raffaelliscandiffio.model.Product;
+
+class ProductListModelTest {
+
+	private static final int PAGE_SIZE = 20;
+
+	private ProductListModel model;
+	private List<String> requestedAfterIds;
+
+	@BeforeEach
+	void setup() {
+		model = new ProductListModel();
+		requestedAfterIds = new ArrayList<>();
+		model.setNextPageRequester(requestedAfterIds::add);
+	}
+
+	@Test
+	@DisplayName("'showFirstPage' should replace the elements with the page")
+	void testShowFirstPageReplacesElements() {
+		model.addElement(newProduct(99));
+		List<Product> page = newPage(0);
+
+		model.showFirstPage(page, true);
+
+		assertThat(elements()).isEqualTo(page);
+		assertThat(model.hasMore()).isTrue();
+	}
+
+	@Test
+	@DisplayName("Scrolling close to the end should request the page after the last product once")
+	void testRequestNextPageWhenCloseToTheEnd() {
+		model.showFirstPage(newPage(0), true);
+
+		model.requestNextPageIfNeeded(PAGE_SIZE - ProductListModel.PREFETCH_DISTANCE);
+		model.requestNextPageIfNeeded(PAGE_SIZE - 1);
+
+		assertThat(requestedAfterIds).containsExactly("id_" + (PAGE_SIZE - 1));
+		assertThat(model.isLoading()).isTrue();
+	}
+
+	@Test
+	@DisplayName("Scrolling far from the end should not request a page")
+	void testNoRequestWhenFarFromTheEnd() {
+		model.showFirstPage(newPage(0), true);
+
+		model.requestNextPageIfNeeded(PAGE_SIZE - ProductListModel.PREFETCH_DISTANCE - 1);
+
+		assertThat(requestedAfterIds).isEmpty();
+	}
+
+	@Test
+	@DisplayName("'appendPage' should add the page and allow the next request")
+	void testAppendPage() {
+		model.showFirstPage(newPage(0), true);
+		model.requestNextPageIfNeeded(PAGE_SIZE - 1);
+		List<Product> secondPage = newPage(PAGE_SIZE);
+
+		model.appendPage(secondPage, true);
+		model.requestNextPageIfNeeded(2 * PAGE_SIZE - 1);
+
+		assertThat(model.getSize()).isEqualTo(2 * PAGE_SIZE);
+		assertThat(model.lastElement()).isEqualTo(secondPage.get(PAGE_SIZE - 1));
+		assertThat(requestedAfterIds).containsExactly("id_" + (PAGE_SIZE - 1), "id_" + (2 * PAGE_SIZE - 1));
+	}
+
+	@Test
+	@DisplayName("A failed page should be requested again on the next scroll")
+	void testPageFailedShouldAllowTheRequestAgain() {
+		model.showFirstPage(newPage(0), true);
+		model.requestNextPageIfNeeded(PAGE_SIZE - 1);
+
+		model.pageFailed();
+		model.requestNextPageIfNeeded(PAGE_SIZE - 1);
+
+		assertThat(requestedAfterIds).containsExactly("id_" + (PAGE_SIZE - 1), "id_" + (PAGE_SIZE - 1));
+		assertThat(model.isLoading()).isTrue();
+	}
+
+	@Test
+	@DisplayName("No page should be requested after the last page")
+	void testNoRequestAfterLastPage() {
+		model.showFirstPage(newPage(0), false);
+
+		model.requestNextPageIfNeeded(PAGE_SIZE - 1);
+
+		assertThat(requestedAfterIds).isEmpty();
+	}
+
+	@Test
+	@DisplayName("'removeAllElements' should stop the requests")
+	void testRemoveAllElementsStopsRequests() {
+		model.showFirstPage(newPage(0), true);
+
+		model.removeAllElements();
+		model.requestNextPageIfNeeded(0);
+
+		assertThat(requestedAfterIds).isEmpty();
+		assertThat(model.hasMore()).isFalse();
+	}
+
+	@Test
+	@DisplayName("A change of availability should repaint the row of the product, and be kept for the pages read later")
+	void testSetAvailableShouldRepaintTheRow() {
+		model.showFirstPage(newPage(0), true);
+		List<Integer> changedRows = new ArrayList<>();
+		model.addListDataListener(new ListDataAdapter(event -> changedRows.add(event.getIndex0())));
+
+		model.setAvailable("id_3", 0);
+		model.setAvailable("id_" + PAGE_SIZE, 5);
+
+		assertThat(changedRows).containsExactly(3);
+		assertThat(model.getAvailable("id_3")).isZero();
+		assertThat(model.getAvailable("id_" + PAGE_SIZE)).isEqualTo(5);
+		assertThat(model.getAvailable("id_4")).isNull();
+	}
+
+	@Test
+	@DisplayName("A changed product should replace the one shown, one not shown should be ignored")
+	void testReplaceProductShouldUpdateTheProductShown() {
+		model.showFirstPage(newPage(0), false);
+		Product renamed = new Product("renamed", 2.0);
+		renamed.setId("id_3");
+
+		model.replaceProduct(renamed);
+		model.replaceProduct(newProduct(PAGE_SIZE));
+
+		assertThat(model.getElementAt(3)).isSameAs(renamed);
+		assertThat(model.getSize()).isEqualTo(PAGE_SIZE);
+	}
+
+	@Test
+	@DisplayName("A change should find the row of its product after the list is changed")
+	void testChangesShouldFindTheRowAfterTheListChanges() {
+		model.showFirstPage(newPage(0), true);
+		model.appendPage(newPage(PAGE_SIZE), false);
+		model.removeElementAt(0);
+		model.insertElementAt(newProduct(2 * PAGE_SIZE), 1);
+		List<Integer> changedRows = new ArrayList<>();
+		model.addListDataListener(new ListDataAdapter(event -> changedRows.add(event.getIndex0())));
+
+		model.setAvailable("id_0", 1);
+		model.setAvailable("id_1", 1);
+		model.setAvailable("id_" + 2 * PAGE_SIZE, 1);
+		model.setAvailable("id_" + (PAGE_SIZE + 5), 1);
+
+		assertThat(changedRows).containsExactly(0, 1, PAGE_SIZE + 5);
+	}
+
+	@Test
+	@DisplayName("A product replaced in its row should no longer be found there")
+	void testReplacedRowShouldNotBeFoundByTheOldProduct() {
+		model.showFirstPage(newPage(0), false);
+		model.setElementAt(newProduct(PAGE_SIZE), 3);
+		List<Integer> changedRows = new ArrayList<>();
+		model.addListDataListener(new ListDataAdapter(event -> changedRows.add(event.getIndex0())));
+
+		model.setAvailable("id_3", 1);
+		model.setAvailable("id_" + PAGE_SIZE, 1);
+
+		assertThat(changedRows).containsExactly(3);
+	}
+
+	@Test
+	@DisplayName("The quantities known should be forgotten when the list starts over")
+	void testShowFirstPageShouldForgetTheQuantities() {
+		model.showFirstPage(newPage(0), true);
+		model.setAvailable("id_3", 2);
+		model.setAvailable("id_" + PAGE_SIZE, 5);
+
+		model.showFirstPage(newPage(0), true);
+
+		assertThat(model.getAvailable("id_3")).isNull();
+		assertThat(model.getAvailable("id_" + PAGE_SIZE)).isNull();
+	}
+
+	private List<Product> elements() {
+		return IntStream.range(0, model.getSize()).mapToObj(model::getElementAt).collect(Collectors.toList());
+	}
+
+	private List<Product> newPage(int firstIndex) {
+		return IntStream.range(firstIndex, firstIndex + PAGE_SIZE).mapToObj(this::newProduct)
+				.collect(Collectors.toList());
+	}
+
+	private static class ListDataAdapter implements ListDataListener {
+
+		private final Consumer<ListDataEvent> onChange;
+
+		private ListDataAdapter(Consumer<ListDataEvent> onChange) {
+			this.onChange = onChange;
+		}
+
+		@Override
+		public void intervalAdded(ListDataEvent e) {
+		}
+
+		@Override
+		public void intervalRemoved(ListDataEvent e) {
+		}
+
+		@Override
+		public void contentsChanged(ListDataEvent e) {
+			onChange.accept(e);
+		}
+
+	}
+
+	private Product newProduct(int index) {
+		Product product = new Product("product_" + index, 1.0);
+		product.setId("id_" + index);
+		return product;
+	}
+
+}
@@ -1,6 +1,10 @@
 package com.github.raffaelliscandiffio.view.swing;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 
@@ -157,6 +161,25 @@ class TotemSwingViewTest {
 			verify(totemController).startShopping();
 		}
 
+		@Test
+		@GUITest
+		@DisplayName("Method 'setStartShoppingEnabled' should toggle the 'Start Shopping' button")
+		void testSetStartShoppingEnabled() {
+			GuiActionRunner.execute(() -> totemSwingView.setStartShoppingEnabled(false));
+			window.button(JButtonMatcher.withName("welcomeStartShopping")).requireDisabled();
+			GuiActionRunner.execute(() -> totemSwingView.setStartShoppingEnabled(true));
+			window.button(JButtonMatcher.withName("welcomeStartShopping")).requireEnabled();
+		}
+
+		@Test
+		@GUITest
+		@DisplayName("Method 'showStartupError' should show the error on the welcome panel")
+		void testShowStartupErrorShouldShowTheError() {
+			window.label("welcomeMessage").requireText(" ");
+			GuiActionRunner.execute(() -> totemSwingView.showStartupError("The totem cannot start: refused"));
+			window.label("welcomeMessage").requireText("The totem cannot start: refused");
+		}
+
 	}
 
 	@Nested
@@ -286,6 +309,59 @@ class TotemSwingViewTest {
 			window.label("messageLabel").requireText(" ");
 		}
 
+		@Test
+		@GUITest
+		@DisplayName("The rows should show the quantity left once it is known")
+		void testRowsShouldShowTheQuantityLeft() {
+			Product product1 = new Product("Product1", 2);
+			product1.setId("1");
+			Product product2 = new Product("Product2", 3);
+			product2.setId("2");
+			totemSwingView.showAllProducts(Arrays.asList(product1, product2));
+
+			totemSwingView.showAvailability("1", 4);
+			totemSwingView.showAvailability("2", 0);
+
+			assertThat(window.list("productList").contents()).containsExactly("Product1 - Price: 2.0 € - 4 left",
+					"Product2 - Price: 3.0 € - Sold out");
+		}
+
+		@Test
+		@GUITest
+		@DisplayName("A quantity over the one left should be refused and the spinner capped at it")
+		void testQuantityOverTheOneLeftShouldBeRefused() {
+			Product product = new Product("Product1", 2);
+			product.setId("1");
+			GuiActionRunner.execute(() -> {
+				totemSwingView.getShoppingPane().getListProductsModel().addElement(product);
+				totemSwingView.getShoppingPane().getListProductsModel().setAvailable("1", 3);
+			});
+			window.list("productList").selectItem(0);
+
+			window.spinner("quantitySpinner").enterText("4");
+			window.label("messageLabel").requireText("Only 3 available");
+			window.button(JButtonMatcher.withText("Add")).requireDisabled();
+			window.spinner("quantitySpinner").enterText("3");
+			window.button(JButtonMatcher.withText("Add")).requireEnabled();
+			assertThat(((SpinnerNumberModel) totemSwingView.getShoppingPane().getQuantitySpinner().getModel())
+					.getMaximum()).isEqualTo(3);
+		}
+
+		@Test
+		@GUITest
+		@DisplayName("A product selected should not be added once it is sold out")
+		void testSelectedProductShouldNotBeAddedOnceSoldOut() {
+			Product product = new Product("Product1", 2);
+			product.setId("1");
+			GuiActionRunner.execute(() -> totemSwingView.getShoppingPane().getListProductsModel().addElement(product));
+			window.list("productList").selectItem(0);
+
+			totemSwingView.showAvailability("1", 0);
+
+			window.button(JButtonMatcher.withText("Add")).requireDisabled();
+			window.spinner("quantitySpinner").requireDisabled();
+		}
+
 		@Test
 		@GUITest
 		@DisplayName("Message label should not display 'Invalid quantity' after deselection if quantity inserted was invalid before")
@@ -299,6 +375,29 @@ class TotemSwingViewTest {
 			window.label("messageLabel").requireText(" ");
 		}
 
+		@Test
+		@GUITest
+		@DisplayName("Typing in the search field should delegate the last query to TotemController 'searchProducts'")
+		void testSearchFieldShouldDelegateTheLastQueryToTotemControllerSearchProducts() {
+			window.textBox("searchField").enterText("pas");
+
+			verify(totemController, timeout(ShoppingPanel.SEARCH_DELAY_MILLIS * 10)).searchProducts("pas");
+			verify(totemController, never()).searchProducts("p");
+		}
+
+		@Test
+		@GUITest
+		@DisplayName("Clearing the search should not delegate to TotemController")
+		void testClearSearchShouldNotDelegateToTotemController() {
+			GuiActionRunner.execute(() -> {
+				totemSwingView.getShoppingPane().getSearchField().setText("pas");
+				totemSwingView.getShoppingPane().clearSearch();
+			});
+
+			window.textBox("searchField").requireEmpty();
+			verify(totemController, after(ShoppingPanel.SEARCH_DELAY_MILLIS * 2).never()).searchProducts(anyString());
+		}
+
 		@Test
 		@DisplayName("Button 'Add' should delegate to TotemController 'buyProduct'")
 		void testAddButtonShouldDelegateToTotemControllerBuyProduct() {
@@ -572,6 +671,17 @@ class TotemSwingViewTest {
 						"Product - Quantity: 3 - Price: 3.0 € - Subtotal: 9.0 €");
 			}
 
+			@Test
+			@GUITest
+			@DisplayName("Method 'showOrderTotal' should show the running total and the line count in cart panel")
+			void testShowOrderTotalShouldShowTotalAndLineCount() {
+				totemSwingView.showOrderTotal(24.0, 2);
+
+				GuiActionRunner
+						.execute(() -> totemSwingView.getCardLayout().show(totemSwingView.getContentPane(), "cart"));
+				window.label("totalLabel").requireText("Items: 2 - Total: 24.00 €");
+			}
+
 		}
 
 		@Nested